@@ -0,0 +1,143 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Compresses and decompresses sections (instructions or new data) of svndiff1
+ * and svndiff2 windows. Sections are read from and written to caller provided
+ * arrays; zlib streams are processed by <code>Inflater</code> and <code>Deflater</code>
+ * instances kept for every thread, LZ4 (de)compressors are thread-safe and shared.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class SVNDeltaCodec {
+
+    /**
+     * Compression level used when a repository does not configure one.
+     */
+    public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private static final LZ4Factory ourLZ4Factory = LZ4Factory.fastestInstance();
+    private static final LZ4Compressor ourLZ4Compressor = ourLZ4Factory.fastCompressor();
+    private static final LZ4FastDecompressor ourLZ4Decompressor = ourLZ4Factory.fastDecompressor();
+
+    private static final ThreadLocal<Inflater> ourInflaters = new ThreadLocal<Inflater>() {
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+    private static final ThreadLocal<Deflater> ourDeflaters = new ThreadLocal<Deflater>() {
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+    };
+
+    /**
+     * Returns the size of a target array that is enough for {@link #compress(SVNDeltaCompression, int, byte[], int, int, byte[], int)}
+     * to compress <code>length</code> bytes.
+     */
+    public static int getMaxCompressedLength(SVNDeltaCompression compression, int length) {
+        if (compression == SVNDeltaCompression.LZ4) {
+            return ourLZ4Compressor.maxCompressedLength(length);
+        } else if (compression == SVNDeltaCompression.Zlib) {
+            // zlib's compressBound()
+            return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+        }
+        return length;
+    }
+
+    /**
+     * Compresses <code>source[offset..offset+length)</code> into <code>target</code>
+     * starting at <code>targetOffset</code>; there should be at least
+     * {@link #getMaxCompressedLength(SVNDeltaCompression, int)} bytes available there.
+     *
+     * @param level  zlib compression level, from 0 to 9 or {@link #DEFAULT_COMPRESSION_LEVEL}; ignored by other algorithms
+     * @return       number of bytes written to <code>target</code>
+     */
+    public static int compress(SVNDeltaCompression compression, int level, byte[] source, int offset, int length, byte[] target, int targetOffset) throws IOException {
+        if (compression == SVNDeltaCompression.LZ4) {
+            try {
+                return ourLZ4Compressor.compress(source, offset, length, target, targetOffset, target.length - targetOffset);
+            } catch (LZ4Exception e) {
+                throw new IOException(e.getMessage());
+            }
+        } else if (compression == SVNDeltaCompression.Zlib) {
+            final Deflater deflater = ourDeflaters.get();
+            deflater.reset();
+            deflater.setLevel(level);
+            deflater.setInput(source, offset, length);
+            deflater.finish();
+            int written = 0;
+            while (!deflater.finished()) {
+                final int deflated = deflater.deflate(target, targetOffset + written, target.length - targetOffset - written);
+                if (deflated == 0 && targetOffset + written == target.length) {
+                    throw new IOException("Compressed svndiff section does not fit into the buffer");
+                }
+                written += deflated;
+            }
+            return written;
+        }
+        System.arraycopy(source, offset, target, targetOffset, length);
+        return length;
+    }
+
+    /**
+     * Decompresses <code>source[offset..offset+length)</code> into exactly <code>targetLength</code>
+     * bytes of <code>target</code>, starting at <code>targetOffset</code>.
+     *
+     * @throws IOException  if compressed data is corrupted or does not expand to <code>targetLength</code> bytes
+     */
+    public static void decompress(SVNDeltaCompression compression, byte[] source, int offset, int length, byte[] target, int targetOffset, int targetLength) throws IOException {
+        if (compression == SVNDeltaCompression.LZ4) {
+            try {
+                ourLZ4Decompressor.decompress(source, offset, target, targetOffset, targetLength);
+            } catch (LZ4Exception e) {
+                throw new IOException(e.getMessage());
+            }
+        } else if (compression == SVNDeltaCompression.Zlib) {
+            final Inflater inflater = ourInflaters.get();
+            inflater.reset();
+            inflater.setInput(source, offset, length);
+            try {
+                int read = 0;
+                while (read < targetLength) {
+                    final int inflated = inflater.inflate(target, targetOffset + read, targetLength - read);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Unexpected end of compressed svndiff section");
+                    }
+                    read += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e.getMessage());
+            }
+        } else {
+            if (length != targetLength) {
+                throw new IOException("Uncompressed svndiff section has unexpected length");
+            }
+            System.arraycopy(source, offset, target, targetOffset, length);
+        }
+    }
+
+    private SVNDeltaCodec() {
+    }
+}
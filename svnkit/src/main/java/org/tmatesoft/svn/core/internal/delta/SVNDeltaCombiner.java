@@ -11,8 +11,6 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4FastDecompressor;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
@@ -24,19 +22,36 @@ import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.zip.InflaterInputStream;
 
 
 /**
+ * Combines chains of delta windows into the fulltext windows.
+ *
+ * <p/>
+ * Working buffers are kept between {@link #reset() resets}. Buffers returned by
+ * {@link #addWindow(SVNDiffWindow)} belong to the caller until they are given back
+ * with {@link #releaseTarget(ByteBuffer)}, they are then reused by combiners running
+ * in the same thread.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class SVNDeltaCombiner {
-    
+
+    private static final byte[] EMPTY_SOURCE = new byte[0];
+    private static final int MAX_POOLED_TARGETS = 4;
+    private static final int MAX_POOLED_TARGET_SIZE = 0x100000;
+
+    private static final ThreadLocal<ArrayList<ByteBuffer>> ourTargetsPool = new ThreadLocal<ArrayList<ByteBuffer>>() {
+        protected ArrayList<ByteBuffer> initialValue() {
+            return new ArrayList<ByteBuffer>(MAX_POOLED_TARGETS);
+        }
+    };
+
     private SVNDiffWindow myWindow;
     
     private ByteBuffer myWindowData;    
@@ -45,6 +60,9 @@ public class SVNDeltaCombiner {
     private ByteBuffer myTarget;
     private ByteBuffer myRealTarget;
     private ByteBuffer myReadWindowBuffer;
+    private ByteBuffer myDecompressedWindowBuffer;
+    private int myDecompressedInstructionsLength;
+    private int myDecompressedDataLength;
     
     private SVNRangeTree myRangeTree;
     private SVNOffsetsIndex myOffsetsIndex;
@@ -62,15 +80,46 @@ public class SVNDeltaCombiner {
 
     public void reset() {
         myWindow = null;
-        myWindowData = null;
-        myReadWindowBuffer = null;
+        myWindowData = clearBuffer(myWindowData);
+        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
         myNextWindowData = clearBuffer(myNextWindowData);
-        myNextWindowInstructions = null;
-        myTarget = null;
+        myNextWindowInstructions = clearBuffer(myNextWindowInstructions);
+        myTarget = clearBuffer(myTarget);
         myRealTarget = null;
         
         myRangeTree.dispose();
     }
+
+    /**
+     * Gives back a buffer returned by {@link #addWindow(SVNDiffWindow)} once its
+     * contents are consumed. The buffer must not be used by the caller afterwards.
+     */
+    public void releaseTarget(ByteBuffer target) {
+        if (target == null || target.capacity() > MAX_POOLED_TARGET_SIZE) {
+            return;
+        }
+        final ArrayList<ByteBuffer> pool = ourTargetsPool.get();
+        if (pool.size() < MAX_POOLED_TARGETS) {
+            pool.add(target);
+        }
+    }
+
+    private static ByteBuffer allocateTarget(int size) {
+        final ArrayList<ByteBuffer> pool = ourTargetsPool.get();
+        for (int i = pool.size() - 1; i >= 0; i--) {
+            final ByteBuffer buffer = pool.get(i);
+            if (buffer.capacity() >= size) {
+                pool.remove(i);
+                buffer.clear();
+                return buffer;
+            }
+        }
+        if (!pool.isEmpty()) {
+            // too small for windows of this size, let it go
+            pool.remove(0);
+        }
+        return ByteBuffer.allocate(size);
+    }
     
     public SVNDiffWindow readWindow(FSFile file, int version) throws SVNException {
         myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
@@ -111,9 +160,9 @@ public class SVNDeltaCombiner {
         if (version == 1 || version == 2) {
             // decompress instructions and new data, put back to the buffer.
             try {
-                int[] lenghts = decompress(instructionsLength, dataLength, version);
-                instructionsLength = lenghts[0];
-                dataLength = lenghts[1];
+                decompress(instructionsLength, dataLength, version);
+                instructionsLength = myDecompressedInstructionsLength;
+                dataLength = myDecompressedDataLength;
             } catch (IOException e) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
                 SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
@@ -124,64 +173,54 @@ public class SVNDeltaCombiner {
         return window;
     }
 
-    private int[] decompress(int instructionsLength, int dataLength, int version) throws IOException {
+    private void decompress(int instructionsLength, int dataLength, int version) throws IOException {
         int originalPosition = myReadWindowBuffer.position();
         int realInstructionsLength = readOffset(myReadWindowBuffer);
-        byte[] instructionsData = new byte[realInstructionsLength];
-        byte[] data = null;
-        int realDataLength = 0;
         int compressedLength = instructionsLength - (myReadWindowBuffer.position() - originalPosition);
-        if (realInstructionsLength == compressedLength) {
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), instructionsData, 0, realInstructionsLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + realInstructionsLength);
-        } else {
-            byte[] compressedData = new byte[compressedLength];
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-            if (version == 1) {
-                final InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-                int read = 0;
-                while (read < realInstructionsLength) {
-                    read += is.read(instructionsData, read, realInstructionsLength - read);
-                }
-            } else if (version == 2) {
-                final LZ4FastDecompressor dc = LZ4Factory.fastestInstance().fastDecompressor();
-                dc.decompress(compressedData, 0, instructionsData, 0, realInstructionsLength);
-            }
+        if (realInstructionsLength < 0 || compressedLength < 0) {
+            throw new IOException("Malformed svndiff instructions");
         }
+        myDecompressedWindowBuffer = clearBuffer(myDecompressedWindowBuffer);
+        myDecompressedWindowBuffer = ensureBufferSize(myDecompressedWindowBuffer, realInstructionsLength);
+        decompressSection(compressedLength, realInstructionsLength, version);
+
+        int realDataLength = 0;
         if (dataLength > 0) {
             originalPosition = myReadWindowBuffer.position();
             realDataLength = readOffset(myReadWindowBuffer);
             compressedLength = dataLength - (myReadWindowBuffer.position() - originalPosition);
-            data = new byte[realDataLength];
-            if (compressedLength == realDataLength) {
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), data, 0, realDataLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + realDataLength);
-            } else {
-                byte[] compressedData = new byte[compressedLength];
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-                if (version == 1) {
-                    final InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-                    int read = 0;
-                    while (read < realDataLength) {
-                        read += is.read(data, read, realDataLength - read);
-                    }
-                } else if (version == 2) {
-                    final LZ4FastDecompressor dc = LZ4Factory.fastestInstance().fastDecompressor();
-                    dc.decompress(compressedData, 0, data, 0, realDataLength);
-                }
+            if (realDataLength < 0 || compressedLength < 0) {
+                throw new IOException("Malformed svndiff data");
             }
+            myDecompressedWindowBuffer = ensureBufferSize(myDecompressedWindowBuffer, realDataLength);
+            decompressSection(compressedLength, realDataLength, version);
         }
-        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
-        myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, realInstructionsLength + realDataLength);
-        myReadWindowBuffer.put(instructionsData);
-        if (data != null) {
-            myReadWindowBuffer.put(data);
-        }
+        // decompressed window becomes the read one, the read buffer is reused next time.
+        final ByteBuffer readWindowBuffer = myReadWindowBuffer;
+        myReadWindowBuffer = myDecompressedWindowBuffer;
+        myDecompressedWindowBuffer = readWindowBuffer;
+
         myReadWindowBuffer.position(0);
         myReadWindowBuffer.limit(myReadWindowBuffer.capacity());
-        return new int[] {realInstructionsLength, realDataLength};
+        myDecompressedInstructionsLength = realInstructionsLength;
+        myDecompressedDataLength = realDataLength;
+    }
+
+    private void decompressSection(int compressedLength, int length, int version) throws IOException {
+        final byte[] source = myReadWindowBuffer.array();
+        final int sourceOffset = myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position();
+        final byte[] target = myDecompressedWindowBuffer.array();
+        final int targetOffset = myDecompressedWindowBuffer.arrayOffset() + myDecompressedWindowBuffer.position();
+        if (compressedLength > myReadWindowBuffer.remaining()) {
+            throw new IOException("Compressed svndiff section exceeds the window");
+        }
+        if (compressedLength == length) {
+            System.arraycopy(source, sourceOffset, target, targetOffset, length);
+        } else {
+            SVNDeltaCodec.decompress(SVNDeltaCompression.fromVersion(version), source, sourceOffset, compressedLength, target, targetOffset, length);
+        }
+        myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
+        myDecompressedWindowBuffer.position(myDecompressedWindowBuffer.position() + length);
     }
 
     public void skipWindow(FSFile file) throws SVNException {
@@ -226,19 +265,20 @@ public class SVNDeltaCombiner {
         // and we're done.
         if (window.getSourceViewLength() == 0 || !window.hasCopyFromSourceInstructions()) {
             // apply window, make sure target not less then getTargetViewLength.
-            myTarget = clearBuffer(myTarget);
-            myTarget = ensureBufferSize(myTarget, window.getTargetViewLength());
-            window.apply(new byte[0], myTarget.array());
             // and then apply myWindow if any.
             ByteBuffer result = null;
             if (myWindow != null) {
-                myRealTarget = clearBuffer(myRealTarget);
-                myRealTarget = ensureBufferSize(myRealTarget, myWindow.getTargetViewLength());
+                myTarget = clearBuffer(myTarget);
+                myTarget = ensureBufferSize(myTarget, window.getTargetViewLength());
+                window.apply(EMPTY_SOURCE, myTarget.array());
+                myRealTarget = allocateTarget(myWindow.getTargetViewLength());
                 myWindow.apply(myTarget.array(), myRealTarget.array());
                 result = myRealTarget;
             } else {
-                result = myTarget;
+                result = allocateTarget(window.getTargetViewLength());
+                window.apply(EMPTY_SOURCE, result.array());
             }
+            myRealTarget = null;
             result.position(0);
             int tLength = myWindow != null ? myWindow.getTargetViewLength() : window.getTargetViewLength();
             result.limit(tLength);
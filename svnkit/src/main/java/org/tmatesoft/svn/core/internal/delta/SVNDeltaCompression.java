@@ -41,6 +41,21 @@ public enum SVNDeltaCompression {
         return header;
     }
 
+    /**
+     * Returns the compression of svndiff windows of the given format version
+     * (the last byte of their header).
+     *
+     * @since 1.10
+     */
+    public static SVNDeltaCompression fromVersion(int version) {
+        for (SVNDeltaCompression compression : values()) {
+            if (compression.header[3] == version) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported svndiff version " + version);
+    }
+
     /**
      * This method is only used to convert legacy 'compress' flag into a {@link SVNDeltaCompression} member.
      * It is supposed to be deleted as soon as all deprecated methods with 'compress' flag are removed from svnkit.
@@ -11,16 +11,10 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.zip.InflaterInputStream;
 
-import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4FastDecompressor;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
@@ -40,6 +34,7 @@ import org.tmatesoft.svn.util.SVNLogType;
 public class SVNDeltaReader {
     
     private ByteBuffer myBuffer;
+    private ByteBuffer myDecompressedBuffer;
     
     private int myHeaderBytes;
     private long myLastSourceOffset;
@@ -123,21 +118,22 @@ public class SVNDeltaReader {
             SVNDiffWindow window;
             int allDataLength = newDataLength + instructionsLength;
             if (myVersion == 1 || myVersion == 2) {
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
                 int bufferPosition = myBuffer.position();
+                if (myDecompressedBuffer != null) {
+                    myDecompressedBuffer.clear();
+                }
                 try {
-                    instructionsLength = deflate(instructionsLength, out, myVersion);
-                    newDataLength = deflate(newDataLength, out, myVersion);
+                    instructionsLength = decompress(instructionsLength, myVersion);
+                    newDataLength = decompress(newDataLength, myVersion);
                 } catch (IOException e) {
                     SVNDebugLog.getDefaultLog().logSevere(SVNLogType.DEFAULT, e);
                     SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e);
                     SVNErrorManager.error(errorMessage, SVNLogType.NETWORK);
                 }
-                byte[] bytes = out.toByteArray();
-                ByteBuffer decompressed = ByteBuffer.wrap(bytes);
-                decompressed.position(0);
+                // like myBuffer, decompressed data is only valid until the next window.
+                myDecompressedBuffer.flip();
                 window = new SVNDiffWindow(sourceOffset, sourceLength, targetLength, instructionsLength, newDataLength);
-                window.setData(decompressed);
+                window.setData(myDecompressedBuffer);
                 myBuffer.position(bufferPosition);
             } else {
                 window = new SVNDiffWindow(sourceOffset, sourceLength, targetLength, instructionsLength, newDataLength);
@@ -157,34 +153,33 @@ public class SVNDeltaReader {
         }
     }
     
-    private int deflate(int compressedLength, OutputStream out, int version) throws IOException {
+    private int decompress(int compressedLength, int version) throws IOException {
         int originalPosition = myBuffer.position();
         int uncompressedLength = readOffset();
+        if (uncompressedLength < 0) {
+            throw new IOException("Malformed svndiff section length");
+        }
+        compressedLength -= myBuffer.position() - originalPosition;
+        if (myDecompressedBuffer == null || myDecompressedBuffer.remaining() < uncompressedLength) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(4096, (myDecompressedBuffer == null ? 0 : myDecompressedBuffer.position()) + uncompressedLength) * 3 / 2);
+            if (myDecompressedBuffer != null) {
+                myDecompressedBuffer.flip();
+                newBuffer.put(myDecompressedBuffer);
+            }
+            myDecompressedBuffer = newBuffer;
+        }
+        byte[] compressed = myBuffer.array();
+        int offset = myBuffer.arrayOffset() + myBuffer.position();
+        byte[] target = myDecompressedBuffer.array();
+        int targetOffset = myDecompressedBuffer.arrayOffset() + myDecompressedBuffer.position();
         // subtract offset length from the total length.
-        if (uncompressedLength == (compressedLength - (myBuffer.position() - originalPosition))) {
-            int offset = myBuffer.arrayOffset() + myBuffer.position();
-            out.write(myBuffer.array(), offset, uncompressedLength);
+        if (uncompressedLength == compressedLength) {
+            System.arraycopy(compressed, offset, target, targetOffset, uncompressedLength);
         } else {
-            byte[] uncompressedData = new byte[uncompressedLength];
-            byte[] compressed = myBuffer.array();
-            int offset = myBuffer.arrayOffset() + myBuffer.position();
-            if (version == 1) {
-                final InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed, offset, compressedLength));
-                int read = 0;
-                while (read < uncompressedLength) {
-                    int r = in.read(uncompressedData, read, uncompressedLength - read);
-                    if (r < 0) {
-                        break;
-                    }
-                    read += r;
-                }
-            } else if (version == 2) {
-                final LZ4FastDecompressor dc = LZ4Factory.fastestInstance().fastDecompressor();
-                dc.decompress(compressed, offset, uncompressedData, 0, uncompressedLength);
-            }
-            out.write(uncompressedData);
+            SVNDeltaCodec.decompress(SVNDeltaCompression.fromVersion(version), compressed, offset, compressedLength, target, targetOffset, uncompressedLength);
         }
-        myBuffer.position(originalPosition + compressedLength);
+        myDecompressedBuffer.position(myDecompressedBuffer.position() + uncompressedLength);
+        myBuffer.position(myBuffer.position() + compressedLength);
         return uncompressedLength;
     }
 
@@ -0,0 +1,210 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.tmatesoft.svn.core.internal.util.SVNIntMap;
+
+/**
+ * X-Delta implementation that produces exactly the same instructions and
+ * new data as {@link SVNXDeltaAlgorithm}, but does not allocate objects
+ * per window or match: source blocks are kept in a table of primitives
+ * which is reused between windows, and matches are extended eight bytes
+ * at a time.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class SVNXDeltaFastAlgorithm extends SVNDeltaAlgorithm {
+
+    private static final int MATCH_BLOCK_SIZE = 64;
+    private static final int ADLER32_MASK = 0x0000FFFF;
+
+    /*
+     * Source blocks are indexed by the low bits of their checksums, and only the
+     * first block of each bucket is kept. This is how SVNIntMap is used by
+     * SVNXDeltaAlgorithm, and it determines which matches are found.
+     */
+    private static final int TABLE_SIZE = SVNIntMap.CACHE_SIZE;
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+
+    private final int[] myChecksums = new int[TABLE_SIZE];
+    private final int[] myPositions = new int[TABLE_SIZE];
+    /* Entries of older windows are ignored instead of being cleared. */
+    private final int[] myGenerations = new int[TABLE_SIZE];
+    private int myGeneration;
+
+    private byte[] mySource;
+    private ByteBuffer mySourceBuffer;
+    private byte[] myTarget;
+    private ByteBuffer myTargetBuffer;
+
+    public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
+        if (bLength < MATCH_BLOCK_SIZE) {
+            copyFromNewData(b, 0, bLength);
+            return;
+        }
+        createMatchesTable(a, aLength);
+        final ByteBuffer aBuffer = wrapSource(a);
+        final ByteBuffer bBuffer = wrapTarget(b);
+
+        int s1 = 1;
+        int s2 = 0;
+        int windowLength = MATCH_BLOCK_SIZE;
+        for (int i = 0; i < MATCH_BLOCK_SIZE; i++) {
+            s1 = (s1 + (b[i] & 0xFF)) & ADLER32_MASK;
+            s2 = (s2 + s1) & ADLER32_MASK;
+        }
+
+        int insertionPosition = 0;
+        int insertionLength = 0;
+        int lo = 0;
+
+        while (lo < bLength) {
+            int advance = 1;
+            int position = findBlock((s2 << 16) | s1);
+            int length = 0;
+            if (position >= 0) {
+                final int blockLength = Math.min(MATCH_BLOCK_SIZE, aLength - position);
+                if (lo + blockLength <= bLength) {
+                    length = matchLength(aBuffer, a, position, aLength, bBuffer, b, lo, bLength);
+                }
+                if (length < blockLength) {
+                    length = 0;
+                }
+            }
+            if (length == 0) {
+                if (insertionLength > 0) {
+                    insertionLength++;
+                } else {
+                    insertionPosition = lo;
+                    insertionLength = 1;
+                }
+            } else {
+                advance = length;
+                // extend backward into the pending insertion
+                int bPos = lo;
+                while (insertionLength > 0 && position > 0 && bPos > 0 && a[position - 1] == b[bPos - 1]) {
+                    insertionLength--;
+                    bPos--;
+                    position--;
+                    length++;
+                }
+                if (insertionLength > 0) {
+                    copyFromNewData(b, insertionPosition, insertionLength);
+                    insertionLength = 0;
+                }
+                copyFromSource(position, length);
+            }
+
+            if (advance < MATCH_BLOCK_SIZE) {
+                for (int next = lo; next < lo + advance; next++) {
+                    final int removed = b[next] & 0xFF;
+                    s1 = (s1 - removed) & ADLER32_MASK;
+                    s2 = (s2 - (windowLength * removed + 1)) & ADLER32_MASK;
+                    windowLength--;
+                    if (next + MATCH_BLOCK_SIZE < bLength) {
+                        s1 = (s1 + (b[next + MATCH_BLOCK_SIZE] & 0xFF)) & ADLER32_MASK;
+                        s2 = (s2 + s1) & ADLER32_MASK;
+                        windowLength++;
+                    }
+                }
+            } else {
+                // rolling over a whole block gives the same value as summing the next one
+                final int start = lo + advance;
+                final int end = Math.min(start + MATCH_BLOCK_SIZE, bLength);
+                s1 = 1;
+                s2 = 0;
+                for (int i = start; i < end; i++) {
+                    s1 = (s1 + (b[i] & 0xFF)) & ADLER32_MASK;
+                    s2 = (s2 + s1) & ADLER32_MASK;
+                }
+                windowLength = Math.max(end - start, 0);
+            }
+            lo += advance;
+        }
+        if (insertionLength > 0) {
+            copyFromNewData(b, insertionPosition, insertionLength);
+        }
+    }
+
+    private void createMatchesTable(byte[] data, int dataLength) {
+        if (++myGeneration == 0) {
+            Arrays.fill(myGenerations, 0);
+            myGeneration = 1;
+        }
+        for (int i = 0; i < dataLength; i += MATCH_BLOCK_SIZE) {
+            final int end = Math.min(i + MATCH_BLOCK_SIZE, dataLength);
+            int s1 = 1;
+            int s2 = 0;
+            for (int j = i; j < end; j++) {
+                s1 = (s1 + (data[j] & 0xFF)) & ADLER32_MASK;
+                s2 = (s2 + s1) & ADLER32_MASK;
+            }
+            final int checksum = (s2 << 16) | s1;
+            final int bucket = checksum & TABLE_MASK;
+            // the first block wins its bucket, even over blocks with other checksums
+            if (myGenerations[bucket] != myGeneration) {
+                myGenerations[bucket] = myGeneration;
+                myChecksums[bucket] = checksum;
+                myPositions[bucket] = i;
+            }
+        }
+    }
+
+    private int findBlock(int checksum) {
+        final int bucket = checksum & TABLE_MASK;
+        if (myGenerations[bucket] == myGeneration && myChecksums[bucket] == checksum) {
+            return myPositions[bucket];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the length of the common prefix of <code>a[aPos..aLength)</code>
+     * and <code>b[bPos..bLength)</code>.
+     */
+    private static int matchLength(ByteBuffer aBuffer, byte[] a, int aPos, int aLength, ByteBuffer bBuffer, byte[] b, int bPos, int bLength) {
+        final int max = Math.min(aLength - aPos, bLength - bPos);
+        int length = 0;
+        while (length + 8 <= max) {
+            final long diff = aBuffer.getLong(aPos + length) ^ bBuffer.getLong(bPos + length);
+            if (diff != 0) {
+                // buffers are big-endian, the first differing byte is the most significant one
+                return length + (Long.numberOfLeadingZeros(diff) >>> 3);
+            }
+            length += 8;
+        }
+        while (length < max && a[aPos + length] == b[bPos + length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private ByteBuffer wrapSource(byte[] a) {
+        if (mySource != a) {
+            mySource = a;
+            mySourceBuffer = ByteBuffer.wrap(a);
+        }
+        return mySourceBuffer;
+    }
+
+    private ByteBuffer wrapTarget(byte[] b) {
+        if (myTarget != b) {
+            myTarget = b;
+            myTargetBuffer = ByteBuffer.wrap(b);
+        }
+        return myTargetBuffer;
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.dav;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.io.dav.http.IHTTPConnectionFactory;
+import org.tmatesoft.svn.core.internal.io.dav.http.SpoolFile;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Fetches file contents of an update report received in skelta mode (that is
+ * with <code>send-all="false"</code>) over several keep-alive connections at
+ * once.
+ *
+ * <p/>
+ * The fetcher is itself an editor which wraps the editor being driven by the
+ * report. GET requests are issued ahead as soon as the report asks for a file,
+ * while the calls that follow are held back and passed to the wrapped editor
+ * strictly in the order they were made, each file contents being sent at the
+ * place of the request once its response is in. Responses are spooled to
+ * memory, or to temporary files when large.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class DAVFileFetcher implements ISVNEditor {
+
+    private static final int PENDING_FILES_PER_CONNECTION = 16;
+
+    private final IHTTPConnectionFactory myConnectionFactory;
+    private final DAVRepository myOwner;
+    private final ISVNEditor myEditor;
+    private final int myConnectionsCount;
+    private final LinkedList<EditorCall> myCalls;
+    private final BlockingQueue<DAVConnection> myIdleConnections;
+    private final List<DAVConnection> myConnections;
+    private final Set<SpoolFile> myFetchedFiles;
+    private final Object myLock;
+    private ExecutorService myWorkers;
+    private int myPendingFilesCount;
+    private volatile boolean myIsAborted;
+
+    public DAVFileFetcher(IHTTPConnectionFactory connectionFactory, DAVRepository owner, ISVNEditor editor, int connectionsCount) {
+        myConnectionFactory = connectionFactory;
+        myOwner = owner;
+        myEditor = editor;
+        myConnectionsCount = Math.max(connectionsCount, 1);
+        myCalls = new LinkedList<EditorCall>();
+        myIdleConnections = new LinkedBlockingQueue<DAVConnection>();
+        myConnections = new ArrayList<DAVConnection>();
+        myFetchedFiles = new HashSet<SpoolFile>();
+        myLock = new Object();
+    }
+
+    /**
+     * Requests contents of the file at <code>path</code> from
+     * <code>href</code>, as a delta against <code>deltaBaseVersionURL</code>
+     * when the latter is not <code>null</code>. The text delta is sent to the
+     * wrapped editor after all the calls made so far.
+     */
+    public void fetchFile(String path, String baseChecksum, String href, String deltaBaseVersionURL) throws SVNException {
+        if (myWorkers == null) {
+            myWorkers = new ThreadPoolExecutor(myConnectionsCount, myConnectionsCount, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        }
+        if (myIdleConnections.isEmpty() && myConnections.size() < myConnectionsCount) {
+            // connections are opened by the calling thread, as opening one updates the repository state.
+            DAVConnection connection = new DAVConnection(myConnectionFactory, myOwner);
+            myConnections.add(connection);
+            connection.open(myOwner);
+            myIdleConnections.add(connection);
+        }
+        FetchFileCall call = new FetchFileCall(path, baseChecksum, deltaBaseVersionURL);
+        call.myFuture = myWorkers.submit(new GetTask(href, deltaBaseVersionURL));
+        myPendingFilesCount++;
+        addCall(call);
+    }
+
+    /**
+     * Stops fetching and closes all idle connections. A connection which is
+     * still busy with a request is closed by its worker once the request
+     * completes, and contents it receives are deleted at once. Contents
+     * fetched, but not sent to the editor yet, are discarded.
+     */
+    public void dispose() {
+        synchronized (myLock) {
+            myIsAborted = true;
+            for (SpoolFile contents : myFetchedFiles) {
+                deleteContents(contents);
+            }
+            myFetchedFiles.clear();
+            for (DAVConnection connection : myIdleConnections) {
+                connection.close();
+            }
+            myIdleConnections.clear();
+        }
+        if (myWorkers != null) {
+            // interrupts workers waiting for a connection, which will not become idle any more
+            myWorkers.shutdownNow();
+            myWorkers = null;
+        }
+        myCalls.clear();
+        myConnections.clear();
+    }
+
+    public void targetRevision(final long revision) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.targetRevision(revision);
+            }
+        });
+    }
+
+    public void openRoot(final long revision) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.openRoot(revision);
+            }
+        });
+    }
+
+    public void deleteEntry(final String path, final long revision) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.deleteEntry(path, revision);
+            }
+        });
+    }
+
+    public void absentDir(final String path) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.absentDir(path);
+            }
+        });
+    }
+
+    public void absentFile(final String path) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.absentFile(path);
+            }
+        });
+    }
+
+    public void addDir(final String path, final String copyFromPath, final long copyFromRevision) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.addDir(path, copyFromPath, copyFromRevision);
+            }
+        });
+    }
+
+    public void openDir(final String path, final long revision) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.openDir(path, revision);
+            }
+        });
+    }
+
+    public void changeDirProperty(final String name, final SVNPropertyValue value) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.changeDirProperty(name, value);
+            }
+        });
+    }
+
+    public void closeDir() throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.closeDir();
+            }
+        });
+    }
+
+    public void addFile(final String path, final String copyFromPath, final long copyFromRevision) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.addFile(path, copyFromPath, copyFromRevision);
+            }
+        });
+    }
+
+    public void openFile(final String path, final long revision) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.openFile(path, revision);
+            }
+        });
+    }
+
+    public void changeFileProperty(final String path, final String propertyName, final SVNPropertyValue propertyValue) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.changeFileProperty(path, propertyName, propertyValue);
+            }
+        });
+    }
+
+    public void closeFile(final String path, final String textChecksum) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.closeFile(path, textChecksum);
+            }
+        });
+    }
+
+    public void applyTextDelta(final String path, final String baseChecksum) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.applyTextDelta(path, baseChecksum);
+            }
+        });
+    }
+
+    public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+        flush();
+        return myEditor.textDeltaChunk(path, diffWindow);
+    }
+
+    public void textDeltaEnd(final String path) throws SVNException {
+        addCall(new EditorCall() {
+            public void run() throws SVNException {
+                myEditor.textDeltaEnd(path);
+            }
+        });
+    }
+
+    public SVNCommitInfo closeEdit() throws SVNException {
+        flush();
+        return myEditor.closeEdit();
+    }
+
+    public void abortEdit() throws SVNException {
+        dispose();
+        myEditor.abortEdit();
+    }
+
+    private void addCall(EditorCall call) throws SVNException {
+        myCalls.add(call);
+        runCalls(false);
+        while (myPendingFilesCount > myConnectionsCount * PENDING_FILES_PER_CONNECTION) {
+            runNextCall();
+        }
+    }
+
+    private void flush() throws SVNException {
+        runCalls(true);
+    }
+
+    private void runCalls(boolean wait) throws SVNException {
+        while (!myCalls.isEmpty()) {
+            EditorCall call = myCalls.getFirst();
+            if (!wait && call instanceof FetchFileCall && !((FetchFileCall) call).myFuture.isDone()) {
+                return;
+            }
+            runNextCall();
+        }
+    }
+
+    private void runNextCall() throws SVNException {
+        EditorCall call = myCalls.removeFirst();
+        if (call instanceof FetchFileCall) {
+            myPendingFilesCount--;
+        }
+        call.run();
+    }
+
+    private DAVConnection takeConnection() throws SVNException {
+        try {
+            return myIdleConnections.take();
+        } catch (InterruptedException e) {
+            SVNErrorManager.cancel("Fetching of file contents was interrupted", SVNLogType.NETWORK);
+        }
+        return null;
+    }
+
+    private static void deleteContents(SpoolFile contents) {
+        try {
+            contents.delete();
+        } catch (SVNException e) {
+            //
+        }
+    }
+
+    private static SpoolFile waitFor(Future<SpoolFile> future) throws SVNException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            SVNErrorManager.cancel("Fetching of file contents was interrupted", SVNLogType.NETWORK);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SVNException) {
+                throw (SVNException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause != null ? cause.getMessage() : e.getMessage());
+            SVNErrorManager.error(err, cause, SVNLogType.NETWORK);
+        }
+        return null;
+    }
+
+    private static abstract class EditorCall {
+        public abstract void run() throws SVNException;
+    }
+
+    private class FetchFileCall extends EditorCall {
+
+        private final String myPath;
+        private final String myBaseChecksum;
+        private final boolean myIsDelta;
+        private Future<SpoolFile> myFuture;
+
+        public FetchFileCall(String path, String baseChecksum, String deltaBaseVersionURL) {
+            myPath = path;
+            myBaseChecksum = baseChecksum;
+            myIsDelta = deltaBaseVersionURL != null;
+        }
+
+        public void run() throws SVNException {
+            SpoolFile contents = waitFor(myFuture);
+            synchronized (myLock) {
+                myFetchedFiles.remove(contents);
+            }
+            InputStream is = null;
+            try {
+                try {
+                    myEditor.applyTextDelta(myPath, myBaseChecksum);
+                } catch (SVNCancelException ce) {
+                    throw ce;
+                } catch (SVNException svne) {
+                    SVNErrorManager.error(svne.getErrorMessage().wrap("Could not save file"), SVNLogType.NETWORK);
+                }
+                is = contents.openForReading();
+                if (myIsDelta) {
+                    SVNDeltaReader deltaReader = new SVNDeltaReader();
+                    byte[] buffer = new byte[SVNFileUtil.STREAM_CHUNK_SIZE];
+                    while (true) {
+                        int read = is.read(buffer);
+                        if (read <= 0) {
+                            break;
+                        }
+                        deltaReader.nextWindow(buffer, 0, read, myPath, myEditor);
+                    }
+                    deltaReader.reset(myPath, myEditor);
+                    myEditor.textDeltaEnd(myPath);
+                } else {
+                    // ends the text delta itself
+                    new SVNDeltaGenerator().sendDelta(myPath, is, myEditor, false);
+                }
+            } catch (IOException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getMessage());
+                SVNErrorManager.error(err, e, SVNLogType.NETWORK);
+            } finally {
+                SVNFileUtil.closeFile(is);
+                contents.delete();
+            }
+        }
+    }
+
+    private class GetTask implements Callable<SpoolFile> {
+
+        private final String myHref;
+        private final String myDeltaBaseVersionURL;
+
+        public GetTask(String href, String deltaBaseVersionURL) {
+            myHref = href;
+            myDeltaBaseVersionURL = deltaBaseVersionURL;
+        }
+
+        public SpoolFile call() throws Exception {
+            if (myIsAborted) {
+                SVNErrorManager.cancel("Fetching of file contents was aborted", SVNLogType.NETWORK);
+            }
+            SpoolFile contents = new SpoolFile(myOwner.getSpoolLocation());
+            DAVConnection connection = takeConnection();
+            boolean fetched = false;
+            try {
+                connection.doGet(myHref, myDeltaBaseVersionURL, contents.openForWriting());//this will close the stream
+                fetched = true;
+            } finally {
+                synchronized (myLock) {
+                    if (myIsAborted) {
+                        connection.close();
+                        fetched = false;
+                    } else {
+                        myIdleConnections.add(connection);
+                        if (fetched) {
+                            myFetchedFiles.add(contents);
+                        }
+                    }
+                }
+                if (!fetched) {
+                    deleteContents(contents);
+                }
+            }
+            if (!fetched) {
+                SVNErrorManager.cancel("Fetching of file contents was aborted", SVNLogType.NETWORK);
+            }
+            return contents;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-dav-fetch-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
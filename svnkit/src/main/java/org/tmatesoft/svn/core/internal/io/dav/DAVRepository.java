@@ -20,6 +20,8 @@ import org.tmatesoft.svn.core.internal.io.dav.http.IHTTPConnectionFactory;
 import org.tmatesoft.svn.core.internal.io.fs.FSErrors;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
 import org.tmatesoft.svn.core.internal.util.*;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNHostOptions;
 import org.tmatesoft.svn.core.internal.wc.SVNDepthFilterEditor;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNEventFactory;
@@ -850,13 +852,13 @@ public class DAVRepository extends SVNRepository {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_ILLEGAL_URL, "URL could not be NULL");
             SVNErrorManager.error(err, SVNLogType.NETWORK);
         }
-        runReport(getLocation(), revision, target, url.toString(), depth, true, false, true, false, true, true,
+        runReport(getLocation(), revision, target, url.toString(), depth, true, false, true, false, isHttpBulkUpdates(), true,
                 false, null, reporter, editor);
     }
 
     public void update(long revision, String target, SVNDepth depth, boolean sendCopyFromArgs,
             ISVNReporterBaton reporter, ISVNEditor editor) throws SVNException {
-        runReport(getLocation(), revision, target, null, depth, false, false, true, sendCopyFromArgs, true,
+        runReport(getLocation(), revision, target, null, depth, false, false, true, sendCopyFromArgs, isHttpBulkUpdates(),
                 false, false, null, reporter, editor);
     }
 
@@ -1349,7 +1351,7 @@ public class DAVRepository extends SVNRepository {
                     url.toString(), targetRevision, target, dstPath, depth, lockTokens, ignoreAncestry,
                     resourceWalk, fetchContents, sendCopyFromArgs, sendAll, reporter);
             handler = new DAVEditorHandler(myConnectionFactory, this, editor, lockTokens, fetchContents,
-                    target != null && !"".equals(target), workingCopyContentMediator);
+                    target != null && !"".equals(target), workingCopyContentMediator, sendAll ? 1 : getHttpMaxConnections());
 
             String reportTarget;
             try {
@@ -1372,6 +1374,22 @@ public class DAVRepository extends SVNRepository {
         }
     }
 
+    private int getHttpMaxConnections() {
+        ISVNAuthenticationManager authManager = getAuthenticationManager();
+        if (authManager instanceof DefaultSVNAuthenticationManager) {
+            return ((DefaultSVNAuthenticationManager) authManager).getHostOptionsProvider().getHostOptions(getLocation()).getHttpMaxConnections();
+        }
+        return DefaultSVNHostOptions.getDefaultHttpMaxConnections();
+    }
+
+    private boolean isHttpBulkUpdates() {
+        ISVNAuthenticationManager authManager = getAuthenticationManager();
+        if (authManager instanceof DefaultSVNAuthenticationManager) {
+            return ((DefaultSVNAuthenticationManager) authManager).getHostOptionsProvider().getHostOptions(getLocation()).isHttpBulkUpdates();
+        }
+        return true;
+    }
+
     private String getReportTarget(DAVConnection connection) throws SVNException {
         if (isHttpV2Enabled()) {
             return connection.getMeResource();
@@ -24,6 +24,7 @@ import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.io.dav.DAVBaselineInfo;
 import org.tmatesoft.svn.core.internal.io.dav.DAVConnection;
 import org.tmatesoft.svn.core.internal.io.dav.DAVElement;
+import org.tmatesoft.svn.core.internal.io.dav.DAVFileFetcher;
 import org.tmatesoft.svn.core.internal.io.dav.DAVProperties;
 import org.tmatesoft.svn.core.internal.io.dav.DAVRepository;
 import org.tmatesoft.svn.core.internal.io.dav.DAVUtil;
@@ -222,11 +223,26 @@ public class DAVEditorHandler extends BasicDAVDeltaHandler {
 
     private String mySha1Checksum;
     private ISVNWorkingCopyContentMediator myWorkingCopyContentMediator;
+    private DAVFileFetcher myFileFetcher;
 
     public DAVEditorHandler(IHTTPConnectionFactory connectionFactory, DAVRepository owner, ISVNEditor editor, 
             Map lockTokens, boolean fetchContent, boolean hasTarget, ISVNWorkingCopyContentMediator workingCopyContentMediator) {
+        this(connectionFactory, owner, editor, lockTokens, fetchContent, hasTarget, workingCopyContentMediator, 1);
+    }
+
+    /**
+     * When <code>fetchConnectionsCount</code> is greater than one, file contents
+     * requested by the report are fetched with as many concurrent connections.
+     */
+    public DAVEditorHandler(IHTTPConnectionFactory connectionFactory, DAVRepository owner, ISVNEditor editor, 
+            Map lockTokens, boolean fetchContent, boolean hasTarget, ISVNWorkingCopyContentMediator workingCopyContentMediator,
+            int fetchConnectionsCount) {
         myConnectionFactory = connectionFactory;
         myOwner = owner;
+        if (fetchContent && fetchConnectionsCount > 1) {
+            myFileFetcher = new DAVFileFetcher(connectionFactory, owner, editor, fetchConnectionsCount);
+            editor = myFileFetcher;
+        }
         myEditor = editor;
         myIsFetchContent = fetchContent;
         myHasTarget = hasTarget;
@@ -252,6 +268,9 @@ public class DAVEditorHandler extends BasicDAVDeltaHandler {
     }
 
     public void closeConnection() {
+        if (myFileFetcher != null) {
+            myFileFetcher.dispose();
+        }
         if (myConnection != null) {
             myConnection.close();
             myConnection = null;
@@ -592,24 +611,31 @@ public class DAVEditorHandler extends BasicDAVDeltaHandler {
     }
 
     protected void fetchFile(String baseChecksum) throws SVNException {
-        setDeltaProcessing(true);
+        InputStream inputStream = null;
         try {
-            myEditor.applyTextDelta(myPath, baseChecksum);
-        } catch (SVNCancelException ce) {
-            throw ce;
-        } catch (SVNException svne) {
-            SVNErrorManager.error(svne.getErrorMessage().wrap("Could not save file"), SVNLogType.NETWORK);
-        }
-        
-        if (myIsFetchContent) {
-            InputStream inputStream = null;
+            if (myIsFetchContent && myWorkingCopyContentMediator != null) {
+                inputStream = myWorkingCopyContentMediator.getContentAsStream(new SvnChecksum(SvnChecksum.Kind.sha1, this.mySha1Checksum));
+            }
+            if (myIsFetchContent && inputStream == null && myFileFetcher != null) {
+                SVNErrorManager.assertionFailure(myHref != null, "myHref is null", SVNLogType.NETWORK);
+                String deltaBaseVersionURL = myPath != null ? (String) myVersionURLs.get(myPath) : null;
+                myFileFetcher.fetchFile(myPath, baseChecksum, myHref, deltaBaseVersionURL);
+                return;
+            }
+
+            setDeltaProcessing(true);
             try {
+                myEditor.applyTextDelta(myPath, baseChecksum);
+            } catch (SVNCancelException ce) {
+                throw ce;
+            } catch (SVNException svne) {
+                SVNErrorManager.error(svne.getErrorMessage().wrap("Could not save file"), SVNLogType.NETWORK);
+            }
+
+            if (myIsFetchContent) {
                 SVNErrorManager.assertionFailure(myHref != null, "myHref is null", SVNLogType.NETWORK);
                 String deltaBaseVersionURL = myPath != null ? (String) myVersionURLs.get(myPath) : null;
                 DeltaOutputStreamWrapper osWrapper = new DeltaOutputStreamWrapper(deltaBaseVersionURL != null, myPath);
-                if (myWorkingCopyContentMediator != null) {
-                    inputStream = myWorkingCopyContentMediator.getContentAsStream(new SvnChecksum(SvnChecksum.Kind.sha1, this.mySha1Checksum));
-                }
                 if (inputStream != null) {
                     try {
                         FSRepositoryUtil.copy(inputStream, osWrapper, null);
@@ -620,9 +646,9 @@ public class DAVEditorHandler extends BasicDAVDeltaHandler {
                     DAVConnection connection = getConnection();
                     connection.doGet(myHref, deltaBaseVersionURL, osWrapper);//this will close osWrapper
                 }
-            } finally {
-                SVNFileUtil.closeFile(inputStream);
             }
+        } finally {
+            SVNFileUtil.closeFile(inputStream);
         }
         setDeltaProcessing(false);
     }
@@ -12,6 +12,7 @@
 package org.tmatesoft.svn.core.internal.io.dav.http;
 
 import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLSession;
@@ -138,6 +139,9 @@ public class HTTPConnection implements IHTTPConnection {
     private long myNextRequestTimeout;
     private int myRequestCount;
     private HTTPStatus myLastStatus;
+    private HTTPConnectionPool.Key myPoolKey;
+    private boolean myIsReusable;
+    private boolean myIsSSLContextShared;
 
     public HTTPConnection(SVNRepository repository, String charset, File spoolDirectory, boolean spoolAll) throws SVNException {
         myRepository = repository;
@@ -171,12 +175,24 @@ public class HTTPConnection implements IHTTPConnection {
             if (readTimeout < 0) {
                 readTimeout = DEFAULT_HTTP_TIMEOUT;
             }
+            final HTTPConnectionPool pool = HTTPConnectionPool.getInstance();
+            myPoolKey = new HTTPConnectionPool.Key(location, proxyManager, authManager);
+            myIsSSLContextShared = false;
+            final Socket pooledSocket = pool.isEnabled() ? pool.lease(myPoolKey) : null;
+            if (pooledSocket != null) {
+                pooledSocket.setSoTimeout(readTimeout);
+            }
             if (proxyManager != null && proxyManager.getProxyHost() != null) {
                 final ISVNDebugLog debugLog = myRepository.getDebugLog();
                 debugLog.logFine(SVNLogType.NETWORK, "Using proxy " + proxyManager.getProxyHost() + " (secured=" + myIsSecured + ")");
-                mySocket = SVNSocketFactory.createPlainSocket(proxyManager.getProxyHost(), proxyManager.getProxyPort(), connectTimeout, readTimeout, myRepository.getCanceller());
+                mySocket = pooledSocket != null ? pooledSocket :
+                        SVNSocketFactory.createPlainSocket(proxyManager.getProxyHost(), proxyManager.getProxyPort(), connectTimeout, readTimeout, myRepository.getCanceller());
                 myIsProxied = true;
-                if (myIsSecured) {
+                if (myIsSecured && pooledSocket != null) {
+                    // the tunnel is already established.
+                    myProxyAuthentication = null;
+                    return;
+                } else if (myIsSecured) {
                     int authAttempts = 0;
                     boolean credentialsUsed = false;
                     while(true) {
@@ -199,7 +215,7 @@ public class HTTPConnection implements IHTTPConnection {
                             myInputStream = null;
                             myOutputStream = null;
                             myProxyAuthentication = null;
-                            mySocket = SVNSocketFactory.createSSLSocket(keyManager != null ? new KeyManager[] { keyManager } : new KeyManager[0], trustManager, host, port, mySocket, readTimeout);
+                            mySocket = SVNSocketFactory.createSSLSocket(getSSLContext(keyManager, trustManager), host, port, mySocket, readTimeout);
                             proxyManager.acknowledgeProxyContext(true, null);
                             return;
                         } else if (status.getCode() == HttpURLConnection.HTTP_PROXY_AUTH) {
@@ -284,14 +300,28 @@ public class HTTPConnection implements IHTTPConnection {
             } else {
                 myIsProxied = false;
                 myProxyAuthentication = null;
-                mySocket = myIsSecured ?
-                        SVNSocketFactory.createSSLSocket(keyManager != null ? new KeyManager[] { keyManager } : new KeyManager[0], trustManager, host, port, connectTimeout, readTimeout, myRepository.getCanceller()) :
-                        SVNSocketFactory.createPlainSocket(host, port, connectTimeout, readTimeout, myRepository.getCanceller());
-	              myLogSSLParams = true;
+                if (pooledSocket != null) {
+                    mySocket = pooledSocket;
+                } else {
+                    mySocket = myIsSecured ?
+                            SVNSocketFactory.createSSLSocket(getSSLContext(keyManager, trustManager), host, port, connectTimeout, readTimeout, myRepository.getCanceller()) :
+                            SVNSocketFactory.createPlainSocket(host, port, connectTimeout, readTimeout, myRepository.getCanceller());
+                    myLogSSLParams = true;
+                }
             }
         }
     }
 
+    private SSLContext getSSLContext(HTTPSSLKeyManager keyManager, TrustManager trustManager) throws IOException {
+        SSLContext context = myPoolKey != null ? HTTPConnectionPool.getInstance().getSSLContext(myPoolKey, trustManager) : null;
+        myIsSSLContextShared = context != null;
+        if (context != null) {
+            return context;
+        }
+        KeyManager[] keyManagers = keyManager != null ? new KeyManager[] { keyManager } : new KeyManager[0];
+        return SVNSocketFactory.createSSLContext(keyManagers, trustManager);
+    }
+
     private char[] getProxyPasswordValue(ISVNProxyManager proxyManager) {
         if (proxyManager == null) {
             return null;
@@ -408,6 +438,14 @@ public class HTTPConnection implements IHTTPConnection {
     }
 
     public HTTPStatus request(String method, String path, HTTPHeader header, InputStream body, int ok1, int ok2, OutputStream dst, DefaultHandler handler, SVNErrorMessage context) throws SVNException {
+        myIsReusable = false;
+        HTTPStatus status = doRequest(method, path, header, body, ok1, ok2, dst, handler, context);
+        // the response was read completely, the socket may be used by another connection once this one is closed.
+        myIsReusable = mySocket != null;
+        return status;
+    }
+
+    private HTTPStatus doRequest(String method, String path, HTTPHeader header, InputStream body, int ok1, int ok2, OutputStream dst, DefaultHandler handler, SVNErrorMessage context) throws SVNException {
         myLastStatus = null;
         myRequestCount++;
 
@@ -535,6 +573,12 @@ public class HTTPConnection implements IHTTPConnection {
             } catch (SSLHandshakeException ssl) {
                 myRepository.getDebugLog().logFine(SVNLogType.NETWORK, ssl);
                 close();
+                if (myIsSSLContextShared) {
+                    // the shared context has no client certificates, handshake again with this connection's key manager.
+                    HTTPConnectionPool.getInstance().setClientCertificateRequested(myPoolKey, true);
+                    myIsSSLContextShared = false;
+                    continue;
+                }
 	            if (ssl.getCause() instanceof SVNSSLUtil.CertificateNotTrustedException
 	                    || ssl.getCause() instanceof SVNSSLUtil.CertificateDoesNotConformConstraints) {
 		            SVNErrorManager.cancel(ssl.getCause().getMessage(), SVNLogType.NETWORK);
@@ -591,6 +635,9 @@ public class HTTPConnection implements IHTTPConnection {
                 proxyManager.acknowledgeProxyContext(true, err);
             }
 
+            if (myIsSecured && myPoolKey != null) {
+                HTTPConnectionPool.getInstance().setClientCertificateRequested(myPoolKey, keyManager != null && keyManager.isInitialized());
+            }
             if (keyManager != null) {
 	            myKeyManager = keyManager;
 	            myTrustManager = trustManager;
@@ -836,6 +883,10 @@ public class HTTPConnection implements IHTTPConnection {
         return buffer.toString();
     }
 
+    private static boolean isConnectionBound(HTTPAuthentication auth) {
+        return auth instanceof HTTPNTLMAuthentication || auth instanceof HTTPNegotiateAuthentication;
+    }
+
     private boolean isClearCredentialsOnClose(HTTPAuthentication auth) {
         return !(auth instanceof HTTPBasicAuthentication || auth instanceof HTTPDigestAuthentication || auth instanceof HTTPNegotiateAuthentication);
     }
@@ -1000,6 +1051,23 @@ public class HTTPConnection implements IHTTPConnection {
         } else {
             clearLastValidAuth();
         }
+        if (mySocket != null && myIsReusable && myPoolKey != null &&
+                !isConnectionBound(myChallengeCredentials) && !isConnectionBound(myProxyAuthentication)) {
+            myIsReusable = false;
+            if (myOutputStream != null) {
+                try {
+                    myOutputStream.flush();
+                } catch (IOException e) {}
+            }
+            if (HTTPConnectionPool.getInstance().release(myPoolKey, mySocket, myNextRequestTimeout)) {
+                mySocket = null;
+                myOutputStream = null;
+                myInputStream = null;
+                myNextRequestTimeout = Long.MAX_VALUE;
+                return;
+            }
+        }
+        myIsReusable = false;
         if (mySocket != null) {
             if (myInputStream != null) {
                 try {
@@ -0,0 +1,388 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.dav.http;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509KeyManager;
+
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.auth.ISVNProxyManager;
+import org.tmatesoft.svn.core.internal.util.SVNSocketFactory;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Keeps sockets of closed {@link HTTPConnection}s alive, so that connections
+ * opened later to the same server, including those of other repository
+ * instances, do not have to connect and handshake again.
+ *
+ * <p/>
+ * Idle sockets are kept per {@link Key}: the server, the proxy and the
+ * authentication manager the socket was opened with. A socket is leased by
+ * one connection at a time and returned to the pool when that connection is
+ * closed after a complete response. Idle sockets are dropped once they are
+ * idle longer than allowed by the server or by
+ * <code>svnkit.http.pool.idleTimeout</code> (milliseconds), at most
+ * <code>svnkit.http.pool.maxPerHost</code> idle sockets are kept per key, and
+ * pooling is turned off altogether with <code>svnkit.http.pool=false</code>.
+ *
+ * <p/>
+ * SSL contexts are shared per key as well, which lets new secure sockets
+ * resume an earlier TLS session instead of doing a full handshake. A shared
+ * context never holds the key manager of a connection, as those keep the
+ * state of client certificate prompts: it is created without client
+ * certificates, and only once a server handled a request without asking for
+ * one. When a server asks for a client certificate, its key is not shared
+ * any more and every connection handshakes with its own key manager.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class HTTPConnectionPool {
+
+    private static final int MAX_SSL_CONTEXTS = 64;
+
+    private static final HTTPConnectionPool ourInstance = new HTTPConnectionPool(
+            Boolean.valueOf(System.getProperty("svnkit.http.pool", "true")).booleanValue(),
+            getIntegerProperty("svnkit.http.pool.maxPerHost", 8),
+            getIntegerProperty("svnkit.http.pool.idleTimeout", 30000));
+
+    public static HTTPConnectionPool getInstance() {
+        return ourInstance;
+    }
+
+    private final Map<Key, LinkedList<IdleSocket>> myIdleSockets;
+    private final Map<Key, SharedSSLContext> mySSLContexts;
+    private boolean myIsEnabled;
+    private int myMaxIdlePerHost;
+    private long myIdleTimeout;
+
+    public HTTPConnectionPool(boolean enabled, int maxIdlePerHost, long idleTimeout) {
+        myIsEnabled = enabled;
+        myMaxIdlePerHost = maxIdlePerHost;
+        myIdleTimeout = idleTimeout;
+        myIdleSockets = new HashMap<Key, LinkedList<IdleSocket>>();
+        mySSLContexts = new LinkedHashMap<Key, SharedSSLContext>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key, SharedSSLContext> eldest) {
+                return size() > MAX_SSL_CONTEXTS;
+            }
+        };
+    }
+
+    public synchronized boolean isEnabled() {
+        return myIsEnabled;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        myIsEnabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    public synchronized void setMaxIdlePerHost(int maxIdlePerHost) {
+        myMaxIdlePerHost = maxIdlePerHost;
+    }
+
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        myIdleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns an idle socket opened for <code>key</code> which is still
+     * usable, or <code>null</code>. The socket is removed from the pool.
+     */
+    public Socket lease(Key key) {
+        while (true) {
+            IdleSocket idleSocket;
+            synchronized (this) {
+                evictExpired(System.currentTimeMillis());
+                LinkedList<IdleSocket> sockets = myIdleSockets.get(key);
+                if (sockets == null) {
+                    return null;
+                }
+                idleSocket = sockets.removeLast();
+                if (sockets.isEmpty()) {
+                    myIdleSockets.remove(key);
+                }
+            }
+            try {
+                if (!SVNSocketFactory.isSocketStale(idleSocket.mySocket)) {
+                    SVNDebugLog.getDefaultLog().logFine(SVNLogType.NETWORK, "Reusing pooled connection to " + key);
+                    return idleSocket.mySocket;
+                }
+            } catch (IOException e) {
+                //
+            }
+            closeSocket(idleSocket.mySocket);
+        }
+    }
+
+    /**
+     * Puts <code>socket</code> back to the pool, to be used until
+     * <code>expirationTime</code> at the latest. Returns <code>false</code>
+     * when the socket is not accepted, in which case it should be closed by
+     * the caller.
+     */
+    public synchronized boolean release(Key key, Socket socket, long expirationTime) {
+        if (!myIsEnabled || socket == null || socket.isClosed()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        evictExpired(now);
+        if (expirationTime <= now) {
+            return false;
+        }
+        LinkedList<IdleSocket> sockets = myIdleSockets.get(key);
+        if (sockets == null) {
+            sockets = new LinkedList<IdleSocket>();
+            myIdleSockets.put(key, sockets);
+        }
+        if (sockets.size() >= myMaxIdlePerHost) {
+            if (sockets.isEmpty()) {
+                myIdleSockets.remove(key);
+            }
+            return false;
+        }
+        long idleTimeout = myIdleTimeout > 0 ? now + myIdleTimeout : Long.MAX_VALUE;
+        sockets.addLast(new IdleSocket(socket, Math.min(expirationTime, idleTimeout)));
+        return true;
+    }
+
+    /**
+     * Returns an SSL context shared by secure sockets opened for
+     * <code>key</code>, or <code>null</code> when the connection should use
+     * one of its own: before a request to the server succeeded, or when the
+     * server asks for client certificates. The context is created on first
+     * use with <code>trustManager</code> and no client certificates.
+     */
+    public SSLContext getSSLContext(Key key, TrustManager trustManager) throws IOException {
+        SharedSSLContext sharedContext;
+        synchronized (this) {
+            sharedContext = myIsEnabled ? mySSLContexts.get(key) : null;
+            if (sharedContext == null || sharedContext.myIsClientCertificateRequested) {
+                return null;
+            }
+            if (sharedContext.myContext != null) {
+                return sharedContext.myContext;
+            }
+        }
+        SSLContext context = SVNSocketFactory.createSSLContext(new KeyManager[] {new ClientCertificateDetector(key)}, trustManager);
+        synchronized (this) {
+            if (sharedContext.myIsClientCertificateRequested) {
+                return null;
+            }
+            if (sharedContext.myContext == null) {
+                sharedContext.myContext = context;
+            }
+            return sharedContext.myContext;
+        }
+    }
+
+    /**
+     * Tells whether the server of <code>key</code> asked for a client
+     * certificate during a request that succeeded. Once it did, secure
+     * sockets for <code>key</code> are never opened with a shared context.
+     */
+    public synchronized void setClientCertificateRequested(Key key, boolean requested) {
+        if (!myIsEnabled) {
+            return;
+        }
+        SharedSSLContext sharedContext = mySSLContexts.get(key);
+        if (sharedContext == null) {
+            sharedContext = new SharedSSLContext();
+            mySSLContexts.put(key, sharedContext);
+        }
+        if (requested) {
+            sharedContext.myIsClientCertificateRequested = true;
+            sharedContext.myContext = null;
+        }
+    }
+
+    /**
+     * Closes all idle sockets and forgets all SSL contexts.
+     */
+    public synchronized void clear() {
+        for (LinkedList<IdleSocket> sockets : myIdleSockets.values()) {
+            for (IdleSocket idleSocket : sockets) {
+                closeSocket(idleSocket.mySocket);
+            }
+        }
+        myIdleSockets.clear();
+        mySSLContexts.clear();
+    }
+
+    public synchronized int getIdleCount(Key key) {
+        LinkedList<IdleSocket> sockets = myIdleSockets.get(key);
+        return sockets == null ? 0 : sockets.size();
+    }
+
+    private void evictExpired(long now) {
+        for (Iterator<LinkedList<IdleSocket>> lists = myIdleSockets.values().iterator(); lists.hasNext();) {
+            LinkedList<IdleSocket> sockets = lists.next();
+            for (Iterator<IdleSocket> idleSockets = sockets.iterator(); idleSockets.hasNext();) {
+                IdleSocket idleSocket = idleSockets.next();
+                if (idleSocket.myExpirationTime <= now) {
+                    idleSockets.remove();
+                    closeSocket(idleSocket.mySocket);
+                }
+            }
+            if (sockets.isEmpty()) {
+                lists.remove();
+            }
+        }
+    }
+
+    private static void closeSocket(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //
+        }
+    }
+
+    private static int getIntegerProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Identifies sockets which may be used interchangeably: those opened to
+     * the same server, through the same proxy, on behalf of the same
+     * authentication manager. The latter makes sure a socket, which server
+     * certificate and client certificate were accepted by one authentication
+     * manager, is never handed to another one.
+     */
+    public static class Key {
+
+        private final String myProtocol;
+        private final String myHost;
+        private final int myPort;
+        private final String myProxy;
+        private final ISVNAuthenticationManager myAuthenticationManager;
+
+        public Key(SVNURL location, ISVNProxyManager proxyManager, ISVNAuthenticationManager authenticationManager) {
+            myProtocol = location.getProtocol();
+            myHost = location.getHost();
+            myPort = location.getPort();
+            if (proxyManager != null && proxyManager.getProxyHost() != null) {
+                myProxy = proxyManager.getProxyUserName() + "@" + proxyManager.getProxyHost() + ":" + proxyManager.getProxyPort();
+            } else {
+                myProxy = null;
+            }
+            myAuthenticationManager = authenticationManager;
+        }
+
+        public boolean isProxied() {
+            return myProxy != null;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || o.getClass() != getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return myPort == key.myPort && myProtocol.equals(key.myProtocol) && myHost.equals(key.myHost) &&
+                    (myProxy == null ? key.myProxy == null : myProxy.equals(key.myProxy)) &&
+                    myAuthenticationManager == key.myAuthenticationManager;
+        }
+
+        public int hashCode() {
+            int result = myProtocol.hashCode();
+            result = 31 * result + myHost.hashCode();
+            result = 31 * result + myPort;
+            result = 31 * result + (myProxy != null ? myProxy.hashCode() : 0);
+            result = 31 * result + System.identityHashCode(myAuthenticationManager);
+            return result;
+        }
+
+        public String toString() {
+            return myProtocol + "://" + myHost + ":" + myPort + (myProxy != null ? " via " + myProxy : "");
+        }
+    }
+
+    private static class SharedSSLContext {
+
+        private SSLContext myContext;
+        private boolean myIsClientCertificateRequested;
+    }
+
+    /**
+     * Key manager of shared contexts. It has no certificates to offer, and
+     * when a server asks for one it makes sure the next connections use
+     * their own key managers.
+     */
+    private class ClientCertificateDetector implements X509KeyManager {
+
+        private final Key myKey;
+
+        public ClientCertificateDetector(Key key) {
+            myKey = key;
+        }
+
+        public String chooseClientAlias(String[] keyTypes, Principal[] issuers, Socket socket) {
+            setClientCertificateRequested(myKey, true);
+            return null;
+        }
+
+        public String[] getClientAliases(String keyType, Principal[] issuers) {
+            return null;
+        }
+
+        public String[] getServerAliases(String keyType, Principal[] issuers) {
+            return null;
+        }
+
+        public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+            return null;
+        }
+
+        public X509Certificate[] getCertificateChain(String alias) {
+            return null;
+        }
+
+        public PrivateKey getPrivateKey(String alias) {
+            return null;
+        }
+    }
+
+    private static class IdleSocket {
+
+        private final Socket mySocket;
+        private final long myExpirationTime;
+
+        public IdleSocket(Socket socket, long expirationTime) {
+            mySocket = socket;
+            myExpirationTime = expirationTime;
+        }
+    }
+}
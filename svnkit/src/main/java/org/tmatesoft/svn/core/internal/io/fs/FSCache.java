@@ -0,0 +1,174 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe LRU cache bounded by the total weight of its entries.
+ * Weights are estimates supplied by the caller, normally in bytes.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class FSCache<K, V> {
+
+    private final String myName;
+    private final LinkedHashMap<K, Entry<V>> myEntries;
+    private long myMaxWeight;
+    private long myWeight;
+    private long myHitsCount;
+    private long myHitsWeight;
+    private long myMissesCount;
+    private long myEvictionsCount;
+
+    public FSCache(String name, long maxWeight) {
+        myName = name;
+        myMaxWeight = maxWeight;
+        myEntries = new LinkedHashMap<K, Entry<V>>(64, 0.75f, true);
+    }
+
+    public String getName() {
+        return myName;
+    }
+
+    public synchronized V get(K key) {
+        final Entry<V> entry = myEntries.get(key);
+        if (entry == null) {
+            myMissesCount++;
+            return null;
+        }
+        myHitsCount++;
+        myHitsWeight += entry.myWeight;
+        return entry.myValue;
+    }
+
+    public synchronized void put(K key, V value, long weight) {
+        if (weight > myMaxWeight) {
+            remove(key);
+            return;
+        }
+        final Entry<V> previous = myEntries.put(key, new Entry<V>(value, weight));
+        if (previous != null) {
+            myWeight -= previous.myWeight;
+        }
+        myWeight += weight;
+        evict();
+    }
+
+    public synchronized V remove(K key) {
+        final Entry<V> entry = myEntries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        myWeight -= entry.myWeight;
+        return entry.myValue;
+    }
+
+    public synchronized void clear() {
+        myEntries.clear();
+        myWeight = 0;
+    }
+
+    public synchronized void setMaxWeight(long maxWeight) {
+        myMaxWeight = maxWeight;
+        evict();
+    }
+
+    public synchronized long getMaxWeight() {
+        return myMaxWeight;
+    }
+
+    public synchronized long getWeight() {
+        return myWeight;
+    }
+
+    public synchronized int size() {
+        return myEntries.size();
+    }
+
+    public synchronized long getHitsCount() {
+        return myHitsCount;
+    }
+
+    /**
+     * Total weight of the entries returned by {@link #get(Object)}, that is
+     * the amount of data (normally in bytes) that was not read again.
+     */
+    public synchronized long getHitsWeight() {
+        return myHitsWeight;
+    }
+
+    public synchronized double getHitRate() {
+        final long lookups = myHitsCount + myMissesCount;
+        return lookups == 0 ? 0 : (double) myHitsCount / lookups;
+    }
+
+    public synchronized long getMissesCount() {
+        return myMissesCount;
+    }
+
+    public synchronized long getEvictionsCount() {
+        return myEvictionsCount;
+    }
+
+    public synchronized void resetStatistics() {
+        myHitsCount = 0;
+        myHitsWeight = 0;
+        myMissesCount = 0;
+        myEvictionsCount = 0;
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        synchronized (this) {
+            buffer.append("{[");
+            buffer.append(myName);
+            buffer.append("][entries:");
+            buffer.append(myEntries.size());
+            buffer.append("][weight:");
+            buffer.append(myWeight);
+            buffer.append("/");
+            buffer.append(myMaxWeight);
+            buffer.append("][hits:");
+            buffer.append(myHitsCount);
+            buffer.append("][misses:");
+            buffer.append(myMissesCount);
+            buffer.append("][saved:");
+            buffer.append(myHitsWeight);
+            buffer.append("]}");
+        }
+        return buffer.toString();
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<K, Entry<V>>> entries = myEntries.entrySet().iterator(); myWeight > myMaxWeight && entries.hasNext();) {
+            final Entry<V> eldest = entries.next().getValue();
+            entries.remove();
+            myWeight -= eldest.myWeight;
+            myEvictionsCount++;
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V myValue;
+        private final long myWeight;
+
+        private Entry(V value, long weight) {
+            myValue = value;
+            myWeight = weight;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+/**
+ * Key of an immutable item stored in a repository: repository instance,
+ * revision (or shard), offset (or item index) within it and, optionally,
+ * index of a part of that item.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public final class FSCacheKey {
+
+    private final String myRepositoryId;
+    private final long myRevision;
+    private final long myOffset;
+    private final int myIndex;
+
+    public FSCacheKey(String repositoryId, long revision, long offset) {
+        this(repositoryId, revision, offset, 0);
+    }
+
+    public FSCacheKey(String repositoryId, long revision, long offset, int index) {
+        myRepositoryId = repositoryId;
+        myRevision = revision;
+        myOffset = offset;
+        myIndex = index;
+    }
+
+    public String getRepositoryId() {
+        return myRepositoryId;
+    }
+
+    public long getRevision() {
+        return myRevision;
+    }
+
+    public long getOffset() {
+        return myOffset;
+    }
+
+    public int getIndex() {
+        return myIndex;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != FSCacheKey.class) {
+            return false;
+        }
+        final FSCacheKey other = (FSCacheKey) obj;
+        return myRevision == other.myRevision && myOffset == other.myOffset && myIndex == other.myIndex && myRepositoryId.equals(other.myRepositoryId);
+    }
+
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + myRepositoryId.hashCode();
+        result = prime * result + (int) (myRevision ^ (myRevision >>> 32));
+        result = prime * result + (int) (myOffset ^ (myOffset >>> 32));
+        result = prime * result + myIndex;
+        return result;
+    }
+
+    public String toString() {
+        return myRepositoryId + "@" + myRevision + ":" + myOffset + (myIndex != 0 ? "#" + myIndex : "");
+    }
+}
@@ -17,6 +17,7 @@ import org.tmatesoft.svn.core.internal.util.SVNHashSet;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNWCProperties;
 import org.tmatesoft.svn.core.io.ISVNLockHandler;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.util.SVNDebugLog;
@@ -266,7 +267,7 @@ public class FSCommitter {
         }
     }
 
-    public long commitTxn(boolean runPreCommitHook, boolean runPostCommitHook, SVNErrorMessage[] postCommitHookError, StringBuffer conflictPath) throws SVNException {
+    public long commitTxn(boolean runPreCommitHook, boolean runPostCommitHook, SVNErrorMessage[] postCommitHookError, final StringBuffer conflictPath) throws SVNException {
         if (myFSFS.isHooksEnabled() && runPreCommitHook) {
             FSHooks.runPreCommitHook(myFSFS.getRepositoryRoot(), myTxn.getTxnId());
         }
@@ -275,8 +276,18 @@ public class FSCommitter {
         for (String propertyName : new HashSet<String>(txnProperties.nameSet())) {
             if (propertyName.startsWith(SVNRevisionProperty.SVN_TXN_PREFIX)) {
                 myFSFS.setTransactionProperty(myTxn.getTxnId(), propertyName, null);
+                txnProperties.remove(propertyName);
             }
         }
+        /*
+         * Revision properties are prepared before the repository write lock is taken
+         * and the transaction is purged after it is released. The final revision file,
+         * the changed paths and the revision properties file are written under the lock:
+         * node ids, offsets and file names all carry the new revision number.
+         */
+        final SVNProperties revisionProperties = new SVNProperties(txnProperties);
+        revisionProperties.remove(SVNProperty.TXN_CHECK_OUT_OF_DATENESS);
+        revisionProperties.remove(SVNProperty.TXN_CHECK_LOCKS);
 
         long newRevision = SVNRepository.INVALID_REVISION;
 
@@ -289,26 +300,54 @@ public class FSCommitter {
             mergeChanges(myFSFS, getTxnRoot(), youngishRootNode, conflictPath);
             myTxn.setBaseRevision(youngishRev);
 
-            FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(myFSFS);
             final Collection<FSRepresentation> representations = myFSFS.getRepositoryCacheManager() != null ?
                     new ArrayList<FSRepresentation>() : null;
-            synchronized (writeLock) {
-                try {
-                    writeLock.lock();
-                    newRevision = commit(representations);
-                } catch (SVNException svne) {
-                    if (svne.getErrorMessage().getErrorCode() == SVNErrorCode.FS_TXN_OUT_OF_DATE) {
-                        long youngestRev = myFSFS.getYoungestRevision();
-                        if (youngishRev == youngestRev) {
-                            throw svne;
+            try {
+                if (FSGroupCommit.isEnabled() && FSGroupCommit.isSupported(myFSFS)) {
+                    try {
+                        newRevision = FSGroupCommit.getInstance(myFSFS).commit(myFSFS, new FSGroupCommit.ICommitTask() {
+                            public long commit(long youngestRevision, Collection<File> filesToSync) throws SVNException {
+                                if (myTxn.getBaseRevision() != youngestRevision) {
+                                    // youngestRevision may be written by the previous commit of the group and is
+                                    // not published yet, let this instance read it to rebase the transaction onto it.
+                                    myFSFS.setYoungestRevisionCache(youngestRevision);
+                                    FSRevisionNode youngestRootNode = myFSFS.createRevisionRoot(youngestRevision).getRevisionNode("/");
+                                    mergeChanges(myFSFS, getTxnRoot(), youngestRootNode, conflictPath);
+                                    myTxn.setBaseRevision(youngestRevision);
+                                }
+                                return FSCommitter.this.commit(youngestRevision, revisionProperties, representations, filesToSync);
+                            }
+                        });
+                    } catch (SVNException svne) {
+                        try {
+                            myFSFS.getYoungestRevision();
+                        } catch (SVNException e) {
+                            //
+                        }
+                        throw svne;
+                    }
+                    myFSFS.setYoungestRevisionCache(newRevision);
+                } else {
+                    FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(myFSFS);
+                    synchronized (writeLock) {
+                        try {
+                            writeLock.lock();
+                            newRevision = commit(myFSFS.getYoungestRevision(), revisionProperties, representations, null);
+                        } finally {
+                            writeLock.unlock();
+                            FSWriteLock.release(writeLock);
                         }
-                        continue;
                     }
-                    throw svne;
-                } finally {
-                    writeLock.unlock();
-                    FSWriteLock.release(writeLock);
                 }
+            } catch (SVNException svne) {
+                if (svne.getErrorMessage().getErrorCode() == SVNErrorCode.FS_TXN_OUT_OF_DATE) {
+                    long youngestRev = myFSFS.getYoungestRevision();
+                    if (youngishRev == youngestRev) {
+                        throw svne;
+                    }
+                    continue;
+                }
+                throw svne;
             }
             // write representations here.
             if (representations != null && !representations.isEmpty()) {
@@ -327,8 +366,18 @@ public class FSCommitter {
                     }
                 }
             }
+            try {
+                FSLogIndex logIndex = myFSFS.getLogIndex();
+                if (logIndex != null) {
+                    logIndex.update(myFSFS, newRevision, null, null);
+                }
+            } catch (SVNException e) {
+                // the index catches up on the next commit
+                SVNDebugLog.getDefaultLog().logFiner(SVNLogType.FSFS, e);
+            }
             break;
         }
+        myFSFS.purgeTxn(myTxn.getTxnId());
 
         if (myFSFS.isHooksEnabled() && runPostCommitHook) {
             try {
@@ -465,9 +514,13 @@ public class FSCommitter {
         return id;
     }
 
-    private long commit(Collection<FSRepresentation> representations) throws SVNException {
-        long oldRev = myFSFS.getYoungestRevision();
-
+    /**
+     * Writes the revision that follows <code>oldRev</code>. When <code>filesToSync</code> is not
+     * <code>null</code> the revision is committed as a part of a group: the files written are added
+     * to it and <code>current</code> is left to {@link FSGroupCommit}.
+     */
+    private long commit(long oldRev, SVNProperties revisionProperties, Collection<FSRepresentation> representations,
+            Collection<File> filesToSync) throws SVNException {
         if (myTxn.getBaseRevision() != oldRev) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_TXN_OUT_OF_DATE, "Transaction out of date");
             SVNErrorManager.error(err, SVNLogType.FSFS);
@@ -500,27 +553,34 @@ public class FSCommitter {
                 commit(startNodeId, startCopyId, newRevision, protoFileOS, newRootId, txnRoot, revisionPrototypeFile, offset, representations);
                 File dstRevFile = myFSFS.getNewRevisionFile(newRevision);
                 SVNFileUtil.rename(revisionPrototypeFile, dstRevFile);
+                if (filesToSync != null) {
+                    filesToSync.add(dstRevFile);
+                }
             } finally {
                txnWriteLock.unlock();
                FSWriteLock.release(txnWriteLock);
             }
         }
 
-        String commitTime = SVNDate.formatDate(new Date(System.currentTimeMillis()));
-        SVNProperties presetRevisionProperties = myFSFS.getTransactionProperties(myTxn.getTxnId());
-        if (presetRevisionProperties == null || !presetRevisionProperties.containsName(SVNRevisionProperty.DATE)) {
-            myFSFS.setTransactionProperty(myTxn.getTxnId(), SVNRevisionProperty.DATE, SVNPropertyValue.create(commitTime));
+        if (!revisionProperties.containsName(SVNRevisionProperty.DATE)) {
+            String commitTime = SVNDate.formatDate(new Date(System.currentTimeMillis()));
+            revisionProperties.put(SVNRevisionProperty.DATE, commitTime);
         }
 
-        File txnPropsFile = myFSFS.getTransactionPropertiesFile(myTxn.getTxnId());
-
         if (myFSFS.getDBFormat() < FSFS.MIN_PACKED_REVPROP_FORMAT || newRevision >= myFSFS.getMinUnpackedRevProp()){
             File dstRevPropsFile = myFSFS.getNewRevisionPropertiesFile(newRevision);
-            SVNFileUtil.rename(txnPropsFile, dstRevPropsFile);
+            File tmpRevPropsFile = SVNFileUtil.createUniqueFile(myFSFS.getTransactionDir(myTxn.getTxnId()), "props", ".tmp", false);
+            SVNWCProperties.setProperties(revisionProperties, dstRevPropsFile, tmpRevPropsFile, SVNWCProperties.SVN_HASH_TERMINATOR);
+            if (filesToSync != null) {
+                filesToSync.add(dstRevPropsFile);
+            }
         } else {
             // TODO pack property?
         }
 
+        if (filesToSync != null) {
+            return newRevision;
+        }
         try {
             txnRoot.writeFinalCurrentFile(newRevision, startNodeId, startCopyId);
         } catch (IOException ioe) {
@@ -528,7 +588,6 @@ public class FSCommitter {
             SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
         }
         myFSFS.setYoungestRevisionCache(newRevision);
-        myFSFS.purgeTxn(myTxn.getTxnId());
         return newRevision;
     }
 
@@ -555,16 +614,6 @@ public class FSCommitter {
         } finally {
             SVNFileUtil.closeFile(protoFileOS);
         }
-
-        SVNProperties txnProps = myFSFS.getTransactionProperties(myTxn.getTxnId());
-        if (txnProps != null && !txnProps.isEmpty()) {
-            if (txnProps.getStringValue(SVNProperty.TXN_CHECK_OUT_OF_DATENESS) != null) {
-                myFSFS.setTransactionProperty(myTxn.getTxnId(), SVNProperty.TXN_CHECK_OUT_OF_DATENESS, null);
-            }
-            if (txnProps.getStringValue(SVNProperty.TXN_CHECK_LOCKS) != null) {
-                myFSFS.setTransactionProperty(myTxn.getTxnId(), SVNProperty.TXN_CHECK_LOCKS, null);
-            }
-        }
     }
 
     public static void mergeChanges(FSFS owner, FSTransactionRoot txnRoot, FSRevisionNode sourceNode, StringBuffer conflictPath) throws SVNException {
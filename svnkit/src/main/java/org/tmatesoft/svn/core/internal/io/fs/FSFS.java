@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.zip.Deflater;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -33,6 +34,7 @@ import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCodec;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaCompression;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
@@ -78,6 +80,7 @@ public class FSFS {
     public static final String TXN_CURRENT_LOCK_FILE = "txn-current-lock";
     public static final String REVISION_PROPERTIES_DIR = "revprops";
     public static final String WRITE_LOCK_FILE = "write-lock";
+    public static final String PACK_LOCK_FILE = "pack-lock";
     public static final String LOCKS_DIR = "locks";
     public static final String DAV_DIR = "dav";
     public static final String TRANSACTIONS_DIR = "transactions";
@@ -86,6 +89,7 @@ public class FSFS {
     public static final String MANIFEST_FILE = "manifest";
 
     public static final String REP_CACHE_DB = "rep-cache.db";
+    public static final String LOG_INDEX_DB = "log-index.db";
     public static final String PACK_EXT = ".pack";
     public static final String PACK_KIND_PACK = "pack";
     public static final String PACK_KIND_MANIFEST = "manifest";
@@ -96,6 +100,7 @@ public class FSFS {
     public static final String REVPROP_PACK_SIZE_OPTION = "revprop-pack-size";
     public static final String DELTIFICATION_SECTION = "deltification";
     public static final String COMPRESSION_OPTION = "compression";
+    public static final String COMPRESSION_LEVEL_OPTION = "compression-level";
 
     public static final String IO_SECTION = "io";
     public static final String BLOCK_SIZE_OPTION = "block-size";
@@ -162,10 +167,20 @@ public class FSFS {
     public static final String REVISION_PROPERTIES_DB = "revprops.db";
     public static final String REVISION_PROPERTIES_TABLE = "revprop";
     public static final String MIN_UNPACKED_REV = "min-unpacked-rev";
+    public static final String REVPROP_GENERATION_FILE = "revprop-generation";
 
     public static final boolean DB_FORMAT_PRE_17_USE_AS_DEFAULT = true;
     //public static final boolean DB_FORMAT_PRE_17_USE_AS_DEFAULT = false;
 
+    private static final FSCache<FSCacheKey, FSRevisionNode> ourRevisionNodesCache =
+            new FSCache<FSCacheKey, FSRevisionNode>("node-revisions", getCacheSizeOption("svnkit.fs.cache.nodes.size", 0x1000000));
+    private static final FSCache<FSCacheKey, Map> ourDirectoryEntriesCache =
+            new FSCache<FSCacheKey, Map>("directory-entries", getCacheSizeOption("svnkit.fs.cache.directories.size", 0x2000000));
+    private static final FSCache<FSCacheKey, long[]> ourPackManifestsCache =
+            new FSCache<FSCacheKey, long[]>("pack-manifests", getCacheSizeOption("svnkit.fs.cache.manifests.size", 0x800000));
+    private static final FSCache<FSCacheKey, CachedRevisionProperties> ourRevisionPropertiesCache =
+            new FSCache<FSCacheKey, CachedRevisionProperties>("revprops", getCacheSizeOption("svnkit.fs.cache.revprops.size", 0x1000000));
+
     private int myDBFormat;
     private int myReposFormat;
     private String myUUID;
@@ -177,6 +192,7 @@ public class FSFS {
     private File myLocksRoot;
     private File myDBRoot;
     private File myWriteLockFile;
+    private File myPackLockFile;
     private File myCurrentFile;
     private File myTransactionCurrentFile;
     private File myTransactionCurrentLockFile;
@@ -188,23 +204,27 @@ public class FSFS {
     private File myFSTypeFile;
     private File myMinUnpackedRevFile;
     private File myRepositoryCacheFile;
+    private File myLogIndexFile;
     private long myMaxFilesPerDirectory;
     private long myYoungestRevisionCache;
     private long myMinUnpackedRevision;
     private boolean myUseLogAddressing;
     private SVNConfigFile myConfig;
     private IFSRepresentationCacheManager myReposCacheManager;
+    private FSLogIndex myLogIndex;
     private long myMinUnpackedRevProp;
     
     private boolean myIsHooksEnabled;
     private boolean myCompressPackedRevprops;
     private boolean myIsRepSharingAllowed;
     private long myRevpropPackSize;
+    private String myCacheRepositoryId;
 
     private long myBlockSize;
     private long myL2PPageSize;
     private long myP2LPageSize;
     private SVNDeltaCompression myDeltaCompression;
+    private int myDeltaCompressionLevel = SVNDeltaCodec.DEFAULT_COMPRESSION_LEVEL;
 
     public FSFS(File repositoryRoot) {
         myRepositoryRoot = repositoryRoot;
@@ -243,6 +263,17 @@ public class FSFS {
         return myDeltaCompression;
     }
 
+    /**
+     * Returns zlib compression level of delta windows written to this repository,
+     * configured in fsfs.conf as <code>compression = zlib-N</code> or, by older
+     * formats, as <code>compression-level = N</code>.
+     *
+     * @since 1.10
+     */
+    public int getDeltaCompressionLevel() {
+        return myDeltaCompressionLevel;
+    }
+
     /**
      * @deprecated use {@link #getDeltaCompression()} instead.
      */
@@ -261,6 +292,7 @@ public class FSFS {
             myReposCacheManager.close();
             myReposCacheManager = null;
         }
+        closeLogIndex();
     }
 
     public void openForRecovery() throws SVNException {
@@ -346,12 +378,21 @@ public class FSFS {
                 } else if (compressionName != null) {
                     if (compressionName.startsWith("zlib")) {
                         myDeltaCompression = SVNDeltaCompression.Zlib;
+                        if (compressionName.startsWith("zlib-")) {
+                            myDeltaCompressionLevel = parseCompressionLevel(compressionName.substring("zlib-".length()), COMPRESSION_OPTION);
+                        }
                     } else {
                         SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, "Unsupported compression algorithm {0} in fsfs.conf setting '{1}'", compressionName, COMPRESSION_OPTION);
                         SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
                     }
                 }
             }
+            if (myDBFormat < MIN_COMPRESSION_FORMAT || myConfig.getPropertyValue(DELTIFICATION_SECTION, COMPRESSION_OPTION) == null) {
+                final String compressionLevel = myConfig.getPropertyValue(DELTIFICATION_SECTION, COMPRESSION_LEVEL_OPTION);
+                if (compressionLevel != null) {
+                    myDeltaCompressionLevel = parseCompressionLevel(compressionLevel, COMPRESSION_LEVEL_OPTION);
+                }
+            }
         }
 
         myIsRepSharingAllowed = isRepSharingAllowed;
@@ -499,6 +540,13 @@ public class FSFS {
         return myWriteLockFile;
     }
 
+    public File getPackLockFile() {
+        if (myPackLockFile == null) {
+            myPackLockFile = new File(getDBRoot(), PACK_LOCK_FILE);
+        }
+        return myPackLockFile;
+    }
+
     public File getUUIDFile() {
         if (myUUIDFile == null) {
             myUUIDFile = new File(getDBRoot(), UUID_FILE);
@@ -580,6 +628,34 @@ public class FSFS {
         return myRepositoryCacheFile;
     }
 
+    public File getLogIndexFile() {
+        if (myLogIndexFile == null) {
+            myLogIndexFile = new File(getDBRoot(), LOG_INDEX_DB);
+        }
+        return myLogIndexFile;
+    }
+
+    /**
+     * Returns the changed-paths index of the repository or <code>null</code>
+     * when the index has not been built.
+     */
+    public FSLogIndex getLogIndex() throws SVNException {
+        if (myLogIndex == null && getLogIndexFile().isFile()) {
+            myLogIndex = FSLogIndex.open(this);
+        }
+        return myLogIndex;
+    }
+
+    public void closeLogIndex() throws SVNException {
+        if (myLogIndex != null) {
+            try {
+                myLogIndex.close();
+            } finally {
+                myLogIndex = null;
+            }
+        }
+    }
+
     public File getDBLogsLockFile() throws SVNException {
         File lockFile = new File(getDBRoot(), LOCKS_DIR + "/" + DB_LOGS_LOCK_FILE);
         if (!lockFile.exists()) {
@@ -737,21 +813,198 @@ public class FSFS {
     }
 
     public SVNProperties getRevisionProperties(long revision) throws SVNException {
-        try{
-            if (!SVNRevision.isValidRevisionNumber(revision)) {
-                revision = getYoungestRevision();
+        if (!SVNRevision.isValidRevisionNumber(revision)) {
+            revision = getYoungestRevision();
+        }
+        return new SVNProperties(getCachedRevisionProperties(revision, getRevPropGeneration()));
+    }
+
+    /**
+     * Returns properties of revisions from <code>startRevision</code> to <code>endRevision</code>
+     * inclusive, in that order. Each packed revision properties file is read and decoded only
+     * once, no matter how many revisions of the range it holds.
+     *
+     * @since 1.10
+     */
+    public SVNProperties[] getRevisionProperties(long startRevision, long endRevision) throws SVNException {
+        if (startRevision < 0 || startRevision > endRevision) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.INCORRECT_PARAMS, "Invalid revision range {0}:{1}",
+                    new Object[] {String.valueOf(startRevision), String.valueOf(endRevision)});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        ensureRevisionsExists(endRevision);
+        final long generation = getRevPropGeneration();
+        final SVNProperties[] properties = new SVNProperties[(int) (endRevision - startRevision + 1)];
+        for (int i = 0; i < properties.length; i++) {
+            properties[i] = new SVNProperties(getCachedRevisionProperties(startRevision + i, generation));
+        }
+        return properties;
+    }
+
+    public static FSCache<FSCacheKey, ?> getRevisionPropertiesCache() {
+        return ourRevisionPropertiesCache;
+    }
+
+    /**
+     * Looks revision properties up in the process-wide cache, which is valid for the
+     * given revision properties generation. Properties read from a pack file are cached
+     * for all revisions of that file at once. A negative generation means revision
+     * properties are being changed at the moment and bypasses the cache.
+     *
+     * <p/>
+     * Not every writer bumps the generation: older formats do not have it, and native
+     * Subversion only does when it is configured with a revprop cache itself. Cached
+     * properties are therefore also checked against the time stamps and sizes of the files
+     * they were read from: the revision properties file, or the pack manifest and the pack
+     * file it names for the revision, which is rewritten in place when properties change.
+     *
+     * <p/>
+     * Returns an instance that is shared with the cache and must not be modified.
+     */
+    private SVNProperties getCachedRevisionProperties(long revision, long generation) throws SVNException {
+        final FSCacheKey cacheKey = generation >= 0 ? new FSCacheKey(getCacheRepositoryId(), revision, generation) : null;
+        long[] stamps = null;
+        if (cacheKey != null) {
+            // stamped before reading, so that a change made while reading invalidates what is cached
+            stamps = CachedRevisionProperties.stamp(getRevisionPropertiesStampFiles(revision));
+            final CachedRevisionProperties cached = ourRevisionPropertiesCache.get(cacheKey);
+            if (cached != null && cached.isValid(stamps)) {
+                return cached.myProperties;
             }
-            return readRevisionProperties(revision);
-        } catch(SVNException e ) {
-            if(e.getErrorMessage().getErrorCode()==SVNErrorCode.FS_NO_SUCH_REVISION && myDBFormat >= MIN_PACKED_REVPROP_FORMAT ) {
+        }
+
+        final Map<Long, SVNProperties> packedProperties = new HashMap<Long, SVNProperties>();
+        SVNProperties properties;
+        try {
+            properties = readRevisionProperties(revision, packedProperties);
+        } catch (SVNException e) {
+            if (e.getErrorMessage().getErrorCode() == SVNErrorCode.FS_NO_SUCH_REVISION && myDBFormat >= MIN_PACKED_REVPROP_FORMAT) {
                 updateMinUnpackedRevProp();
-                return readRevisionProperties(revision);
+                properties = readRevisionProperties(revision, packedProperties);
+            } else {
+                throw e;
+            }
+        }
+        if (cacheKey != null && stamps != null) {
+            if (packedProperties.isEmpty()) {
+                packedProperties.put(revision, properties);
+            }
+            for (Map.Entry<Long, SVNProperties> entry : packedProperties.entrySet()) {
+                final SVNProperties value = entry.getValue();
+                ourRevisionPropertiesCache.put(new FSCacheKey(cacheKey.getRepositoryId(), entry.getKey(), generation),
+                        new CachedRevisionProperties(value, stamps), getPropertiesWeight(value));
+            }
+        }
+        return properties;
+    }
+
+    private File[] getRevisionPropertiesStampFiles(long revision) throws SVNException {
+        if (isPackedRevisionProperties(revision)) {
+            return new File[] {new File(getPackedRevPropsShardPath(revision), MANIFEST_FILE), getPackedRevPropFile(revision)};
+        }
+        return new File[] {getRevisionPropertiesFile(revision, true)};
+    }
+
+    private static long getPropertiesWeight(SVNProperties properties) {
+        long weight = 64;
+        for (Iterator names = properties.nameSet().iterator(); names.hasNext();) {
+            final String name = (String) names.next();
+            final SVNPropertyValue value = properties.getSVNPropertyValue(name);
+            weight += 48 + 2 * name.length();
+            if (value != null) {
+                weight += value.isString() ? 2 * value.getString().length() : value.getBytes().length;
+            }
+        }
+        return weight;
+    }
+
+    private static class CachedRevisionProperties {
+
+        private final SVNProperties myProperties;
+        private final long[] myStamps;
+
+        public CachedRevisionProperties(SVNProperties properties, long[] stamps) {
+            myProperties = properties;
+            myStamps = stamps;
+        }
+
+        public boolean isValid(long[] stamps) {
+            return Arrays.equals(myStamps, stamps);
+        }
+
+        /**
+         * Returns time stamps and sizes of the files, or <code>null</code> when one of them
+         * does not exist or its time stamp can not be read.
+         */
+        public static long[] stamp(File[] files) {
+            final long[] stamps = new long[files.length * 2];
+            for (int i = 0; i < files.length; i++) {
+                stamps[2 * i] = files[i].lastModified();
+                if (stamps[2 * i] == 0) {
+                    return null;
+                }
+                stamps[2 * i + 1] = files[i].length();
             }
-            throw e;
+            return stamps;
         }
     }
 
-    private SVNProperties readRevisionProperties(long revision) throws SVNException {
+    public File getRevPropGenerationFile() {
+        return new File(getDBRoot(), REVPROP_GENERATION_FILE);
+    }
+
+    /**
+     * Returns the current revision properties generation, which is bumped twice by every
+     * change of revision properties: to an odd value before the change and to the next even
+     * value after it. Returns -1 while a change is in progress.
+     *
+     * @since 1.10
+     */
+    public long getRevPropGeneration() throws SVNException {
+        final File generationFile = getRevPropGenerationFile();
+        if (!generationFile.isFile()) {
+            return 0;
+        }
+        long generation = -1;
+        try {
+            generation = Long.parseLong(SVNFileUtil.readFile(generationFile).trim());
+        } catch (NumberFormatException e) {
+            //
+        } catch (SVNException e) {
+            // being replaced
+        }
+        return generation >= 0 && generation % 2 == 0 ? generation : -1;
+    }
+
+    private void bumpRevPropGeneration(boolean changing) throws SVNException {
+        long generation = 0;
+        final File generationFile = getRevPropGenerationFile();
+        if (generationFile.isFile()) {
+            try {
+                generation = Math.max(Long.parseLong(SVNFileUtil.readFile(generationFile).trim()), 0);
+            } catch (NumberFormatException e) {
+                //
+            }
+        }
+        // odd while changing, even otherwise
+        generation += (generation % 2 == 1) == changing ? 2 : 1;
+        final File tmpFile = SVNFileUtil.createUniqueFile(getDBRoot(), REVPROP_GENERATION_FILE, ".tmp", false);
+        SVNFileUtil.writeToFile(tmpFile, String.valueOf(generation) + "\n", "US-ASCII");
+        SVNFileUtil.rename(tmpFile, generationFile);
+    }
+
+    /**
+     * Invalidates cached revision properties of this repository for all processes
+     * that use the revision properties generation. Called by operations that rewrite
+     * revision properties files of existing revisions in place.
+     *
+     * @since 1.10
+     */
+    public void invalidateRevisionProperties() throws SVNException {
+        bumpRevPropGeneration(false);
+    }
+
+    private SVNProperties readRevisionProperties(long revision, Map<Long, SVNProperties> packedProperties) throws SVNException {
         ensureRevisionsExists(revision);
         SVNProperties properties = null;
         if (!isPackedRevisionProperties(revision)) {
@@ -768,13 +1021,13 @@ public class FSFS {
         }
         if (myDBFormat >= MIN_PACKED_REVPROP_FORMAT && properties == null) {
             // read packed revision props
-            return readPackedRevisionProperties(revision);
+            return readPackedRevisionProperties(revision, packedProperties);
             // TODO wrap exception, do retry
         }
         return properties == null ? new SVNProperties() : properties;
     }
     
-    private SVNProperties readPackedRevisionProperties(long revision) throws SVNException {
+    private SVNProperties readPackedRevisionProperties(long revision, Map<Long, SVNProperties> packedProperties) throws SVNException {
         if (!isPackedRevisionProperties(revision)) {
             updateMinUnpackedRevProp();
         }
@@ -784,7 +1037,11 @@ public class FSFS {
         }
         final File packFile = getPackedRevPropFile(revision);
         final SVNFSFSPackedRevProps packedRevProps = SVNFSFSPackedRevProps.fromPackFile(packFile);
-        final SVNProperties properties = packedRevProps.parseProperties(revision);
+        for (long packedRevision = packedRevProps.getFirstRevision(); packedRevision < packedRevProps.getFirstRevision() + packedRevProps.getRevisionsCount(); packedRevision++) {
+            final SVNProperties properties = packedRevProps.parseProperties(packedRevision);
+            packedProperties.put(packedRevision, properties == null ? new SVNProperties() : properties);
+        }
+        final SVNProperties properties = packedProperties.get(revision);
         return properties == null ? new SVNProperties() : properties;
     }
 
@@ -796,6 +1053,20 @@ public class FSFS {
         return new File(packShardDirectory, manifest.getPackName(revision));
     }
 
+    private static int parseCompressionLevel(String value, String optionName) throws SVNException {
+        int level = -1;
+        try {
+            level = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            //
+        }
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, "Compression level {0} in fsfs.conf setting ''{1}'' is out of range [0, 9]", value, optionName);
+            SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
+        }
+        return level;
+    }
+
     private static long decodeUncompressedSize(InputStream inputStream, int lengthRecordSize, int[] outputBytesRead) throws SVNException {
         int temp = 0;
         int bytesRead = 0;
@@ -913,11 +1184,17 @@ public class FSFS {
 
     public FSRevisionNode getRevisionNode(FSID id) throws SVNException  {
         FSFile revisionFile = null;
+        FSCacheKey cacheKey = null;
 
         if (id.isTxn()) {
             File file = new File(getTransactionDir(id.getTxnID()), PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID());
             revisionFile = new FSFile(file);
         } else {
+            cacheKey = new FSCacheKey(getCacheRepositoryId(), id.getRevision(), id.getOffset());
+            FSRevisionNode cachedNode = ourRevisionNodesCache.get(cacheKey);
+            if (cachedNode != null) {
+                return FSRevisionNode.dumpRevisionNode(cachedNode);
+            }
             revisionFile = openAndSeekRevision(id.getRevision(), id.getOffset());
         }
 
@@ -932,9 +1209,54 @@ public class FSFS {
         if (node.isFreshTxnRoot()) {
             node.setFreshRootPredecessorId(node.getPredecessorId());
         }
+        if (cacheKey != null) {
+            ourRevisionNodesCache.put(cacheKey, FSRevisionNode.dumpRevisionNode(node), node.getEstimatedSize());
+        }
         return node;
     }
 
+    /**
+     * Returns the process-wide cache of parsed revision node-revisions,
+     * shared by all repositories opened in this JVM.
+     *
+     * @since 1.10
+     */
+    public static FSCache<FSCacheKey, FSRevisionNode> getRevisionNodesCache() {
+        return ourRevisionNodesCache;
+    }
+
+    /**
+     * Identifies this repository instance in the process-wide caches.
+     * Besides the location and UUID it includes the creation time of the
+     * fs-type file, so that a repository recreated at the same location
+     * never sees items cached for its predecessor.
+     *
+     * @since 1.10
+     */
+    public String getCacheRepositoryId() throws SVNException {
+        if (myCacheRepositoryId == null) {
+            myCacheRepositoryId = getUUID() + ":" + getFSTypeFile().lastModified() + ":" + getDBRoot().getAbsolutePath();
+        }
+        return myCacheRepositoryId;
+    }
+
+    /**
+     * Reads the size limit of a process-wide cache from the system property <code>name</code>.
+     *
+     * @since 1.10
+     */
+    public static long getCacheSizeOption(String name, long defaultValue) {
+        final String value = System.getProperty(name);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException nfe) {
+                //ignore
+            }
+        }
+        return defaultValue;
+    }
+
     public Map getDirContents(FSRevisionNode revNode) throws SVNException {
         FSRepresentation txtRep = revNode.getTextRepresentation();
         if (txtRep != null && txtRep.isTxn()) {
@@ -952,11 +1274,37 @@ public class FSFS {
             }
             return entries;
         } else if (txtRep != null) {
-            return parsePlainRepresentation(parseProperties(txtRep), false);
+            final FSCacheKey cacheKey = new FSCacheKey(getCacheRepositoryId(), txtRep.getRevision(), txtRep.getItemIndex());
+            Map entries = ourDirectoryEntriesCache.get(cacheKey);
+            if (entries == null) {
+                entries = parsePlainRepresentation(parseProperties(txtRep), false);
+                entries = Collections.unmodifiableMap(entries);
+                ourDirectoryEntriesCache.put(cacheKey, entries, getEstimatedSize(entries));
+            }
+            return entries;
         }
         return new SVNHashMap();// returns an empty map, must not be null!!
     }
 
+    /**
+     * Returns the process-wide cache of parsed directory listings of
+     * committed revisions. Cached listings are shared and unmodifiable.
+     *
+     * @since 1.10
+     */
+    public static FSCache<FSCacheKey, Map> getDirectoryEntriesCache() {
+        return ourDirectoryEntriesCache;
+    }
+
+    private static long getEstimatedSize(Map entries) {
+        long size = 128;
+        for (Iterator names = entries.keySet().iterator(); names.hasNext();) {
+            final String name = (String) names.next();
+            size += 192 + 2 * name.length();
+        }
+        return size;
+    }
+
     private byte[] parseRawDeltaProperties(FSRepresentation txtRep, StringBuilder outputChecksum) throws SVNException {
         FSFile revisionFile = null;
         revisionFile = openAndSeekRepresentation(txtRep);
@@ -1329,6 +1677,7 @@ public class FSFS {
             synchronized (writeLock) {
                 try {
                     writeLock.lock();
+                    bumpRevPropGeneration(true);
 
                     if (!isPackedRevisionProperties(revision)) {
                         SVNWCProperties revProps = new SVNWCProperties(getRevisionPropertiesFile(revision, false), null);
@@ -1372,8 +1721,12 @@ public class FSFS {
                         }
                     }
                 } finally {
-                    writeLock.unlock();
-                    FSWriteLock.release(writeLock);
+                    try {
+                        bumpRevPropGeneration(false);
+                    } finally {
+                        writeLock.unlock();
+                        FSWriteLock.release(writeLock);
+                    }
                 }
             }
     }
@@ -2105,7 +2458,7 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such revision {0}", String.valueOf(revision));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return new FSFile(file);
+        return FSMappedFiles.open(this, file);
     }
 
     protected File getAbsoluteRevisionPath(long revision) throws SVNException {
@@ -2192,6 +2545,16 @@ public class FSFS {
     }
 
     protected void writeCurrentFile(long revision, String nextNodeID, String nextCopyID) throws SVNException, IOException {
+        writeCurrentFile(revision, nextNodeID, nextCopyID, false);
+    }
+
+    /**
+     * Writes the <code>current</code> file; when <code>sync</code> is <code>true</code>
+     * its new contents are forced to disk before it replaces the old one.
+     *
+     * @since 1.10
+     */
+    protected void writeCurrentFile(long revision, String nextNodeID, String nextCopyID, boolean sync) throws SVNException, IOException {
         String line = null;
         if (getDBFormat() >= FSFS.MIN_NO_GLOBAL_IDS_FORMAT) {
             line = revision + "\n";
@@ -2210,28 +2573,68 @@ public class FSFS {
         } finally {
             SVNFileUtil.closeFile(currentOS);
         }
+        if (sync) {
+            SVNFileUtil.syncFile(tmpCurrentFile);
+        }
 
         SVNFileUtil.rename(tmpCurrentFile, currentFile);
     }
 
     protected long getPackedOffset(long revision) throws SVNException {
-        //TODO: later on introduce invoking memcache here to fetch\store the requested data
-        //long shard = revision / myMaxFilesPerDirectory;
-        File manifestFile = getPackedRevPath(revision, PACK_KIND_MANIFEST);
+        long shard = revision / myMaxFilesPerDirectory;
+        FSCacheKey cacheKey = new FSCacheKey(getCacheRepositoryId(), shard, 0);
+        long[] manifest = ourPackManifestsCache.get(cacheKey);
+        if (manifest == null) {
+            manifest = readPackManifest(getPackedRevPath(revision, PACK_KIND_MANIFEST));
+            ourPackManifestsCache.put(cacheKey, manifest, 16 + 8 * manifest.length);
+        }
+
+        int index = (int) (revision % myMaxFilesPerDirectory);
+        SVNErrorManager.assertionFailure(index < manifest.length, "offset for revision " + String.valueOf(revision) + " is null", SVNLogType.FSFS);
+        return manifest[index];
+    }
+
+    /**
+     * Forgets the cached manifest of the pack file <code>shard</code> belongs to.
+     * Called whenever the pack file of that shard is (re)written.
+     *
+     * @since 1.10
+     */
+    public void invalidatePackManifest(long shard) throws SVNException {
+        ourPackManifestsCache.remove(new FSCacheKey(getCacheRepositoryId(), shard, 0));
+        FSMappedFiles.release(this, getPackFile(shard));
+        FSLogicalAddressingIndex.invalidate(this, getPackFile(shard));
+    }
+
+    /**
+     * Returns the process-wide cache of parsed pack manifests, keyed by
+     * repository and shard.
+     *
+     * @since 1.10
+     */
+    public static FSCache<FSCacheKey, long[]> getPackManifestsCache() {
+        return ourPackManifestsCache;
+    }
+
+    private long[] readPackManifest(File manifestFile) throws SVNException {
         BufferedReader reader = null;
-        LinkedList manifest = new LinkedList();
+        long[] manifest = new long[(int) myMaxFilesPerDirectory];
+        int count = 0;
         try {
-            reader = new BufferedReader(new InputStreamReader(SVNFileUtil.openFileForReading(manifestFile)));
+            reader = new BufferedReader(new InputStreamReader(SVNFileUtil.openFileForReading(manifestFile), "US-ASCII"));
             String line = null;
             while ((line = reader.readLine()) != null) {
-                Long offset = null;
+                if (count == manifest.length) {
+                    long[] grown = new long[manifest.length * 2 + 1];
+                    System.arraycopy(manifest, 0, grown, 0, count);
+                    manifest = grown;
+                }
                 try {
-                    offset = Long.valueOf(line);
+                    manifest[count++] = Long.parseLong(line);
                 } catch (NumberFormatException nfe) {
                     SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT);
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
-                manifest.add(offset);
             }
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getMessage());
@@ -2239,10 +2642,12 @@ public class FSFS {
         } finally {
             SVNFileUtil.closeFile(reader);
         }
-
-        Long revOffsetLong = (Long) manifest.get((int) (revision % myMaxFilesPerDirectory));
-        SVNErrorManager.assertionFailure(revOffsetLong != null, "offset for revision " + String.valueOf(revision) + " is null", SVNLogType.FSFS);
-        return revOffsetLong.longValue();
+        if (count < manifest.length) {
+            long[] trimmed = new long[count];
+            System.arraycopy(manifest, 0, trimmed, 0, count);
+            manifest = trimmed;
+        }
+        return manifest;
     }
 
     private SVNConfigFile loadConfig() {
@@ -37,6 +37,7 @@ public class FSFile {
     
     private File myFile;
     private final byte[] myData;
+    private final ByteBuffer myMappedData;
     private int myOffset;
     private int myLength;
     private FileChannel myChannel;
@@ -61,6 +62,7 @@ public class FSFile {
     public FSFile(File file) {
         myFile = file;
         myData = null;
+        myMappedData = null;
         myPosition = 0;
         myBufferPosition = 0;
         myBuffer = ByteBuffer.allocate(1024);
@@ -78,6 +80,7 @@ public class FSFile {
     public FSFile(byte[] data, int offset, int length) {
         myFile = null;
         myData = data;
+        myMappedData = null;
         myOffset = offset;
         myLength = length;
         myPosition = 0;
@@ -90,6 +93,24 @@ public class FSFile {
         myP2LOffset = -1;
     }
     
+    /**
+     * Reads <code>file</code> from <code>mappedData</code>, a private view
+     * of the memory-mapped contents of the file.
+     */
+    public FSFile(File file, ByteBuffer mappedData) {
+        myFile = file;
+        myData = null;
+        myMappedData = mappedData;
+        myPosition = 0;
+        myBufferPosition = 0;
+        myBuffer = ByteBuffer.allocate(0);
+        myReadLineBuffer = ByteBuffer.allocate(1024);
+        myDecoder = Charset.forName("UTF-8").newDecoder();
+        myDecoder = myDecoder.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        myL2POffset = -1;
+        myP2LOffset = -1;
+    }
+
     public void seek(long position) {
         myPosition = position;
     }
@@ -99,6 +120,9 @@ public class FSFile {
     }
 
     public long size() {
+        if (myMappedData != null) {
+            return myMappedData.limit();
+        }
         return myData == null ? myFile.length() : myLength;
     }
     
@@ -362,6 +386,17 @@ public class FSFile {
             }
             return myData[((int) (myOffset + myPosition - 1))] & 0xff;
         }
+        if (myMappedData != null) {
+            if (myPosition >= myMappedData.limit()) {
+                return -1;
+            }
+            int r = myMappedData.get((int) myPosition) & 0xFF;
+            if (myDigest != null) {
+                myDigest.update((byte) r);
+            }
+            myPosition++;
+            return r;
+        }
         if ((myChannel == null && myInputStream == null) || myPosition < myBufferPosition || myPosition >= myBufferPosition + myBuffer.limit()) {
             if (fill() <= 0) {
                 return -1;
@@ -387,6 +422,21 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (myMappedData != null) {
+            int couldRead = (int) Math.max(0, Math.min(myMappedData.limit() - myPosition, target.remaining()));
+            if (couldRead == 0) {
+                return target.hasRemaining() ? -1 : 0;
+            }
+            ByteBuffer chunk = myMappedData.duplicate();
+            chunk.position((int) myPosition);
+            chunk.limit((int) myPosition + couldRead);
+            if (myDigest != null) {
+                myDigest.update(chunk.duplicate());
+            }
+            target.put(chunk);
+            myPosition += couldRead;
+            return couldRead;
+        }
         int read = 0;
         while(target.hasRemaining()) {
             if (fill() < 0) {
@@ -417,6 +467,19 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (myMappedData != null) {
+            int couldRead = (int) Math.max(0, Math.min(myMappedData.limit() - myPosition, length));
+            if (couldRead == 0) {
+                return length > 0 ? -1 : 0;
+            }
+            myMappedData.position((int) myPosition);
+            myMappedData.get(buffer, offset, couldRead);
+            if (myDigest != null) {
+                myDigest.update(buffer, offset, couldRead);
+            }
+            myPosition += couldRead;
+            return couldRead;
+        }
         int read = 0;
         int toRead = length;
         while(toRead > 0) {
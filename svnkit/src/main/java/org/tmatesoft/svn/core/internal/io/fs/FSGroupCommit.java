@@ -0,0 +1,279 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Batches commits made to the same repository from this process.
+ *
+ * <p/>
+ * The first committer to arrive becomes the leader of a group: it waits for
+ * a short window, takes the repository write lock once and writes the
+ * revisions of all commits queued so far one after another. Revision and
+ * revision properties files of the whole group are then forced to disk
+ * together and <code>current</code> is advanced once, to the youngest
+ * revision of the group, so none of the revisions becomes visible before
+ * all of them are durable. Each commit is merged with the revision written
+ * right before it in the group, and if the group can not be published its
+ * files are removed again. Each committer gets back its own revision or
+ * error and runs its post-commit work itself.
+ *
+ * <p/>
+ * Group commit is off by default and is enabled with the
+ * <code>svnkit.fs.groupCommit</code> system property; the window in
+ * milliseconds is set with <code>svnkit.fs.groupCommit.window</code>
+ * (2 by default). Only repositories that do not keep global node ids in
+ * <code>current</code> are committed in groups.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class FSGroupCommit {
+
+    private static boolean ourIsEnabled = Boolean.valueOf(System.getProperty("svnkit.fs.groupCommit", Boolean.FALSE.toString())).booleanValue();
+    private static long ourWindow = Long.getLong("svnkit.fs.groupCommit.window", 2).longValue();
+
+    private static final Map<String, FSGroupCommit> ourGroupCommits = new HashMap<String, FSGroupCommit>();
+
+    private final List<Entry> myQueue = new ArrayList<Entry>();
+    private boolean myIsLeaderActive;
+    private long myGroupsCount;
+
+    /**
+     * Part of a commit that has to be done under the repository write lock.
+     */
+    public interface ICommitTask {
+
+        /**
+         * Writes the revision that follows <code>youngestRevision</code>
+         * without updating <code>current</code>, and adds the files that have
+         * to be synced before it is published to <code>filesToSync</code>.
+         */
+        long commit(long youngestRevision, Collection<File> filesToSync) throws SVNException;
+    }
+
+    public static synchronized boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    public static synchronized long getWindow() {
+        return ourWindow;
+    }
+
+    public static synchronized void setWindow(long window) {
+        ourWindow = window;
+    }
+
+    public static boolean isSupported(FSFS owner) {
+        return owner.getDBFormat() >= FSFS.MIN_NO_GLOBAL_IDS_FORMAT;
+    }
+
+    public static FSGroupCommit getInstance(FSFS owner) throws SVNException {
+        final String key = owner.getCacheRepositoryId();
+        synchronized (ourGroupCommits) {
+            FSGroupCommit groupCommit = ourGroupCommits.get(key);
+            if (groupCommit == null) {
+                groupCommit = new FSGroupCommit();
+                ourGroupCommits.put(key, groupCommit);
+            }
+            return groupCommit;
+        }
+    }
+
+    /**
+     * Commits <code>task</code> together with the tasks of other threads
+     * and returns its new revision once <code>current</code> points to it.
+     */
+    public long commit(FSFS owner, ICommitTask task) throws SVNException {
+        final Entry entry = new Entry(task);
+        boolean interrupted = false;
+        synchronized (this) {
+            myQueue.add(entry);
+            // once queued the task may be committed by the leader at any moment, so keep waiting for its outcome
+            while (!entry.myIsDone && myIsLeaderActive) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (!entry.myIsDone) {
+                myIsLeaderActive = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (!entry.myIsDone) {
+            lead(owner);
+        }
+        if (entry.myError != null) {
+            throw entry.myError;
+        }
+        return entry.myRevision;
+    }
+
+    private void lead(FSFS owner) {
+        List<Entry> group = null;
+        try {
+            final long window = getWindow();
+            if (window > 0) {
+                try {
+                    Thread.sleep(window);
+                } catch (InterruptedException e) {
+                    //
+                }
+            }
+            synchronized (this) {
+                group = new ArrayList<Entry>(myQueue);
+                myQueue.clear();
+            }
+            commitGroup(owner, group);
+        } finally {
+            synchronized (this) {
+                if (group == null) {
+                    group = new ArrayList<Entry>(myQueue);
+                    myQueue.clear();
+                }
+                for (Entry entry : group) {
+                    if (entry.myRevision == SVNRepository.INVALID_REVISION && entry.myError == null) {
+                        entry.myError = new SVNException(SVNErrorMessage.create(SVNErrorCode.FS_GENERAL, "Group commit failed"));
+                    }
+                    entry.myIsDone = true;
+                }
+                myIsLeaderActive = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns how many groups were published, that is how many times
+     * <code>current</code> was written by this instance.
+     */
+    public synchronized long getGroupsCount() {
+        return myGroupsCount;
+    }
+
+    private void commitGroup(FSFS owner, List<Entry> group) {
+        final List<Entry> committed = new ArrayList<Entry>();
+        FSWriteLock writeLock = null;
+        try {
+            writeLock = FSWriteLock.getWriteLockForDB(owner);
+            synchronized (writeLock) {
+                try {
+                    writeLock.lock();
+                    final long oldRevision = owner.getYoungestRevision();
+                    final Collection<File> filesToSync = new LinkedHashSet<File>();
+                    long youngestRevision = oldRevision;
+                    for (Entry entry : group) {
+                        try {
+                            // each task rebases itself onto youngestRevision, which may be written by the previous task
+                            entry.myRevision = entry.myTask.commit(youngestRevision, filesToSync);
+                            youngestRevision = entry.myRevision;
+                            committed.add(entry);
+                        } catch (SVNException e) {
+                            entry.myError = e;
+                        }
+                    }
+                    if (youngestRevision != oldRevision) {
+                        try {
+                            for (File file : filesToSync) {
+                                SVNFileUtil.syncFile(file);
+                            }
+                            owner.writeCurrentFile(youngestRevision, null, null, true);
+                        } catch (IOException ioe) {
+                            rollback(filesToSync);
+                            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
+                            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+                        } catch (SVNException e) {
+                            rollback(filesToSync);
+                            throw e;
+                        }
+                        owner.setYoungestRevisionCache(youngestRevision);
+                        synchronized (this) {
+                            myGroupsCount++;
+                        }
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        } catch (SVNException e) {
+            for (Entry entry : committed) {
+                entry.myRevision = SVNRepository.INVALID_REVISION;
+                entry.myError = e;
+            }
+            for (Entry entry : group) {
+                if (entry.myRevision == SVNRepository.INVALID_REVISION && entry.myError == null) {
+                    entry.myError = e;
+                }
+            }
+        } finally {
+            FSWriteLock.release(writeLock);
+        }
+    }
+
+    /**
+     * Removes revision and revision properties files of a group which could
+     * not be published, so that the next commit may write these revisions
+     * again. Tasks of the group read these revisions while rebasing, hence
+     * the cached nodes and contents are dropped as well.
+     */
+    private static void rollback(Collection<File> filesToSync) {
+        final List<File> files = new ArrayList<File>(filesToSync);
+        for (int i = files.size() - 1; i >= 0; i--) {
+            try {
+                SVNFileUtil.deleteFile(files.get(i));
+            } catch (SVNException e) {
+                SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+            }
+        }
+        FSFS.getRevisionNodesCache().clear();
+        FSFS.getDirectoryEntriesCache().clear();
+        FSInputStream.getFulltextsCache().clear();
+        FSInputStream.getWindowsCache().clear();
+    }
+
+    private static class Entry {
+
+        private final ICommitTask myTask;
+        private long myRevision = SVNRepository.INVALID_REVISION;
+        private SVNException myError;
+        private boolean myIsDone;
+
+        public Entry(ICommitTask task) {
+            myTask = task;
+        }
+    }
+}
@@ -14,6 +14,17 @@ package org.tmatesoft.svn.core.internal.io.fs;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
@@ -23,41 +34,80 @@ import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.db.SVNSqlJetDb;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileListUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
+ * Copies a live FSFS repository.
+ *
+ * <p/>
+ * Packed shards, revision files and revision properties shards are copied by
+ * a pool of workers, the number of which is set with the
+ * <code>svnkit.fs.hotcopy.threads</code> system property (the number of
+ * available processors by default).
+ *
+ * <p/>
+ * An incremental hot copy into an earlier hot copy of the same repository
+ * copies only the files that have been added or changed since then: packed
+ * shards and revision files never change once written, so those already
+ * present in the destination with the same size and modification time are
+ * left as is. <code>current</code> of the destination is written last, so the
+ * destination remains a consistent repository while it is being updated.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class FSHotCopier {
 
+    private static final int REVISIONS_PER_TASK = 1000;
+
+    private static int ourThreadsCount = Integer.getInteger("svnkit.fs.hotcopy.threads", Runtime.getRuntime().availableProcessors()).intValue();
+
+    public static synchronized int getThreadsCount() {
+        return ourThreadsCount;
+    }
+
+    public static synchronized void setThreadsCount(int threadsCount) {
+        ourThreadsCount = threadsCount;
+    }
+
     public void runHotCopy(FSFS srcOwner, File dstPath) throws SVNException {
+        runHotCopy(srcOwner, dstPath, false);
+    }
+
+    public void runHotCopy(FSFS srcOwner, File dstPath, boolean incremental) throws SVNException {
         FSWriteLock dbLogsLock = FSWriteLock.getDBLogsLock(srcOwner, false);
         File srcPath = srcOwner.getRepositoryRoot();
         synchronized (dbLogsLock) {
             try {
                 dbLogsLock.lock();
-                createRepositoryLayout(srcPath, dstPath);
+                FSFS dstOwner = new FSFS(dstPath);
+                boolean isUpdate = incremental && dstOwner.getDBFormatFile().isFile();
+                createRepositoryLayout(srcPath, dstPath, incremental);
                 File dstReposLocksDir = new File(dstPath, FSFS.LOCKS_DIR);
                 try {
-                    createReposDir(dstReposLocksDir);
+                    createReposDir(dstReposLocksDir, incremental);
                 } catch (SVNException svne) {
                     SVNErrorMessage err = svne.getErrorMessage().wrap("Creating lock dir");
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
-                createDBLock(dstReposLocksDir);
-                createDBLogsLock(dstReposLocksDir);
+                if (!incremental || !new File(dstReposLocksDir, FSFS.DB_LOCK_FILE).isFile()) {
+                    createDBLock(dstReposLocksDir);
+                }
+                if (!incremental || !new File(dstReposLocksDir, FSFS.DB_LOGS_LOCK_FILE).isFile()) {
+                    createDBLogsLock(dstReposLocksDir);
+                }
                 File dstDBDir = new File(dstPath, FSFS.DB_DIR);
                 dstDBDir.mkdirs();
                 SVNFileUtil.setSGID(dstDBDir);
-                FSFS dstOwner = new FSFS(dstPath);
                 String fsType = srcOwner.getFSType();
-                hotCopy(srcOwner, dstOwner);
+                hotCopy(srcOwner, dstOwner, isUpdate);
                 writeFSType(dstOwner, fsType);
                 SVNFileUtil.writeVersionFile(new File(dstPath, FSFS.REPOS_FORMAT_FILE),
                         srcOwner.getReposFormat());
+                FSRepresentationCacheIndex.invalidate(new FSFS(dstPath));
             } finally {
                 dbLogsLock.unlock();
                 FSWriteLock.release(dbLogsLock);
@@ -79,7 +129,7 @@ public class FSHotCopier {
         }
     }
 
-    private void createRepositoryLayout(File srcPath, File dstPath) throws SVNException {
+    private void createRepositoryLayout(File srcPath, File dstPath, boolean allowExisting) throws SVNException {
         File[] children = srcPath.listFiles();
         for (int i = 0; i < children.length; i++) {
             File child = children[i];
@@ -91,16 +141,19 @@ public class FSHotCopier {
 
             File dstChildPath = new File(dstPath, childName);
             if (child.isDirectory()) {
-                createReposDir(dstChildPath);
-                createRepositoryLayout(child, dstChildPath);
+                createReposDir(dstChildPath, allowExisting);
+                createRepositoryLayout(child, dstChildPath, allowExisting);
             } else if (child.isFile()) {
                 SVNFileUtil.copyFile(child, dstChildPath, true);
             }
         }
     }
 
-    private void createReposDir(File dir) throws SVNException {
+    private void createReposDir(File dir, boolean allowExisting) throws SVNException {
         if (dir.exists()) {
+            if (allowExisting) {
+                return;
+            }
             File[] dstChildren = dir.listFiles();
             if (dstChildren.length > 0) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.DIR_NOT_EMPTY,
@@ -132,83 +185,117 @@ public class FSHotCopier {
         }
     }
 
-    private void hotCopy(FSFS srcOwner, FSFS dstOwner) throws SVNException {
+    private void hotCopy(FSFS srcOwner, FSFS dstOwner, boolean isUpdate) throws SVNException {
         int format = srcOwner.readDBFormat();
         FSRepositoryUtil.checkReposDBFormat(format);
-        SVNFileUtil.copyFile(srcOwner.getCurrentFile(), dstOwner.getCurrentFile(), true);
-        SVNFileUtil.copyFile(srcOwner.getUUIDFile(), dstOwner.getUUIDFile(), true);
+        long maxFilesPerDirectory = srcOwner.getMaxFilesPerDirectory();
 
         long minUnpackedRevision = 0;
         if (format >= FSFS.MIN_PACKED_FORMAT) {
-            SVNFileUtil.copyFile(srcOwner.getMinUnpackedRevFile(), dstOwner.getMinUnpackedRevFile(), true);
             minUnpackedRevision = srcOwner.getMinUnpackedRev();
         }
-        long youngestRev = dstOwner.getYoungestRevision();
+        long min_unpacked_revprop = 0;
+        if (format >= FSFS.MIN_PACKED_REVPROP_FORMAT) {
+            min_unpacked_revprop = srcOwner.getMinUnpackedRevProp();
+        }
+        /* Everything up to this revision is copied; current of the destination is written last. */
+        String current = SVNFileUtil.readFile(srcOwner.getCurrentFile());
+        long youngestRev = parseYoungestRevision(current);
+
+        if (isUpdate) {
+            checkIncrementalCopy(srcOwner, dstOwner, format, youngestRev, minUnpackedRevision);
+        }
+        SVNFileUtil.copyFile(srcOwner.getUUIDFile(), dstOwner.getUUIDFile(), true);
 
         File dstRevsDir = dstOwner.getDBRevsDir();
         dstRevsDir.mkdirs();
+        File dstRevPropsDir = dstOwner.getRevisionPropertiesRoot();
 
-        long maxFilesPerDirectory = srcOwner.getMaxFilesPerDirectory();
+        List<CopyTask> tasks = new ArrayList<CopyTask>();
         long rev = 0;
-        for (; rev < minUnpackedRevision; rev += srcOwner.getMaxFilesPerDirectory()) {
+        for (; rev < minUnpackedRevision; rev += maxFilesPerDirectory) {
             long packedShard = rev / maxFilesPerDirectory;
-            SVNFileUtil.copyDirectory(srcOwner.getPackDir(packedShard), dstOwner.getPackDir(packedShard), false, null);
+            tasks.add(new CopyTask(srcOwner.getPackDir(packedShard), dstOwner.getPackDir(packedShard)));
         }
 
         SVNErrorManager.assertionFailure(rev == minUnpackedRevision, "expected minimal unpacked revision " + String.valueOf(minUnpackedRevision) + ", but real revision is " +
                 String.valueOf(rev), SVNLogType.FSFS);
 
-        for (; rev <= youngestRev; rev++) {
-            File dstDir = dstRevsDir;
-            if (maxFilesPerDirectory > 0) {
-                String shard = String.valueOf(rev / maxFilesPerDirectory);
-                dstDir = new File(dstRevsDir, shard);
+        for (; rev <= youngestRev; ) {
+            long last = getLastRevisionOfTask(rev, youngestRev, maxFilesPerDirectory);
+            CopyTask task = new CopyTask();
+            for (; rev <= last; rev++) {
+                File dstDir = dstRevsDir;
+                if (maxFilesPerDirectory > 0) {
+                    String shard = String.valueOf(rev / maxFilesPerDirectory);
+                    dstDir = new File(dstRevsDir, shard);
+                }
+                task.add(srcOwner.getRevisionFile(rev), new File(dstDir, String.valueOf(rev)));
             }
-            SVNFileUtil.copyFile(srcOwner.getRevisionFile(rev), new File(dstDir, String.valueOf(rev)), true);
+            tasks.add(task);
         }
 
-        long min_unpacked_revprop = 0;
-        /* Copy the min unpacked revprop file, and read its value. */
-        if (format >= FSFS.MIN_PACKED_REVPROP_FORMAT)
-          {
-            min_unpacked_revprop = srcOwner.getMinUnpackedRevProp();
-            SVNFileUtil.copyFile(srcOwner.getMinUnpackedRevPropPath(), dstOwner.getMinUnpackedRevPropPath(),true);
-            final File srcRevPropDb = srcOwner.getRevisionPropertiesDbPath();
-            final File dstRevPropDb = dstOwner.getRevisionPropertiesDbPath();
-            final SVNSqlJetDb revPropDb = SVNSqlJetDb.open(
-                    srcOwner.getRevisionPropertiesDbPath(), SVNSqlJetDb.Mode.ReadWrite);
-            try{
-                SVNException e = (SVNException) revPropDb.getDb().runReadTransaction(new ISqlJetTransaction() {
-                        public Object run(SqlJetDb db) throws SqlJetException {
-                            try {
-                                SVNFileUtil.copyFile(srcRevPropDb,
-                                        dstRevPropDb,true);
-                            } catch (SVNException e) {
-                                return e;
-                            }
-                            return null;
-                        }
-                    });
-                if(e!=null){
-                    throw e;
+        for (rev = min_unpacked_revprop; rev <= youngestRev; ) {
+            long last = getLastRevisionOfTask(rev, youngestRev, maxFilesPerDirectory);
+            CopyTask task = new CopyTask();
+            for (; rev <= last; rev++) {
+                File dstDir = dstRevPropsDir;
+                if (maxFilesPerDirectory > 0) {
+                    String shard = String.valueOf(rev / maxFilesPerDirectory);
+                    dstDir = new File(dstRevPropsDir, shard);
                 }
-            } catch (SqlJetException e) {
-                SVNErrorMessage err = SVNErrorMessage.create( SVNErrorCode.SQLITE_ERROR, e );
-                SVNErrorManager.error(err, SVNLogType.FSFS);
-            } finally {
-                revPropDb.close();
+                task.add(srcOwner.getRevisionPropertiesFile(rev, false), new File(dstDir, String.valueOf(rev)));
             }
-          }
+            tasks.add(task);
+        }
 
-        File dstRevPropsDir = dstOwner.getRevisionPropertiesRoot();
-        for (rev = min_unpacked_revprop; rev <= youngestRev; rev++) {
-            File dstDir = dstRevPropsDir;
-            if (maxFilesPerDirectory > 0) {
-                String shard = String.valueOf(rev / maxFilesPerDirectory);
-                dstDir = new File(dstRevPropsDir, shard);
+        ExecutorService workers = null;
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        int threadsCount = Math.max(getThreadsCount(), 1);
+        if (threadsCount > 1 && tasks.size() > 1) {
+            workers = new ThreadPoolExecutor(threadsCount, threadsCount, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        }
+        try {
+            if (workers != null) {
+                for (CopyTask task : tasks) {
+                    futures.add(workers.submit(task));
+                }
+            }
+            if (format >= FSFS.MIN_PACKED_REVPROP_FORMAT) {
+                copyDb(srcOwner.getRevisionPropertiesDbPath(), dstOwner.getRevisionPropertiesDbPath());
+            }
+            if (format >= FSFS.MIN_REP_SHARING_FORMAT && srcOwner.getRepositoryCacheFile().isFile()) {
+                copyDb(srcOwner.getRepositoryCacheFile(), dstOwner.getRepositoryCacheFile());
+            }
+            if (workers == null) {
+                for (CopyTask task : tasks) {
+                    task.call();
+                }
+            }
+            for (Future<Object> future : futures) {
+                waitFor(future);
+            }
+        } finally {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+
+        if (format >= FSFS.MIN_PACKED_FORMAT) {
+            writeFile(dstOwner.getMinUnpackedRevFile(), minUnpackedRevision + "\n");
+        }
+        if (format >= FSFS.MIN_PACKED_REVPROP_FORMAT) {
+            writeFile(dstOwner.getMinUnpackedRevPropPath(), min_unpacked_revprop + "\n");
+        }
+        if (isUpdate && maxFilesPerDirectory > 0) {
+            /* Shards packed since the previous copy are now read from their packs. */
+            for (rev = 0; rev < minUnpackedRevision; rev += maxFilesPerDirectory) {
+                SVNFileUtil.deleteAll(new File(dstRevsDir, String.valueOf(rev / maxFilesPerDirectory)), true);
+            }
+            for (rev = 0; rev < min_unpacked_revprop; rev += maxFilesPerDirectory) {
+                SVNFileUtil.deleteAll(new File(dstRevPropsDir, String.valueOf(rev / maxFilesPerDirectory)), true);
             }
-            SVNFileUtil.copyFile(srcOwner.getRevisionPropertiesFile(rev, false), new File(dstDir, String.valueOf(rev)),
-                    true);
         }
 
         dstOwner.getTransactionsParentDir().mkdirs();
@@ -217,11 +304,17 @@ public class FSHotCopier {
         }
 
         File srcLocksDir = srcOwner.getDBLocksDir();
+        if (isUpdate) {
+            SVNFileUtil.deleteAll(dstOwner.getDBLocksDir(), true);
+        }
         if (srcLocksDir.exists()) {
             SVNFileUtil.copyDirectory(srcLocksDir, dstOwner.getDBLocksDir(), false, null);
         }
 
         File srcNodeOriginsDir = srcOwner.getNodeOriginsDir();
+        if (isUpdate) {
+            SVNFileUtil.deleteAll(dstOwner.getNodeOriginsDir(), true);
+        }
         if (srcNodeOriginsDir.exists()) {
             SVNFileUtil.copyDirectory(srcNodeOriginsDir, dstOwner.getNodeOriginsDir(), false, null);
         }
@@ -229,6 +322,165 @@ public class FSHotCopier {
         if (format >= FSFS.MIN_CURRENT_TXN_FORMAT) {
             SVNFileUtil.copyFile(srcOwner.getTransactionCurrentFile(), dstOwner.getTransactionCurrentFile(), true);
         }
-        dstOwner.writeDBFormat(format, maxFilesPerDirectory, false);
+        /* Revision properties of the destination have been replaced, so are cached ones. */
+        if (srcOwner.getRevPropGenerationFile().isFile()) {
+            SVNFileUtil.copyFile(srcOwner.getRevPropGenerationFile(), dstOwner.getRevPropGenerationFile(), true);
+        }
+        dstOwner.invalidateRevisionProperties();
+
+        writeFile(dstOwner.getCurrentFile(), current);
+        dstOwner.writeDBFormat(format, maxFilesPerDirectory, isUpdate);
+    }
+
+    private void checkIncrementalCopy(FSFS srcOwner, FSFS dstOwner, int format, long youngestRev, long minUnpackedRevision) throws SVNException {
+        dstOwner.open();
+        try {
+            if (!srcOwner.getUUID().equals(dstOwner.getUUID())) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_UUID_MISMATCH,
+                        "The UUID of the hotcopy source ''{0}'' does not match the UUID of the hotcopy destination ''{1}''",
+                        new Object[] {srcOwner.getUUID(), dstOwner.getUUID()});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            if (dstOwner.getDBFormat() != format || dstOwner.getMaxFilesPerDirectory() != srcOwner.getMaxFilesPerDirectory()) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE,
+                        "The FSFS format or layout of the hotcopy destination ''{0}'' does not match that of the hotcopy source; " +
+                        "please upgrade both repositories to the same format", dstOwner.getRepositoryRoot());
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            if (dstOwner.getYoungestRevision() > youngestRev) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE,
+                        "The hotcopy destination already contains more revisions ({0}) than the hotcopy source contains ({1}); " +
+                        "are source and destination swapped?", new Object[] {dstOwner.getYoungestRevision(), youngestRev});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            if (format >= FSFS.MIN_PACKED_FORMAT && dstOwner.getMinUnpackedRev() > minUnpackedRevision) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE,
+                        "The hotcopy destination contains more packed revisions ({0}) than the hotcopy source contains ({1})",
+                        new Object[] {dstOwner.getMinUnpackedRev() - 1, minUnpackedRevision - 1});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+        } finally {
+            dstOwner.close();
+        }
+    }
+
+    private static long parseYoungestRevision(String current) throws SVNException {
+        String line = current.trim();
+        int spaceIndex = line.indexOf(' ');
+        try {
+            return Long.parseLong(spaceIndex > 0 ? line.substring(0, spaceIndex) : line);
+        } catch (NumberFormatException nfe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Corrupt 'current' file");
+            SVNErrorManager.error(err, nfe, SVNLogType.FSFS);
+        }
+        return -1;
+    }
+
+    private static long getLastRevisionOfTask(long rev, long youngestRev, long maxFilesPerDirectory) {
+        if (maxFilesPerDirectory > 0) {
+            return Math.min(youngestRev, (rev / maxFilesPerDirectory + 1) * maxFilesPerDirectory - 1);
+        }
+        return Math.min(youngestRev, rev + REVISIONS_PER_TASK - 1);
+    }
+
+    private static void writeFile(File file, String contents) throws SVNException {
+        File tmpFile = SVNFileUtil.createUniqueFile(SVNFileUtil.getFileDir(file), SVNFileUtil.getFileName(file), ".tmp", false);
+        SVNFileUtil.writeToFile(tmpFile, contents, "US-ASCII");
+        SVNFileUtil.rename(tmpFile, file);
+    }
+
+    private static boolean isUnchanged(File srcFile, File dstFile) {
+        return dstFile.isFile() && srcFile.length() == dstFile.length() && srcFile.lastModified() == dstFile.lastModified();
+    }
+
+    private static void waitFor(Future<?> future) throws SVNException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Hot copy was interrupted");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SVNException) {
+                throw (SVNException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause != null ? cause.getMessage() : e.getMessage());
+            SVNErrorManager.error(err, cause, SVNLogType.FSFS);
+        }
+    }
+
+    private void copyDb(final File srcDb, final File dstDb) throws SVNException {
+        final SVNSqlJetDb db = SVNSqlJetDb.open(srcDb, SVNSqlJetDb.Mode.ReadWrite);
+        try{
+            SVNException e = (SVNException) db.getDb().runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        try {
+                            SVNFileUtil.copyFile(srcDb, dstDb, true);
+                        } catch (SVNException e) {
+                            return e;
+                        }
+                        return null;
+                    }
+                });
+            if(e!=null){
+                throw e;
+            }
+        } catch (SqlJetException e) {
+            SVNErrorMessage err = SVNErrorMessage.create( SVNErrorCode.SQLITE_ERROR, e );
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Copies a number of files or all files of a directory, skipping those
+     * that are already present in the destination unchanged.
+     */
+    private static class CopyTask implements Callable<Object> {
+
+        private final List<File> mySources = new ArrayList<File>();
+        private final List<File> myTargets = new ArrayList<File>();
+
+        public CopyTask() {
+        }
+
+        public CopyTask(File srcDir, File dstDir) {
+            File[] children = SVNFileListUtil.listFiles(srcDir);
+            for (int i = 0; children != null && i < children.length; i++) {
+                add(children[i], new File(dstDir, children[i].getName()));
+            }
+        }
+
+        public void add(File srcFile, File dstFile) {
+            mySources.add(srcFile);
+            myTargets.add(dstFile);
+        }
+
+        public Object call() throws SVNException {
+            for (int i = 0; i < mySources.size(); i++) {
+                File srcFile = mySources.get(i);
+                File dstFile = myTargets.get(i);
+                if (!isUnchanged(srcFile, dstFile)) {
+                    SVNFileUtil.copyFile(srcFile, dstFile, true);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-hotcopy-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
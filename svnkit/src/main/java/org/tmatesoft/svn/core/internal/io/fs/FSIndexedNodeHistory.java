@@ -0,0 +1,78 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.SVNLocationEntry;
+
+/**
+ * Walks the same history of a node as {@link FSNodeHistory} does, but takes
+ * the revisions that changed the node from {@link FSLogIndex} instead of
+ * reading node revisions one by one.
+ *
+ * <p/>
+ * As long as neither the node path nor any of its ancestors has been added,
+ * replaced or deleted, the node changed exactly in the revisions that touched
+ * its path or anything below it. Node history is only consulted at the
+ * revisions where that is not the case, to follow copies and to find where
+ * the history ends.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class FSIndexedNodeHistory {
+
+    private FSFS myFSFS;
+    private FSLogIndex myLogIndex;
+    private boolean myIsCrossCopies;
+    private String myPath;
+    private long myRevision;
+    private FSNodeHistory myNodeHistory;
+
+    public FSIndexedNodeHistory(FSFS owner, FSLogIndex logIndex, String path, long revision, boolean crossCopies) {
+        myFSFS = owner;
+        myLogIndex = logIndex;
+        myPath = path;
+        myRevision = revision;
+        myIsCrossCopies = crossCopies;
+    }
+
+    /**
+     * Returns the next (older) location of the node or <code>null</code> when
+     * the history is over.
+     */
+    public SVNLocationEntry getPreviousEntry() throws SVNException {
+        if (myNodeHistory == null) {
+            long revision = myLogIndex.getPreviousRevision(myPath, myRevision);
+            if (!FSRepository.isValidRevision(revision)) {
+                return null;
+            }
+            if (!myLogIndex.isBoundary(myPath, revision)) {
+                myRevision = revision - 1;
+                return new SVNLocationEntry(revision, myPath);
+            }
+            myNodeHistory = myFSFS.createRevisionRoot(revision).getNodeHistory(myPath);
+        }
+
+        myNodeHistory = myNodeHistory.getPreviousHistory(myIsCrossCopies);
+        if (myNodeHistory == null) {
+            return null;
+        }
+        SVNLocationEntry entry = myNodeHistory.getHistoryEntry();
+        if (!myLogIndex.isBoundary(entry.getPath(), entry.getRevision())) {
+            myNodeHistory = null;
+            myPath = entry.getPath();
+            myRevision = entry.getRevision() - 1;
+        }
+        return entry;
+    }
+}
@@ -36,6 +36,18 @@ import org.tmatesoft.svn.util.SVNLogType;
  */
 public class FSInputStream extends InputStream {
 
+    /*
+     * Combined windows are only worth caching when the delta chain
+     * is long enough to make their reconstruction expensive.
+     */
+    private static final int MIN_CACHED_CHAIN_LENGTH = 4;
+
+    private static final FSCache<FSCacheKey, byte[]> ourFulltextsCache =
+            new FSCache<FSCacheKey, byte[]>("fulltexts", FSFS.getCacheSizeOption("svnkit.fs.cache.fulltexts.size", 0x4000000));
+    private static final FSCache<FSCacheKey, byte[]> ourWindowsCache =
+            new FSCache<FSCacheKey, byte[]>("combined-windows", FSFS.getCacheSizeOption("svnkit.fs.cache.windows.size", 0));
+    private static long ourMaxCachedFulltextSize = FSFS.getCacheSizeOption("svnkit.fs.cache.fulltexts.entry.size", 0x100000);
+
     private LinkedList myRepStateList = new LinkedList();
     private int myChunkIndex;
     private boolean isChecksumFinalized;
@@ -45,6 +57,11 @@ public class FSInputStream extends InputStream {
     private MessageDigest myDigest;
     private ByteBuffer myBuffer;
     private SVNDeltaCombiner myCombiner;
+    private FSCacheKey myCacheKey;
+    private byte[] myFulltext;
+    private boolean myIsCachedFulltext;
+    private boolean myIsCachingWindows;
+    private boolean myIsCombinerBuffer;
 
     private FSInputStream(SVNDeltaCombiner combiner, FSRepresentation representation, FSFS owner) throws SVNException {
         myCombiner = combiner;
@@ -60,6 +77,21 @@ public class FSInputStream extends InputStream {
             SVNErrorManager.error(err, nsae, SVNLogType.FSFS);
         }
 
+        if (!representation.isTxn()) {
+            myCacheKey = new FSCacheKey(owner.getCacheRepositoryId(), representation.getRevision(), representation.getItemIndex());
+            byte[] fulltext = ourFulltextsCache.get(myCacheKey);
+            if (fulltext != null) {
+                /* Cached fulltexts were verified against the checksum when stored. */
+                myBuffer = ByteBuffer.wrap(fulltext);
+                myIsCachedFulltext = true;
+                isChecksumFinalized = true;
+                return;
+            }
+            if (myLength >= 0 && myLength <= ourMaxCachedFulltextSize) {
+                myFulltext = new byte[(int) myLength];
+            }
+        }
+
         try {
             buildRepresentationList(representation, myRepStateList, owner);
         } catch (SVNException svne) {
@@ -70,6 +102,24 @@ public class FSInputStream extends InputStream {
             close();
             throw svne;
         }
+        myIsCachingWindows = myCacheKey != null && myFulltext == null &&
+                myRepStateList.size() >= MIN_CACHED_CHAIN_LENGTH && ourWindowsCache.getMaxWeight() > 0;
+    }
+
+    public static FSCache<FSCacheKey, byte[]> getFulltextsCache() {
+        return ourFulltextsCache;
+    }
+
+    public static FSCache<FSCacheKey, byte[]> getWindowsCache() {
+        return ourWindowsCache;
+    }
+
+    public static long getMaxCachedFulltextSize() {
+        return ourMaxCachedFulltextSize;
+    }
+
+    public static void setMaxCachedFulltextSize(long size) {
+        ourMaxCachedFulltextSize = size;
     }
 
     public static InputStream createDeltaStream(SVNDeltaCombiner combiner, FSRevisionNode fileNode, FSFS owner) throws SVNException {
@@ -113,6 +163,13 @@ public class FSInputStream extends InputStream {
     private int readContents(byte[] buf, int offset, int length) throws SVNException {
         length = getContents(buf, offset, length);
         if (!isChecksumFinalized && length >= 0) {
+            if (myFulltext != null) {
+                if (myOffset + length <= myFulltext.length) {
+                    System.arraycopy(buf, offset, myFulltext, (int) myOffset, length);
+                } else {
+                    myFulltext = null;
+                }
+            }
             myDigest.update(buf, offset, length);
             myOffset += length;
 
@@ -126,6 +183,10 @@ public class FSInputStream extends InputStream {
                     });
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
+                if (myFulltext != null) {
+                    ourFulltextsCache.put(myCacheKey, myFulltext, myFulltext.length);
+                    myFulltext = null;
+                }
             }
         }
 
@@ -146,8 +207,30 @@ public class FSInputStream extends InputStream {
                 targetPos += copyLength;
                 remaining -= copyLength;
                 read += copyLength;
+            } else if (myIsCachedFulltext) {
+                if (read == 0) {
+                    read = -1;
+                }
+                break;
             } else {
+                releaseBuffer();
+                if (myIsCachingWindows) {
+                    byte[] cachedTarget = ourWindowsCache.get(getWindowCacheKey(myChunkIndex));
+                    if (cachedTarget != null) {
+                        myBuffer = ByteBuffer.wrap(cachedTarget);
+                        myChunkIndex++;
+                        continue;
+                    }
+                }
                 FSRepresentationState resultState = (FSRepresentationState) myRepStateList.getFirst();
+                if (myIsCachingWindows) {
+                    /* Windows taken from the cache were not read from the file yet. */
+                    while (resultState.myChunkIndex < myChunkIndex && resultState.myOffset < resultState.myEnd) {
+                        myCombiner.skipWindow(resultState.myFile);
+                        resultState.myChunkIndex++;
+                        resultState.myOffset = resultState.myFile.position();
+                    }
+                }
                 if (resultState.myOffset == resultState.myEnd) {
                     if (read == 0) {
                         read = -1;
@@ -173,6 +256,12 @@ public class FSInputStream extends InputStream {
                     curState.myOffset = curState.myFile.position();
                     if (target != null) {
                         myBuffer = target;
+                        myIsCombinerBuffer = true;
+                        if (myIsCachingWindows) {
+                            byte[] targetCopy = new byte[target.remaining()];
+                            target.duplicate().get(targetCopy);
+                            ourWindowsCache.put(getWindowCacheKey(myChunkIndex), targetCopy, targetCopy.length);
+                        }
                         myChunkIndex++;
                         break;
                     }
@@ -182,7 +271,21 @@ public class FSInputStream extends InputStream {
         return read;
     }
 
+    private FSCacheKey getWindowCacheKey(int chunkIndex) {
+        return new FSCacheKey(myCacheKey.getRepositoryId(), myCacheKey.getRevision(), myCacheKey.getOffset(), chunkIndex);
+    }
+
+    private void releaseBuffer() {
+        if (myIsCombinerBuffer) {
+            /* Consumed windows go back to the combiner, they are reused for the next ones. */
+            myCombiner.releaseTarget(myBuffer);
+            myIsCombinerBuffer = false;
+        }
+        myBuffer = null;
+    }
+
     public void close() {
+        releaseBuffer();
         for (Iterator states = myRepStateList.iterator(); states.hasNext();) {
             FSRepresentationState state = (FSRepresentationState) states.next();
             if (state.myFile != null) {
@@ -31,6 +31,7 @@ import org.tmatesoft.svn.core.SVNMergeInfo;
 import org.tmatesoft.svn.core.SVNMergeInfoInheritance;
 import org.tmatesoft.svn.core.SVNMergeRange;
 import org.tmatesoft.svn.core.SVNMergeRangeList;
+import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
@@ -40,6 +41,7 @@ import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNHashSet;
 import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeDriver;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeInfoManager;
 import org.tmatesoft.svn.core.io.ISVNLocationSegmentHandler;
@@ -47,6 +49,7 @@ import org.tmatesoft.svn.core.io.SVNLocationEntry;
 import org.tmatesoft.svn.core.io.SVNLocationSegment;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
@@ -55,6 +58,7 @@ import org.tmatesoft.svn.core.wc.SVNRevision;
  */
 public class FSLog {
     private static final int MAX_OPEN_HISTORIES = 128;  
+    private static final int REVISION_PROPERTIES_BATCH_SIZE = 1000;
     
     private FSFS myFSFS;
     private String[] myPaths;
@@ -68,6 +72,8 @@ public class FSLog {
     private ISVNLogEntryHandler myHandler;
     private SVNMergeInfoManager myMergeInfoManager;
     private String[] myRevPropNames;
+    private SVNProperties[] myRevisionPropertiesBatch;
+    private long myRevisionPropertiesBatchStart;
     
     private static final Comparator RLP_COMPARATOR = new Comparator() {
         public int compare(Object arg1, Object arg2) {
@@ -144,6 +150,7 @@ public class FSLog {
         myRevPropNames = revPropNames;
         myLimit = limit;
         myHandler = handler;
+        myRevisionPropertiesBatch = null;
     }
     
     public long runLog() throws SVNException {
@@ -154,12 +161,19 @@ public class FSLog {
                 count = myLimit;
             }
         
-            for (int i = 0; i < count; i++) {
-                long rev = myStartRevision + i;
-                if (myIsDescending) {
-                    rev = myEndRevision - i;
+            try {
+                for (int i = 0; i < count; i++) {
+                    long rev = myStartRevision + i;
+                    if (myIsDescending) {
+                        rev = myEndRevision - i;
+                    }
+                    if (myHandler != null) {
+                        fetchRevisionProperties(rev, myIsDescending ? myEndRevision - count + 1 : myStartRevision + count - 1);
+                    }
+                    sendLog(rev, null, null, false, false, false);
                 }
-                sendLog(rev, null, null, false, false, false);
+            } finally {
+                myRevisionPropertiesBatch = null;
             }
             
             return count;
@@ -269,6 +283,29 @@ public class FSLog {
         return sendCount;
     }
     
+    /**
+     * Reads properties of the revisions from <code>revision</code> up to <code>lastRevision</code>
+     * (in either direction) in one batch, unless <code>revision</code> is in the current batch.
+     */
+    private void fetchRevisionProperties(long revision, long lastRevision) throws SVNException {
+        if (myRevisionPropertiesBatch != null && revision >= myRevisionPropertiesBatchStart &&
+                revision < myRevisionPropertiesBatchStart + myRevisionPropertiesBatch.length) {
+            return;
+        }
+        long start = Math.min(revision, Math.max(lastRevision, revision - REVISION_PROPERTIES_BATCH_SIZE + 1));
+        long end = Math.max(revision, Math.min(lastRevision, revision + REVISION_PROPERTIES_BATCH_SIZE - 1));
+        myRevisionPropertiesBatch = myFSFS.getRevisionProperties(start, end);
+        myRevisionPropertiesBatchStart = start;
+    }
+
+    private SVNProperties getRevisionProperties(long revision) throws SVNException {
+        if (myRevisionPropertiesBatch != null && revision >= myRevisionPropertiesBatchStart &&
+                revision < myRevisionPropertiesBatchStart + myRevisionPropertiesBatch.length) {
+            return myRevisionPropertiesBatch[(int) (revision - myRevisionPropertiesBatchStart)];
+        }
+        return myFSFS.getRevisionProperties(revision);
+    }
+
     private long getNextHistoryRevision(PathInfo[] histories) {
         long nextRevision = SVNRepository.INVALID_REVISION;
         for (int i = 0; i < histories.length; i++) {
@@ -344,7 +381,7 @@ public class FSLog {
         }
 
         if (getRevProps) {
-            SVNProperties revisionProps = myFSFS.getRevisionProperties(revision);
+            SVNProperties revisionProps = getRevisionProperties(revision);
 
             if (revisionProps != null) {
                 String author = revisionProps.getStringValue(SVNRevisionProperty.AUTHOR);
@@ -457,6 +494,10 @@ public class FSLog {
     private PathInfo[] getPathHistories(String[] paths, long start, long end, boolean strictNodeHistory) throws SVNException {
         PathInfo[] histories = new PathInfo[paths.length];
         FSRevisionRoot root = myFSFS.createRevisionRoot(end);
+        FSLogIndex logIndex = myFSFS.getLogIndex();
+        if (logIndex != null && logIndex.getIndexedRevision() < end) {
+            logIndex = null;
+        }
         for (int i = 0; i < paths.length; i++) {
             String path = paths[i];
             
@@ -466,7 +507,12 @@ public class FSLog {
             pathHistory.myIsDone = false;
             pathHistory.myIsFirstTime = true;
             
-            if (i < MAX_OPEN_HISTORIES) {
+            if (logIndex != null && !"/".equals(path)) {
+                if (root.checkNodeKind(path) == SVNNodeKind.NONE) {
+                    SVNErrorManager.error(FSErrors.errorNotFound(root, path), SVNLogType.FSFS);
+                }
+                pathHistory.myIndexedHistory = new FSIndexedNodeHistory(myFSFS, logIndex, path, end, !strictNodeHistory);
+            } else if (i < MAX_OPEN_HISTORIES) {
                 pathHistory.myHistory = root.getNodeHistory(path);
             }
             
@@ -765,12 +811,22 @@ public class FSLog {
     
     private class PathInfo {
         FSNodeHistory myHistory;
+        FSIndexedNodeHistory myIndexedHistory;
         boolean myIsDone;
         boolean myIsFirstTime;
         long myHistoryRevision;
         String myPath;
         
         public PathInfo getHistory(boolean strictNodeHistory, long start) throws SVNException {
+            if (myIndexedHistory != null) {
+                SVNLocationEntry entry = myIndexedHistory.getPreviousEntry();
+                if (entry == null) {
+                    myIsDone = true;
+                    return this;
+                }
+                return setHistoryEntry(entry, start);
+            }
+
             FSNodeHistory history = null;
             if (myHistory != null) {
                 history = myHistory.getPreviousHistory(strictNodeHistory ? false : true);
@@ -791,8 +847,12 @@ public class FSLog {
                 return this;
             }
 
-            myPath = history.getHistoryEntry().getPath();
-            myHistoryRevision = history.getHistoryEntry().getRevision();
+            return setHistoryEntry(history.getHistoryEntry(), start);
+        }
+
+        private PathInfo setHistoryEntry(SVNLocationEntry entry, long start) {
+            myPath = entry.getPath();
+            myHistoryRevision = entry.getRevision();
             
             if (myHistoryRevision < start) {
                 myIsDone = true;
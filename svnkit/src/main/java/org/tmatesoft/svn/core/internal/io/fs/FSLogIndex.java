@@ -0,0 +1,323 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.ISVNEventHandler;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Optional index of the changed paths of a repository, stored in
+ * <code>db/log-index.db</code>.
+ *
+ * <p/>
+ * For every revision the index keeps a row for each changed path and for each
+ * of its ancestors but the root, so the revisions that touched a path or
+ * anything below it are found with a single index seek. Paths that were added,
+ * replaced or deleted are also recorded as boundaries: at a boundary the history
+ * of a path can not be derived from the changed paths alone and node history
+ * has to be consulted.
+ *
+ * <p/>
+ * The index exists only when it has been built with
+ * {@link org.tmatesoft.svn.core.wc.admin.SVNAdminClient#doBuildLogIndex(java.io.File)};
+ * after that it is brought up to date on every commit.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class FSLogIndex {
+
+    private static final int SCHEMA_FORMAT = 1;
+    private static final int REVISIONS_PER_TRANSACTION = 1000;
+
+    private static final String CHANGES_TABLE = "changes";
+    private static final String BOUNDARIES_TABLE = "boundaries";
+    private static final String INDEXED_REVISION_TABLE = "indexed_revision";
+
+    private static final String CHANGES_TABLE_SQL = "create table changes (path text not null, " +
+                                                    "                      revision integer not null, " +
+                                                    "                      primary key (path, revision)) without rowid;";
+    private static final String BOUNDARIES_TABLE_SQL = "create table boundaries (path text not null, " +
+                                                       "                         revision integer not null, " +
+                                                       "                         primary key (path, revision)) without rowid;";
+    private static final String INDEXED_REVISION_TABLE_SQL = "create table indexed_revision (revision integer not null);";
+
+    private SqlJetDb myDB;
+    private ISqlJetTable myChangesTable;
+    private ISqlJetTable myBoundariesTable;
+    private ISqlJetTable myIndexedRevisionTable;
+
+    private FSLogIndex(SqlJetDb db) throws SqlJetException {
+        myDB = db;
+        myChangesTable = db.getTable(CHANGES_TABLE);
+        myBoundariesTable = db.getTable(BOUNDARIES_TABLE);
+        myIndexedRevisionTable = db.getTable(INDEXED_REVISION_TABLE);
+    }
+
+    public static FSLogIndex open(FSFS fsfs) throws SVNException {
+        SqlJetDb db = null;
+        try {
+            db = SqlJetDb.open(fsfs.getLogIndexFile(), true);
+            db.setSafetyLevel(SqlJetSafetyLevel.OFF);
+            checkFormat(db);
+            return new FSLogIndex(db);
+        } catch (SqlJetException e) {
+            if (db != null) {
+                try {
+                    db.close();
+                } catch (SqlJetException inner) {
+                    //
+                }
+            }
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    /**
+     * Creates the index of <code>fsfs</code> from scratch and indexes all of
+     * its revisions.
+     */
+    public static void build(FSFS fsfs, ISVNCanceller canceller, ISVNAdminEventHandler eventHandler) throws SVNException {
+        fsfs.closeLogIndex();
+        SVNFileUtil.deleteFile(fsfs.getLogIndexFile());
+        FSLogIndex logIndex = open(fsfs);
+        try {
+            logIndex.update(fsfs, fsfs.getYoungestRevision(), canceller, eventHandler);
+        } finally {
+            logIndex.close();
+        }
+    }
+
+    private static void checkFormat(SqlJetDb db) throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                int version = db.getOptions().getUserVersion();
+                if (version < SCHEMA_FORMAT) {
+                    db.getOptions().setAutovacuum(true);
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getOptions().setUserVersion(SCHEMA_FORMAT);
+                            db.createTable(CHANGES_TABLE_SQL);
+                            db.createTable(BOUNDARIES_TABLE_SQL);
+                            db.createTable(INDEXED_REVISION_TABLE_SQL);
+                            db.getTable(INDEXED_REVISION_TABLE).insert(new Object[] {Long.valueOf(SVNRepository.INVALID_REVISION)});
+                            return null;
+                        }
+                    });
+                } else if (version > SCHEMA_FORMAT) {
+                    throw new SqlJetException("Schema format " + version + " not recognized");
+                }
+                return null;
+            }
+        });
+    }
+
+    public void close() throws SVNException {
+        if (myDB != null) {
+            try {
+                myDB.close();
+            } catch (SqlJetException e) {
+                SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            } finally {
+                myDB = null;
+                myChangesTable = null;
+                myBoundariesTable = null;
+                myIndexedRevisionTable = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the youngest revision the index knows about; all revisions up to
+     * it are indexed.
+     */
+    public long getIndexedRevision() throws SVNException {
+        Long revision = (Long) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return Long.valueOf(readIndexedRevision());
+            }
+        });
+        return revision.longValue();
+    }
+
+    /**
+     * Indexes revisions that follow the indexed revision up to <code>youngest</code>.
+     */
+    public void update(final FSFS fsfs, final long youngest, ISVNCanceller canceller, ISVNAdminEventHandler eventHandler) throws SVNException {
+        long indexedRevision = getIndexedRevision();
+        while (indexedRevision < youngest) {
+            if (canceller != null) {
+                canceller.checkCancelled();
+            }
+            final long from = indexedRevision + 1;
+            final long to = Math.min(youngest, indexedRevision + REVISIONS_PER_TRANSACTION);
+            final SVNException[] error = new SVNException[1];
+            try {
+                indexedRevision = ((Long) myDB.runWriteTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        // another writer may have been ahead of us
+                        long revision = readIndexedRevision();
+                        if (revision >= to) {
+                            return Long.valueOf(revision);
+                        }
+                        try {
+                            for (revision++; revision <= to; revision++) {
+                                indexRevision(fsfs.createRevisionRoot(revision));
+                            }
+                        } catch (SVNException e) {
+                            error[0] = e;
+                            throw new SqlJetException(e);
+                        }
+                        ISqlJetCursor cursor = myIndexedRevisionTable.open();
+                        try {
+                            cursor.update(new Object[] {Long.valueOf(to)});
+                        } finally {
+                            cursor.close();
+                        }
+                        return Long.valueOf(to);
+                    }
+                })).longValue();
+            } catch (SqlJetException e) {
+                if (error[0] != null) {
+                    throw error[0];
+                }
+                SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            }
+            if (eventHandler != null) {
+                for (long revision = from; revision <= indexedRevision; revision++) {
+                    SVNAdminEvent event = new SVNAdminEvent(revision, SVNAdminEventAction.LOG_INDEX_REVISION, "* Indexed revision " + revision + ".");
+                    eventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the youngest revision not younger than <code>revision</code> that
+     * changed <code>path</code> or anything below it, or that added, replaced or
+     * deleted <code>path</code> or one of its ancestors.
+     */
+    public long getPreviousRevision(final String path, final long revision) throws SVNException {
+        Long previous = (Long) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                long previousRevision = findPreviousRevision(myChangesTable, path, revision);
+                for (String parent = SVNPathUtil.removeTail(path); !"/".equals(parent) && parent.length() > 0; parent = SVNPathUtil.removeTail(parent)) {
+                    previousRevision = Math.max(previousRevision, findPreviousRevision(myBoundariesTable, parent, revision));
+                }
+                return Long.valueOf(previousRevision);
+            }
+        });
+        return previous.longValue();
+    }
+
+    /**
+     * Tells whether <code>path</code> or one of its ancestors was added, replaced
+     * or deleted in <code>revision</code>.
+     */
+    public boolean isBoundary(final String path, final long revision) throws SVNException {
+        Boolean boundary = (Boolean) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                for (String current = path; !"/".equals(current) && current.length() > 0; current = SVNPathUtil.removeTail(current)) {
+                    ISqlJetCursor cursor = myBoundariesTable.lookup(myBoundariesTable.getPrimaryKeyIndexName(), new Object[] {current, Long.valueOf(revision)});
+                    try {
+                        if (!cursor.eof()) {
+                            return Boolean.TRUE;
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                return Boolean.FALSE;
+            }
+        });
+        return boundary.booleanValue();
+    }
+
+    private void indexRevision(FSRevisionRoot root) throws SVNException, SqlJetException {
+        Long revision = Long.valueOf(root.getRevision());
+        Map changedPaths = root.getChangedPaths();
+        for (Iterator paths = changedPaths.keySet().iterator(); paths.hasNext();) {
+            String changedPath = (String) paths.next();
+            FSPathChange change = (FSPathChange) changedPaths.get(changedPath);
+            FSPathChangeKind kind = change.getChangeKind();
+            if (kind == FSPathChangeKind.FS_PATH_CHANGE_RESET) {
+                continue;
+            }
+            String path = SVNPathUtil.canonicalizeAbsolutePath(changedPath);
+            if (kind == FSPathChangeKind.FS_PATH_CHANGE_ADD || kind == FSPathChangeKind.FS_PATH_CHANGE_DELETE ||
+                    kind == FSPathChangeKind.FS_PATH_CHANGE_REPLACE) {
+                myBoundariesTable.insertOr(SqlJetConflictAction.IGNORE, new Object[] {path, revision});
+            }
+            for (; !"/".equals(path) && path.length() > 0; path = SVNPathUtil.removeTail(path)) {
+                myChangesTable.insertOr(SqlJetConflictAction.IGNORE, new Object[] {path, revision});
+            }
+        }
+    }
+
+    private long readIndexedRevision() throws SqlJetException {
+        ISqlJetCursor cursor = myIndexedRevisionTable.open();
+        try {
+            return cursor.eof() ? SVNRepository.INVALID_REVISION : cursor.getInteger(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long findPreviousRevision(ISqlJetTable table, String path, long revision) throws SqlJetException {
+        ISqlJetCursor cursor = table.scope(table.getPrimaryKeyIndexName(), new Object[] {path, Long.valueOf(0)},
+                new Object[] {path, Long.valueOf(revision)});
+        try {
+            return cursor.last() ? cursor.getInteger(1) : SVNRepository.INVALID_REVISION;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Object runReadTransaction(ISqlJetTransaction transaction) throws SVNException {
+        try {
+            return myDB.runReadTransaction(transaction);
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    private static SVNErrorMessage convertError(SqlJetException e) {
+        SqlJetErrorCode sqlCode = e.getErrorCode();
+        SVNErrorCode errorCode = sqlCode == SqlJetErrorCode.READONLY ? SVNErrorCode.SQLITE_READONLY : SVNErrorCode.SQLITE_ERROR;
+        return SVNErrorMessage.create(errorCode, e.getMessage());
+    }
+}
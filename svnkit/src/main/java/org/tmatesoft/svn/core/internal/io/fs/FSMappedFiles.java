@@ -0,0 +1,123 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Registry of read-only memory mappings of pack files. Pack files are
+ * immutable once they are visible to readers, so one mapping per file is
+ * shared by all {@link FSFile} instances.
+ *
+ * <p/>
+ * Revision files of unpacked shards are never mapped: they are deleted
+ * when their shard is packed, and a mapping, which is only undone when the
+ * buffer is garbage collected, would prevent that on Windows. Mappings are
+ * not unmapped explicitly either, since readers may still hold views of a
+ * released mapping.
+ *
+ * <p/>
+ * Mapping is off by default and is enabled with the
+ * <code>svnkit.fs.mmap</code> system property. The total size of mapped
+ * files is limited by <code>svnkit.fs.mmap.size</code> (1 GB by default);
+ * files larger than the mapping limit are read through a file channel.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class FSMappedFiles {
+
+    private static final long MAX_MAPPED_FILE_SIZE = Integer.MAX_VALUE;
+
+    private static boolean ourIsEnabled = Boolean.valueOf(System.getProperty("svnkit.fs.mmap", Boolean.FALSE.toString())).booleanValue();
+    private static final FSCache<String, ByteBuffer> ourMappings =
+            new FSCache<String, ByteBuffer>("mapped-files", Long.getLong("svnkit.fs.mmap.size", 0x40000000L).longValue());
+
+    public static boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+        if (!enabled) {
+            ourMappings.clear();
+        }
+    }
+
+    public static FSCache<String, ByteBuffer> getMappings() {
+        return ourMappings;
+    }
+
+    /**
+     * Opens an immutable repository file. Pack files are memory-mapped when
+     * mapping is enabled and the file fits, other files are read through a
+     * regular file channel.
+     */
+    public static FSFile open(FSFS owner, File file) throws SVNException {
+        if (!ourIsEnabled || !FSFS.PACK_KIND_PACK.equals(file.getName())) {
+            return new FSFile(file);
+        }
+        final String key = owner.getCacheRepositoryId() + ":" + file.getPath();
+        ByteBuffer mapping = ourMappings.get(key);
+        if (mapping == null) {
+            mapping = map(file);
+            if (mapping == null) {
+                return new FSFile(file);
+            }
+            ourMappings.put(key, mapping, mapping.capacity());
+        }
+        return new FSFile(file, mapping.duplicate());
+    }
+
+    /**
+     * Drops the mapping of <code>file</code>, if any, so that it is not
+     * handed to new readers. Used when a pack file is about to be rewritten.
+     */
+    public static void release(FSFS owner, File file) throws SVNException {
+        ourMappings.remove(owner.getCacheRepositoryId() + ":" + file.getPath());
+    }
+
+    private static ByteBuffer map(File file) {
+        RandomAccessFile raFile = null;
+        try {
+            raFile = new RandomAccessFile(file, "r");
+            final FileChannel channel = raFile.getChannel();
+            final long size = channel.size();
+            if (size == 0 || size > MAX_MAPPED_FILE_SIZE || size > ourMappings.getMaxWeight()) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return null;
+        } finally {
+            if (raFile != null) {
+                try {
+                    raFile.close();
+                } catch (IOException e) {
+                    //
+                }
+            }
+        }
+    }
+
+    private FSMappedFiles() {
+    }
+}
@@ -311,7 +311,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
         mySourceOffset += diffWindow.getSourceViewLength();
         try {
-            diffWindow.writeTo(myTargetFileOS, !isHeaderWritten, myDeltaCompression);
+            diffWindow.writeTo(myTargetFileOS, !isHeaderWritten, myDeltaCompression, myTxnRoot.getOwner().getDeltaCompressionLevel());
             isHeaderWritten = true;
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
@@ -338,16 +338,15 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
             final IFSRepresentationCacheManager reposCacheManager = fsfs.getRepositoryCacheManager();
             if (reposCacheManager != null) {
                 try {
-                    reposCacheManager.runReadTransaction(new IFSSqlJetTransaction() {
-                        public void run() throws SVNException {
-                            final FSRepresentation oldRep = reposCacheManager.getRepresentationByHash(representation.getSHA1HexDigest());
-                            if (oldRep != null) {
-                                oldRep.setUniquifier(representation.getUniquifier());
-                                oldRep.setMD5HexDigest(representation.getMD5HexDigest());
-//                                myRevNode.setTextRepresentation(oldRep);
-                            }
-                        }
-                    });
+                    oldRepresentation = reposCacheManager.getRepresentationByHash(representation.getSHA1HexDigest());
+                    if (oldRepresentation != null && oldRepresentation.getRevision() > fsfs.getYoungestRevision()) {
+                        // left behind by a revision that is not in the repository (anymore)
+                        oldRepresentation = null;
+                    }
+                    if (oldRepresentation != null) {
+                        oldRepresentation.setUniquifier(representation.getUniquifier());
+                        oldRepresentation.setMD5HexDigest(representation.getMD5HexDigest());
+                    }
                 } catch (SVNException e) {
                     if (e.getErrorMessage().getErrorCode() == SVNErrorCode.FS_CORRUPT || e.getErrorMessage().getErrorCode().getCategory() == SVNErrorCode.MALFUNC_CATEGORY) {
                         throw e;
@@ -12,15 +12,26 @@
 package org.tmatesoft.svn.core.internal.io.fs;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.List;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.tmatesoft.svn.core.ISVNCanceller;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
 import org.tmatesoft.svn.core.internal.io.fs.revprop.SVNFSFSPackedRevProps;
 import org.tmatesoft.svn.core.internal.io.fs.revprop.SVNFSFSPackedRevPropsManifest;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
@@ -34,28 +45,53 @@ import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
+ * Packs completed shards of a repository.
+ *
+ * <p/>
+ * Pack files of several shards are built concurrently by a pool of workers,
+ * the number of which is set with the <code>svnkit.fs.pack.threads</code>
+ * system property (the number of available processors by default). A pack
+ * is built in a temporary directory that is renamed once complete, so readers
+ * keep using the unpacked shard until <code>min-unpacked-rev</code> is
+ * advanced. Shards are switched to their packs one by one in order, each
+ * under the repository write lock, while building packs only takes the pack
+ * lock, so commits are not blocked for the duration of packing.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class FSPacker {
 
+    private static final String TMP_PACK_DIR_SUFFIX = ".tmp";
+
+    private static int ourThreadsCount = Integer.getInteger("svnkit.fs.pack.threads", Runtime.getRuntime().availableProcessors()).intValue();
+
     private ISVNCanceller myCanceller;
     private ISVNAdminEventHandler myNotifyHandler;
+    private volatile boolean myIsAborted;
 
     public FSPacker(ISVNAdminEventHandler notifyHandler) {
         myCanceller = notifyHandler == null ? ISVNCanceller.NULL : notifyHandler;
         myNotifyHandler = notifyHandler;
     }
 
+    public static synchronized int getThreadsCount() {
+        return ourThreadsCount;
+    }
+
+    public static synchronized void setThreadsCount(int threadsCount) {
+        ourThreadsCount = threadsCount;
+    }
+
     public void pack(FSFS fsfs) throws SVNException {
-        FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(fsfs);
-        synchronized (writeLock) {
+        FSWriteLock packLock = FSWriteLock.getWriteLockForPack(fsfs);
+        synchronized (packLock) {
             try {
-                writeLock.lock();
+                packLock.lock();
                 packImpl(fsfs);
             } finally {
-                writeLock.unlock();
-                FSWriteLock.release(writeLock);
+                packLock.unlock();
+                FSWriteLock.release(packLock);
             }
         }
     }
@@ -88,32 +124,61 @@ public class FSPacker {
             return;
         }
 
-        for (long i = minUnpackedRev / maxFilesPerDirectory; i < completedShards; i++) {
-            myCanceller.checkCancelled();
-            packShard(fsfs, i, packRevisionProperties);
+        myIsAborted = false;
+        int threadsCount = Math.max(getThreadsCount(), 1);
+        ExecutorService workers = new ThreadPoolExecutor(threadsCount, threadsCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        LinkedList<Future<Object>> packs = new LinkedList<Future<Object>>();
+        try {
+            long nextShard = minUnpackedRev / maxFilesPerDirectory;
+            for (long i = minUnpackedRev / maxFilesPerDirectory; i < completedShards; i++) {
+                // do not build packs too far ahead, each of them takes as much space as its shard
+                for (; nextShard < completedShards && packs.size() < 2 * threadsCount; nextShard++) {
+                    packs.add(workers.submit(new ShardPacker(fsfs, nextShard)));
+                }
+                myCanceller.checkCancelled();
+                firePackEvent(i, true);
+                waitFor(packs.removeFirst());
+                packShard(fsfs, i, packRevisionProperties);
+            }
+        } finally {
+            myIsAborted = true;
+            workers.shutdownNow();
         }
     }
 
     private void packShard(FSFS fsfs, long shard, boolean packRevisionProperties) throws SVNException {
         File revShardPath = new File(fsfs.getDBRevsDir(), String.valueOf(shard));
         File revpropShardPath = new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard));
-        packRevShard(fsfs, shard, revShardPath);
 
-        if (packRevisionProperties) {
-            myCanceller.checkCancelled();
-            packRevPropShard(fsfs, shard, revpropShardPath, (long)(0.9 * fsfs.getRevPropPackSize()));
-        }
+        FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(fsfs);
+        synchronized (writeLock) {
+            try {
+                writeLock.lock();
+                if (packRevisionProperties) {
+                    myCanceller.checkCancelled();
+                    packRevPropShard(fsfs, shard, revpropShardPath, (long)(0.9 * fsfs.getRevPropPackSize()));
+                }
 
+                File finalPath = fsfs.getMinUnpackedRevFile();
+                File tmpFile = SVNFileUtil.createUniqueFile(fsfs.getDBRoot(), "tempfile", ".tmp", false);
+                String line = String.valueOf((shard + 1) * fsfs.getMaxFilesPerDirectory()) + '\n';
+                SVNFileUtil.writeToFile(tmpFile, line, "UTF-8");
+                SVNFileUtil.rename(tmpFile, finalPath);
+                if (packRevisionProperties) {
+                    deleteRevPropShard(revpropShardPath, shard, fsfs.getMaxFilesPerDirectory());
+                }
+            } finally {
+                writeLock.unlock();
+                FSWriteLock.release(writeLock);
+            }
+        }
 
-        File finalPath = fsfs.getMinUnpackedRevFile();
-        File tmpFile = SVNFileUtil.createUniqueFile(fsfs.getDBRoot(), "tempfile", ".tmp", false);
-        String line = String.valueOf((shard + 1) * fsfs.getMaxFilesPerDirectory()) + '\n';
-        SVNFileUtil.writeToFile(tmpFile, line, "UTF-8");
-        SVNFileUtil.rename(tmpFile, finalPath);
-        SVNFileUtil.deleteAll(revShardPath, true, myCanceller);
-        if (packRevisionProperties) {
-            deleteRevPropShard(revpropShardPath, shard, fsfs.getMaxFilesPerDirectory());
+        for (long rev = shard * fsfs.getMaxFilesPerDirectory(); rev < (shard + 1) * fsfs.getMaxFilesPerDirectory(); rev++) {
+            final File revFile = new File(revShardPath, String.valueOf(rev));
+            FSLogicalAddressingIndex.invalidate(fsfs, revFile);
         }
+        SVNFileUtil.deleteAll(revShardPath, true, myCanceller);
 
         firePackEvent(shard, false);
     }
@@ -134,43 +199,55 @@ public class FSPacker {
 
     private void packRevShard(FSFS fsfs, long shard, File shardPath) throws SVNException {
         File packDir = fsfs.getPackDir(shard);
-        File packFile = fsfs.getPackFile(shard);
-        File manifestFile = fsfs.getManifestFile(shard);
+        File tmpPackDir = new File(packDir.getParentFile(), packDir.getName() + TMP_PACK_DIR_SUFFIX);
 
-        firePackEvent(shard, true);
-
-        SVNFileUtil.deleteAll(packDir, false, myCanceller);
+        fsfs.invalidatePackManifest(shard);
+        SVNFileUtil.deleteAll(tmpPackDir, true);
+        tmpPackDir.mkdirs();
 
         if (fsfs.isUseLogAddressing()) {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_UNSUPPORTED_FORMAT, "Logical addressing is unsupported for FS format ''{0}''", new Object[]{fsfs.getDBFormat()});
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         } else {
-            packPhysicallyAddressed(fsfs, shard, shardPath, packFile, manifestFile);
+            packPhysicallyAddressed(fsfs, shard, shardPath, new File(tmpPackDir, FSFS.PACK_KIND_PACK), new File(tmpPackDir, FSFS.PACK_KIND_MANIFEST));
         }
+        SVNFileUtil.deleteAll(packDir, true);
+        SVNFileUtil.rename(tmpPackDir, packDir);
     }
 
     private void packPhysicallyAddressed(FSFS fsfs, long shard, File shardPath, File packFile, File manifestFile) throws SVNException {
         long startRev = shard * fsfs.getMaxFilesPerDirectory();
         long endRev = (shard + 1) * fsfs.getMaxFilesPerDirectory() - 1;
         long nextOffset = 0;
-        OutputStream packFileOS = null;
-        OutputStream manifestFileOS = null;
+        FileOutputStream packFileOS = null;
+        FileOutputStream manifestFileOS = null;
         try {
-            packFileOS = SVNFileUtil.openFileForWriting(packFile);
-            manifestFileOS = SVNFileUtil.openFileForWriting(manifestFile);
+            packFileOS = SVNFileUtil.createFileOutputStream(packFile, false);
+            manifestFileOS = SVNFileUtil.createFileOutputStream(manifestFile, false);
+            FileChannel packChannel = packFileOS.getChannel();
+            StringBuffer manifest = new StringBuffer();
             for (long rev = startRev; rev <= endRev; rev++) {
+                if (myIsAborted) {
+                    SVNErrorManager.cancel("Packing has been aborted", SVNLogType.FSFS);
+                }
                 File path = new File(shardPath, String.valueOf(rev));
-                String line = String.valueOf(nextOffset) + '\n';
-                manifestFileOS.write(line.getBytes("UTF-8"));
-                nextOffset += path.length();
-                InputStream revIS = null;
+                manifest.append(nextOffset).append('\n');
+                FileInputStream revIS = null;
                 try {
-                    revIS = SVNFileUtil.openFileForReading(path);
-                    FSRepositoryUtil.copy(revIS, packFileOS, myCanceller);
+                    revIS = SVNFileUtil.createFileInputStream(path);
+                    FileChannel revChannel = revIS.getChannel();
+                    long size = revChannel.size();
+                    for (long position = 0; position < size; ) {
+                        position += revChannel.transferTo(position, size - position, packChannel);
+                    }
+                    nextOffset += size;
                 } finally {
                     SVNFileUtil.closeFile(revIS);
                 }
             }
+            manifestFileOS.write(manifest.toString().getBytes("UTF-8"));
+            packChannel.force(false);
+            manifestFileOS.getChannel().force(false);
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getMessage());
             SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
@@ -247,4 +324,51 @@ public class FSPacker {
         final File packFile = new File(packPath, packName);
         packedRevProps.writeToFile(packFile, compressPackedRevprops);
     }
+
+    private static void waitFor(Future<?> future) throws SVNException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Packing was interrupted");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SVNException) {
+                throw (SVNException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause != null ? cause.getMessage() : e.getMessage());
+            SVNErrorManager.error(err, cause, SVNLogType.FSFS);
+        }
+    }
+
+    private class ShardPacker implements Callable<Object> {
+
+        private final FSFS myOwner;
+        private final long myShard;
+
+        public ShardPacker(FSFS owner, long shard) {
+            myOwner = owner;
+            myShard = shard;
+        }
+
+        public Object call() throws SVNException {
+            packRevShard(myOwner, myShard, new File(myOwner.getDBRevsDir(), String.valueOf(myShard)));
+            return null;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-pack-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
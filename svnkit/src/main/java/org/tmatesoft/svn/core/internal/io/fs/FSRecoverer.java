@@ -109,6 +109,7 @@ public class FSRecoverer {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
+        FSRepresentationCacheIndex.invalidate(myOwner);
     }
     
     private void findMaxIDs(long rev, FSFile revFile, long offset, String[] maxNodeID, String[] maxCopyID) throws SVNException {
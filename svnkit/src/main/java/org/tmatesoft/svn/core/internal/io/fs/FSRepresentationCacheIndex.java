@@ -0,0 +1,276 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * In-process index of the <code>rep-cache.db</code> table of a repository,
+ * shared by all rep-cache managers of this process.
+ *
+ * <p/>
+ * Representations found in the table are kept in a bounded process-wide
+ * cache (<code>svnkit.fs.cache.repcache.size</code>, 8 MB by default), since
+ * rows are never changed once inserted. Hashes that are not in the table are
+ * answered by a Bloom filter of all hashes of the table. The filter is valid
+ * for the state of the database file it was built from, which is recognized by
+ * the change counter SQLite keeps in the file header: whenever another
+ * connection writes to the table, the filter is rebuilt on next use, or not
+ * used at all if it has been rebuilt too recently. A stale answer never leads
+ * to a wrong representation, at worst to a representation that is not shared.
+ *
+ * <p/>
+ * Whatever rewrites the repository in place (recovery, hot copy into an
+ * existing path) has to call {@link #invalidate(FSFS)}.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class FSRepresentationCacheIndex {
+
+    private static final int CHANGE_COUNTER_OFFSET = 24;
+    private static final int REPRESENTATION_WEIGHT = 160;
+
+    private static final int BITS_PER_HASH = 10;
+    private static final int HASH_FUNCTIONS_COUNT = 7;
+    private static final long MIN_CAPACITY = 0x1000;
+    private static final long MAX_CAPACITY = 0x1000000;
+    /* Rebuilding may take at most a tenth of the time since the last rebuild. */
+    private static final int REBUILD_INTERVAL_RATIO = 10;
+
+    private static final FSCache<String, FSRepresentation> ourRepresentationsCache =
+            new FSCache<String, FSRepresentation>("rep-cache", FSFS.getCacheSizeOption("svnkit.fs.cache.repcache.size", 0x800000));
+    private static final Map<String, FSRepresentationCacheIndex> ourIndexes = new HashMap<String, FSRepresentationCacheIndex>();
+
+    private final String myRepositoryId;
+    private final File myDBFile;
+    private int myGeneration;
+
+    private long[] myFilter;
+    private long myCapacity;
+    private long myHashesCount;
+    /* change counter of the database state the filter reflects, -1 when it is stale */
+    private long myChangeCounter = -1;
+    private long myLastBuildTime;
+    private long myLastBuildDuration;
+
+    /**
+     * Reads hashes of all rows of the table into an index.
+     */
+    public interface IHashesLoader {
+
+        void loadHashes(FSRepresentationCacheIndex index) throws SVNException;
+    }
+
+    public static FSCache<String, FSRepresentation> getRepresentationsCache() {
+        return ourRepresentationsCache;
+    }
+
+    public static FSRepresentationCacheIndex getInstance(FSFS owner) throws SVNException {
+        final String key = owner.getCacheRepositoryId();
+        synchronized (ourIndexes) {
+            FSRepresentationCacheIndex index = ourIndexes.get(key);
+            if (index == null) {
+                index = new FSRepresentationCacheIndex(key, owner.getRepositoryCacheFile());
+                ourIndexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Forgets everything known about the rep-cache of <code>owner</code>.
+     */
+    public static void invalidate(FSFS owner) throws SVNException {
+        final FSRepresentationCacheIndex index;
+        synchronized (ourIndexes) {
+            index = ourIndexes.get(owner.getCacheRepositoryId());
+        }
+        if (index != null) {
+            index.invalidate();
+        }
+    }
+
+    private FSRepresentationCacheIndex(String repositoryId, File dbFile) {
+        myRepositoryId = repositoryId;
+        myDBFile = dbFile;
+    }
+
+    public FSRepresentation getRepresentation(String hash) {
+        final FSRepresentation representation = ourRepresentationsCache.get(getCacheKey(hash));
+        return representation != null ? new FSRepresentation(representation) : null;
+    }
+
+    public void putRepresentation(FSRepresentation representation) {
+        final String hash = representation.getSHA1HexDigest();
+        if (hash != null) {
+            ourRepresentationsCache.put(getCacheKey(hash), new FSRepresentation(representation), REPRESENTATION_WEIGHT);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> when <code>hash</code> is certainly not in
+     * the table as of the current state of the database file. Builds the
+     * filter with <code>loader</code> when it is missing or stale.
+     */
+    public synchronized boolean isAbsent(String hash, IHashesLoader loader) throws SVNException {
+        final long changeCounter = readChangeCounter();
+        if (changeCounter < 0) {
+            return false;
+        }
+        if (myFilter == null || myChangeCounter != changeCounter) {
+            final long now = System.currentTimeMillis();
+            if (myFilter != null && now - myLastBuildTime < myLastBuildDuration * REBUILD_INTERVAL_RATIO) {
+                return false;
+            }
+            build(loader, changeCounter);
+            myLastBuildTime = System.currentTimeMillis();
+            myLastBuildDuration = myLastBuildTime - now;
+            if (myChangeCounter != changeCounter) {
+                return false;
+            }
+        }
+        return !mightContain(hash);
+    }
+
+    /**
+     * Records a hash that has been inserted into the table. May be called
+     * before the inserting transaction is committed: a hash of a rolled back
+     * insert only costs a lookup later.
+     */
+    public synchronized void addHash(String hash) {
+        if (myFilter == null) {
+            return;
+        }
+        if (myHashesCount >= myCapacity) {
+            myChangeCounter = -1;
+            return;
+        }
+        add(hash);
+    }
+
+    /**
+     * Reads the change counter of the database file; called inside a write
+     * transaction before anything is written.
+     */
+    public long readChangeCounter() {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(myDBFile, "r");
+            if (file.length() < CHANGE_COUNTER_OFFSET + 4) {
+                return -1;
+            }
+            file.seek(CHANGE_COUNTER_OFFSET);
+            return file.readInt() & 0xFFFFFFFFL;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            SVNFileUtil.closeFile(file);
+        }
+    }
+
+    /**
+     * Called after a write transaction which started at
+     * <code>changeCounter</code> has been committed. If nobody else has
+     * written to the table since the filter was built, the filter stays valid
+     * for the new state of the file.
+     */
+    public synchronized void committed(long changeCounter, boolean changed) {
+        if (changeCounter >= 0 && myChangeCounter == changeCounter) {
+            myChangeCounter = changed ? (changeCounter + 1) & 0xFFFFFFFFL : changeCounter;
+        } else {
+            myChangeCounter = -1;
+        }
+    }
+
+    /**
+     * Adds a hash while the filter is being built by {@link IHashesLoader}.
+     */
+    public void loadHash(String hash) {
+        if (myHashesCount >= myCapacity) {
+            return;
+        }
+        add(hash);
+    }
+
+    private synchronized void invalidate() {
+        myGeneration++;
+        myFilter = null;
+        myChangeCounter = -1;
+    }
+
+    private void build(IHashesLoader loader, long changeCounter) throws SVNException {
+        myCapacity = Math.min(Math.max(myDBFile.length() / 16, Math.max(MIN_CAPACITY, myHashesCount * 2)), MAX_CAPACITY);
+        myFilter = new long[(int) ((myCapacity * BITS_PER_HASH + 63) / 64)];
+        myHashesCount = 0;
+        myChangeCounter = -1;
+        loader.loadHashes(this);
+        if (myHashesCount < myCapacity) {
+            myChangeCounter = changeCounter;
+        }
+    }
+
+    private void add(String hash) {
+        final long bitsCount = myFilter.length * 64L;
+        final long h1 = hash1(hash);
+        final long h2 = hash2(hash);
+        for (int i = 0; i < HASH_FUNCTIONS_COUNT; i++) {
+            final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitsCount;
+            myFilter[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        myHashesCount++;
+    }
+
+    private boolean mightContain(String hash) {
+        final long bitsCount = myFilter.length * 64L;
+        final long h1 = hash1(hash);
+        final long h2 = hash2(hash);
+        for (int i = 0; i < HASH_FUNCTIONS_COUNT; i++) {
+            final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitsCount;
+            if ((myFilter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * SHA-1 digests are uniformly distributed already, so two halves of the
+     * hex digest serve as independent hash values.
+     */
+    private static long hash1(String hash) {
+        return hash.length() >= 16 ? parseHex(hash, 0, 16) : hash.hashCode() * 0x9E3779B97F4A7C15L;
+    }
+
+    private static long hash2(String hash) {
+        return (hash.length() >= 32 ? parseHex(hash, 16, 32) : hash.hashCode() * 0xC2B2AE3D27D4EB4FL) | 1;
+    }
+
+    private static long parseHex(String hash, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = (value << 4) | (Character.digit(hash.charAt(i), 16) & 0xF);
+        }
+        return value;
+    }
+
+    private synchronized String getCacheKey(String hash) {
+        return myRepositoryId + ":" + myGeneration + ":" + hash;
+    }
+}
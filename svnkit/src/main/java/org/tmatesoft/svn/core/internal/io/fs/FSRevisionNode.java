@@ -216,6 +216,31 @@ public class FSRevisionNode {
         return clone;
     }
 
+    /**
+     * Rough estimate of the heap occupied by this node-revision (without
+     * directory contents), used to weigh it in the node-revisions cache.
+     */
+    public long getEstimatedSize() {
+        long size = 256;
+        size += getStringSize(myCreatedPath) + getStringSize(myCopyFromPath) + getStringSize(myCopyRootPath);
+        size += getIdSize(myId) + getIdSize(myPredecessorId);
+        if (myTextRepresentation != null) {
+            size += 192;
+        }
+        if (myPropsRepresentation != null) {
+            size += 192;
+        }
+        return size;
+    }
+
+    private static long getIdSize(FSID id) {
+        return id == null ? 0 : 64 + getStringSize(id.getNodeID()) + getStringSize(id.getCopyID()) + getStringSize(id.getTxnID());
+    }
+
+    private static long getStringSize(String string) {
+        return string == null ? 0 : 40 + 2 * string.length();
+    }
+
     protected Map getDirContents() {
         return myDirContents;
     }
@@ -34,6 +34,7 @@ import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.internal.io.fs.index.*;
 import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
@@ -399,6 +400,7 @@ public class FSTransactionRoot extends FSRoot {
                 textRep.setUniquifier(uniquifier);
                 parentRevNode.setTextRepresentation(textRep);
                 parentRevNode.setIsFreshTxnRoot(false);
+                parentRevNode.setDirContents(new SVNHashMap(entries));
                 getOwner().putTxnRevisionNode(parentRevNode.getId(), parentRevNode);
             } else {
                 dst = SVNFileUtil.openFileForWriting(childrenFile, true);
@@ -63,6 +63,17 @@ public class FSWriteLock {
         return lock;
     }
 
+    public static synchronized FSWriteLock getWriteLockForPack(FSFS owner) throws SVNException {
+        String uuid = owner.getUUID() + FSFS.PACK_LOCK_FILE;
+        FSWriteLock lock = (FSWriteLock) ourThreadDBLocksCache.get(uuid);
+        if (lock == null) {
+            lock = new FSWriteLock(uuid, owner.getPackLockFile(), DB_LOCK, false);
+            ourThreadDBLocksCache.put(uuid, lock);
+        }
+        lock.myReferencesCount++;
+        return lock;
+    }
+
     public static synchronized FSWriteLock getWriteLockForCurrentTxn(String token, FSFS owner) throws SVNException {
         if (token == null || token.length() == 0){
             SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.FS_NO_LOCK_TOKEN, "Incorrect lock token for current transaction"), SVNLogType.FSFS);
@@ -3,17 +3,19 @@ package org.tmatesoft.svn.core.internal.io.fs.index;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.FSCache;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
 import org.tmatesoft.svn.core.internal.io.fs.FSID;
-import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.util.SVNLogType;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class FSLogicalAddressingIndex {
@@ -21,9 +23,20 @@ public class FSLogicalAddressingIndex {
     public static final String L2P_STREAM_PREFIX = "L2P-INDEX\n";
     public static final String P2L_STREAM_PREFIX = "P2L-INDEX\n";
 
+    /*
+     * Decoded index headers of revision and pack files shared by all repositories
+     * of this process. Pages are decoded on demand and kept with their header,
+     * so that a whole file is evicted (or invalidated) at once.
+     */
+    private static final FSCache<String, L2PIndexHeader> ourL2PIndexCache =
+            new FSCache<String, L2PIndexHeader>("l2p-index", FSFS.getCacheSizeOption("svnkit.fs.cache.l2p.size", 0x1000000));
+    private static final FSCache<String, P2LIndexHeader> ourP2LIndexCache =
+            new FSCache<String, P2LIndexHeader>("p2l-index", FSFS.getCacheSizeOption("svnkit.fs.cache.p2l.size", 0x1000000));
+
     private FSFile myFile;
     private long startRevision;
     private FSFS fsfs;
+    private String myCacheKey;
 
     public FSLogicalAddressingIndex(FSFS fsfs, FSFile myFile) {
         this.fsfs = fsfs;
@@ -31,6 +44,35 @@ public class FSLogicalAddressingIndex {
         this.startRevision = -1;
     }
 
+    public static FSCache<String, ?> getL2PIndexCache() {
+        return ourL2PIndexCache;
+    }
+
+    public static FSCache<String, ?> getP2LIndexCache() {
+        return ourP2LIndexCache;
+    }
+
+    /**
+     * Forgets the decoded indexes of <code>file</code>. Called whenever a revision
+     * or pack file is about to be deleted or rewritten.
+     */
+    public static void invalidate(FSFS fsfs, File file) throws SVNException {
+        final String cacheKey = getCacheKey(fsfs, file);
+        ourL2PIndexCache.remove(cacheKey);
+        ourP2LIndexCache.remove(cacheKey);
+    }
+
+    private static String getCacheKey(FSFS fsfs, File file) throws SVNException {
+        return fsfs.getCacheRepositoryId() + ":" + file.getPath();
+    }
+
+    private String getCacheKey() throws SVNException {
+        if (myCacheKey == null) {
+            myCacheKey = getCacheKey(fsfs, myFile.getFile());
+        }
+        return myCacheKey;
+    }
+
     public long getStartRevision(long revision) {
         if (startRevision == -1) {
             this.startRevision = (fsfs.isPackedRevision(revision)) ?
@@ -40,26 +82,16 @@ public class FSLogicalAddressingIndex {
     }
 
     public long getOffsetByItemIndex(long revision, long itemIndex) throws SVNException {
-        L2PPageInfo pageInfo = getL2PPageInfo(revision, itemIndex);
-        //TODO: cache the result
-
-        final boolean isPackedRevision = fsfs.isPackedRevision(revision);
-        final boolean isCached = false;
-        long offset;
-        if (!isCached) {
-            final long lastRevision = pageInfo.getFirstRevision() + (isPackedRevision ? fsfs.getMaxFilesPerDirectory() : 1);
-            final PageTableEntry entry = pageInfo.getEntry();
-//            final long maxOffset = align(entry.offset + entry.size, fsfs.getBlockSize());
-//            final long minOffset = maxOffset - fsfs.getBlockSize();
-
-            final Page page = getL2PPage(entry);
-            //TODO: cache!
-            offset = getL2PPageEntry(page, pageInfo.getPageOffset(), itemIndex, revision);
-        } else {
-            //TODO: set this to the cached value
-            offset = -1;
+        final L2PIndexHeader header = getL2PHeader(revision);
+        final L2PPageInfo pageInfo = createPageInfo(header, revision, itemIndex);
+
+        Page page = header.getPage(pageInfo.getEntryIndex());
+        if (page == null) {
+            page = getL2PPage(pageInfo.getEntry());
+            header.setPage(pageInfo.getEntryIndex(), page);
+            ourL2PIndexCache.put(getCacheKey(), header, header.getEstimatedSize());
         }
-        return offset;
+        return getL2PPageEntry(page, pageInfo.getPageOffset(), itemIndex, revision);
     }
 
     public long getItemIndexByOffset(long offset) {
@@ -67,22 +99,13 @@ public class FSLogicalAddressingIndex {
     }
 
     public List<FSP2LEntry> lookupP2LEntries(long revision, long blockStart, long blockEnd) throws SVNException {
-        final boolean isCached = false;
-
         List<FSP2LEntry> entries = new ArrayList<FSP2LEntry>();
-        P2LPageInfo pageInfo = getP2LKeys(revision, blockStart);
-
-        if (!isCached) {
-            long originalPageStart = pageInfo.getPageStart();
-            int leakingBucket = 4;
-            P2LPageInfo prefetchInfo = pageInfo;
-
-            long maxOffset = FSRepositoryUtil.align(pageInfo.getNextOffset(), fsfs.getBlockSize());
-            long minOffset = FSRepositoryUtil.align(pageInfo.getStartOffset(), fsfs.getBlockSize()) - fsfs.getBlockSize();
+        final P2LIndexHeader header = getP2LHeader(revision);
+        P2LPageInfo pageInfo = getP2LKeys(header, revision, blockStart);
 
-            //TODO: block read?
-
-            final List<FSP2LEntry> pageEntries = getP2LPage(
+        List<FSP2LEntry> pageEntries = header.getPage((int) pageInfo.getPageNumber());
+        if (pageEntries == null) {
+            pageEntries = getP2LPage(
                     pageInfo.getFirstRevision(),
                     pageInfo.getStartOffset(),
                     pageInfo.getNextOffset(),
@@ -95,11 +118,11 @@ public class FSLogicalAddressingIndex {
                     SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
                 }
             }
-            //cache_set()
-            appendP2LEntries(entries, pageEntries, blockStart, blockEnd);
-            //TODO: block read again?
-
+            pageEntries = Collections.unmodifiableList(pageEntries);
+            header.setPage((int) pageInfo.getPageNumber(), pageEntries);
+            ourP2LIndexCache.put(getCacheKey(), header, header.getEstimatedSize());
         }
+        appendP2LEntries(entries, pageEntries, blockStart, blockEnd);
 
         assert entries.size() > 0;
 
@@ -108,7 +131,9 @@ public class FSLogicalAddressingIndex {
             long entryEnd = entry.getOffset() + entry.getSize();
             if (entryEnd < blockEnd) {
                 if (entry.getType() == FSP2LProtoIndex.ItemType.UNUSED) {
-                    entry.setSize(blockEnd - entry.getOffset());
+                    // page entries are shared through the cache, extend a copy
+                    entry = new FSP2LEntry(entry.getOffset(), blockEnd - entry.getOffset(), entry.getType(), entry.getChecksum(), entry.getRevision(), entry.getNumber());
+                    entries.set(entries.size() - 1, entry);
                 } else {
                     entry = new FSP2LEntry(entryEnd, blockEnd - entryEnd, FSP2LProtoIndex.ItemType.UNUSED, 0, SVNRepository.INVALID_REVISION, FSID.ITEM_INDEX_UNUSED);
                     entries.add(entry);
@@ -118,8 +143,8 @@ public class FSLogicalAddressingIndex {
         return entries;
     }
 
-    protected P2LPageInfo getP2LKeys(long revision, long offset) throws SVNException {
-        final P2LPageInfo pageInfo = getP2LPageInfo(revision, offset);
+    private P2LPageInfo getP2LKeys(P2LIndexHeader header, long revision, long offset) throws SVNException {
+        final P2LPageInfo pageInfo = createPageInfo(header, revision, offset);
 
         if (pageInfo.getPageCount() <= pageInfo.getPageNumber()) {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_OVERFLOW, "Offset {0} too large in revision {1}", new Object[]{offset, revision});
@@ -130,30 +155,21 @@ public class FSLogicalAddressingIndex {
 
     }
 
-    private P2LPageInfo getP2LPageInfo(long revision, long offset) throws SVNException {
-        boolean isCached = false;
-
-        if (isCached) {
-            //TODO return cached value here
-            return null;
+    private P2LIndexHeader getP2LHeader(long revision) throws SVNException {
+        P2LIndexHeader header = ourP2LIndexCache.get(getCacheKey());
+        if (header == null) {
+            header = readP2LHeader(revision);
+            ourP2LIndexCache.put(getCacheKey(), header, header.getEstimatedSize());
         }
-        final P2LIndexHeader header = getP2LHeader();
-        return createPageInfo(header, revision, offset);
+        return header;
     }
 
-    private P2LIndexHeader getP2LHeader() throws SVNException {
-        boolean isCached = false;
-
-        if (isCached) {
-            //TODO return cached value here
-            return null;
-        }
-
+    private P2LIndexHeader readP2LHeader(long revision) throws SVNException {
         final FSPackedNumbersStream packedNumbersStream = autoOpenP2LIndex();
         packedNumbersStream.seek(0);
 
         final long firstRevision = packedNumbersStream.read();
-        if (firstRevision != startRevision) {
+        if (firstRevision != getStartRevision(revision)) {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_CORRUPTION, "Index rev / pack file revision numbers do not match");
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
@@ -189,8 +205,6 @@ public class FSLogicalAddressingIndex {
             offsets[i] += offset;
         }
 
-        //TODO: save to cache here
-
         final P2LIndexHeader p2LIndexHeader = new P2LIndexHeader(firstRevision, pageSize, pageCount, fileSize, offsets);
         return p2LIndexHeader;
     }
@@ -355,15 +369,18 @@ public class FSLogicalAddressingIndex {
         return new Page(entryCount, offsets);
     }
 
-    private L2PPageInfo getL2PPageInfo(long revision, long itemIndex) throws SVNException {
-        //TODO: cache the result
-        final L2PIndexHeader header = getL2PHeaderBody(revision);
-        return createPageInfo(header, revision, itemIndex);
+    private L2PIndexHeader getL2PHeader(long revision) throws SVNException {
+        L2PIndexHeader header = ourL2PIndexCache.get(getCacheKey());
+        if (header == null) {
+            header = getL2PHeaderBody(revision);
+            ourL2PIndexCache.put(getCacheKey(), header, header.getEstimatedSize());
+        }
+        return header;
     }
 
     private L2PPageInfo createPageInfo(L2PIndexHeader header, long revision, long itemIndex) throws SVNException {
         long relativeRevision = revision - header.getFirstRevision();
-        if (relativeRevision >= header.getRevisionCount()) {
+        if (relativeRevision < 0 || relativeRevision >= header.getRevisionCount()) {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_REVISION, "Revision %ld not covered by item index", revision);
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
@@ -378,7 +395,8 @@ public class FSLogicalAddressingIndex {
         if (itemIndex < header.getPageSize()) {
             pageInfo.setPageOffset((int) itemIndex);
             pageInfo.setPageNumber(0);
-            pageInfo.setEntry(pageTable[((int) pageTableIndex[((int) relativeRevision)])]);
+            pageInfo.setEntryIndex((int) pageTableIndex[((int) relativeRevision)]);
+            pageInfo.setEntry(pageTable[pageInfo.getEntryIndex()]);
         } else {
             long maxItemIndex = header.getPageSize()*(pageTableIndex[((int) (relativeRevision + 1))] - pageTableIndex[((int) relativeRevision)]);
 
@@ -390,7 +408,8 @@ public class FSLogicalAddressingIndex {
 
             pageInfo.setPageOffset((int) (itemIndex % header.getPageSize()));
             pageInfo.setPageNumber((int) (itemIndex / header.getPageSize()));
-            pageInfo.setEntry(pageTable[((int) (pageTableIndex[((int) relativeRevision)] + pageInfo.getPageNumber()))]);
+            pageInfo.setEntryIndex((int) (pageTableIndex[((int) relativeRevision)] + pageInfo.getPageNumber()));
+            pageInfo.setEntry(pageTable[pageInfo.getEntryIndex()]);
         }
         return pageInfo;
     }
@@ -529,6 +548,8 @@ public class FSLogicalAddressingIndex {
         private long pageSize;
         private long[] pageTableIndex;
         private PageTableEntry[] pageTable;
+        private Page[] pages;
+        private long pagesSize;
 
         public L2PIndexHeader(long firstRevision, long revisionCount, long pageSize, long[] pageTableIndex, PageTableEntry[] pageTable) {
             this.firstRevision = firstRevision;
@@ -536,6 +557,22 @@ public class FSLogicalAddressingIndex {
             this.pageSize = pageSize;
             this.pageTableIndex = pageTableIndex;
             this.pageTable = pageTable;
+            this.pages = new Page[pageTable.length];
+        }
+
+        public synchronized Page getPage(int index) {
+            return pages[index];
+        }
+
+        public synchronized void setPage(int index, Page page) {
+            if (pages[index] == null) {
+                pagesSize += 32 + 8 * page.getOffsets().length;
+            }
+            pages[index] = page;
+        }
+
+        public synchronized long getEstimatedSize() {
+            return 64 + 8 * pageTableIndex.length + 48 * pageTable.length + 8 * pages.length + pagesSize;
         }
 
         public long getFirstRevision() {
@@ -569,6 +606,7 @@ public class FSLogicalAddressingIndex {
         private long revision;
         private long itemIndex;
         private PageTableEntry entry;
+        private int entryIndex;
         private int pageNumber;
         private int pageOffset;
         private long firstRevision;
@@ -597,6 +635,14 @@ public class FSLogicalAddressingIndex {
             this.entry = entry;
         }
 
+        public int getEntryIndex() {
+            return entryIndex;
+        }
+
+        public void setEntryIndex(int entryIndex) {
+            this.entryIndex = entryIndex;
+        }
+
         public int getPageNumber() {
             return pageNumber;
         }
@@ -712,6 +758,8 @@ public class FSLogicalAddressingIndex {
         private long pageCount;
         private long fileSize;
         private long[] offsets;
+        private List[] pages;
+        private long pagesSize;
 
         public P2LIndexHeader(long firstRevision, long pageSize, long pageCount, long fileSize, long[] offsets) {
             this.firstRevision = firstRevision;
@@ -719,6 +767,23 @@ public class FSLogicalAddressingIndex {
             this.pageCount = pageCount;
             this.fileSize = fileSize;
             this.offsets = offsets;
+            this.pages = new List[(int) pageCount];
+        }
+
+        @SuppressWarnings("unchecked")
+        public synchronized List<FSP2LEntry> getPage(int index) {
+            return pages[index];
+        }
+
+        public synchronized void setPage(int index, List<FSP2LEntry> page) {
+            if (pages[index] == null) {
+                pagesSize += 48 + (FSP2LEntry.SIZE_IN_BYTES + 24) * page.size();
+            }
+            pages[index] = page;
+        }
+
+        public synchronized long getEstimatedSize() {
+            return 64 + 8 * offsets.length + 8 * pages.length + pagesSize;
         }
 
         public long getFirstRevision() {
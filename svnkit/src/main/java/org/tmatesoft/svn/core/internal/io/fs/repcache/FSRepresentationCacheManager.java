@@ -26,6 +26,7 @@ import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentationCacheIndex;
 import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
 import org.tmatesoft.svn.core.internal.io.fs.IFSSqlJetTransaction;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
@@ -49,9 +50,13 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
     private SqlJetDb myRepCacheDB;
     private ISqlJetTable myTable;
     private FSFS myFSFS;
+    private FSRepresentationCacheIndex myIndex;
+    private boolean myIsInserted;
     
     public static IFSRepresentationCacheManager openRepresentationCache(FSFS fsfs) throws SVNException {
         final FSRepresentationCacheManager cacheObj = new FSRepresentationCacheManager();
+        cacheObj.myFSFS = fsfs;
+        cacheObj.myIndex = FSRepresentationCacheIndex.getInstance(fsfs);
         try {
             cacheObj.myRepCacheDB = SqlJetDb.open(fsfs.getRepositoryCacheFile(), true);
             cacheObj.myRepCacheDB.setSafetyLevel(SqlJetSafetyLevel.OFF);
@@ -131,6 +136,8 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
             myTable.insert(new Object[] { representation.getSHA1HexDigest(), representation.getRevision(),
                     representation.getItemIndex(), representation.getSize(),
                     representation.getExpandedSize()});
+            myIndex.addHash(representation.getSHA1HexDigest());
+            myIsInserted = true;
         } catch (SqlJetException e) {
             SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
         }
@@ -146,24 +153,79 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
                 myTable = null;
                 myRepCacheDB = null;
                 myFSFS = null;
+                myIndex = null;
             }
         }
     }
     
-    public FSRepresentation getRepresentationByHash(String hash) throws SVNException {
-        FSRepresentationCacheRecord cache = getByHash(hash);
-        if (cache != null) {
-            FSRepresentation representation = new FSRepresentation();
-            representation.setExpandedSize(cache.getExpandedSize());
-            representation.setItemIndex(cache.getOffset());
-            representation.setRevision(cache.getRevision());
-            representation.setSize(cache.getSize());
-            representation.setSHA1HexDigest(cache.getHash());
+    /**
+     * Looks <code>hash</code> up in the in-process index first; the table is only read
+     * when the index cannot answer, in a read transaction of its own if none is active.
+     */
+    public FSRepresentation getRepresentationByHash(final String hash) throws SVNException {
+        FSRepresentation representation = myIndex.getRepresentation(hash);
+        if (representation != null) {
+            return representation;
+        }
+        if (myIndex.isAbsent(hash, new FSRepresentationCacheIndex.IHashesLoader() {
+            public void loadHashes(final FSRepresentationCacheIndex index) throws SVNException {
+                runInReadTransaction(new IFSSqlJetTransaction() {
+                    public void run() throws SVNException {
+                        loadAllHashes(index);
+                    }
+                });
+            }
+        })) {
+            return null;
+        }
+        final FSRepresentationCacheRecord[] cache = new FSRepresentationCacheRecord[1];
+        runInReadTransaction(new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                cache[0] = getByHash(hash);
+            }
+        });
+        if (cache[0] != null) {
+            representation = new FSRepresentation();
+            representation.setExpandedSize(cache[0].getExpandedSize());
+            representation.setItemIndex(cache[0].getOffset());
+            representation.setRevision(cache[0].getRevision());
+            representation.setSize(cache[0].getSize());
+            representation.setSHA1HexDigest(cache[0].getHash());
+            myIndex.putRepresentation(representation);
             return representation;
         }
         return null;
     }
 
+    private void runInReadTransaction(IFSSqlJetTransaction transaction) throws SVNException {
+        if (myRepCacheDB.isInTransaction()) {
+            transaction.run();
+        } else {
+            runReadTransaction(transaction);
+        }
+    }
+
+    private void loadAllHashes(FSRepresentationCacheIndex index) throws SVNException {
+        ISqlJetCursor cursor = null;
+        try {
+            cursor = myTable.open();
+            while (!cursor.eof()) {
+                index.loadHash(cursor.getString(FSRepresentationCacheRecord.HASH_FIELD));
+                cursor.next();
+            }
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        } finally {
+            if (cursor != null) {
+                try {
+                    cursor.close();
+                } catch (SqlJetException e) {
+                    SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+                }
+            }
+        }
+    }
+
     private FSRepresentationCacheRecord getByHash(final String hash) throws SVNException {
         ISqlJetCursor lookup = null;
         try {
@@ -200,9 +262,12 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
 
     public void runWriteTransaction(final IFSSqlJetTransaction transaction) throws SVNException {
         if (myRepCacheDB != null) {
+            final long[] changeCounter = { -1 };
+            myIsInserted = false;
             try {
                 myRepCacheDB.runWriteTransaction(new ISqlJetTransaction() {
                     public Object run(SqlJetDb db) throws SqlJetException {
+                        changeCounter[0] = myIndex.readChangeCounter();
                         try {
                             transaction.run();
                         } catch (SVNException e) {
@@ -212,8 +277,10 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
                     }
                 });
             } catch (SqlJetException e) {
+                myIndex.committed(-1, true);
                 SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
             }
+            myIndex.committed(changeCounter[0], myIsInserted);
         }
     }
 
@@ -38,8 +38,8 @@ public abstract class SVNAbstractTunnelConnector implements ISVNConnector {
     public void open(SVNRepositoryImpl repository, String process) throws SVNException {
         try {
             myProcess = Runtime.getRuntime().exec(process);
-            myInputStream = new BufferedInputStream(myProcess.getInputStream());
-            myOutputStream = new BufferedOutputStream(myProcess.getOutputStream());
+            myInputStream = new BufferedInputStream(myProcess.getInputStream(), SVNConnection.BUFFER_SIZE);
+            myOutputStream = new BufferedOutputStream(myProcess.getOutputStream(), SVNConnection.BUFFER_SIZE);
             stderrConsumer = StreamLogger.consume(myProcess.getErrorStream());
         } catch (IOException e) {
             try {
@@ -54,8 +54,8 @@ public abstract class SVNAbstractTunnelConnector implements ISVNConnector {
     public void open(SVNRepositoryImpl repository, String[] command) throws SVNException {
         try {
             myProcess = Runtime.getRuntime().exec(command);
-            myInputStream = new BufferedInputStream(myProcess.getInputStream());
-            myOutputStream = new BufferedOutputStream(myProcess.getOutputStream());
+            myInputStream = new BufferedInputStream(myProcess.getInputStream(), SVNConnection.BUFFER_SIZE);
+            myOutputStream = new BufferedOutputStream(myProcess.getOutputStream(), SVNConnection.BUFFER_SIZE);
             stderrConsumer = StreamLogger.consume(myProcess.getErrorStream());
         } catch (IOException e) {
             try {
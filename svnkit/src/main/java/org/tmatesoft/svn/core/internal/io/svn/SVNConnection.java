@@ -20,6 +20,7 @@ import java.io.SequenceInputStream;
 import java.net.SocketTimeoutException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
@@ -57,6 +58,15 @@ public class SVNConnection {
     private byte[] myHandshakeBuffer = new byte[8192];
     private SVNAuthenticator myEncryptor;
     private SVNAuthentication myAuthentication;
+    private boolean myIsOutputPending;
+
+    /**
+     * Size of the buffers connectors put around socket, tunnel and ssh channel
+     * streams, <code>svnkit.svn.bufferSize</code> bytes. Written commands are
+     * kept in the output buffer until a response is read, so the buffer size
+     * is also the largest chunk sent to the server at once.
+     */
+    static final int BUFFER_SIZE = getBufferSize();
     
     private static final String EDIT_PIPELINE = "edit-pipeline";
     private static final String SVNDIFF1 = "svndiff1";
@@ -281,6 +291,9 @@ public class SVNConnection {
     }
 
     public void close() throws SVNException {
+        if (myIsOutputPending && myOutputStream != null) {
+            flush();
+        }
         if (myEncryptor != null) {
             myEncryptor.dispose();
             myEncryptor = null;
@@ -293,6 +306,7 @@ public class SVNConnection {
 
     public List read(String template, List items, boolean readMalformedData) throws SVNException {
         try {
+            flushPendingOutput();
             checkConnection();
             return SVNReader.parse(getInputStream(), template, items);
         } catch (SVNException e) {
@@ -305,6 +319,7 @@ public class SVNConnection {
 
     public List readTuple(String template, boolean readMalformedData) throws SVNException {
         try {
+            flushPendingOutput();
             checkConnection();
             return SVNReader.readTuple(getInputStream(), template);
         } catch (SVNException e) {
@@ -315,8 +330,22 @@ public class SVNConnection {
         }        
     }
 
+    public String readCommand(Map templates, List values, boolean readMalformedData) throws SVNException {
+        try {
+            flushPendingOutput();
+            checkConnection();
+            return SVNReader.readCommand(getInputStream(), templates, values);
+        } catch (SVNException e) {
+            handleIOError(e, readMalformedData);
+            return null;
+        } finally {
+            myRepository.getDebugLog().flushStream(myLoggingInputStream);
+        }
+    }
+
     public SVNItem readItem(boolean readMalformedData) throws SVNException {
         try {
+            flushPendingOutput();
             checkConnection();
             return SVNReader.readItem(getInputStream());
         } catch (SVNException e) {
@@ -350,19 +379,54 @@ public class SVNConnection {
         write(")", null);
     }
     
+    /**
+     * Writes to the connector's output buffer. Buffered data is sent to the
+     * server when the buffer is full, right before a response is read or
+     * when the connection is closed, so that a command and its arguments
+     * usually leave in a single packet.
+     */
     public void write(String template, Object[] items) throws SVNException {
+        myIsOutputPending = true;
+        SVNWriter.write(getOutputStream(), template, items);
+    }
+
+    /**
+     * Writes a command without flushing it, so that several commands may be
+     * sent to the server at once; {@link #flush()} should be called once the
+     * last of them is written.
+     */
+    public void writeBuffered(String template, Object[] items) throws SVNException {
+        write(template, items);
+    }
+
+    public void flush() throws SVNException {
+        myIsOutputPending = false;
         try {
-            SVNWriter.write(getOutputStream(), template, items);
-        } finally {
-            try {
-                getOutputStream().flush();
-            } catch (IOException e) {
-                //
-            } catch (SVNException e) {
-                //
-            }
-            myRepository.getDebugLog().flushStream(getOutputStream());
+            getOutputStream().flush();
+        } catch (IOException e) {
+            //
+        } catch (SVNException e) {
+            //
         }
+        myRepository.getDebugLog().flushStream(getOutputStream());
+    }
+
+    private void flushPendingOutput() throws SVNException {
+        if (myIsOutputPending) {
+            flush();
+        }
+    }
+
+    /**
+     * Reads the authentication request which precedes the response to a
+     * pipelined command. Returns <code>false</code> when the server asks for
+     * credentials: these can not be negotiated once further commands are
+     * already sent, and the connection should not be used anymore.
+     */
+    public boolean readPipelinedAuthenticationRequest() throws SVNException {
+        List items = read("ls", null, true);
+        List mechs = SVNReader.getList(items, 0);
+        return mechs == null || mechs.isEmpty();
     }
     
     public boolean isConnectionStale() {
@@ -450,4 +514,13 @@ public class SVNConnection {
     ISVNConnector getConnector() {
         return myConnector;
     }
+
+    private static int getBufferSize() {
+        try {
+            int size = Integer.parseInt(System.getProperty("svnkit.svn.bufferSize", String.valueOf(64 * 1024)));
+            return size > 0 ? size : 64 * 1024;
+        } catch (NumberFormatException nfe) {
+            return 64 * 1024;
+        }
+    }
 }
\ No newline at end of file
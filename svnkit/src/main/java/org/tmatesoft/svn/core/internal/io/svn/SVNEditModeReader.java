@@ -215,18 +215,16 @@ public class SVNEditModeReader {
     }
 
     public void driveEditor() throws SVNException {
+        List parameters = new ArrayList();
         while (!myDone) {
             SVNErrorMessage error = null;
-            List items = readTuple("wl", false);
-            String commandName = SVNReader.getString(items, 0);
-            String template = (String) COMMANDS_MAP.get(commandName);
-            if (template == null) {
+            parameters.clear();
+            String commandName = readCommand(COMMANDS_MAP, parameters);
+            if (!COMMANDS_MAP.containsKey(commandName)) {
                 SVNErrorMessage child = SVNErrorMessage.create(SVNErrorCode.RA_SVN_UNKNOWN_CMD, "Unknown command ''{0}''", commandName);
                 error = SVNErrorMessage.create(SVNErrorCode.RA_SVN_CMD_ERR);
                 error.setChildErrorMessage(child);
-            }
-            if (template != null && items.get(1) instanceof Collection) {
-                List parameters = SVNReader.parseTuple(template, (Collection) items.get(1), null);
+            } else {
                 try {
                     processCommand(commandName, parameters);
                 } catch (SVNException e) {
@@ -250,16 +248,15 @@ public class SVNEditModeReader {
         }
 
         while (!myDone) {
-            List items = readTuple("wl", false);
-            String command = SVNReader.getString(items, 0);
+            String command = readCommand(null, null);
             myDone = "abort-edit".equals(command) || "success".equals(command);
         }
     }
 
-    private List readTuple(String template, boolean readMalformedData) throws SVNException {
+    private String readCommand(Map templates, List values) throws SVNException {
         if (myConnection == null) {
             SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.RA_SVN_CONNECTION_CLOSED), SVNLogType.NETWORK);
         }
-        return myConnection.readTuple(template, readMalformedData);
+        return myConnection.readCommand(templates, values, false);
     }
 }
@@ -110,14 +110,14 @@ public class SVNPlainConnector implements ISVNConnector {
     public InputStream getInputStream() throws IOException {
         if (myInputStream == null) {
             myInputStream = mySocket.getInputStream();
-            myInputStream = new BufferedInputStream(myInputStream);
+            myInputStream = new BufferedInputStream(myInputStream, SVNConnection.BUFFER_SIZE);
         }
         return myInputStream;
     }
 
     public OutputStream getOutputStream() throws IOException {
         if (myOutputStream == null) {
-            myOutputStream = new BufferedOutputStream(mySocket.getOutputStream());
+            myOutputStream = new BufferedOutputStream(mySocket.getOutputStream(), SVNConnection.BUFFER_SIZE);
         }
         return myOutputStream;
     }
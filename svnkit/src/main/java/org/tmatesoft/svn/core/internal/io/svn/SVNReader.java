@@ -20,6 +20,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -44,6 +46,44 @@ public class SVNReader {
     private static final String DEFAULT_TEMPLATE = "wl";
     private static final String UTF8_CHARSET_STRING = "UTF-8";
 
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> ourLocalReadBuffer = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[8192];
+        }
+    };
+
+    private static final ThreadLocal<char[]> ourLocalWordBuffer = new ThreadLocal<char[]>() {
+        protected char[] initialValue() {
+            return new char[64];
+        }
+    };
+
+    private static final Map<String, Template> ourTemplates = new ConcurrentHashMap<String, Template>();
+
+    private static final String[] ourWords = new String[512];
+
+    static {
+        String[] words = {
+                "success", "failure", "true", "false", "none", "file", "dir", "unknown",
+                "target-rev", "open-root", "delete-entry", "add-dir", "open-dir", "change-dir-prop", "close-dir",
+                "add-file", "open-file", "apply-textdelta", "textdelta-chunk", "textdelta-end", "change-file-prop",
+                "close-file", "close-edit", "abort-edit", "finish-replay", "absent-dir", "absent-file", "revprops",
+                "rev-props", "done", "A", "D", "M", "R", "ANONYMOUS", "EXTERNAL", "CRAM-MD5", "DIGEST-MD5", "PLAIN",
+                "edit-pipeline", "svndiff1", "accepts-svndiff2", "absent-entries", "commit-revprops", "mergeinfo",
+                "depth", "log-revprops", "partial-replay", "atomic-revprops", "inherited-props", "ephemeral-txnprops",
+                "file-revs-reverse", "list", "step", "infinity", "empty", "files", "immediates",
+        };
+        for (int i = 0; i < words.length; i++) {
+            int index = getWordIndex(words[i].toCharArray(), words[i].length());
+            while (ourWords[index] != null) {
+                index = (index + 1) & (ourWords.length - 1);
+            }
+            ourWords[index] = words[i];
+        }
+    }
+
     public static Date getDate(List items, int index) {
         String str = getString(items, index);
         return SVNDate.parseDate(str);
@@ -238,22 +278,87 @@ public class SVNReader {
         return readItem(is, null, ch);
     }
 
+    /**
+     * Reads a command response and parses the values of a successful one 
+     * with <code>template</code>. The values are read right from the stream, 
+     * without building a tree of {@link SVNItem}s first.
+     */
     public static List parse(InputStream is, String template, List values) throws SVNException {
-        List readItems = readTuple(is, DEFAULT_TEMPLATE);
-        String word = getString(readItems, 0);
-        List list = getItemList(readItems, 1);
-
+        char ch = skipWhiteSpace(is);
+        if (ch != '(') {
+            readItem(is, null, ch);
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
+            SVNErrorManager.error(err, SVNLogType.NETWORK);
+        }
+        String word = null;
+        ch = skipWhiteSpace(is);
+        if (Character.isLetter(ch)) {
+            word = readWord(is, ch);
+            ch = skipWhiteSpace(is);
+        }
         if ("success".equals(word)) {
-            return parseTuple(template, list, values);
+            values = values == null ? new ArrayList() : values;
+            SVNErrorMessage[] error = new SVNErrorMessage[1];
+            if (ch == '(') {
+                parseTuple(is, getTemplate(template), 0, values, error);
+                skipTuple(is, skipWhiteSpace(is));
+            } else {
+                skipTuple(is, ch);
+                parseTuple(template, Collections.EMPTY_LIST, values);
+            }
+            if (error[0] != null) {
+                SVNErrorManager.error(error[0], SVNLogType.NETWORK);
+            }
+            return values;
         } else if ("failure".equals(word)) {
+            List list = Collections.EMPTY_LIST;
+            if (ch == '(') {
+                list = (List) readItem(is, null, ch).getItems();
+                ch = skipWhiteSpace(is);
+            }
+            skipTuple(is, ch);
             handleFailureStatus(list);
         } else {
+            skipTuple(is, ch);
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA, "Unknown status ''{0}'' in command response", word);
             SVNErrorManager.error(err, SVNLogType.NETWORK);
         }
         return null;
     }
 
+    /**
+     * Reads a command of the form <code>( name ( parameters ) )</code> and 
+     * parses its parameters with the template <code>templates</code> map the 
+     * command name to. Parameters of commands with no template are skipped. 
+     * Returns the command name, or <span class="javakeyword">null</span> if 
+     * the command does not start with a word.
+     */
+    public static String readCommand(InputStream is, Map templates, List values) throws SVNException {
+        char ch = skipWhiteSpace(is);
+        if (ch != '(') {
+            readItem(is, null, ch);
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
+            SVNErrorManager.error(err, SVNLogType.NETWORK);
+        }
+        String word = null;
+        ch = skipWhiteSpace(is);
+        if (Character.isLetter(ch)) {
+            word = readWord(is, ch);
+            ch = skipWhiteSpace(is);
+        }
+        String template = word == null || templates == null ? null : (String) templates.get(word);
+        SVNErrorMessage[] error = new SVNErrorMessage[1];
+        if (template != null && ch == '(') {
+            parseTuple(is, getTemplate(template), 0, values, error);
+            ch = skipWhiteSpace(is);
+        }
+        skipTuple(is, ch);
+        if (error[0] != null) {
+            SVNErrorManager.error(error[0], SVNLogType.NETWORK);
+        }
+        return word;
+    }
+
     public static void handleFailureStatus(List list) throws SVNException {
         if (list.size() == 0) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA, "Empty error list");
@@ -286,12 +391,18 @@ public class SVNReader {
 
     public static List readTuple(InputStream is, String template) throws SVNException {
         char ch = skipWhiteSpace(is);
-        SVNItem item = readItem(is, null, ch);
-        if (item.getKind() != SVNItem.LIST) {
+        if (ch != '(') {
+            readItem(is, null, ch);
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
             SVNErrorManager.error(err, SVNLogType.NETWORK);
         }
-        return parseTuple(template, item.getItems(), null);
+        List values = new ArrayList();
+        SVNErrorMessage[] error = new SVNErrorMessage[1];
+        parseTuple(is, getTemplate(template), 0, values, error);
+        if (error[0] != null) {
+            SVNErrorManager.error(error[0], SVNLogType.NETWORK);
+        }
+        return values;
     }
 
     public static List parseTuple(String template, Collection items, List values) throws SVNException {
@@ -343,45 +454,278 @@ public class SVNReader {
                 break;
             }
         }
-        if (index < template.length() && template.charAt(index) == '?') {
-            int nestingLevel = 0;
-            while (index < template.length()) {
-                switch (template.charAt(index)) {
-                    case'?':
-                        break;
-                    case'r':
-                    case'n':
-                        values.add(SVNRepository.INVALID_REVISION);
-                        break;
-                    case's':
-                    case'w':
-                    case'b':
-                        values.add(null);
-                        break;
-                    case'l':
-                        values.add(Collections.EMPTY_LIST);
-                        break;
-                    case'(':
-                        nestingLevel++;
-                        break;
-                    case')':
-                        nestingLevel--;
-                        if (nestingLevel < 0) {
-                            return index;
+        SVNErrorMessage[] error = new SVNErrorMessage[1];
+        index = addDefaultValues(getTemplate(template), index, values, error);
+        if (error[0] != null) {
+            SVNErrorManager.error(error[0], SVNLogType.NETWORK);
+        }
+        return index;
+    }
+
+    /**
+     * Stream counterpart of {@link #parseTuple(String, int, Collection, List)}: 
+     * parses the items of a tuple which opening parenthesis is already read, 
+     * up to and including its closing parenthesis. Items that match the 
+     * template are converted to values right away, items that do not are 
+     * skipped without being materialized. Errors which the former method 
+     * reports after the tuple is read are stored to <code>error</code>, so 
+     * that the caller may read the rest of the response first.
+     */
+    private static int parseTuple(InputStream is, Template template, int index, List values, SVNErrorMessage[] error) throws SVNException {
+        char[] chars = template.myChars;
+        char ch = skipWhiteSpace(is);
+        while (ch != ')' && index < chars.length) {
+            char templateChar = chars[index];
+            if (templateChar == '?') {
+                index++;
+                templateChar = chars[index];
+            }
+            boolean matched = true;
+            if (ch == '(') {
+                if (templateChar == 'l') {
+                    values.add(readItem(is, null, ch).getItems());
+                } else if (templateChar == '(') {
+                    index++;
+                    index = parseTuple(is, template, index, values, error);
+                } else {
+                    skipItem(is, ch);
+                    matched = false;
+                }
+            } else if (Character.isDigit(ch)) {
+                long number = Character.digit(ch, 10);
+                long previousValue;
+                while (true) {
+                    previousValue = number;
+                    ch = readChar(is);
+                    if (Character.isDigit(ch)) {
+                        number = number * 10 + Character.digit(ch, 10);
+                        if (previousValue != number / 10 && number != -1) {
+                            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA, "Number is larger than maximum");
+                            SVNErrorManager.error(err, SVNLogType.NETWORK);
                         }
-                        break;
-                    default:
-                        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
+                        continue;
+                    }
+                    break;
+                }
+                if (ch == ':') {
+                    if (templateChar == 's') {
+                        values.add(readString(is, (int) number));
+                    } else if (templateChar == 'b') {
+                        byte[] bytes = new byte[(int) number];
+                        readBytes(is, bytes, (int) number);
+                        values.add(bytes);
+                    } else {
+                        skipBytes(is, number);
+                        matched = false;
+                    }
+                    ch = readChar(is);
+                } else if (templateChar == 'n' || templateChar == 'r') {
+                    values.add(Long.valueOf(number));
+                } else {
+                    matched = false;
+                }
+                checkWhiteSpace(ch);
+            } else if (Character.isLetter(ch)) {
+                String word = readWord(is, ch);
+                if (templateChar == 's' || templateChar == 'w') {
+                    values.add(word);
+                } else {
+                    matched = false;
+                }
+            } else {
+                checkWhiteSpace(ch);
+            }
+            if (!matched) {
+                if (templateChar == ')') {
+                    skipTuple(is, skipWhiteSpace(is));
+                    return index + 1;
+                }
+                ch = skipWhiteSpace(is);
+                break;
+            }
+            index++;
+            ch = skipWhiteSpace(is);
+        }
+        skipTuple(is, ch);
+        return addDefaultValues(template, index, values, error);
+    }
+
+    private static int addDefaultValues(Template template, int index, List values, SVNErrorMessage[] error) {
+        char[] chars = template.myChars;
+        if (index < chars.length && chars[index] == '?') {
+            Object[] defaultValues = template.myDefaultValues[index];
+            for (int i = 0; i < defaultValues.length; i++) {
+                values.add(defaultValues[i]);
+            }
+            index = template.myDefaultValuesEnd[index];
+            if (index < 0) {
+                if (error[0] == null) {
+                    error[0] = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
+                }
+                return -index - 1;
+            }
+            if (index < chars.length) {
+                return index;
+            }
+        }
+        if (index == (chars.length - 1) && chars[index] != ')' && error[0] == null) {
+            error[0] = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
+        }
+        return index;
+    }
+
+    private static Template getTemplate(String template) {
+        Template compiled = ourTemplates.get(template);
+        if (compiled == null) {
+            compiled = new Template(template);
+            ourTemplates.put(template, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Skips the rest of a tuple, starting with the item which first character 
+     * is <code>ch</code>, up to and including the closing parenthesis.
+     */
+    private static void skipTuple(InputStream is, char ch) throws SVNException {
+        while (ch != ')') {
+            skipItem(is, ch);
+            ch = skipWhiteSpace(is);
+        }
+        checkWhiteSpace(readChar(is));
+    }
+
+    private static void skipItem(InputStream is, char ch) throws SVNException {
+        if (Character.isDigit(ch)) {
+            long number = Character.digit(ch, 10);
+            while (true) {
+                ch = readChar(is);
+                if (Character.isDigit(ch)) {
+                    number = number * 10 + Character.digit(ch, 10);
+                    if (number < 0) {
+                        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA, "Number is larger than maximum");
                         SVNErrorManager.error(err, SVNLogType.NETWORK);
+                    }
+                    continue;
                 }
-                index++;
+                break;
+            }
+            if (ch == ':') {
+                skipBytes(is, number);
+                ch = readChar(is);
+            }
+        } else if (Character.isLetter(ch)) {
+            while (true) {
+                ch = readChar(is);
+                if (Character.isLetterOrDigit(ch) || ch == '-') {
+                    continue;
+                }
+                break;
+            }
+        } else if (ch == '(') {
+            skipTuple(is, skipWhiteSpace(is));
+            return;
+        }
+        checkWhiteSpace(ch);
+    }
+
+    private static String readWord(InputStream is, char ch) throws SVNException {
+        char[] buffer = ourLocalWordBuffer.get();
+        int length = 0;
+        buffer[length++] = ch;
+        while (true) {
+            ch = readChar(is);
+            if (Character.isLetterOrDigit(ch) || ch == '-') {
+                if (length == buffer.length) {
+                    char[] newBuffer = new char[buffer.length * 2];
+                    System.arraycopy(buffer, 0, newBuffer, 0, length);
+                    buffer = newBuffer;
+                    if (buffer.length <= MAX_BUFFER_SIZE) {
+                        ourLocalWordBuffer.set(buffer);
+                    }
+                }
+                buffer[length++] = ch;
+                continue;
+            }
+            break;
+        }
+        checkWhiteSpace(ch);
+        for (int index = getWordIndex(buffer, length); ourWords[index] != null; index = (index + 1) & (ourWords.length - 1)) {
+            String word = ourWords[index];
+            if (word.length() == length) {
+                int i = 0;
+                while (i < length && word.charAt(i) == buffer[i]) {
+                    i++;
+                }
+                if (i == length) {
+                    return word;
+                }
+            }
+        }
+        return new String(buffer, 0, length);
+    }
+
+    private static int getWordIndex(char[] chars, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        hash ^= hash >>> 16;
+        return hash & (ourWords.length - 1);
+    }
+
+    private static String readString(InputStream is, int length) throws SVNException {
+        byte[] buffer = ourLocalReadBuffer.get();
+        if (buffer.length < length) {
+            buffer = new byte[length];
+            if (length <= MAX_BUFFER_SIZE) {
+                ourLocalReadBuffer.set(buffer);
+            }
+        }
+        readBytes(is, buffer, length);
+        try {
+            return new String(buffer, 0, length, UTF8_CHARSET_STRING);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void skipBytes(InputStream is, long length) throws SVNException {
+        byte[] buffer = ourLocalReadBuffer.get();
+        while (length > 0) {
+            int chunk = (int) Math.min(length, buffer.length);
+            readBytes(is, buffer, chunk);
+            length -= chunk;
+        }
+    }
+
+    private static void readBytes(InputStream is, byte[] buffer, int length) throws SVNException {
+        try {
+            int toRead = length;
+            while (toRead > 0) {
+                int r = is.read(buffer, length - toRead, toRead);
+                if (r < 0) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
+                    SVNErrorManager.error(err, SVNLogType.NETWORK);
+                }
+                toRead -= r;
             }
+        } catch (SocketTimeoutException e) {
+            SVNDebugLog.getDefaultLog().logFinest(SVNLogType.NETWORK, e);
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_IO_ERROR, "time out reading data", null, SVNErrorMessage.TYPE_ERROR, e);
+            SVNErrorManager.error(err, e, SVNLogType.NETWORK);
+        } catch (IOException e) {
+            SVNDebugLog.getDefaultLog().logFinest(SVNLogType.NETWORK, e);
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
+            SVNErrorManager.error(err, SVNLogType.NETWORK);
         }
-        if (index == (template.length() - 1) && template.charAt(index) != ')') {
+    }
+
+    private static void checkWhiteSpace(char ch) throws SVNException {
+        if (!Character.isWhitespace(ch)) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
             SVNErrorManager.error(err, SVNLogType.NETWORK);
         }
-        return index;
     }
 
     private static SVNItem readItem(InputStream is, SVNItem item, char ch) throws SVNException {
@@ -407,25 +751,7 @@ public class SVNReader {
             if (ch == ':') {
                 // string.
                 byte[] buffer = new byte[(int) value];
-                try {
-                    int toRead = (int) value;
-                    while (toRead > 0) {
-                        int r = is.read(buffer, buffer.length - toRead, toRead);
-                        if (r < 0) {
-                            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
-                            SVNErrorManager.error(err, SVNLogType.NETWORK);
-                        }
-                        toRead -= r;
-                    }
-                } catch (SocketTimeoutException e) {
-                    SVNDebugLog.getDefaultLog().logFinest(SVNLogType.NETWORK, e);
-                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_IO_ERROR, "time out reading data", null, SVNErrorMessage.TYPE_ERROR, e);
-                    SVNErrorManager.error(err, e, SVNLogType.NETWORK);
-                } catch (IOException e) {
-                    SVNDebugLog.getDefaultLog().logFinest(SVNLogType.NETWORK, e);
-                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA);
-                    SVNErrorManager.error(err, SVNLogType.NETWORK);
-                }
+                readBytes(is, buffer, buffer.length);
                 item.setKind(SVNItem.BYTES);
                 item.setLine(buffer);
 
@@ -498,4 +824,52 @@ public class SVNReader {
             return ch;
         }
     }
+
+    /**
+     * A template string with the default values, which are added when a 
+     * tuple ends before an optional part of the template, computed once.
+     */
+    private static class Template {
+
+        private final char[] myChars;
+        private final Object[][] myDefaultValues;
+        private final int[] myDefaultValuesEnd;
+
+        public Template(String template) {
+            myChars = template.toCharArray();
+            myDefaultValues = new Object[myChars.length][];
+            myDefaultValuesEnd = new int[myChars.length];
+            for (int start = 0; start < myChars.length; start++) {
+                if (myChars[start] != '?') {
+                    continue;
+                }
+                List defaultValues = new ArrayList();
+                int nestingLevel = 0;
+                int index = start;
+                for (; index < myChars.length; index++) {
+                    char ch = myChars[index];
+                    if (ch == 'r' || ch == 'n') {
+                        defaultValues.add(SVNRepository.INVALID_REVISION);
+                    } else if (ch == 's' || ch == 'w' || ch == 'b') {
+                        defaultValues.add(null);
+                    } else if (ch == 'l') {
+                        defaultValues.add(Collections.EMPTY_LIST);
+                    } else if (ch == '(') {
+                        nestingLevel++;
+                    } else if (ch == ')') {
+                        nestingLevel--;
+                        if (nestingLevel < 0) {
+                            break;
+                        }
+                    } else if (ch != '?') {
+                        // malformed template, reported once reached.
+                        index = -index - 1;
+                        break;
+                    }
+                }
+                myDefaultValues[start] = defaultValues.toArray();
+                myDefaultValuesEnd[start] = index;
+            }
+        }
+    }
 }
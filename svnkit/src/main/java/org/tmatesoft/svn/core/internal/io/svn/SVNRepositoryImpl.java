@@ -87,6 +87,8 @@ public class SVNRepositoryImpl extends SVNRepository implements ISVNReporter {
     private static final String DIRENT_TIME = "time";
     private static final String DIRENT_LAST_AUTHOR = "last-author";
 
+    private static final int PIPELINE_DEPTH = getPipelineDepth();
+
     private SVNConnection myConnection;
     private String myRealm;
     private String myExternalUserName;
@@ -260,6 +262,31 @@ public class SVNRepositoryImpl extends SVNRepository implements ISVNReporter {
         }
     }
 
+    public SVNNodeKind[] checkPath(String[] paths, long revision) throws SVNException {
+        final SVNNodeKind[] kinds = new SVNNodeKind[paths.length];
+        try {
+            openConnection();
+            Long rev = getRevisionObject(revision);
+            PipelinedCommand[] commands = new PipelinedCommand[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                final int index = i;
+                String path = getLocationRelativePath(paths[i]);
+                commands[i] = new PipelinedCommand("(w(s(n)))", new Object[]{"check-path", path, rev}, "w") {
+                    public void handleResponse(List values) throws SVNException {
+                        kinds[index] = SVNNodeKind.parseKind(SVNReader.getString(values, 0));
+                    }
+                };
+            }
+            runPipelined(commands);
+        } catch (SVNException e) {
+            closeSession();
+            throw e;
+        } finally {
+            closeConnection();
+        }
+        return kinds;
+    }
+
     protected int getLocationsImpl(String path, long pegRevision, long[] revisions, ISVNLocationEntryHandler handler) throws SVNException {
         assertValidRevision(pegRevision);
         for (int i = 0; i < revisions.length; i++) {
@@ -427,32 +454,10 @@ public class SVNRepositoryImpl extends SVNRepository implements ISVNReporter {
             final SVNURL url = getLocation().setPath(fullPath, false);
             path = getLocationRelativePath(path);
 
-            List individualProps = new LinkedList();
-            if ((entryFields & SVNDirEntry.DIRENT_KIND) != 0) {
-                individualProps.add(DIRENT_KIND);
-            }
-            if ((entryFields & SVNDirEntry.DIRENT_SIZE) != 0) {
-                individualProps.add(DIRENT_SIZE);
-            }
-            if ((entryFields & SVNDirEntry.DIRENT_HAS_PROPERTIES) != 0) {
-                individualProps.add(DIRENT_HAS_PROPS);
-            }
-            if ((entryFields & SVNDirEntry.DIRENT_CREATED_REVISION) != 0) {
-                individualProps.add(DIRENT_CREATED_REV);
-            }
-            if ((entryFields & SVNDirEntry.DIRENT_TIME) != 0) {
-                individualProps.add(DIRENT_TIME);
-            }
-            if ((entryFields & SVNDirEntry.DIRENT_LAST_AUTHOR) != 0) {
-                individualProps.add(DIRENT_LAST_AUTHOR);
-            }
-
             Object[] buffer = new Object[]{"get-dir", path, rev,
                     Boolean.valueOf(properties != null),
                     Boolean.valueOf(handler != null),
-                    individualProps.size() > 0 ?
-                            (String[]) individualProps.toArray(new String[individualProps.size()]) :
-                            null};
+                    getDirentFields(entryFields)};
             write("(w(s(n)ww(*w)))", buffer);
             authenticate();
             List values = read("rll", null, false);
@@ -463,25 +468,7 @@ public class SVNRepositoryImpl extends SVNRepository implements ISVNReporter {
             }
 
             if (handler != null) {
-                SVNURL repositoryRoot = getRepositoryRoot(false);
-                List dirents = (List) values.get(2);
-                for (Iterator iterator = dirents.iterator(); iterator.hasNext();) {
-                    SVNItem item = (SVNItem) iterator.next();
-                    if (item.getKind() != SVNItem.LIST) {
-                        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA, "Dirlist element not a list");
-                        SVNErrorManager.error(err, SVNLogType.NETWORK);
-                    }
-                    List direntProps = SVNReader.parseTuple("swnsr(?s)(?s)", item.getItems(), null);
-                    String name = SVNReader.getString(direntProps, 0);
-                    SVNNodeKind kind = SVNNodeKind.parseKind(SVNReader.getString(direntProps, 1));
-                    long size = SVNReader.getLong(direntProps, 2);
-                    boolean hasProps = SVNReader.getBoolean(direntProps, 3);
-                    long createdRevision = SVNReader.getLong(direntProps, 4);
-                    Date createdDate = SVNDate.parseDate(SVNReader.getString(direntProps, 5));
-                    String lastAuthor = SVNReader.getString(direntProps, 6);
-                    handler.handleDirEntry(new SVNDirEntry(url.appendPath(name, false), repositoryRoot,
-                            "".equals(name) ? SVNPathUtil.tail(url.getPath()) : name, kind, size, hasProps, createdRevision, createdDate, lastAuthor));
-                }
+                handleDirents((List) values.get(2), url, null, handler);
             }
         } catch (SVNException e) {
             closeSession();
@@ -492,6 +479,89 @@ public class SVNRepositoryImpl extends SVNRepository implements ISVNReporter {
         return revision;
     }
 
+    public void getDir(String[] paths, long revision, final SVNProperties[] properties, int entryFields, final ISVNDirEntryHandler handler) throws SVNException {
+        Long rev = getRevisionObject(revision);
+        try {
+            openConnection();
+            String[] direntFields = getDirentFields(entryFields);
+            PipelinedCommand[] commands = new PipelinedCommand[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                final SVNProperties dirProperties = properties == null ? null : properties[i];
+                final String relativePath = paths[i];
+                final SVNURL url = getLocation().setPath(getFullPath(paths[i]), false);
+                String path = getLocationRelativePath(paths[i]);
+                Object[] buffer = new Object[]{"get-dir", path, rev,
+                        Boolean.valueOf(dirProperties != null),
+                        Boolean.valueOf(handler != null),
+                        direntFields};
+                commands[i] = new PipelinedCommand("(w(s(n)ww(*w)))", buffer, "rll") {
+                    public void handleResponse(List values) throws SVNException {
+                        if (dirProperties != null) {
+                            SVNReader.getProperties(values, 1, dirProperties);
+                        }
+                        if (handler != null) {
+                            handleDirents((List) values.get(2), url, relativePath, handler);
+                        }
+                    }
+                };
+            }
+            runPipelined(commands);
+        } catch (SVNException e) {
+            closeSession();
+            throw e;
+        } finally {
+            closeConnection();
+        }
+    }
+
+    private static String[] getDirentFields(int entryFields) {
+        List individualProps = new LinkedList();
+        if ((entryFields & SVNDirEntry.DIRENT_KIND) != 0) {
+            individualProps.add(DIRENT_KIND);
+        }
+        if ((entryFields & SVNDirEntry.DIRENT_SIZE) != 0) {
+            individualProps.add(DIRENT_SIZE);
+        }
+        if ((entryFields & SVNDirEntry.DIRENT_HAS_PROPERTIES) != 0) {
+            individualProps.add(DIRENT_HAS_PROPS);
+        }
+        if ((entryFields & SVNDirEntry.DIRENT_CREATED_REVISION) != 0) {
+            individualProps.add(DIRENT_CREATED_REV);
+        }
+        if ((entryFields & SVNDirEntry.DIRENT_TIME) != 0) {
+            individualProps.add(DIRENT_TIME);
+        }
+        if ((entryFields & SVNDirEntry.DIRENT_LAST_AUTHOR) != 0) {
+            individualProps.add(DIRENT_LAST_AUTHOR);
+        }
+        return individualProps.size() > 0 ? (String[]) individualProps.toArray(new String[individualProps.size()]) : null;
+    }
+
+    private void handleDirents(List dirents, SVNURL url, String relativePath, ISVNDirEntryHandler handler) throws SVNException {
+        SVNURL repositoryRoot = getRepositoryRoot(false);
+        for (Iterator iterator = dirents.iterator(); iterator.hasNext();) {
+            SVNItem item = (SVNItem) iterator.next();
+            if (item.getKind() != SVNItem.LIST) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_SVN_MALFORMED_DATA, "Dirlist element not a list");
+                SVNErrorManager.error(err, SVNLogType.NETWORK);
+            }
+            List direntProps = SVNReader.parseTuple("swnsr(?s)(?s)", item.getItems(), null);
+            String name = SVNReader.getString(direntProps, 0);
+            SVNNodeKind kind = SVNNodeKind.parseKind(SVNReader.getString(direntProps, 1));
+            long size = SVNReader.getLong(direntProps, 2);
+            boolean hasProps = SVNReader.getBoolean(direntProps, 3);
+            long createdRevision = SVNReader.getLong(direntProps, 4);
+            Date createdDate = SVNDate.parseDate(SVNReader.getString(direntProps, 5));
+            String lastAuthor = SVNReader.getString(direntProps, 6);
+            SVNDirEntry entry = new SVNDirEntry(url.appendPath(name, false), repositoryRoot,
+                    "".equals(name) ? SVNPathUtil.tail(url.getPath()) : name, kind, size, hasProps, createdRevision, createdDate, lastAuthor);
+            if (relativePath != null) {
+                entry.setRelativePath(SVNPathUtil.append(relativePath, name));
+            }
+            handler.handleDirEntry(entry);
+        }
+    }
+
     public SVNDirEntry getDir(String path, long revision, boolean includeComment, final Collection entries) throws SVNException {
         Long rev = getRevisionObject(revision);
         // convert path to path relative to repos root.
@@ -1229,24 +1299,7 @@ public class SVNRepositoryImpl extends SVNRepository implements ISVNReporter {
             Object[] buffer = new Object[]{"stat", path, getRevisionObject(revision)};
             write("(w(s(n)))", buffer);
             authenticate();
-            SVNDirEntry entry = null;
-            List items = read("(?l)", null, false);
-            if (items == null || items.isEmpty()) {
-                return null;
-            }
-            items = (List) items.get(0);
-            if (items != null && !items.isEmpty()) {
-                SVNURL repositoryRoot = getRepositoryRoot(false);
-                List values = SVNReader.parseTuple("wnsr(?s)(?s)", items, null);
-                SVNNodeKind kind = SVNNodeKind.parseKind(SVNReader.getString(values, 0));
-                long size = SVNReader.getLong(values, 1);
-                boolean hasProperties = SVNReader.getBoolean(values, 2);
-                long createdRevision = SVNReader.getLong(values, 3);
-                Date createdDate = SVNDate.parseDate(SVNReader.getString(values, 4));
-                String lastAuthor = SVNReader.getString(values, 5);
-                entry = new SVNDirEntry(url, repositoryRoot, "".equals(path) ? SVNPathUtil.tail(getLocation().getPath()) : SVNPathUtil.tail(path), kind, size, hasProperties, createdRevision, createdDate, lastAuthor);
-            }
-            return entry;
+            return createInfoEntry(read("(?l)", null, false), path, url);
         } catch (SVNException e) {
             closeSession();
             handleUnsupportedCommand(e, "'stat' not implemented");
@@ -1256,6 +1309,111 @@ public class SVNRepositoryImpl extends SVNRepository implements ISVNReporter {
         return null;
     }
 
+    public SVNDirEntry[] info(String[] paths, long revision) throws SVNException {
+        final SVNDirEntry[] entries = new SVNDirEntry[paths.length];
+        try {
+            openConnection();
+            Long rev = getRevisionObject(revision);
+            PipelinedCommand[] commands = new PipelinedCommand[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                final int index = i;
+                final SVNURL url = getLocation().setPath(getFullPath(paths[i]), false);
+                final String path = getLocationRelativePath(paths[i]);
+                commands[i] = new PipelinedCommand("(w(s(n)))", new Object[]{"stat", path, rev}, "(?l)") {
+                    public void handleResponse(List values) throws SVNException {
+                        entries[index] = createInfoEntry(values, path, url);
+                    }
+                };
+            }
+            runPipelined(commands);
+        } catch (SVNException e) {
+            closeSession();
+            handleUnsupportedCommand(e, "'stat' not implemented");
+        } finally {
+            closeConnection();
+        }
+        return entries;
+    }
+
+    private SVNDirEntry createInfoEntry(List items, String path, SVNURL url) throws SVNException {
+        if (items == null || items.isEmpty()) {
+            return null;
+        }
+        items = (List) items.get(0);
+        if (items == null || items.isEmpty()) {
+            return null;
+        }
+        SVNURL repositoryRoot = getRepositoryRoot(false);
+        List values = SVNReader.parseTuple("wnsr(?s)(?s)", items, null);
+        SVNNodeKind kind = SVNNodeKind.parseKind(SVNReader.getString(values, 0));
+        long size = SVNReader.getLong(values, 1);
+        boolean hasProperties = SVNReader.getBoolean(values, 2);
+        long createdRevision = SVNReader.getLong(values, 3);
+        Date createdDate = SVNDate.parseDate(SVNReader.getString(values, 4));
+        String lastAuthor = SVNReader.getString(values, 5);
+        return new SVNDirEntry(url, repositoryRoot, "".equals(path) ? SVNPathUtil.tail(getLocation().getPath()) : SVNPathUtil.tail(path), kind, size, hasProperties, createdRevision, createdDate, lastAuthor);
+    }
+
+    /**
+     * Sends <code>commands</code> without waiting for the response to each of
+     * them, up to {@link #PIPELINE_DEPTH} commands ahead, and dispatches the
+     * responses to the commands in the order they were sent. Should the server
+     * ask for credentials in the middle, the connection is reopened and the
+     * rest of the commands are run one by one.
+     */
+    private void runPipelined(PipelinedCommand[] commands) throws SVNException {
+        boolean pipelined = PIPELINE_DEPTH > 1 && commands.length > 1;
+        int sent = 0;
+        int received = 0;
+        while (received < commands.length) {
+            PipelinedCommand command = commands[received];
+            if (pipelined) {
+                if (sent < commands.length && sent - received <= PIPELINE_DEPTH / 2) {
+                    while (sent < commands.length && sent - received < PIPELINE_DEPTH) {
+                        myConnection.writeBuffered(commands[sent].myTemplate, commands[sent].myItems);
+                        sent++;
+                    }
+                    myConnection.flush();
+                }
+                if (!myConnection.readPipelinedAuthenticationRequest()) {
+                    closeSession();
+                    closeConnection();
+                    openConnection();
+                    pipelined = false;
+                    continue;
+                }
+            } else {
+                write(command.myTemplate, command.myItems);
+                authenticate();
+            }
+            command.handleResponse(read(command.myResponseTemplate, null, false));
+            received++;
+        }
+    }
+
+    private static int getPipelineDepth() {
+        try {
+            return Integer.parseInt(System.getProperty("svnkit.svn.pipelineDepth", "64"));
+        } catch (NumberFormatException e) {
+            return 64;
+        }
+    }
+
+    private static abstract class PipelinedCommand {
+
+        private final String myTemplate;
+        private final Object[] myItems;
+        private final String myResponseTemplate;
+
+        protected PipelinedCommand(String template, Object[] items, String responseTemplate) {
+            myTemplate = template;
+            myItems = items;
+            myResponseTemplate = responseTemplate;
+        }
+
+        public abstract void handleResponse(List values) throws SVNException;
+    }
+
     void updateCredentials(String uuid, SVNURL rootURL) throws SVNException {
         if (getRepositoryRoot(false) != null) {
             return;
@@ -166,9 +166,9 @@ public class SVNSSHConnector implements ISVNConnector {
                         mySession.execCommand(SVNSERVE_COMMAND_WITH_USER_NAME + "\"" + repository.getExternalUserName() + "\"");
                     }
                     myOutputStream = mySession.getIn();
-                    myOutputStream = new BufferedOutputStream(myOutputStream, 16*1024);
+                    myOutputStream = new BufferedOutputStream(myOutputStream, SVNConnection.BUFFER_SIZE);
                     myInputStream = mySession.getOut();
-                    myInputStream = new BufferedInputStream(myInputStream, 16*1024);
+                    myInputStream = new BufferedInputStream(myInputStream, SVNConnection.BUFFER_SIZE);
                     stderrConsumer = StreamLogger.consume(mySession.getErr());
                     return;
                 } catch (SocketTimeoutException e) {
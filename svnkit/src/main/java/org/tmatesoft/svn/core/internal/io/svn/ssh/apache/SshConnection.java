@@ -14,6 +14,7 @@
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.security.KeyPair;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,6 +22,9 @@ import org.apache.sshd.client.SshClient;
 import org.apache.sshd.client.config.hosts.DefaultConfigFileHostEntryResolver;
 import org.apache.sshd.client.future.ConnectFuture;
 import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.compression.Compression;
 import org.apache.sshd.common.config.keys.FilePasswordProvider;
 import org.apache.sshd.common.io.nio2.Nio2ServiceFactoryFactory;
 import org.apache.sshd.common.util.security.SecurityUtils;
@@ -30,6 +34,14 @@ import org.tmatesoft.svn.core.auth.ISVNSSHHostVerifier;
 public class SshConnection {
     private static final Logger log = Logger.getLogger(SshConnection.class.getName());
 
+    /**
+     * When set, zlib compression of the whole ssh stream is offered to the
+     * server, which is worth it on slow links: svnserve protocol is verbose
+     * and only file contents are compressed otherwise. Read for every new
+     * connection.
+     */
+    private static final String COMPRESSION_PROPERTY = "svnkit.ssh.compression";
+
     private final SshClient client;
     private final SshHost host;
     private ClientSession session;
@@ -40,6 +52,10 @@ public class SshConnection {
         this.host = host;
         client = SshClient.setUpDefaultClient();
         client.setIoServiceFactoryFactory(new Nio2ServiceFactoryFactory());
+        if (Boolean.getBoolean(COMPRESSION_PROPERTY)) {
+            client.setCompressionFactories(Arrays.<NamedFactory<Compression>>asList(
+                    BuiltinCompressions.delayedZlib, BuiltinCompressions.zlib, BuiltinCompressions.none));
+        }
 
         byte[] privateKey = host.getPrivateKey();
         if (privateKey != null) {
@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
@@ -18,6 +20,10 @@ public class SVNDoubleLock {
 
     private static boolean ourUseDoubleLock = Boolean.valueOf(System.getProperty("svnkit.useDoubleLock", Boolean.valueOf(SVNFileUtil.isLinux).toString()));
 
+    private static final int MAX_CHECKED_DIRECTORIES = 256;
+    //locking capabilities do not change, so they are only checked once per directory
+    private static final Map<String, Boolean> ourDoubleLockingNeeded = new HashMap<String, Boolean>();
+
     public static SVNDoubleLock obtain(File file, boolean exclusive) throws SVNException {
         //FLOCK
         final SVNFLock flock = ourUseDoubleLock ? obtainFlockIfNeeded(file, exclusive) : null;
@@ -78,17 +84,29 @@ public class SVNDoubleLock {
     }
 
     private static SVNFLock obtainFlockIfNeeded(File file, boolean exclusive) throws SVNException {
-        //create a test file in the same directory to check filesystem locking capabilities
-        final File uniqueFile = SVNFileUtil.createUniqueFile(file.getParentFile(),
-                file.getName(), ".trylock", true);
-        try {
-            final boolean doubleLockingNeeded = isDoubleLockingNeeded(uniqueFile, exclusive);
-
-            //if FLOCK blocks POSIX lock, double locking is not needed
-            return doubleLockingNeeded ? SVNFLock.obtain(file, exclusive) : null;
-        } finally {
-            SVNFileUtil.deleteFile(uniqueFile);
+        final String key = file.getAbsoluteFile().getParent() + (exclusive ? ":exclusive" : ":shared");
+        Boolean doubleLockingNeeded;
+        synchronized (ourDoubleLockingNeeded) {
+            doubleLockingNeeded = ourDoubleLockingNeeded.get(key);
+        }
+        if (doubleLockingNeeded == null) {
+            //create a test file in the same directory to check filesystem locking capabilities
+            final File uniqueFile = SVNFileUtil.createUniqueFile(file.getParentFile(),
+                    file.getName(), ".trylock", true);
+            try {
+                doubleLockingNeeded = Boolean.valueOf(isDoubleLockingNeeded(uniqueFile, exclusive));
+            } finally {
+                SVNFileUtil.deleteFile(uniqueFile);
+            }
+            synchronized (ourDoubleLockingNeeded) {
+                if (ourDoubleLockingNeeded.size() >= MAX_CHECKED_DIRECTORIES) {
+                    ourDoubleLockingNeeded.clear();
+                }
+                ourDoubleLockingNeeded.put(key, doubleLockingNeeded);
+            }
         }
+        //if FLOCK blocks POSIX lock, double locking is not needed
+        return doubleLockingNeeded.booleanValue() ? SVNFLock.obtain(file, exclusive) : null;
     }
 
     private static boolean isDoubleLockingNeeded(File file, boolean exclusive) throws SVNException {
@@ -120,22 +120,26 @@ public class SVNSocketFactory {
     }
 
     public static Socket createSSLSocket(KeyManager[] keyManagers, TrustManager trustManager, String host, int port, int connectTimeout, int readTimeout, ISVNCanceller cancel) throws IOException, SVNException {
+        return createSSLSocket(createSSLContext(keyManagers, trustManager), host, port, connectTimeout, readTimeout, cancel);
+    }
+
+    public static Socket createSSLSocket(SSLContext context, String host, int port, int connectTimeout, int readTimeout, ISVNCanceller cancel) throws IOException, SVNException {
         try {
-            final SSLSocket socket = (SSLSocket) _createSSLSocket(keyManagers, trustManager, host, port, connectTimeout, readTimeout, cancel, true);
+            final SSLSocket socket = (SSLSocket) _createSSLSocket(context, host, port, connectTimeout, readTimeout, cancel, true);
             // To verify that handshake works with regard to SNI
             socket.startHandshake();
             return socket;
         } catch (javax.net.ssl.SSLProtocolException e) {
             if (e.getMessage() != null && e.getMessage().contains("handshake alert:  unrecognized_name")) {
-                return _createSSLSocket(keyManagers, trustManager, host, port, connectTimeout, readTimeout, cancel, false);
+                return _createSSLSocket(context, host, port, connectTimeout, readTimeout, cancel, false);
             }
             throw e;
         }
     }
 
-    private static Socket _createSSLSocket(KeyManager[] keyManagers, TrustManager trustManager, String host, int port, int connectTimeout, int readTimeout, ISVNCanceller cancel, boolean withSNIsupport) throws IOException, SVNException {
+    private static Socket _createSSLSocket(SSLContext context, String host, int port, int connectTimeout, int readTimeout, ISVNCanceller cancel, boolean withSNIsupport) throws IOException, SVNException {
         InetAddress address = createAddress(host);
-        Socket sslSocket = createSSLContext(keyManagers, trustManager).getSocketFactory().createSocket();
+        Socket sslSocket = context.getSocketFactory().createSocket();
         int bufferSize = getSocketReceiveBufferSize();
         if (bufferSize > 0) {
             sslSocket.setReceiveBufferSize(bufferSize);
@@ -157,7 +161,11 @@ public class SVNSocketFactory {
     }
 
     public static Socket createSSLSocket(KeyManager[] keyManagers, TrustManager trustManager, String host, int port, Socket socket, int readTimeout) throws IOException, SVNException {
-        Socket sslSocket = createSSLContext(keyManagers, trustManager).getSocketFactory().createSocket(socket, host, port, true);
+        return createSSLSocket(createSSLContext(keyManagers, trustManager), host, port, socket, readTimeout);
+    }
+
+    public static Socket createSSLSocket(SSLContext context, String host, int port, Socket socket, int readTimeout) throws IOException, SVNException {
+        Socket sslSocket = context.getSocketFactory().createSocket(socket, host, port, true);
         sslSocket = setSSLSocketHost(sslSocket, host);
         sslSocket.setReuseAddress(true);
         sslSocket.setTcpNoDelay(true);
@@ -17,6 +17,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -43,6 +44,7 @@ import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.core.wc.ISVNEventHandler;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
@@ -296,19 +298,57 @@ public class DefaultLoadHandler implements ISVNLoadHandler {
                 }
             }
             
-            if (checksum != null && myCurrentNodeBaton.myResultChecksum != null) {
-                if (!checksum.equals(myCurrentNodeBaton.myResultChecksum)) {
-                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CHECKSUM_MISMATCH, "Checksum mismatch for ''{0}'':\n   expected:  {1}\n     actual:  {2}\n", 
-                            new Object[] { myCurrentNodeBaton.myPath, myCurrentNodeBaton.myResultChecksum, checksum });
-                    SVNErrorManager.error(err, SVNLogType.FSFS);
-                }
+            checkResultChecksum(checksum);
+        } catch (SVNException svne) {
+            fsConsumer.abort();
+            throw svne;
+        }
+    }
+
+    /**
+     * Applies a text block whose diff windows have already been produced by
+     * {@link SVNDumpStreamPipeline}: parsed from the svndiff data of a delta
+     * block or generated from a full text.
+     * 
+     * @param windows   windows to send, in order
+     * @param isDelta   whether the text block is a delta against the node base
+     * @param checksum  MD5 of the full text, or <code>null</code> when there
+     *                  is nothing to compare with
+     */
+    public void applyTextWindows(List windows, boolean isDelta, String checksum) throws SVNException {
+        FSDeltaConsumer fsConsumer = myCurrentRevisionBaton.getConsumer();
+
+        try {
+            if (isDelta) {
+                applyTextDelta();
+            } else {
+                setFullText();
+            }
+            for (Iterator ws = windows.iterator(); ws.hasNext();) {
+                SVNDiffWindow window = (SVNDiffWindow) ws.next();
+                SVNFileUtil.closeFile(fsConsumer.textDeltaChunk(myCurrentNodeBaton.myPath, window));
+            }
+            fsConsumer.textDeltaEnd(myCurrentNodeBaton.myPath);
+            if (isDelta) {
+                checksum = fsConsumer.getChecksum();
             }
+            checkResultChecksum(checksum);
         } catch (SVNException svne) {
             fsConsumer.abort();
             throw svne;
         }
     }
 
+    private void checkResultChecksum(String checksum) throws SVNException {
+        if (checksum != null && myCurrentNodeBaton.myResultChecksum != null) {
+            if (!checksum.equals(myCurrentNodeBaton.myResultChecksum)) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CHECKSUM_MISMATCH, "Checksum mismatch for ''{0}'':\n   expected:  {1}\n     actual:  {2}\n", 
+                        new Object[] { myCurrentNodeBaton.myPath, myCurrentNodeBaton.myResultChecksum, checksum });
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+        }
+    }
+
     public void removeNodeProperties() throws SVNException {
         FSTransactionRoot txnRoot = myCurrentRevisionBaton.myTxnRoot;
         FSRevisionNode node = txnRoot.getRevisionNode(myCurrentNodeBaton.myPath);
@@ -261,6 +261,37 @@ public class DefaultSVNHostOptions implements ISVNHostOptions {
         return 0;
     }
 
+    public int getHttpMaxConnections() {
+        Map properties = getHostProperties();
+        String maxConnections = (String) properties.get("http-max-connections");
+        if (maxConnections != null) {
+            try {
+                return Math.max(Integer.parseInt(maxConnections.trim()), 1);
+            } catch (NumberFormatException nfe) {
+            }
+        }
+        return getDefaultHttpMaxConnections();
+    }
+
+    public boolean isHttpBulkUpdates() {
+        Map properties = getHostProperties();
+        String bulkUpdates = (String) properties.get("http-bulk-updates");
+        if (bulkUpdates == null) {
+            return true;
+        }
+        bulkUpdates = bulkUpdates.trim();
+        return !("no".equalsIgnoreCase(bulkUpdates) || "off".equalsIgnoreCase(bulkUpdates) || "false".equalsIgnoreCase(bulkUpdates));
+    }
+
+    public static int getDefaultHttpMaxConnections() {
+        String maxConnections = System.getProperty("svnkit.http.maxConnections", "4");
+        try {
+            return Math.max(Integer.parseInt(maxConnections.trim()), 1);
+        } catch (NumberFormatException nfe) {
+            return 4;
+        }
+    }
+
     private Map getHostProperties() {
         Map properties = getServersFile().getProperties("global");
         String groupName = getGroupName(getServersFile().getProperties("groups"));
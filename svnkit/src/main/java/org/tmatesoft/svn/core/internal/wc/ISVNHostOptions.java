@@ -56,4 +56,8 @@ public interface ISVNHostOptions {
     int getReadTimeout();
 
     int getConnectTimeout();
+
+    int getHttpMaxConnections();
+
+    boolean isHttpBulkUpdates();
 }
@@ -11,10 +11,12 @@
  */
 package org.tmatesoft.svn.core.internal.wc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
@@ -32,6 +34,7 @@ import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNRepository;
@@ -169,6 +172,66 @@ public class SVNAdminHelper {
         }
     }
     
+    /**
+     * Writes the record of <code>revision</code> of a dump that starts at
+     * <code>start</code>: revision properties followed by the changes made in
+     * the revision, or by the whole tree for the first revision of a
+     * non-incremental dump.
+     */
+    public static void dumpRevision(FSFS fsfs, OutputStream dumpStream, SVNDumpEditor dumpEditor, SVNAdminDeltifier deltifier, 
+            long revision, long start, boolean isIncremental, boolean useDeltas) throws SVNException {
+        writeRevisionRecord(dumpStream, fsfs, revision);
+        if (revision == 0 && revision == start && !isIncremental) {
+            return;
+        }
+        boolean useDeltasForRevision = useDeltas && (isIncremental || revision != start);
+        FSRevisionRoot toRoot = fsfs.createRevisionRoot(revision);
+        dumpEditor.reset(fsfs, toRoot, revision, start, "/", dumpStream, useDeltasForRevision, false);
+
+        if (revision == start && !isIncremental) {
+            FSRevisionRoot fromRoot = fsfs.createRevisionRoot(0);
+            deltifier.setEditor(dumpEditor);
+            deltifier.deltifyDir(fromRoot, "/", "", toRoot, "/");
+        } else {
+            FSRepositoryUtil.replay(fsfs, toRoot, "", -1, false, dumpEditor);
+        }
+    }
+
+    public static void writeRevisionRecord(OutputStream dumpStream, FSFS fsfs, long revision) throws SVNException {
+        SVNProperties revProps = fsfs.getRevisionProperties(revision);
+
+        String revisionDate = revProps.getStringValue(SVNRevisionProperty.DATE);
+        if (revisionDate != null) {
+            SVNDate date = SVNDate.parseDate(revisionDate);
+            revProps.put(SVNRevisionProperty.DATE, date.format());
+        }
+
+        ByteArrayOutputStream encodedProps = new ByteArrayOutputStream();
+        writeProperties(revProps, null, encodedProps);
+
+        writeDumpData(dumpStream, DUMPFILE_REVISION_NUMBER + ": " + revision + "\n");
+        String propContents = null;
+        try {
+            propContents = new String(encodedProps.toByteArray(), "UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, uee.getLocalizedMessage());
+            SVNErrorManager.error(err, uee, SVNLogType.FSFS);
+        }
+        writeDumpData(dumpStream, DUMPFILE_PROP_CONTENT_LENGTH + ": " + propContents.length() + "\n");
+        writeDumpData(dumpStream, DUMPFILE_CONTENT_LENGTH + ": " + propContents.length() + "\n\n");
+        writeDumpData(dumpStream, propContents);
+        writeDumpData(dumpStream, "\n");
+    }
+
+    public static void writeDumpData(OutputStream out, String data) throws SVNException {
+        try {
+            out.write(data.getBytes("UTF-8"));
+        } catch (IOException ioe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
+            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+        }
+    }
+
     public static void deltifyDir(FSFS fsfs, FSRevisionRoot srcRoot, String srcParentDir, 
                                   String srcEntry, FSRevisionRoot tgtRoot, String tgtFullPath, 
                                   ISVNEditor editor) throws SVNException {
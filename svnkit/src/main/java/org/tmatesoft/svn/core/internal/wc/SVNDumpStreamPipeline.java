@@ -0,0 +1,681 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.wc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Loads a dump stream in three stages that run concurrently.
+ *
+ * <p/>
+ * A parser thread reads the stream with {@link SVNDumpStreamParser}, reads
+ * text blocks into memory (or into temporary files when they are large) and
+ * verifies MD5 and SHA-1 checksums of full texts. Text blocks are then turned
+ * into diff windows by a pool of workers: svndiff data of delta blocks is
+ * parsed and decompressed, full texts are run through {@link SVNDeltaGenerator}.
+ * The calling thread replays parsed records in dump order to the load
+ * handler, so transactions are still built and committed one revision after
+ * another; deltification against node bases stays there as well, since it
+ * writes to the proto-revision file of the transaction.
+ *
+ * <p/>
+ * Stages are connected by a queue bounded by the number of records and by
+ * the amount of text kept in memory, so a parser that runs ahead of commits
+ * waits for them. Each stage counts records, bytes and time it has spent
+ * working, see {@link #getParserStage()}, {@link #getDeltaStage()} and
+ * {@link #getCommitStage()}.
+ *
+ * <p/>
+ * The pipeline is used by <code>svnadmin load</code> when enabled with the
+ * <code>svnkit.admin.load.pipeline</code> system property. The number of
+ * workers is taken from <code>svnkit.admin.load.threads</code> (the number of
+ * processors by default) and the amount of text kept in memory from
+ * <code>svnkit.admin.load.queueSize</code> (64 MB by default).
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class SVNDumpStreamPipeline {
+
+    private static final int MAX_QUEUED_RECORDS = 4096;
+    private static final int RECORD_WEIGHT = 256;
+
+    private static boolean ourIsEnabled = Boolean.valueOf(System.getProperty("svnkit.admin.load.pipeline", Boolean.FALSE.toString())).booleanValue();
+    private static int ourThreadsCount = Integer.getInteger("svnkit.admin.load.threads", Runtime.getRuntime().availableProcessors()).intValue();
+    private static long ourQueueSize = Long.getLong("svnkit.admin.load.queueSize", 64 * 1024 * 1024).longValue();
+
+    private final ISVNCanceller myCanceller;
+    private final Stage myParserStage = new Stage("parse");
+    private final Stage myDeltaStage = new Stage("delta");
+    private final Stage myCommitStage = new Stage("commit");
+
+    private final LinkedList<Record> myRecords = new LinkedList<Record>();
+    private long myQueuedWeight;
+    private boolean myIsParsed;
+    private boolean myIsAborted;
+    private Throwable myParserError;
+
+    public static synchronized boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    public static synchronized int getThreadsCount() {
+        return ourThreadsCount;
+    }
+
+    public static synchronized void setThreadsCount(int threadsCount) {
+        ourThreadsCount = threadsCount;
+    }
+
+    public static synchronized long getQueueSize() {
+        return ourQueueSize;
+    }
+
+    public static synchronized void setQueueSize(long queueSize) {
+        ourQueueSize = queueSize;
+    }
+
+    public SVNDumpStreamPipeline(ISVNCanceller canceller) {
+        myCanceller = canceller == null ? ISVNCanceller.NULL : canceller;
+    }
+
+    public Stage getParserStage() {
+        return myParserStage;
+    }
+
+    public Stage getDeltaStage() {
+        return myDeltaStage;
+    }
+
+    public Stage getCommitStage() {
+        return myCommitStage;
+    }
+
+    /**
+     * Parses <code>dumpStream</code> and replays it to <code>handler</code>
+     * on the calling thread. Windows of text blocks are computed in advance
+     * only for {@link DefaultLoadHandler}, other handlers get text blocks
+     * as streams.
+     */
+    public void parseDumpStream(final InputStream dumpStream, ISVNLoadHandler handler, final CharsetDecoder decoder) throws SVNException {
+        final long queueSize = Math.max(getQueueSize(), SVNFileUtil.STREAM_CHUNK_SIZE);
+        final ExecutorService workers = handler instanceof DefaultLoadHandler ?
+                new ThreadPoolExecutor(Math.max(getThreadsCount(), 1), Math.max(getThreadsCount(), 1), 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory("svnkit-load-delta-")) : null;
+        final Thread parser = new WorkerThreadFactory("svnkit-load-parser-").newThread(new Runnable() {
+            public void run() {
+                try {
+                    new SVNDumpStreamParser(myCanceller).parseDumpStream(dumpStream, new RecordingHandler(workers, queueSize), decoder);
+                    finishParsing(null);
+                } catch (Throwable th) {
+                    finishParsing(th);
+                }
+            }
+        });
+        try {
+            parser.start();
+            replay(handler);
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, "Dump stream loaded: " + myParserStage + "; " + myDeltaStage + "; " + myCommitStage);
+        } finally {
+            abort();
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    private void replay(ISVNLoadHandler handler) throws SVNException {
+        while (true) {
+            final Record record = take();
+            if (record == null) {
+                break;
+            }
+            try {
+                myCanceller.checkCancelled();
+                final long start = System.nanoTime();
+                final long waited = record.replay(handler);
+                myCommitStage.add(record.myBytesCount, System.nanoTime() - start - waited);
+            } finally {
+                record.dispose();
+                release(record);
+            }
+        }
+    }
+
+    private synchronized void put(Record record, long queueSize) throws SVNException {
+        boolean interrupted = false;
+        try {
+            while (!myIsAborted && !myRecords.isEmpty() &&
+                    (myRecords.size() >= MAX_QUEUED_RECORDS || myQueuedWeight + record.myWeight > queueSize)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (myIsAborted) {
+                record.dispose();
+                SVNErrorManager.cancel("Load has been aborted", SVNLogType.FSFS);
+            }
+            myRecords.addLast(record);
+            myQueuedWeight += record.myWeight;
+            notifyAll();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized Record take() throws SVNException {
+        boolean interrupted = false;
+        try {
+            while (myRecords.isEmpty() && !myIsParsed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!myRecords.isEmpty()) {
+            return myRecords.removeFirst();
+        }
+        if (myParserError instanceof SVNException) {
+            throw (SVNException) myParserError;
+        } else if (myParserError instanceof RuntimeException) {
+            throw (RuntimeException) myParserError;
+        } else if (myParserError instanceof Error) {
+            throw (Error) myParserError;
+        } else if (myParserError != null) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, myParserError.getMessage());
+            SVNErrorManager.error(err, myParserError, SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    private synchronized void release(Record record) {
+        myQueuedWeight -= record.myWeight;
+        notifyAll();
+    }
+
+    private synchronized void finishParsing(Throwable error) {
+        myIsParsed = true;
+        myParserError = error;
+        notifyAll();
+    }
+
+    private synchronized void abort() {
+        myIsAborted = true;
+        for (Record record : myRecords) {
+            record.dispose();
+        }
+        myRecords.clear();
+        myQueuedWeight = 0;
+        notifyAll();
+    }
+
+    /**
+     * Number of records, bytes of text and time one stage has processed.
+     */
+    public static class Stage {
+
+        private final String myName;
+        private long myRecordsCount;
+        private long myBytesCount;
+        private long myTime;
+
+        private Stage(String name) {
+            myName = name;
+        }
+
+        public String getName() {
+            return myName;
+        }
+
+        public synchronized long getRecordsCount() {
+            return myRecordsCount;
+        }
+
+        public synchronized long getBytesCount() {
+            return myBytesCount;
+        }
+
+        /**
+         * Returns time in milliseconds the stage has been busy, summed over
+         * all its threads.
+         */
+        public synchronized long getTime() {
+            return TimeUnit.NANOSECONDS.toMillis(myTime);
+        }
+
+        public synchronized String toString() {
+            return myName + ": " + myRecordsCount + " records, " + myBytesCount + " bytes, " + getTime() + " ms";
+        }
+
+        private synchronized void add(long bytesCount, long time) {
+            myRecordsCount++;
+            myBytesCount += bytesCount;
+            myTime += Math.max(time, 0);
+        }
+    }
+
+    private abstract static class Record {
+
+        protected long myWeight = RECORD_WEIGHT;
+        protected long myBytesCount;
+
+        /**
+         * Returns nanoseconds spent waiting for other stages.
+         */
+        public abstract long replay(ISVNLoadHandler handler) throws SVNException;
+
+        public void dispose() {
+        }
+    }
+
+    private static class TextRecord extends Record implements Callable<List<SVNDiffWindow>> {
+
+        private final boolean myIsDelta;
+        private final long myLength;
+        private final String myChecksum;
+        private final byte[] myContents;
+        private final File myFile;
+        private final Stage myDeltaStage;
+        private Future<List<SVNDiffWindow>> myWindows;
+
+        public TextRecord(boolean isDelta, long length, String checksum, byte[] contents, File file, Stage deltaStage) {
+            myIsDelta = isDelta;
+            myLength = length;
+            myChecksum = checksum;
+            myContents = contents;
+            myFile = file;
+            myDeltaStage = deltaStage;
+            myBytesCount = length;
+            if (contents != null) {
+                // contents and windows made of them
+                myWeight += 2 * length;
+            }
+        }
+
+        public List<SVNDiffWindow> call() throws Exception {
+            final long start = System.nanoTime();
+            final WindowsCollector collector = new WindowsCollector();
+            if (myLength == 0) {
+                new SVNDeltaGenerator().sendDelta(null, SVNFileUtil.DUMMY_IN, collector, false);
+            } else if (myIsDelta) {
+                final SVNDeltaReader deltaReader = new SVNDeltaReader();
+                deltaReader.nextWindow(myContents, 0, myContents.length, null, collector);
+                deltaReader.reset(null, collector);
+            } else {
+                new SVNDeltaGenerator().sendDelta(null, new ByteArrayInputStream(myContents), collector, false);
+            }
+            myDeltaStage.add(myLength, System.nanoTime() - start);
+            return collector.myWindows;
+        }
+
+        public long replay(ISVNLoadHandler handler) throws SVNException {
+            if (myWindows != null) {
+                final long start = System.nanoTime();
+                final List<SVNDiffWindow> windows = getWindows();
+                final long waited = System.nanoTime() - start;
+                ((DefaultLoadHandler) handler).applyTextWindows(windows, myIsDelta, myLength > 0 ? myChecksum : null);
+                return waited;
+            }
+            final InputStream contents = myFile != null ? SVNFileUtil.openFileForReading(myFile, SVNLogType.FSFS) : new ByteArrayInputStream(myContents);
+            try {
+                handler.parseTextBlock(contents, myLength, myIsDelta);
+            } finally {
+                SVNFileUtil.closeFile(contents);
+            }
+            return 0;
+        }
+
+        public void dispose() {
+            if (myWindows != null) {
+                myWindows.cancel(false);
+            }
+            if (myFile != null) {
+                try {
+                    SVNFileUtil.deleteFile(myFile);
+                } catch (SVNException e) {
+                    //
+                }
+            }
+        }
+
+        private List<SVNDiffWindow> getWindows() throws SVNException {
+            try {
+                return myWindows.get();
+            } catch (InterruptedException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Delta computation was interrupted");
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof SVNException) {
+                    throw (SVNException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause != null ? cause.getMessage() : e.getMessage());
+                SVNErrorManager.error(err, cause, SVNLogType.FSFS);
+            }
+            return null;
+        }
+    }
+
+    private static class WindowsCollector implements ISVNDeltaConsumer {
+
+        private final List<SVNDiffWindow> myWindows = new ArrayList<SVNDiffWindow>();
+
+        public void applyTextDelta(String path, String baseChecksum) {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+            // windows share buffers of the reader or generator, empty ones have no data at all
+            myWindows.add(diffWindow.getDataLength() > 0 ? diffWindow.clone(ByteBuffer.allocate(diffWindow.getDataLength())) : diffWindow);
+            return null;
+        }
+
+        public void textDeltaEnd(String path) {
+        }
+    }
+
+    /**
+     * Turns calls of the parser into records, runs on the parser thread.
+     */
+    private class RecordingHandler implements ISVNLoadHandler {
+
+        private final ExecutorService myWorkers;
+        private final long myQueueSize;
+        private Map myNodeHeaders;
+        private long myMark = System.nanoTime();
+
+        public RecordingHandler(ExecutorService workers, long queueSize) {
+            myWorkers = workers;
+            myQueueSize = queueSize;
+        }
+
+        public void closeRevision() throws SVNException {
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.closeRevision();
+                    return 0;
+                }
+            });
+        }
+
+        public void openRevision(final Map headers) throws SVNException {
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.openRevision(headers);
+                    return 0;
+                }
+            });
+        }
+
+        public void openNode(final Map headers) throws SVNException {
+            myNodeHeaders = headers;
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.openNode(headers);
+                    return 0;
+                }
+            });
+        }
+
+        public void closeNode() throws SVNException {
+            myNodeHeaders = null;
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.closeNode();
+                    return 0;
+                }
+            });
+        }
+
+        public void parseUUID(final String uuid) throws SVNException {
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.parseUUID(uuid);
+                    return 0;
+                }
+            });
+        }
+
+        public void removeNodeProperties() throws SVNException {
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.removeNodeProperties();
+                    return 0;
+                }
+            });
+        }
+
+        public void setRevisionProperty(final String propertyName, final SVNPropertyValue propertyValue) throws SVNException {
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.setRevisionProperty(propertyName, propertyValue);
+                    return 0;
+                }
+            });
+        }
+
+        public void setNodeProperty(final String propertyName, final SVNPropertyValue propertyValue) throws SVNException {
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.setNodeProperty(propertyName, propertyValue);
+                    return 0;
+                }
+            });
+        }
+
+        public void deleteNodeProperty(final String propertyName) throws SVNException {
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.deleteNodeProperty(propertyName);
+                    return 0;
+                }
+            });
+        }
+
+        public void applyTextDelta() throws SVNException {
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.applyTextDelta();
+                    return 0;
+                }
+            });
+        }
+
+        public void setFullText() throws SVNException {
+            add(new Record() {
+                public long replay(ISVNLoadHandler handler) throws SVNException {
+                    handler.setFullText();
+                    return 0;
+                }
+            });
+        }
+
+        public void parseTextBlock(InputStream dumpStream, long contentLength, boolean isDelta) throws SVNException {
+            final MessageDigest md5Digest = isDelta ? null : getDigest("MD5");
+            final String expectedSHA1 = myNodeHeaders != null ? (String) myNodeHeaders.get(SVNAdminHelper.DUMPFILE_TEXT_CONTENT_SHA1) : null;
+            final MessageDigest sha1Digest = isDelta || expectedSHA1 == null ? null : getDigest("SHA1");
+
+            byte[] contents = null;
+            File file = null;
+            OutputStream os = null;
+            try {
+                if (contentLength <= myQueueSize / 4) {
+                    contents = new byte[(int) contentLength];
+                    readContents(dumpStream, contentLength, contents, null, md5Digest, sha1Digest);
+                } else {
+                    file = SVNFileUtil.createTempFile("svnkit-load", ".tmp");
+                    os = SVNFileUtil.openFileForWriting(file);
+                    readContents(dumpStream, contentLength, new byte[SVNFileUtil.STREAM_CHUNK_SIZE], os, md5Digest, sha1Digest);
+                }
+            } catch (IOException e) {
+                SVNFileUtil.closeFile(os);
+                os = null;
+                deleteFile(file);
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            } catch (SVNException e) {
+                SVNFileUtil.closeFile(os);
+                os = null;
+                deleteFile(file);
+                throw e;
+            } finally {
+                SVNFileUtil.closeFile(os);
+            }
+
+            String checksum = null;
+            try {
+                if (md5Digest != null) {
+                    checksum = SVNFileUtil.toHexDigest(md5Digest);
+                    checkChecksum(SVNAdminHelper.DUMPFILE_TEXT_CONTENT_MD5, checksum);
+                }
+                if (sha1Digest != null) {
+                    checkChecksum(SVNAdminHelper.DUMPFILE_TEXT_CONTENT_SHA1, SVNFileUtil.toHexDigest(sha1Digest));
+                }
+            } catch (SVNException e) {
+                deleteFile(file);
+                throw e;
+            }
+
+            final TextRecord record = new TextRecord(isDelta, contentLength, checksum, contents, file, myDeltaStage);
+            if (myWorkers != null && contents != null) {
+                record.myWindows = myWorkers.submit(record);
+            }
+            add(record);
+        }
+
+        private void readContents(InputStream dumpStream, long contentLength, byte[] buffer, OutputStream os,
+                MessageDigest md5Digest, MessageDigest sha1Digest) throws IOException, SVNException {
+            int offset = 0;
+            while (contentLength > 0) {
+                final int toRead = (int) Math.min(contentLength, buffer.length - offset);
+                final int read = dumpStream.read(buffer, offset, toRead);
+                if (read < 0) {
+                    SVNAdminHelper.generateIncompleteDataError();
+                }
+                if (md5Digest != null) {
+                    md5Digest.update(buffer, offset, read);
+                }
+                if (sha1Digest != null) {
+                    sha1Digest.update(buffer, offset, read);
+                }
+                if (os != null) {
+                    os.write(buffer, 0, read);
+                } else {
+                    offset += read;
+                }
+                contentLength -= read;
+            }
+        }
+
+        private void checkChecksum(String header, String actual) throws SVNException {
+            final String expected = myNodeHeaders != null ? (String) myNodeHeaders.get(header) : null;
+            if (expected != null && !expected.equals(actual)) {
+                final String path = (String) myNodeHeaders.get(SVNAdminHelper.DUMPFILE_NODE_PATH);
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CHECKSUM_MISMATCH, "Checksum mismatch for ''{0}'':\n   expected:  {1}\n     actual:  {2}\n",
+                        new Object[] { path, expected, actual });
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+        }
+
+        private MessageDigest getDigest(String algorithm) throws SVNException {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "{0} implementation not found: {1}", new Object[] { algorithm, e.getLocalizedMessage() });
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+                return null;
+            }
+        }
+
+        private void deleteFile(File file) {
+            if (file != null) {
+                try {
+                    SVNFileUtil.deleteFile(file);
+                } catch (SVNException e) {
+                    //
+                }
+            }
+        }
+
+        private void add(Record record) throws SVNException {
+            myParserStage.add(record.myBytesCount, System.nanoTime() - myMark);
+            put(record, myQueueSize);
+            myMark = System.nanoTime();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final String myPrefix;
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public WorkerThreadFactory(String prefix) {
+            myPrefix = prefix;
+        }
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, myPrefix + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1719,6 +1719,27 @@ public class SVNFileUtil {
         return os;
     }
 
+    /**
+     * Forces the contents of <code>file</code> to the storage device. The file
+     * is opened for reading only, so read-only files may be synced as well.
+     *
+     * @since 1.10
+     */
+    public static void syncFile(File file) throws SVNException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            raf.getChannel().force(true);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Cannot sync ''{0}'': {1}", new Object[] {
+                    file, e.getMessage()
+            });
+            SVNErrorManager.error(err, e, Level.FINE, SVNLogType.DEFAULT);
+        } finally {
+            closeFile(raf);
+        }
+    }
+
     public static RandomAccessFile openRAFileForWriting(File file, boolean append) throws SVNException {
         if (file == null) {
             return null;
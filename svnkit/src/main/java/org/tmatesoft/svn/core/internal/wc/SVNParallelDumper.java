@@ -0,0 +1,273 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.wc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
+import org.tmatesoft.svn.core.wc.ISVNEventHandler;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Dumps revisions of a repository in ranges that are dumped concurrently.
+ *
+ * <p/>
+ * Every revision record of a dump depends only on the revision itself and on
+ * the parameters of the dump, so ranges of revisions are dumped by a pool of
+ * workers, each with its own {@link FSFS} instance and dump editor, into
+ * files of a spool directory. The calling thread copies these files into the
+ * dump stream in order as soon as they are complete.
+ *
+ * <p/>
+ * Completed ranges are recorded in a checkpoint file of the spool directory.
+ * A dump that has been interrupted is resumed by running it again with the
+ * same spool directory and parameters: ranges already dumped are only copied.
+ * Spool files are removed once the whole dump has been written.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class SVNParallelDumper {
+
+    private static final String CHECKPOINT_FILE = "dump-checkpoint";
+    private static final String RANGE_FILE_PREFIX = "dump-range-";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int RANGES_PER_DUMP = 64;
+    private static final int MAX_RANGE_SIZE = 1000;
+
+    private final File myRepositoryRoot;
+    private final File mySpoolDirectory;
+    private final int myThreadsCount;
+    private final ISVNCanceller myCanceller;
+    private final ISVNAdminEventHandler myEventHandler;
+    private volatile boolean myIsAborted;
+
+    public SVNParallelDumper(File repositoryRoot, File spoolDirectory, int threadsCount, ISVNCanceller canceller, ISVNAdminEventHandler eventHandler) {
+        myRepositoryRoot = repositoryRoot;
+        mySpoolDirectory = spoolDirectory;
+        myThreadsCount = Math.max(threadsCount, 1);
+        myCanceller = canceller == null ? ISVNCanceller.NULL : canceller;
+        myEventHandler = eventHandler;
+    }
+
+    /**
+     * Writes revision records of revisions from <code>start</code> to
+     * <code>end</code> to <code>dumpStream</code>; the dump header is
+     * expected to be written already.
+     */
+    public void dumpRevisions(FSFS fsfs, OutputStream dumpStream, long start, long end, boolean isIncremental, boolean useDeltas) throws SVNException {
+        final long rangeSize = Math.min(Math.max((end - start + 1) / RANGES_PER_DUMP, 1), MAX_RANGE_SIZE);
+        final String checkpointKey = fsfs.getUUID() + " " + start + " " + end + " " + isIncremental + " " + useDeltas + " " + rangeSize;
+        final Set<String> completed = openCheckpoint(checkpointKey);
+
+        final List<Range> ranges = new ArrayList<Range>();
+        for (long from = start; from <= end; from += rangeSize) {
+            ranges.add(new Range(from, Math.min(from + rangeSize - 1, end), start, isIncremental, useDeltas));
+        }
+
+        final ExecutorService workers = new ThreadPoolExecutor(myThreadsCount, myThreadsCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        try {
+            for (Range range : ranges) {
+                if (!completed.contains(range.getName()) || !range.getFile().isFile()) {
+                    range.myFuture = workers.submit(range);
+                }
+            }
+            for (Range range : ranges) {
+                myCanceller.checkCancelled();
+                if (range.myFuture != null) {
+                    waitFor(range.myFuture);
+                }
+                final InputStream contents = SVNFileUtil.openFileForReading(range.getFile(), SVNLogType.FSFS);
+                try {
+                    FSRepositoryUtil.copy(contents, dumpStream, myCanceller);
+                } finally {
+                    SVNFileUtil.closeFile(contents);
+                }
+                for (long revision = range.myFrom; revision <= range.myTo; revision++) {
+                    if (myEventHandler != null) {
+                        SVNAdminEvent event = new SVNAdminEvent(revision, SVNAdminEventAction.REVISION_DUMPED, "* Dumped revision " + revision + ".");
+                        myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
+                    }
+                }
+            }
+        } finally {
+            myIsAborted = true;
+            workers.shutdownNow();
+        }
+
+        for (Range range : ranges) {
+            SVNFileUtil.deleteFile(range.getFile());
+        }
+        SVNFileUtil.deleteFile(getCheckpointFile());
+    }
+
+    private Set<String> openCheckpoint(String checkpointKey) throws SVNException {
+        final Set<String> completed = new HashSet<String>();
+        final File checkpointFile = getCheckpointFile();
+        if (checkpointFile.isFile()) {
+            final InputStream is = SVNFileUtil.openFileForReading(checkpointFile, SVNLogType.FSFS);
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+                if (checkpointKey.equals(reader.readLine())) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        completed.add(line.trim());
+                    }
+                }
+            } catch (IOException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            } finally {
+                SVNFileUtil.closeFile(is);
+            }
+        }
+
+        final File[] children = SVNFileListUtil.listFiles(mySpoolDirectory);
+        for (int i = 0; children != null && i < children.length; i++) {
+            final String name = children[i].getName();
+            if (name.startsWith(RANGE_FILE_PREFIX) && (name.endsWith(TMP_SUFFIX) || !completed.contains(name))) {
+                SVNFileUtil.deleteFile(children[i]);
+            }
+        }
+        if (completed.isEmpty()) {
+            mySpoolDirectory.mkdirs();
+            SVNFileUtil.writeToFile(checkpointFile, checkpointKey + "\n", "UTF-8");
+        }
+        return completed;
+    }
+
+    private synchronized void checkpoint(Range range) throws SVNException {
+        final OutputStream os = SVNFileUtil.openFileForWriting(getCheckpointFile(), true);
+        try {
+            os.write((range.getName() + "\n").getBytes("UTF-8"));
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(os);
+        }
+    }
+
+    private File getCheckpointFile() {
+        return new File(mySpoolDirectory, CHECKPOINT_FILE);
+    }
+
+    private static void waitFor(Future<?> future) throws SVNException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Dump was interrupted");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SVNException) {
+                throw (SVNException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause != null ? cause.getMessage() : e.getMessage());
+            SVNErrorManager.error(err, cause, SVNLogType.FSFS);
+        }
+    }
+
+    private class Range implements Callable<Object> {
+
+        private final long myFrom;
+        private final long myTo;
+        private final long myStart;
+        private final boolean myIsIncremental;
+        private final boolean myIsUseDeltas;
+        private Future<Object> myFuture;
+
+        public Range(long from, long to, long start, boolean isIncremental, boolean useDeltas) {
+            myFrom = from;
+            myTo = to;
+            myStart = start;
+            myIsIncremental = isIncremental;
+            myIsUseDeltas = useDeltas;
+        }
+
+        public String getName() {
+            return RANGE_FILE_PREFIX + myFrom + "-" + myTo;
+        }
+
+        public File getFile() {
+            return new File(mySpoolDirectory, getName());
+        }
+
+        public Object call() throws SVNException {
+            final File tmpFile = new File(mySpoolDirectory, getName() + TMP_SUFFIX);
+            final FSFS fsfs = SVNAdminHelper.openRepository(myRepositoryRoot, true);
+            OutputStream os = null;
+            try {
+                os = SVNFileUtil.openFileForWriting(tmpFile);
+                final SVNDumpEditor dumpEditor = new SVNDumpEditor(fsfs, null, myFrom, myStart, "/", os, myIsUseDeltas, false);
+                final SVNAdminDeltifier deltifier = new SVNAdminDeltifier(fsfs, SVNDepth.INFINITY, false, false, false, null);
+                for (long revision = myFrom; revision <= myTo; revision++) {
+                    if (myIsAborted) {
+                        SVNErrorManager.cancel("Dump has been aborted", SVNLogType.FSFS);
+                    }
+                    SVNAdminHelper.dumpRevision(fsfs, os, dumpEditor, deltifier, revision, myStart, myIsIncremental, myIsUseDeltas);
+                }
+                SVNFileUtil.closeFile(os);
+                os = null;
+                SVNFileUtil.rename(tmpFile, getFile());
+                checkpoint(this);
+            } finally {
+                SVNFileUtil.closeFile(os);
+                SVNAdminHelper.closeRepository(fsfs);
+            }
+            return null;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-dump-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.wc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Verifies revisions of a repository concurrently.
+ *
+ * <p/>
+ * Revisions are verified in small ranges by a pool of workers, each range
+ * with its own {@link FSFS} instance, so reconstruction of representations
+ * and checksum calculation are spread over all workers. The calling thread
+ * reports verified revisions in order, along with periodic
+ * {@link SVNAdminEventAction#VERIFY_PROGRESS} events.
+ *
+ * <p/>
+ * Once a revision fails, ranges above it are no longer started, while
+ * revisions below it are still verified. All errors found are then reported
+ * together, in revision order, the error of the oldest revision first.
+ *
+ * @version 1.10
+ * @author  TMate Software Ltd.
+ */
+public class SVNParallelVerifier {
+
+    private static final int RANGES_PER_THREAD = 16;
+    private static final int MAX_RANGE_SIZE = 100;
+    private static final long PROGRESS_INTERVAL = 1000;
+
+    private final File myRepositoryRoot;
+    private final int myThreadsCount;
+    private final ISVNCanceller myCanceller;
+    private final ISVNAdminEventHandler myEventHandler;
+    private final AtomicLong myFailedRevision = new AtomicLong(Long.MAX_VALUE);
+    private volatile boolean myIsAborted;
+
+    public SVNParallelVerifier(File repositoryRoot, int threadsCount, ISVNCanceller canceller, ISVNAdminEventHandler eventHandler) {
+        myRepositoryRoot = repositoryRoot;
+        myThreadsCount = Math.max(threadsCount, 1);
+        myCanceller = canceller == null ? ISVNCanceller.NULL : canceller;
+        myEventHandler = eventHandler;
+    }
+
+    public void verifyRevisions(long start, long end) throws SVNException {
+        final long revisionsCount = end - start + 1;
+        final long rangeSize = Math.min(Math.max(revisionsCount / (myThreadsCount * RANGES_PER_THREAD), 1), MAX_RANGE_SIZE);
+        final List<Range> ranges = new ArrayList<Range>();
+        for (long from = start; from <= end; from += rangeSize) {
+            ranges.add(new Range(from, Math.min(from + rangeSize - 1, end), start));
+        }
+
+        final List<SVNErrorMessage> errors = new ArrayList<SVNErrorMessage>();
+        final long startTime = System.currentTimeMillis();
+        long lastProgressTime = startTime;
+        long verifiedCount = 0;
+
+        final ExecutorService workers = new ThreadPoolExecutor(myThreadsCount, myThreadsCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        try {
+            for (Range range : ranges) {
+                range.myFuture = workers.submit(range);
+            }
+            for (Range range : ranges) {
+                myCanceller.checkCancelled();
+                waitFor(range.myFuture);
+                for (long revision = range.myFrom; revision <= range.myTo; revision++) {
+                    final int index = (int) (revision - range.myFrom);
+                    if (range.myErrors[index] != null) {
+                        errors.add(range.myErrors[index].wrap("Error verifying revision {0}", String.valueOf(revision)));
+                    } else if (range.myIsVerified[index]) {
+                        verifiedCount++;
+                        handleEvent(new SVNAdminEvent(revision, SVNAdminEventAction.REVISION_DUMPED, "* Verified revision " + revision + "."),
+                                (double) verifiedCount / revisionsCount);
+                    }
+                }
+                final long now = System.currentTimeMillis();
+                if (now - lastProgressTime >= PROGRESS_INTERVAL) {
+                    lastProgressTime = now;
+                    fireProgressEvent(range.myTo, verifiedCount, revisionsCount, now - startTime);
+                }
+            }
+        } finally {
+            myIsAborted = true;
+            workers.shutdownNow();
+        }
+        fireProgressEvent(end, verifiedCount, revisionsCount, System.currentTimeMillis() - startTime);
+
+        if (!errors.isEmpty()) {
+            for (int i = 0; i < errors.size() - 1; i++) {
+                SVNErrorMessage last = errors.get(i);
+                while (last.hasChildErrorMessage()) {
+                    last = last.getChildErrorMessage();
+                }
+                last.setChildErrorMessage(errors.get(i + 1));
+            }
+            SVNErrorManager.error(errors.get(0), SVNLogType.FSFS);
+        }
+    }
+
+    private void fireProgressEvent(long revision, long verifiedCount, long revisionsCount, long time) throws SVNException {
+        final long rate = time > 0 ? verifiedCount * 1000 / time : verifiedCount;
+        handleEvent(new SVNAdminEvent(revision, SVNAdminEventAction.VERIFY_PROGRESS,
+                "* Verified " + verifiedCount + " of " + revisionsCount + " revisions (" + rate + " revisions/s)."),
+                (double) verifiedCount / revisionsCount);
+    }
+
+    private void handleEvent(SVNAdminEvent event, double progress) throws SVNException {
+        if (myEventHandler != null) {
+            myEventHandler.handleAdminEvent(event, progress);
+        }
+    }
+
+    private static void waitFor(Future<?> future) throws SVNException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Verification was interrupted");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SVNException) {
+                throw (SVNException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause != null ? cause.getMessage() : e.getMessage());
+            SVNErrorManager.error(err, cause, SVNLogType.FSFS);
+        }
+    }
+
+    private class Range implements Callable<Object> {
+
+        private final long myFrom;
+        private final long myTo;
+        private final long myStart;
+        private final SVNErrorMessage[] myErrors;
+        private final boolean[] myIsVerified;
+        private Future<Object> myFuture;
+
+        public Range(long from, long to, long start) {
+            myFrom = from;
+            myTo = to;
+            myStart = start;
+            myErrors = new SVNErrorMessage[(int) (to - from + 1)];
+            myIsVerified = new boolean[(int) (to - from + 1)];
+        }
+
+        public Object call() throws SVNException {
+            if (myIsAborted || myFrom > myFailedRevision.get()) {
+                return null;
+            }
+            final FSFS fsfs = SVNAdminHelper.openRepository(myRepositoryRoot, true);
+            try {
+                final SVNDumpEditor editor = new SVNDumpEditor(fsfs, null, myFrom, myStart, "/", SVNFileUtil.DUMMY_OUT, false, true);
+                for (long revision = myFrom; revision <= myTo; revision++) {
+                    if (myIsAborted || revision > myFailedRevision.get()) {
+                        break;
+                    }
+                    try {
+                        final FSRevisionRoot toRoot = fsfs.createRevisionRoot(revision);
+                        editor.reset(fsfs, toRoot, revision, myStart, "/", SVNFileUtil.DUMMY_OUT, false, true);
+                        FSRepositoryUtil.replay(fsfs, toRoot, "", SVNRepository.INVALID_REVISION, false, editor);
+                        fsfs.getRevisionProperties(revision);
+                        myIsVerified[(int) (revision - myFrom)] = true;
+                    } catch (SVNException e) {
+                        myErrors[(int) (revision - myFrom)] = e.getErrorMessage();
+                        long failedRevision = myFailedRevision.get();
+                        while (revision < failedRevision && !myFailedRevision.compareAndSet(failedRevision, revision)) {
+                            failedRevision = myFailedRevision.get();
+                        }
+                        break;
+                    }
+                }
+            } finally {
+                SVNAdminHelper.closeRepository(fsfs);
+            }
+            return null;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-verify-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
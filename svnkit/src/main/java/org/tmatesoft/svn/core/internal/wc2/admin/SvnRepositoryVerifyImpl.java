@@ -4,6 +4,7 @@ import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
 import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
 import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
 import org.tmatesoft.svn.core.wc2.SvnTarget;
 import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryVerify;
 
@@ -15,12 +16,15 @@ public class SvnRepositoryVerifyImpl extends SvnRepositoryOperationRunner<SVNAdm
         SVNAdminClient ac = new SVNAdminClient(getOperation().getAuthenticationManager(), getOperation().getOptions());
         ac.setEventHandler(this);
                 
-        ac.doVerify(getOperation().getRepositoryRoot(), getOperation().getStartRevision(), getOperation().getEndRevision());
+        ac.doVerify(getOperation().getRepositoryRoot(), getOperation().getStartRevision(), getOperation().getEndRevision(), getOperation().getThreadsCount());
         
         return getOperation().first();
     }
     
     public void handleAdminEvent(SVNAdminEvent event, double progress) throws SVNException {
+        if (event.getAction() == SVNAdminEventAction.VERIFY_PROGRESS) {
+            return;
+        }
         getOperation().receive(SvnTarget.fromFile(getOperation().getRepositoryRoot()), event);
     }
 }
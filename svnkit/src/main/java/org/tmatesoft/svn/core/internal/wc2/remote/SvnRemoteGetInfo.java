@@ -3,8 +3,10 @@ package org.tmatesoft.svn.core.internal.wc2.remote;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.tmatesoft.svn.core.ISVNDirEntryHandler;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNErrorCode;
@@ -30,6 +32,9 @@ import org.tmatesoft.svn.util.SVNLogType;
 
 public class SvnRemoteGetInfo extends SvnRemoteOperationRunner<SvnInfo, SvnGetInfo> {
 
+    private static final int DIR_ENTRY_FIELDS = SVNDirEntry.DIRENT_SIZE | SVNDirEntry.DIRENT_KIND | SVNDirEntry.DIRENT_CREATED_REVISION | 
+            SVNDirEntry.DIRENT_TIME | SVNDirEntry.DIRENT_LAST_AUTHOR;
+
     public boolean isApplicable(SvnGetInfo operation, SvnWcGeneration wcGeneration) throws SVNException {
         if (super.isApplicable(operation, wcGeneration)) {
             return true;
@@ -180,7 +185,23 @@ public class SvnRemoteGetInfo extends SvnRemoteOperationRunner<SvnInfo, SvnGetIn
     }
     
     private void pushDirInfo(SVNRepository repos, SVNRevision rev, String dir, SVNURL root, String uuid, SVNURL url, Map<String, SVNLock> locks, SVNDepth depth) throws SVNException {
-        Collection<SVNDirEntry> children =  repos.getDir(dir, rev.getNumber(), null, SVNDirEntry.DIRENT_SIZE | SVNDirEntry.DIRENT_KIND | SVNDirEntry.DIRENT_CREATED_REVISION | SVNDirEntry.DIRENT_TIME | SVNDirEntry.DIRENT_LAST_AUTHOR,  new ArrayList<SVNDirEntry>());
+        Collection<SVNDirEntry> children =  repos.getDir(dir, rev.getNumber(), null, DIR_ENTRY_FIELDS,  new ArrayList<SVNDirEntry>());
+        pushDirInfo(repos, rev, dir, children, root, uuid, url, locks, depth);
+    }
+
+    private void pushDirInfo(SVNRepository repos, SVNRevision rev, String dir, Collection<SVNDirEntry> children, SVNURL root, String uuid, SVNURL url, Map<String, SVNLock> locks, SVNDepth depth) throws SVNException {
+        Map<String, Collection<SVNDirEntry>> subdirChildren = null;
+        if (depth == SVNDepth.INFINITY) {
+            List<String> subdirs = new ArrayList<String>();
+            for (SVNDirEntry child : children) {
+                if (child.getKind() == SVNNodeKind.DIR) {
+                    subdirs.add(SVNPathUtil.append(dir, child.getName()));
+                }
+            }
+            if (subdirs.size() > 1) {
+                subdirChildren = fetchDirs(repos, rev, subdirs);
+            }
+        }
         
         for (SVNDirEntry child : children) {
             SVNURL childURL = url.appendPath(child.getName(), false);
@@ -196,11 +217,28 @@ public class SvnRemoteGetInfo extends SvnRemoteOperationRunner<SvnInfo, SvnGetIn
             }
             
             if (depth == SVNDepth.INFINITY && child.getKind() == SVNNodeKind.DIR) {
-                pushDirInfo(repos, rev, path, root, uuid, childURL, locks, depth);
+                if (subdirChildren != null) {
+                    pushDirInfo(repos, rev, path, subdirChildren.get(path), root, uuid, childURL, locks, depth);
+                } else {
+                    pushDirInfo(repos, rev, path, root, uuid, childURL, locks, depth);
+                }
             }
         }
     }
 
+    private static Map<String, Collection<SVNDirEntry>> fetchDirs(SVNRepository repos, SVNRevision rev, List<String> paths) throws SVNException {
+        final Map<String, Collection<SVNDirEntry>> children = new HashMap<String, Collection<SVNDirEntry>>();
+        for (String path : paths) {
+            children.put(path, new ArrayList<SVNDirEntry>());
+        }
+        repos.getDir(paths.toArray(new String[paths.size()]), rev.getNumber(), null, DIR_ENTRY_FIELDS, new ISVNDirEntryHandler() {
+            public void handleDirEntry(SVNDirEntry dirEntry) throws SVNException {
+                children.get(SVNPathUtil.removeTail(dirEntry.getRelativePath())).add(dirEntry);
+            }
+        });
+        return children;
+    }
+
     private SvnInfo creatSvnInfoForEntry(SVNURL root, String uuid, SVNDirEntry entry, SVNURL entryURL, long revision, SVNLock lock) {
         SvnInfo info = new SvnInfo();
         info.setKind(entry.getKind());
@@ -161,13 +161,33 @@ public class SvnRemoteList extends SvnRemoteOperationRunner<SVNDirEntry, SvnList
             }
             throw e;
         }
+        list(repository, path, entries, properties, rev, depth, entryFields, externals, externalParentUrl, externalTarget, handler);
+    }
 
+    private static void list(SVNRepository repository, String path, Collection entries, SVNProperties properties, long rev, SVNDepth depth, int entryFields, Map<SVNURL, SVNPropertyValue> externals, SVNURL externalParentUrl, String externalTarget, ISVNDirEntryHandler handler) throws SVNException {
         SVNPropertyValue svnExternalsVaule = properties == null ? null : properties.getSVNPropertyValue(SVNProperty.EXTERNALS);
         if (svnExternalsVaule != null) {
             SVNURL location = repository.getLocation();
             externals.put(location.appendPath(path, false), svnExternalsVaule);
         }
 
+        List<String> subdirs = new ArrayList<String>();
+        for (Iterator iterator = entries.iterator(); iterator.hasNext(); ) {
+            SVNDirEntry entry = (SVNDirEntry) iterator.next();
+            if (entry.getKind() == SVNNodeKind.DIR && entry.getDate() != null && depth == SVNDepth.INFINITY) {
+                subdirs.add(SVNPathUtil.append(path, entry.getName()));
+            }
+        }
+        Map<String, Collection<SVNDirEntry>> subdirEntries = null;
+        Map<String, SVNProperties> subdirProperties = null;
+        if (subdirs.size() > 1) {
+            subdirEntries = new HashMap<String, Collection<SVNDirEntry>>();
+            subdirProperties = externals == null ? null : new HashMap<String, SVNProperties>();
+            if (!fetchDirs(repository, subdirs, rev, entryFields, subdirEntries, subdirProperties)) {
+                subdirEntries = null;
+            }
+        }
+
         for (Iterator iterator = entries.iterator(); iterator.hasNext(); ) {
             SVNDirEntry entry = (SVNDirEntry) iterator.next();
             String childPath = SVNPathUtil.append(path, entry.getName());
@@ -178,11 +198,49 @@ public class SvnRemoteList extends SvnRemoteOperationRunner<SVNDirEntry, SvnList
                 handler.handleDirEntry(entry);
             }
             if (entry.getKind() == SVNNodeKind.DIR && entry.getDate() != null && depth == SVNDepth.INFINITY) {
-                list(repository, childPath, rev, depth, entryFields, externals, externalParentUrl, externalTarget, handler);
+                if (subdirEntries != null) {
+                    list(repository, childPath, subdirEntries.get(childPath), subdirProperties == null ? null : subdirProperties.get(childPath),
+                            rev, depth, entryFields, externals, externalParentUrl, externalTarget, handler);
+                } else {
+                    list(repository, childPath, rev, depth, entryFields, externals, externalParentUrl, externalTarget, handler);
+                }
             }
         }
     }
 
+    /**
+     * Fetches listings of all subdirectories of a directory at once, which saves
+     * a round trip per subdirectory with the servers supporting that. Returns
+     * <code>false</code> if some of them may not be read, these are then listed
+     * one by one and skipped as before.
+     */
+    private static boolean fetchDirs(SVNRepository repository, List<String> paths, long rev, int entryFields,
+                                     final Map<String, Collection<SVNDirEntry>> entries, Map<String, SVNProperties> properties) throws SVNException {
+        SVNProperties[] dirProperties = properties == null ? null : new SVNProperties[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            entries.put(paths.get(i), new TreeSet<SVNDirEntry>());
+            if (dirProperties != null) {
+                dirProperties[i] = new SVNProperties();
+                properties.put(paths.get(i), dirProperties[i]);
+            }
+        }
+        try {
+            repository.getDir(paths.toArray(new String[paths.size()]), rev, dirProperties, entryFields, new ISVNDirEntryHandler() {
+                public void handleDirEntry(SVNDirEntry dirEntry) throws SVNException {
+                    entries.get(SVNPathUtil.removeTail(dirEntry.getRelativePath())).add(dirEntry);
+                }
+            });
+        } catch (SVNAuthenticationException e) {
+            return false;
+        } catch (SVNException e) {
+            if (e.getErrorMessage().getErrorCode() == SVNErrorCode.RA_NOT_AUTHORIZED) {
+                return false;
+            }
+            throw e;
+        }
+        return true;
+    }
+
     private void listExternals(SVNRepository repository, Map<SVNURL, SVNPropertyValue> externals, SVNDepth depth, int entryFields, boolean fetchLocks, ISVNDirEntryHandler handler) throws SVNException {
         for (Map.Entry<SVNURL, SVNPropertyValue> entry : externals.entrySet()) {
             SVNURL externalParentUrl = entry.getKey();
@@ -552,6 +552,30 @@ public abstract class SVNRepository {
      *                          {@link org.tmatesoft.svn.core.SVNAuthenticationException})
      */
     public abstract SVNNodeKind checkPath(String path, long revision) throws SVNException;
+
+    /**
+     * Returns the kinds of items located at the specified paths in a particular 
+     * revision. This is the same as calling {@link #checkPath(String, long)} for 
+     * each of the <code>paths</code>, but implementations may send all the 
+     * requests at once and so avoid a network round trip per path.
+     * 
+     * @param  paths        items' paths
+     * @param  revision     a revision number
+     * @return              the node kinds for the given <code>paths</code>, in the 
+     *                      same order
+     * @throws SVNException if a failure occured while connecting to a repository 
+     *                      or the user's authentication failed (see 
+     *                      {@link org.tmatesoft.svn.core.SVNAuthenticationException})
+     * @see                 #checkPath(String, long)
+     * @since               1.10
+     */
+    public SVNNodeKind[] checkPath(String[] paths, long revision) throws SVNException {
+        SVNNodeKind[] kinds = new SVNNodeKind[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            kinds[i] = checkPath(paths[i], revision);
+        }
+        return kinds;
+    }
     
     /**
 	 * Fetches the contents and/or properties of a file located at the specified path
@@ -663,6 +687,47 @@ public abstract class SVNRepository {
 
     public abstract long getDir(String path, long revision, SVNProperties properties, int entryFields, ISVNDirEntryHandler handler) throws SVNException; 
 
+    /**
+     * Fetches entries and, optionally, properties of several directories in a 
+     * particular revision. This is the same as calling 
+     * {@link #getDir(String, long, SVNProperties, int, ISVNDirEntryHandler)} for each of 
+     * the <code>paths</code>, but implementations may send all the requests at once 
+     * and so avoid a network round trip per directory.
+     * 
+     * <p>
+     * Entries are dispatched to <code>handler</code> directory by directory, in the 
+     * order of <code>paths</code>. The relative path of each entry is set to the 
+     * entry's path relative to the location of this driver, i.e. the directory 
+     * path with the entry name appended. If <code>properties</code> is not 
+     * <span class="javakeyword">null</span>, its <code>i</code>-th non-<span class="javakeyword">null</span> 
+     * element receives the properties of the <code>i</code>-th directory.
+     * 
+     * <p>
+     * <b>NOTE:</b> you may not invoke operation methods of this <b>SVNRepository</b>
+     * object from within the provided <code>handler</code>.
+     * 
+     * @param  paths        directory paths   
+     * @param  revision     a revision of the directories
+     * @param  properties   directory properties receivers, may be <span class="javakeyword">null</span>
+     * @param  entryFields  a combination of fields for the entries
+     * @param  handler      a handler to process directory entries
+     * @throws SVNException in the same cases as 
+     *                      {@link #getDir(String, long, SVNProperties, int, ISVNDirEntryHandler)}
+     *                      does for any of the <code>paths</code>
+     * @since               1.10
+     */
+    public void getDir(String[] paths, long revision, SVNProperties[] properties, int entryFields, final ISVNDirEntryHandler handler) throws SVNException {
+        for (int i = 0; i < paths.length; i++) {
+            final String path = paths[i];
+            getDir(path, revision, properties == null ? null : properties[i], entryFields, new ISVNDirEntryHandler() {
+                public void handleDirEntry(SVNDirEntry dirEntry) throws SVNException {
+                    dirEntry.setRelativePath(SVNPathUtil.append(path, dirEntry.getName()));
+                    handler.handleDirEntry(dirEntry);
+                }
+            });
+        }
+    }
+
     /**
      * Retrieves interesting file revisions for the specified file. 
 	 * 
@@ -2375,6 +2440,29 @@ public abstract class SVNRepository {
      *                      </ul>
      */
     public abstract SVNDirEntry info(String path, long revision) throws SVNException;
+
+    /**
+     * Gives information about entries located at the specified paths in a particular 
+     * revision. This is the same as calling {@link #info(String, long)} for each of 
+     * the <code>paths</code>, but implementations may send all the requests at once 
+     * and so avoid a network round trip per path.
+     * 
+     * @param  paths        items' paths
+     * @param  revision     a revision of the entries; defaults to the latest 
+     *                      revision (HEAD)  
+     * @return              <b>SVNDirEntry</b> objects in the same order as <code>paths</code>, 
+     *                      with <span class="javakeyword">null</span> elements for paths 
+     *                      which do not exist under the specified <code>revision</code>
+     * @throws SVNException in the same cases as {@link #info(String, long)}
+     * @since               1.10
+     */
+    public SVNDirEntry[] info(String[] paths, long revision) throws SVNException {
+        SVNDirEntry[] entries = new SVNDirEntry[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            entries[i] = info(paths[i], revision);
+        }
+        return entries;
+    }
     
     /**
 	 * Gets an editor for committing changes to a repository. Having got the editor
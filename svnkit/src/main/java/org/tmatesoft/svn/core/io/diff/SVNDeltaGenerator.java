@@ -16,12 +16,20 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
-import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaFastAlgorithm;
 import org.tmatesoft.svn.core.internal.wc.IOExceptionWrapper;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
@@ -37,18 +45,34 @@ import org.tmatesoft.svn.util.SVNLogType;
  * 
  * <p>
  * The generator uses X-Delta algorithm for generating all kinds of deltas.
+ *
+ * <p>
+ * Windows are independent of each other, so when the generator is created with
+ * more than one window in flight, deltas of windows read from streams are computed
+ * on a shared pool of worker threads while further windows are read ahead.
+ * Windows are still passed to the consumer in order and on the calling thread.
+ * The default number of windows in flight is taken from the
+ * <code>svnkit.delta.windows</code> system property (<code>0</code>, that is
+ * sequential generation, by default); the size of the worker pool is taken from
+ * <code>svnkit.delta.threads</code> (the number of processors by default).
  * 
  * @version 1.3
  * @author  TMate Software Ltd.
  * @since   1.2
  */
 public class SVNDeltaGenerator {
-    
-    private SVNDeltaAlgorithm myXDelta = new SVNXDeltaAlgorithm();
+
+    private static final int DEFAULT_WINDOWS_IN_FLIGHT = Integer.getInteger("svnkit.delta.windows", 0).intValue();
+    private static final int WORKER_THREADS = Integer.getInteger("svnkit.delta.threads", Runtime.getRuntime().availableProcessors()).intValue();
+
+    private static ThreadPoolExecutor ourWorkers;
+
+    private SVNDeltaAlgorithm myXDelta = new SVNXDeltaFastAlgorithm();
     
     private byte[] mySourceBuffer;
     private byte[] myTargetBuffer;
     private int myMaximumBufferSize;
+    private int myMaximumWindowsInFlight;
     
     /**
      * Creates a generator that will produce diff windows of 
@@ -70,7 +94,29 @@ public class SVNDeltaGenerator {
      *                              window would produce
      */
     public SVNDeltaGenerator(int maximumDiffWindowSize) {
+        this(maximumDiffWindowSize, DEFAULT_WINDOWS_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a generator that will produce diff windows of
+     * a specified contents length, computing deltas of up to
+     * <code>maximumWindowsInFlight</code> windows in parallel.
+     *
+     * <p/>
+     * At most <code>maximumWindowsInFlight</code> source and target windows
+     * are kept in memory at once. Values less than <code>2</code> make the generator
+     * compute all windows sequentially on the calling thread.
+     *
+     * @param maximumDiffWindowSize   a maximum size of a file contents
+     *                                chunk that a single applied diff
+     *                                window would produce
+     * @param maximumWindowsInFlight  a maximum number of windows read ahead
+     *                                of the consumer
+     * @since 1.10
+     */
+    public SVNDeltaGenerator(int maximumDiffWindowSize, int maximumWindowsInFlight) {
         myMaximumBufferSize = maximumDiffWindowSize;
+        myMaximumWindowsInFlight = maximumWindowsInFlight;
         int initialSize = Math.min(8192, myMaximumBufferSize);
         mySourceBuffer = new byte[initialSize];
         myTargetBuffer = new byte[initialSize];
@@ -146,6 +192,9 @@ public class SVNDeltaGenerator {
                 return null;
             }
         }
+        if (myMaximumWindowsInFlight > 1 && WORKER_THREADS > 1) {
+            return sendDeltaInParallel(path, source, sourceOffset, target, consumer, digest);
+        }
         boolean windowSent = false;
         while(true) {
             int targetLength;
@@ -257,10 +306,105 @@ public class SVNDeltaGenerator {
         sendDelta(path, sourceOffset, source == null ? new byte[0] : source, sourceLength, target, targetLength, consumer);
     }
 
+    private String sendDeltaInParallel(String path, InputStream source, long sourceOffset, InputStream target, ISVNDeltaConsumer consumer, MessageDigest digest) throws SVNException {
+        final LinkedList<WindowTask> pending = new LinkedList<WindowTask>();
+        final LinkedList<WindowTask> free = new LinkedList<WindowTask>();
+        boolean windowSent = false;
+        boolean eof = false;
+        try {
+            while (true) {
+                while (!eof && pending.size() < myMaximumWindowsInFlight) {
+                    int targetLength;
+                    int sourceLength;
+                    try {
+                        targetLength = readToBuffer(target, myTargetBuffer);
+                        if (targetLength > 0) {
+                            sourceLength = readToBuffer(source, mySourceBuffer);
+                        } else {
+                            sourceLength = 0;
+                        }
+                    } catch (IOExceptionWrapper ioew) {
+                        throw ioew.getOriginalException();
+                    } catch (IOException e) {
+                        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                        SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+                        return null;
+                    }
+                    if (targetLength <= 0) {
+                        eof = true;
+                        break;
+                    }
+                    if (sourceLength < 0) {
+                        sourceLength = 0;
+                    }
+                    if (digest != null) {
+                        digest.update(myTargetBuffer, 0, targetLength);
+                    }
+                    final WindowTask task = free.isEmpty() ? new WindowTask() : free.removeFirst();
+                    task.setWindow(sourceOffset, mySourceBuffer, sourceLength, myTargetBuffer, targetLength);
+                    task.myFuture = getWorkers().submit(task);
+                    pending.addLast(task);
+                    sourceOffset += sourceLength;
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                final WindowTask task = pending.removeFirst();
+                waitFor(task);
+                sendWindow(path, task.mySourceOffset, task.mySourceLength, task.myTargetLength, task.myAlgorithm, consumer);
+                windowSent = true;
+                free.addLast(task);
+            }
+        } finally {
+            for (WindowTask task : pending) {
+                task.myFuture.cancel(false);
+            }
+        }
+        if (!windowSent && consumer != null) {
+            // send empty window, needed to create empty file.
+            consumer.textDeltaChunk(path, SVNDiffWindow.EMPTY);
+        }
+        if (consumer != null) {
+            consumer.textDeltaEnd(path);
+        }
+        return SVNFileUtil.toHexDigest(digest);
+    }
+
+    private static void waitFor(WindowTask task) throws SVNException {
+        try {
+            task.myFuture.get();
+        } catch (InterruptedException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Delta computation was interrupted");
+            SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause != null ? cause.getMessage() : e.getMessage());
+            SVNErrorManager.error(err, cause, SVNLogType.DEFAULT);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getWorkers() {
+        if (ourWorkers == null) {
+            ourWorkers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+            ourWorkers.allowCoreThreadTimeOut(true);
+        }
+        return ourWorkers;
+    }
+
     private void sendDelta(String path, long sourceOffset, byte[] source, int sourceLength, byte[] target, int targetLength, ISVNDeltaConsumer consumer) throws SVNException {
         // always use x algorithm, v is deprecated now.
         SVNDeltaAlgorithm algorithm = myXDelta;
         algorithm.computeDelta(source, sourceLength, target, targetLength);
+        sendWindow(path, sourceOffset, sourceLength, targetLength, algorithm, consumer);
+    }
+
+    private static void sendWindow(String path, long sourceOffset, int sourceLength, int targetLength, SVNDeltaAlgorithm algorithm, ISVNDeltaConsumer consumer) throws SVNException {
         // send single diff window to the editor.
         if (consumer == null) {
             algorithm.reset();
@@ -298,4 +442,47 @@ public class SVNDeltaGenerator {
         }
         return read;
     }
+
+    /**
+     * Copy of a source and target window whose delta is computed on a worker thread.
+     */
+    private static class WindowTask implements Runnable {
+
+        private final SVNDeltaAlgorithm myAlgorithm = new SVNXDeltaFastAlgorithm();
+        private byte[] mySource = new byte[0];
+        private byte[] myTarget = new byte[0];
+        private long mySourceOffset;
+        private int mySourceLength;
+        private int myTargetLength;
+        private Future<?> myFuture;
+
+        public void setWindow(long sourceOffset, byte[] source, int sourceLength, byte[] target, int targetLength) {
+            if (mySource.length < sourceLength) {
+                mySource = new byte[source.length];
+            }
+            if (myTarget.length < targetLength) {
+                myTarget = new byte[target.length];
+            }
+            System.arraycopy(source, 0, mySource, 0, sourceLength);
+            System.arraycopy(target, 0, myTarget, 0, targetLength);
+            mySourceOffset = sourceOffset;
+            mySourceLength = sourceLength;
+            myTargetLength = targetLength;
+        }
+
+        public void run() {
+            myAlgorithm.computeDelta(mySource, mySourceLength, myTarget, myTargetLength);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-delta-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -16,13 +16,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.zip.DeflaterOutputStream;
 
-import net.jpountz.lz4.LZ4Compressor;
-import net.jpountz.lz4.LZ4Factory;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCodec;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaCompression;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
@@ -77,9 +75,6 @@ public class SVNDiffWindow {
      */
     public static final SVNDiffWindow EMPTY = new SVNDiffWindow(0,0,0,0,0);
 
-    /** {@link LZ4Compressor} claims to be thread-safe, so we only create one instance of it. */
-    private static final LZ4Compressor LZ4_COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
-
     private final long mySourceViewOffset;
     private final int mySourceViewLength;
     private final int myTargetViewLength;
@@ -475,6 +470,21 @@ public class SVNDiffWindow {
      * @since                 1.10
      */
     public void writeTo(OutputStream os, boolean writeHeader, SVNDeltaCompression compression) throws IOException {
+        writeTo(os, writeHeader, compression, SVNDeltaCodec.DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    /**
+     * Formats and writes this window bytes to the specified output stream.
+     *
+     * @param os               an output stream to write the window to
+     * @param writeHeader      if <span class="javakeyword">true</span> a window
+     *                         header will be also written, depending on compression algorithm
+     * @param compression      compression algorithm to use when writing window bytes
+     * @param compressionLevel zlib compression level, from 0 to 9; ignored by other algorithms
+     * @throws IOException
+     * @since                  1.10
+     */
+    public void writeTo(OutputStream os, boolean writeHeader, SVNDeltaCompression compression, int compressionLevel) throws IOException {
         if (writeHeader) {
             os.write(compression.getHeader());
         }
@@ -492,9 +502,9 @@ public class SVNDiffWindow {
         int dataLength = 0;
 
         if (compression != SVNDeltaCompression.None) {
-            instructions = inflate(myData, myDataOffset, myInstructionsLength, compression);
+            instructions = inflate(myData, myDataOffset, myInstructionsLength, compression, compressionLevel);
             instLength = instructions.remaining();
-            newData = inflate(myData, myDataOffset + myInstructionsLength, myNewDataLength, compression);
+            newData = inflate(myData, myDataOffset + myInstructionsLength, myNewDataLength, compression, compressionLevel);
             dataLength = newData.remaining();
             SVNDiffInstruction.writeInt(offsets, instLength);
             SVNDiffInstruction.writeInt(offsets, dataLength);
@@ -566,35 +576,18 @@ public class SVNDiffWindow {
         return clone;
     }
     
-    private static ByteBuffer inflate(byte[] src, int offset, int length, SVNDeltaCompression compression) throws IOException {
-        final ByteBuffer buffer = ByteBuffer.allocate(length*2 + 2);
+    private static ByteBuffer inflate(byte[] src, int offset, int length, SVNDeltaCompression compression, int compressionLevel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(SVNDeltaCodec.getMaxCompressedLength(compression, length) + 5);
         SVNDiffInstruction.writeInt(buffer, length);
         if (length < 512) {
             buffer.put(src, offset, length);
         } else {
-            if (compression == SVNDeltaCompression.LZ4) {
-                LZ4_COMPRESSOR.compress(ByteBuffer.wrap(src, offset, length), buffer);
-            } else if (compression == SVNDeltaCompression.Zlib) {
-                DeflaterOutputStream out = new DeflaterOutputStream(new OutputStream() {
-                    public void write(int b) throws IOException {
-                        buffer.put((byte) (b & 0xFF));
-                    }
-
-                    public void write(byte[] b, int off, int len) throws IOException {
-                        buffer.put(b, off, len);
-                    }
-
-                    public void write(byte[] b) throws IOException {
-                        write(b, 0, b.length);
-                    }
-                });
-                out.write(src, offset, length);
-                out.finish();
-            }
-            if (buffer.position() >= length) {
-                buffer.clear();
-                SVNDiffInstruction.writeInt(buffer, length);
+            final int position = buffer.position();
+            final int compressedLength = SVNDeltaCodec.compress(compression, compressionLevel, src, offset, length, buffer.array(), buffer.arrayOffset() + position);
+            if (position + compressedLength >= length) {
                 buffer.put(src, offset, length);
+            } else {
+                buffer.position(position + compressedLength);
             }
         }
         buffer.flip();
@@ -11,12 +11,10 @@
  */
 package org.tmatesoft.svn.core.wc.admin;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
@@ -41,12 +39,12 @@ import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSHotCopier;
+import org.tmatesoft.svn.core.internal.io.fs.FSLogIndex;
 import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
 import org.tmatesoft.svn.core.internal.io.fs.FSRecoverer;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
 import org.tmatesoft.svn.core.internal.io.fs.FSRoot;
-import org.tmatesoft.svn.core.internal.util.SVNDate;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.util.SVNUUIDGenerator;
 import org.tmatesoft.svn.core.internal.wc.DefaultDumpFilterHandler;
@@ -57,8 +55,11 @@ import org.tmatesoft.svn.core.internal.wc.SVNAdminHelper;
 import org.tmatesoft.svn.core.internal.wc.SVNCancellableEditor;
 import org.tmatesoft.svn.core.internal.wc.SVNDumpEditor;
 import org.tmatesoft.svn.core.internal.wc.SVNDumpStreamParser;
+import org.tmatesoft.svn.core.internal.wc.SVNDumpStreamPipeline;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNParallelDumper;
+import org.tmatesoft.svn.core.internal.wc.SVNParallelVerifier;
 import org.tmatesoft.svn.core.internal.wc.SVNPropertiesManager;
 import org.tmatesoft.svn.core.internal.wc.admin.SVNTranslator;
 import org.tmatesoft.svn.core.io.ISVNEditor;
@@ -595,6 +596,28 @@ public class SVNAdminClient extends SVNAdminBasicClient {
 
     }
 
+    /**
+     * Builds (or rebuilds from scratch) the changed-paths index of a repository.
+     *
+     * <p/>
+     * The index is optional. Once it has been built it is updated on every commit and
+     * is used to skip revisions that are irrelevant to a path when the log of that
+     * path is requested. An {@link SVNAdminEventAction#LOG_INDEX_REVISION} event is
+     * fired for every indexed revision.
+     *
+     * @param  repositoryRoot  root of the repository to index
+     * @throws SVNException
+     * @since  1.10
+     */
+    public void doBuildLogIndex(File repositoryRoot) throws SVNException {
+        FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
+        try {
+            FSLogIndex.build(fsfs, this, myEventHandler);
+        } finally {
+            SVNAdminHelper.closeRepository(fsfs);
+        }
+    }
+
     /**
      * Completely synchronizes two repositories.
      *
@@ -951,6 +974,27 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                   1.2.0, SVN 1.5.0
      */
     public void doVerify(File repositoryRoot, SVNRevision startRevision, SVNRevision endRevision) throws SVNException {
+        doVerify(repositoryRoot, startRevision, endRevision, 1);
+    }
+
+    /**
+     * Verifies repository contents found under <code>repositoryRoot</code> starting at <code>startRevision</code>
+     * and up to <code>endRevision</code>, verifying revisions concurrently.
+     *
+     * <p/>
+     * Revisions are verified by <code>threadsCount</code> threads, each one reading the repository on its own.
+     * Verified revisions are reported in order; besides, {@link SVNAdminEventAction#VERIFY_PROGRESS} events
+     * with the number of revisions verified so far and the verification rate are sent periodically. If several
+     * revisions fail to verify, the errors are reported in revision order.
+     *
+     * @param  repositoryRoot   a repository root directory path
+     * @param  startRevision    revision to start verification at
+     * @param  endRevision      revision to stop verification at
+     * @param  threadsCount     number of threads verifying revisions
+     * @throws SVNException     verification failed - a repository may be corrupted
+     * @since                   1.10
+     */
+    public void doVerify(File repositoryRoot, SVNRevision startRevision, SVNRevision endRevision, int threadsCount) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
             long youngestRevision = fsfs.getYoungestRevision();
@@ -962,7 +1006,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
                 upperRev = lowerRev;
             }
 
-            verify(fsfs, lowerRev, upperRev);
+            verify(fsfs, lowerRev, upperRev, threadsCount);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -996,6 +1040,41 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                   1.1.1
      */
     public void doDump(File repositoryRoot, OutputStream dumpStream, SVNRevision startRevision, SVNRevision endRevision, boolean isIncremental, boolean useDeltas) throws SVNException {
+        doDump(repositoryRoot, dumpStream, startRevision, endRevision, isIncremental, useDeltas, 1, null);
+    }
+
+    /**
+     * Dumps contents of the repository to the provided output stream in a
+     * 'dumpfile' portable format, dumping ranges of revisions concurrently.
+     *
+     * <p>
+     * Revision ranges are dumped by <code>threadsCount</code> threads into files
+     * of <code>spoolDirectory</code> and then written to <code>dumpStream</code> in
+     * order. Completed ranges are recorded in the spool directory, so a dump which
+     * has been interrupted is resumed when this method is called again with the same
+     * spool directory and the same revisions and options. If <code>spoolDirectory</code>
+     * is <span class="javakeyword">null</span>, a temporary directory is used and the
+     * dump cannot be resumed. If <code>threadsCount</code> is less than <code>2</code>
+     * and no spool directory is given, this method is identical to
+     * {@link #doDump(File, OutputStream, SVNRevision, SVNRevision, boolean, boolean)}.
+     *
+     * @param  repositoryRoot   a repository root directory path
+     * @param  dumpStream       an output stream to write dumped contents to
+     * @param  startRevision    the first revision to start dumping from
+     * @param  endRevision      the last revision to end dumping at
+     * @param  isIncremental    if <span class="javakeyword">true</span>
+     *                          then the first revision dumped will be a
+     *                          diff against the previous revision; otherwise
+     *                          the first revision is a fulltext.
+     * @param  useDeltas        if <span class="javakeyword">true</span>
+     *                          deltas will be written instead of fulltexts
+     * @param  threadsCount     number of threads dumping revision ranges
+     * @param  spoolDirectory   directory to keep dumped ranges and the checkpoint in
+     * @throws SVNException
+     * @since                   1.10
+     */
+    public void doDump(File repositoryRoot, OutputStream dumpStream, SVNRevision startRevision, SVNRevision endRevision, boolean isIncremental, boolean useDeltas,
+            int threadsCount, File spoolDirectory) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
             long youngestRevision = fsfs.getYoungestRevision();
@@ -1015,7 +1094,19 @@ public class SVNAdminClient extends SVNAdminBasicClient {
                 SVNErrorManager.error(err, SVNLogType.FSFS);
             }
 
-            dump(fsfs, dumpStream, lowerR, upperR, isIncremental, useDeltas);
+            if (threadsCount > 1 || spoolDirectory != null) {
+                File tmpDirectory = spoolDirectory == null ? SVNFileUtil.createTempDirectory("dump") : null;
+                try {
+                    dump(fsfs, dumpStream, lowerR, upperR, isIncremental, useDeltas,
+                            new SVNParallelDumper(repositoryRoot, tmpDirectory != null ? tmpDirectory : spoolDirectory, threadsCount, this, myEventHandler));
+                } finally {
+                    if (tmpDirectory != null) {
+                        SVNFileUtil.deleteAll(tmpDirectory, true);
+                    }
+                }
+            } else {
+                dump(fsfs, dumpStream, lowerR, upperR, isIncremental, useDeltas, null);
+            }
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -1085,8 +1176,12 @@ public class SVNAdminClient extends SVNAdminBasicClient {
             fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
             ISVNLoadHandler handler = createLoadHandler(fsfs, usePreCommitHook, usePostCommitHook,
                     uuidAction, parentDir);
-            SVNDumpStreamParser parser = getDumpStreamParser();
-            parser.parseDumpStream(dumpStream, handler, decoder);
+            if (SVNDumpStreamPipeline.isEnabled()) {
+                new SVNDumpStreamPipeline(this).parseDumpStream(dumpStream, handler, decoder);
+            } else {
+                SVNDumpStreamParser parser = getDumpStreamParser();
+                parser.parseDumpStream(dumpStream, handler, decoder);
+            }
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -1205,10 +1300,28 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                       1.2.0, SVN 1.5.0
      */
     public void doHotCopy(File srcRepositoryRoot, File newRepositoryRoot) throws SVNException {
+        doHotCopy(srcRepositoryRoot, newRepositoryRoot, false);
+    }
+
+    /**
+     * Makes a hot copy of a repository located at <code>srcRepositoryRoot</code> to one located at
+     * <code>newRepositoryRoot</code>. This method is identical to the <code>'svnadmin hotcopy'</code> command.
+     *
+     * <p/>
+     * If <code>incremental</code> is <span class="javakeyword">true</span> and <code>newRepositoryRoot</code>
+     * is an earlier hot copy of the same repository, only files added or changed since that copy are copied.
+     *
+     * @param  srcRepositoryRoot   repository to copy data from
+     * @param  newRepositoryRoot   repository to copy data to
+     * @param  incremental         whether to update an existing hot copy
+     * @throws SVNException
+     * @since                       1.10, SVN 1.8.0
+     */
+    public void doHotCopy(File srcRepositoryRoot, File newRepositoryRoot, boolean incremental) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(srcRepositoryRoot, false);
         try {
             FSHotCopier copier = getHotCopier();
-            copier.runHotCopy(fsfs, newRepositoryRoot);
+            copier.runHotCopy(fsfs, newRepositoryRoot, incremental);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -1287,7 +1400,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
             Collection prefixes, boolean skipMissingMergeSources) throws SVNException {
         CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder();
 
-        writeDumpData(resultDumpStream, SVNAdminHelper.DUMPFILE_MAGIC_HEADER + ": 2\n\n");
+        SVNAdminHelper.writeDumpData(resultDumpStream, SVNAdminHelper.DUMPFILE_MAGIC_HEADER + ": 2\n\n");
 
         DefaultDumpFilterHandler handler = getDumpFilterHandler(resultDumpStream, exclude, renumberRevisions,
                 dropEmptyRevisions, preserveRevisionProperties, prefixes, skipMissingMergeSources);
@@ -1378,7 +1491,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
         return myHotCopier;
     }
 
-    private void verify(FSFS fsfs, long startRev, long endRev) throws SVNException {
+    private void verify(FSFS fsfs, long startRev, long endRev, int threadsCount) throws SVNException {
         long youngestRev = fsfs.getYoungestRevision();
         if (!SVNRevision.isValidRevisionNumber(startRev)) {
             startRev = 0;
@@ -1400,6 +1513,11 @@ public class SVNAdminClient extends SVNAdminBasicClient {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
 
+        if (threadsCount > 1) {
+            new SVNParallelVerifier(fsfs.getRepositoryRoot(), threadsCount, this, myEventHandler).verifyRevisions(startRev, endRev);
+            return;
+        }
+
         for (long rev = startRev; rev <= endRev; rev++) {
             FSRevisionRoot toRoot = fsfs.createRevisionRoot(rev);
             ISVNEditor editor = getDumpEditor(fsfs, toRoot, rev, startRev, "/", SVNFileUtil.DUMMY_OUT, false, true);
@@ -1415,7 +1533,8 @@ public class SVNAdminClient extends SVNAdminBasicClient {
         }
     }
 
-    private void dump(FSFS fsfs, OutputStream dumpStream, long start, long end, boolean isIncremental, boolean useDeltas) throws SVNException {
+    private void dump(FSFS fsfs, OutputStream dumpStream, long start, long end, boolean isIncremental, boolean useDeltas,
+            SVNParallelDumper parallelDumper) throws SVNException {
         boolean isDumping = dumpStream != null && dumpStream != SVNFileUtil.DUMMY_OUT;
         long youngestRevision = fsfs.getYoungestRevision();
         SVNAdminDeltifier deltifier = new SVNAdminDeltifier(fsfs, SVNDepth.INFINITY,
@@ -1459,88 +1578,27 @@ public class SVNAdminClient extends SVNAdminBasicClient {
             version--;
         }
 
-        writeDumpData(dumpStream, SVNAdminHelper.DUMPFILE_MAGIC_HEADER + ": " + version + "\n\n");
-        writeDumpData(dumpStream, SVNAdminHelper.DUMPFILE_UUID + ": " + uuid + "\n\n");
+        SVNAdminHelper.writeDumpData(dumpStream, SVNAdminHelper.DUMPFILE_MAGIC_HEADER + ": " + version + "\n\n");
+        SVNAdminHelper.writeDumpData(dumpStream, SVNAdminHelper.DUMPFILE_UUID + ": " + uuid + "\n\n");
 
-        for (long i = start; i <= end; i++) {
-            long fromRev, toRev;
+        if (parallelDumper != null) {
+            parallelDumper.dumpRevisions(fsfs, dumpStream, start, end, isIncremental, useDeltas);
+            return;
+        }
 
+        SVNDumpEditor dumpEditor = getDumpEditor(fsfs, null, start, start, "/", dumpStream, useDeltas, false);
+        for (long i = start; i <= end; i++) {
             checkCancelled();
 
-            if (i == start && !isIncremental) {
-                if (i == 0) {
-                    writeRevisionRecord(dumpStream, fsfs, 0);
-                    toRev = 0;
-                    String message = (isDumping ? "* Dumped" : "* Verified") + " revision " + toRev + ".";
-                    if (myEventHandler != null) {
-                        SVNAdminEvent event = new SVNAdminEvent(toRev, SVNAdminEventAction.REVISION_DUMPED, message);
-                        myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
-                    }
-                    continue;
-                }
-
-                fromRev = 0;
-                toRev = i;
-            } else {
-                fromRev = i - 1;
-                toRev = i;
-            }
-
-            writeRevisionRecord(dumpStream, fsfs, toRev);
-            boolean useDeltasForRevision = useDeltas && (isIncremental || i != start);
-            FSRevisionRoot toRoot = fsfs.createRevisionRoot(toRev);
-            ISVNEditor dumpEditor = getDumpEditor(fsfs, toRoot, toRev, start, "/", dumpStream, useDeltasForRevision, false);
-
-            if (i == start && !isIncremental) {
-                FSRevisionRoot fromRoot = fsfs.createRevisionRoot(fromRev);
-                deltifier.setEditor(dumpEditor);
-                deltifier.deltifyDir(fromRoot, "/", "", toRoot, "/");
-            } else {
-                FSRepositoryUtil.replay(fsfs, toRoot, "", -1, false, dumpEditor);
-            }
-            String message = (isDumping ? "* Dumped" : "* Verified") + " revision " + toRev + ".";
+            SVNAdminHelper.dumpRevision(fsfs, dumpStream, dumpEditor, deltifier, i, start, isIncremental, useDeltas);
+            String message = (isDumping ? "* Dumped" : "* Verified") + " revision " + i + ".";
             if (myEventHandler != null) {
-                SVNAdminEvent event = new SVNAdminEvent(toRev, SVNAdminEventAction.REVISION_DUMPED, message);
+                SVNAdminEvent event = new SVNAdminEvent(i, SVNAdminEventAction.REVISION_DUMPED, message);
                 myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
             }
         }
     }
 
-    private void writeRevisionRecord(OutputStream dumpStream, FSFS fsfs, long revision) throws SVNException {
-        SVNProperties revProps = fsfs.getRevisionProperties(revision);
-
-        String revisionDate = revProps.getStringValue(SVNRevisionProperty.DATE);
-        if (revisionDate != null) {
-            SVNDate date = SVNDate.parseDate(revisionDate);
-            revProps.put(SVNRevisionProperty.DATE, date.format());
-        }
-
-        ByteArrayOutputStream encodedProps = new ByteArrayOutputStream();
-        SVNAdminHelper.writeProperties(revProps, null, encodedProps);
-
-        writeDumpData(dumpStream, SVNAdminHelper.DUMPFILE_REVISION_NUMBER + ": " + revision + "\n");
-        String propContents = null;
-        try {
-            propContents = new String(encodedProps.toByteArray(), "UTF-8");
-        } catch (UnsupportedEncodingException uee) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, uee.getLocalizedMessage());
-            SVNErrorManager.error(err, uee, SVNLogType.FSFS);
-        }
-        writeDumpData(dumpStream, SVNAdminHelper.DUMPFILE_PROP_CONTENT_LENGTH + ": " + propContents.length() + "\n");
-        writeDumpData(dumpStream, SVNAdminHelper.DUMPFILE_CONTENT_LENGTH + ": " + propContents.length() + "\n\n");
-        writeDumpData(dumpStream, propContents);
-        writeDumpData(dumpStream, "\n");
-    }
-
-    private void writeDumpData(OutputStream out, String data) throws SVNException {
-        try {
-            out.write(data.getBytes("UTF-8"));
-        } catch (IOException ioe) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
-        }
-    }
-
     private DefaultLoadHandler createLoadHandler(FSFS fsfs, boolean usePreCommitHook,
             boolean usePostCommitHook, SVNUUIDAction uuidAction, String parentDir) {
         DefaultLoadHandler handler = new DefaultLoadHandler(usePreCommitHook, usePostCommitHook, uuidAction,
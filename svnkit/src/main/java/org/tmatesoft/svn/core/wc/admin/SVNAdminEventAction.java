@@ -206,4 +206,20 @@ public class SVNAdminEventAction {
     
     public static final SVNAdminEventAction NORMALIZED_PROPERTIES = new SVNAdminEventAction(25);
 
+    /**
+     * Informs of the number of revisions verified so far and of the verification
+     * rate. Sent periodically during a parallel verification.
+     *
+     * @since 1.10
+     */
+    public static final SVNAdminEventAction VERIFY_PROGRESS = new SVNAdminEventAction(26);
+
+    /**
+     * Informs that a revision has been added to the changed-paths index
+     * of a repository.
+     *
+     * @since 1.10
+     */
+    public static final SVNAdminEventAction LOG_INDEX_REVISION = new SVNAdminEventAction(27);
+
 }
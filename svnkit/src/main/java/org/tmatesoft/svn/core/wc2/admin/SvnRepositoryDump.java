@@ -1,5 +1,6 @@
 package org.tmatesoft.svn.core.wc2.admin;
 
+import java.io.File;
 import java.io.OutputStream;
 
 import org.tmatesoft.svn.core.SVNException;
@@ -15,6 +16,8 @@ public class SvnRepositoryDump extends SvnRepositoryReceivingOperation<SVNAdminE
     private SVNRevision endRevision;
     private boolean useDelta;
     private boolean incremental;
+    private int threadsCount;
+    private File spoolDirectory;
 
     public SvnRepositoryDump(SvnOperationFactory factory) {
         super(factory);
@@ -60,6 +63,33 @@ public class SvnRepositoryDump extends SvnRepositoryReceivingOperation<SVNAdminE
         this.incremental = incremental;
     }
 
+    public int getThreadsCount() {
+        return threadsCount;
+    }
+
+    /**
+     * Sets the number of threads dumping ranges of revisions concurrently.
+     * 
+     * @since 1.10
+     */
+    public void setThreadsCount(int threadsCount) {
+        this.threadsCount = threadsCount;
+    }
+
+    public File getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * Sets the directory to keep dumped revision ranges in; a dump that has
+     * been interrupted is resumed when it is run again with the same directory.
+     * 
+     * @since 1.10
+     */
+    public void setSpoolDirectory(File spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
     @Override
     protected void ensureArgumentsAreValid() throws SVNException {
         if (getStartRevision() == null) {
@@ -8,6 +8,7 @@ public class SvnRepositoryVerify extends SvnRepositoryReceivingOperation<SVNAdmi
 
     private SVNRevision startRevision;
     private SVNRevision endRevision;
+    private int threadsCount;
     
     public SvnRepositoryVerify(SvnOperationFactory factory) {
         super(factory);
@@ -35,4 +36,17 @@ public class SvnRepositoryVerify extends SvnRepositoryReceivingOperation<SVNAdmi
     public void setEndRevision(SVNRevision endRevision) {
         this.endRevision = endRevision;
     }
+
+    public int getThreadsCount() {
+        return threadsCount;
+    }
+
+    /**
+     * Sets the number of threads verifying revisions concurrently.
+     * 
+     * @since 1.10
+     */
+    public void setThreadsCount(int threadsCount) {
+        this.threadsCount = threadsCount;
+    }
 }
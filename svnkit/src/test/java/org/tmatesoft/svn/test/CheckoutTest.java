@@ -1,11 +1,13 @@
 package org.tmatesoft.svn.test;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNConfigFile;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.internal.wc.admin.SVNAdminArea16Factory;
 import org.tmatesoft.svn.core.internal.wc17.db.ISVNWCDb;
@@ -14,7 +16,9 @@ import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.wc.SVNEvent;
 import org.tmatesoft.svn.core.wc.SVNEventAction;
+import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.SVNStatusType;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
 import org.tmatesoft.svn.core.wc2.*;
 
 import java.io.File;
@@ -133,6 +137,61 @@ public class CheckoutTest {
         }
     }
 
+    @Test
+    public void testCheckoutAndUpdateWithParallelFetching() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+        Assume.assumeTrue(TestUtil.areAllApacheOptionsSpecified(options));
+
+        final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCheckoutAndUpdateWithParallelFetching", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepositoryWithDavAccess();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            for (int i = 0; i < 50; i++) {
+                commitBuilder1.addFile("directory" + (i % 5) + "/file" + i, ("contents" + i).getBytes());
+            }
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            for (int i = 0; i < 50; i += 3) {
+                commitBuilder2.changeFile("directory" + (i % 5) + "/file" + i, ("changed" + i).getBytes());
+            }
+            commitBuilder2.commit();
+
+            final File configDirectory = sandbox.createDirectory("configDirectory");
+            final SVNConfigFile serversFile = new SVNConfigFile(new File(configDirectory, "servers"));
+            serversFile.setPropertyValue("global", "http-bulk-updates", "no", false);
+            serversFile.setPropertyValue("global", "http-max-connections", "3", true);
+            svnOperationFactory.setAuthenticationManager(SVNWCUtil.createDefaultAuthenticationManager(configDirectory));
+
+            final File workingCopyDirectory = sandbox.createDirectory("wc");
+
+            final SvnCheckout checkout = svnOperationFactory.createCheckout();
+            checkout.setSource(SvnTarget.fromURL(url));
+            checkout.setSingleTarget(SvnTarget.fromFile(workingCopyDirectory));
+            checkout.setRevision(SVNRevision.create(1));
+            checkout.run();
+
+            for (int i = 0; i < 50; i++) {
+                final File file = new File(workingCopyDirectory, "directory" + (i % 5) + "/file" + i);
+                Assert.assertEquals("contents" + i, TestUtil.readFileContentsString(file));
+            }
+
+            final SvnUpdate update = svnOperationFactory.createUpdate();
+            update.setSingleTarget(SvnTarget.fromFile(workingCopyDirectory));
+            update.run();
+
+            for (int i = 0; i < 50; i++) {
+                final File file = new File(workingCopyDirectory, "directory" + (i % 5) + "/file" + i);
+                Assert.assertEquals((i % 3 == 0 ? "changed" : "contents") + i, TestUtil.readFileContentsString(file));
+            }
+        } finally {
+            svnOperationFactory.dispose();
+            sandbox.dispose();
+        }
+    }
+
     private String getTestName() {
         return getClass().getSimpleName();
     }
@@ -0,0 +1,402 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.SVNAuthentication;
+import org.tmatesoft.svn.core.internal.io.dav.DAVFileFetcher;
+import org.tmatesoft.svn.core.internal.io.dav.DAVRepository;
+import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.dav.http.HTTPHeader;
+import org.tmatesoft.svn.core.internal.io.dav.http.HTTPStatus;
+import org.tmatesoft.svn.core.internal.io.dav.http.IHTTPConnection;
+import org.tmatesoft.svn.core.internal.io.dav.http.IHTTPConnectionFactory;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNLogType;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class DAVFileFetcherTest {
+
+    @Test
+    public void testContentsSentInCallOrder() throws Exception {
+        final FakeConnectionFactory connectionFactory = new FakeConnectionFactory();
+        connectionFactory.putFile("/a", "contents of a");
+        connectionFactory.putFile("/b", "contents of b");
+        final CountDownLatch aStarted = connectionFactory.blockFile("/a");
+
+        final RecordingEditor editor = new RecordingEditor();
+        final DAVRepository repository = createRepository(null);
+        final DAVFileFetcher fetcher = new DAVFileFetcher(connectionFactory, repository, editor, 2);
+        try {
+            fetcher.openRoot(1);
+            fetcher.addFile("a", null, -1);
+            fetcher.fetchFile("a", null, "/a", null);
+            Assert.assertTrue(aStarted.await(10, TimeUnit.SECONDS));
+            fetcher.closeFile("a", null);
+            fetcher.addFile("b", null, -1);
+            fetcher.fetchFile("b", null, "/b", null);
+            fetcher.closeFile("b", null);
+            fetcher.closeDir();
+
+            connectionFactory.awaitFetched("/b");
+            Assert.assertEquals(2, connectionFactory.getConnections().size());
+            // b is in, but may not overtake a
+            Assert.assertEquals(Arrays.asList("openRoot", "addFile a"), editor.getCalls());
+
+            connectionFactory.unblockFile("/a");
+            fetcher.closeEdit();
+        } finally {
+            fetcher.dispose();
+        }
+
+        Assert.assertEquals(Arrays.asList("openRoot",
+                "addFile a", "applyTextDelta a", "textDeltaEnd a contents of a", "closeFile a",
+                "addFile b", "applyTextDelta b", "textDeltaEnd b contents of b", "closeFile b",
+                "closeDir", "closeEdit"), editor.getCalls());
+        for (FakeConnection connection : connectionFactory.getConnections()) {
+            Assert.assertTrue(connection.isClosed());
+        }
+    }
+
+    @Test
+    public void testDisposeWhileFetching() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testDisposeWhileFetching", options);
+        try {
+            final File spoolDirectory = sandbox.createDirectory("spool");
+            final StringBuilder largeContents = new StringBuilder();
+            while (largeContents.length() < 300 * 1024) {
+                largeContents.append("line ").append(largeContents.length()).append('\n');
+            }
+            final FakeConnectionFactory connectionFactory = new FakeConnectionFactory();
+            connectionFactory.putFile("/a", largeContents.toString());
+            connectionFactory.putFile("/b", largeContents.toString());
+            final CountDownLatch aStarted = connectionFactory.blockFile("/a");
+
+            final RecordingEditor editor = new RecordingEditor();
+            final DAVFileFetcher fetcher = new DAVFileFetcher(connectionFactory, createRepository(spoolDirectory), editor, 2);
+            try {
+                fetcher.openRoot(1);
+                fetcher.addFile("a", null, -1);
+                fetcher.fetchFile("a", null, "/a", null);
+                Assert.assertTrue(aStarted.await(10, TimeUnit.SECONDS));
+                fetcher.closeFile("a", null);
+                fetcher.addFile("b", null, -1);
+                fetcher.fetchFile("b", null, "/b", null);
+                connectionFactory.awaitFetched("/b");
+                Assert.assertTrue(spoolDirectory.list().length > 0);
+            } finally {
+                fetcher.dispose();
+            }
+
+            final FakeConnection busyConnection = connectionFactory.getConnections().get(0);
+            final FakeConnection idleConnection = connectionFactory.getConnections().get(1);
+            awaitClosed(idleConnection);
+            Assert.assertFalse(busyConnection.isClosed());
+
+            connectionFactory.unblockFile("/a");
+            awaitClosed(busyConnection);
+            for (FakeConnection connection : connectionFactory.getConnections()) {
+                Assert.assertFalse(connection.isClosedWhileBusy());
+            }
+            Assert.assertEquals(0, spoolDirectory.list().length);
+            Assert.assertEquals(Arrays.asList("openRoot", "addFile a"), editor.getCalls());
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private static void awaitClosed(FakeConnection connection) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!connection.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(connection.isClosed());
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+
+    private static DAVRepository createRepository(File spoolDirectory) throws SVNException {
+        DAVRepositoryFactory.setup();
+        final SVNRepository repository = SVNRepositoryFactory.create(SVNURL.parseURIEncoded("http://localhost/repos"));
+        ((DAVRepository) repository).setSpoolLocation(spoolDirectory);
+        return (DAVRepository) repository;
+    }
+
+    private static class FakeConnectionFactory implements IHTTPConnectionFactory {
+
+        private final Map<String, String> myFiles = Collections.synchronizedMap(new HashMap<String, String>());
+        private final Map<String, CountDownLatch[]> myBlockedFiles = Collections.synchronizedMap(new HashMap<String, CountDownLatch[]>());
+        private final List<String> myFetchedFiles = new ArrayList<String>();
+        private final List<FakeConnection> myConnections = Collections.synchronizedList(new ArrayList<FakeConnection>());
+
+        public void putFile(String path, String contents) {
+            myFiles.put(path, contents);
+        }
+
+        public CountDownLatch blockFile(String path) {
+            final CountDownLatch[] latches = new CountDownLatch[] {new CountDownLatch(1), new CountDownLatch(1)};
+            myBlockedFiles.put(path, latches);
+            return latches[0];
+        }
+
+        public void unblockFile(String path) {
+            myBlockedFiles.get(path)[1].countDown();
+        }
+
+        public synchronized void awaitFetched(String path) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (!myFetchedFiles.contains(path) && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            Assert.assertTrue(myFetchedFiles.contains(path));
+        }
+
+        public List<FakeConnection> getConnections() {
+            return myConnections;
+        }
+
+        public IHTTPConnection createHTTPConnection(SVNRepository repository) {
+            final FakeConnection connection = new FakeConnection(this);
+            myConnections.add(connection);
+            return connection;
+        }
+
+        public boolean useSendAllForDiff(SVNRepository repository) {
+            return false;
+        }
+
+        private static void awaitUninterruptibly(CountDownLatch latch) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void get(String path, OutputStream dst) throws IOException {
+            final String contents = myFiles.get(path);
+            final CountDownLatch[] latches = myBlockedFiles.get(path);
+            try {
+                final byte[] bytes = contents.getBytes("UTF-8");
+                final int half = bytes.length / 2;
+                dst.write(bytes, 0, half);
+                if (latches != null) {
+                    // the rest of the response is late, and like a socket read this wait is not interrupted
+                    latches[0].countDown();
+                    awaitUninterruptibly(latches[1]);
+                }
+                dst.write(bytes, half, bytes.length - half);
+            } finally {
+                dst.close();
+            }
+            synchronized (this) {
+                myFetchedFiles.add(path);
+                notifyAll();
+            }
+        }
+    }
+
+    private static class FakeConnection implements IHTTPConnection {
+
+        private final FakeConnectionFactory myFactory;
+        private volatile boolean myIsBusy;
+        private volatile boolean myIsClosed;
+        private volatile boolean myIsClosedWhileBusy;
+        private HTTPStatus myLastStatus;
+
+        public FakeConnection(FakeConnectionFactory factory) {
+            myFactory = factory;
+        }
+
+        public boolean isClosed() {
+            return myIsClosed;
+        }
+
+        public boolean isClosedWhileBusy() {
+            return myIsClosedWhileBusy;
+        }
+
+        public void setSpoolResponse(boolean spoolResponse) {
+        }
+
+        public HTTPStatus request(String method, String path, HTTPHeader header, StringBuffer body, int ok1, int ok2, OutputStream dst, DefaultHandler handler) throws SVNException {
+            return request(method, path, header, (InputStream) null, ok1, ok2, dst, handler, null);
+        }
+
+        public HTTPStatus request(String method, String path, HTTPHeader header, StringBuffer body, int ok1, int ok2, OutputStream dst, DefaultHandler handler, SVNErrorMessage context) throws SVNException {
+            return request(method, path, header, (InputStream) null, ok1, ok2, dst, handler, context);
+        }
+
+        public HTTPStatus request(String method, String path, HTTPHeader header, InputStream body, int ok1, int ok2, OutputStream dst, DefaultHandler handler) throws SVNException {
+            return request(method, path, header, body, ok1, ok2, dst, handler, null);
+        }
+
+        public HTTPStatus request(String method, String path, HTTPHeader header, InputStream body, int ok1, int ok2, OutputStream dst, DefaultHandler handler, SVNErrorMessage context) throws SVNException {
+            myIsBusy = true;
+            try {
+                if ("GET".equals(method)) {
+                    myFactory.get(path, dst);
+                }
+                myLastStatus = HTTPStatus.createHTTPStatus("HTTP/1.1 200 OK");
+                myLastStatus.setHeader(new HTTPHeader());
+                return myLastStatus;
+            } catch (IOException e) {
+                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getMessage()), e, SVNLogType.NETWORK);
+            } catch (ParseException e) {
+                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN, e.getMessage()), e, SVNLogType.NETWORK);
+            } finally {
+                myIsBusy = false;
+            }
+            return null;
+        }
+
+        public HTTPStatus getLastStatus() {
+            return myLastStatus;
+        }
+
+        public SVNAuthentication getLastValidCredentials() {
+            return null;
+        }
+
+        public void clearAuthenticationCache() {
+        }
+
+        public void close() {
+            myIsClosedWhileBusy |= myIsBusy;
+            myIsClosed = true;
+        }
+    }
+
+    private static class RecordingEditor implements ISVNEditor {
+
+        private final List<String> myCalls = Collections.synchronizedList(new ArrayList<String>());
+        private SVNDeltaProcessor myDeltaProcessor;
+        private ByteArrayOutputStream myContents;
+
+        public List<String> getCalls() {
+            synchronized (myCalls) {
+                return new ArrayList<String>(myCalls);
+            }
+        }
+
+        public void targetRevision(long revision) {
+            myCalls.add("targetRevision " + revision);
+        }
+
+        public void openRoot(long revision) {
+            myCalls.add("openRoot");
+        }
+
+        public void deleteEntry(String path, long revision) {
+            myCalls.add("deleteEntry " + path);
+        }
+
+        public void absentDir(String path) {
+            myCalls.add("absentDir " + path);
+        }
+
+        public void absentFile(String path) {
+            myCalls.add("absentFile " + path);
+        }
+
+        public void addDir(String path, String copyFromPath, long copyFromRevision) {
+            myCalls.add("addDir " + path);
+        }
+
+        public void openDir(String path, long revision) {
+            myCalls.add("openDir " + path);
+        }
+
+        public void changeDirProperty(String name, SVNPropertyValue value) {
+            myCalls.add("changeDirProperty " + name);
+        }
+
+        public void closeDir() {
+            myCalls.add("closeDir");
+        }
+
+        public void addFile(String path, String copyFromPath, long copyFromRevision) {
+            myCalls.add("addFile " + path);
+        }
+
+        public void openFile(String path, long revision) {
+            myCalls.add("openFile " + path);
+        }
+
+        public void changeFileProperty(String path, String propertyName, SVNPropertyValue propertyValue) {
+            myCalls.add("changeFileProperty " + path + " " + propertyName);
+        }
+
+        public void closeFile(String path, String textChecksum) {
+            myCalls.add("closeFile " + path);
+        }
+
+        public SVNCommitInfo closeEdit() {
+            myCalls.add("closeEdit");
+            return null;
+        }
+
+        public void abortEdit() {
+            myCalls.add("abortEdit");
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) {
+            myCalls.add("applyTextDelta " + path);
+            myContents = new ByteArrayOutputStream();
+            myDeltaProcessor = new SVNDeltaProcessor();
+            myDeltaProcessor.applyTextDelta(new ByteArrayInputStream(new byte[0]), myContents, false);
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            return myDeltaProcessor.textDeltaChunk(diffWindow);
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+            myDeltaProcessor.textDeltaEnd();
+            String contents;
+            try {
+                contents = myContents.toString("UTF-8");
+            } catch (IOException e) {
+                contents = null;
+            }
+            myCalls.add("textDeltaEnd " + path + " " + contents);
+        }
+    }
+}
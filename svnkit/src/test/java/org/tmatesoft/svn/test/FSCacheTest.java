@@ -0,0 +1,529 @@
+package org.tmatesoft.svn.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSInputStream;
+import org.tmatesoft.svn.core.internal.io.fs.FSMappedFiles;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+public class FSCacheTest {
+
+    @Test
+    public void testEvictionByWeight() throws Exception {
+        final FSCache<String, String> cache = new FSCache<String, String>("test", 100);
+        cache.put("a", "a", 40);
+        cache.put("b", "b", 40);
+        Assert.assertEquals("a", cache.get("a"));
+
+        cache.put("c", "c", 40);
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("a", cache.get("a"));
+        Assert.assertEquals("c", cache.get("c"));
+        Assert.assertEquals(80, cache.getWeight());
+        Assert.assertEquals(1, cache.getEvictionsCount());
+
+        cache.put("huge", "huge", 101);
+        Assert.assertNull(cache.get("huge"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        final FSCache<FSCacheKey, String> cache = new FSCache<FSCacheKey, String>("test", 1000);
+        cache.put(new FSCacheKey("repos", 1, 2), "value", 10);
+
+        Assert.assertEquals("value", cache.get(new FSCacheKey("repos", 1, 2)));
+        Assert.assertNull(cache.get(new FSCacheKey("repos", 1, 3)));
+        Assert.assertNull(cache.get(new FSCacheKey("other", 1, 2)));
+
+        Assert.assertEquals(1, cache.getHitsCount());
+        Assert.assertEquals(2, cache.getMissesCount());
+    }
+
+    @Test
+    public void testRevisionNodesSharedBetweenRoots() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRevisionNodesSharedBetweenRoots", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("directory/file");
+            commitBuilder.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final FSRevisionRoot root1 = fsfs.createRevisionRoot(1);
+                final FSRevisionNode node1 = root1.getRevisionNode("/directory/file");
+
+                final long hitsCount = FSFS.getRevisionNodesCache().getHitsCount();
+
+                final FSRevisionRoot root2 = fsfs.createRevisionRoot(1);
+                final FSRevisionNode node2 = root2.getRevisionNode("/directory/file");
+
+                Assert.assertTrue(FSFS.getRevisionNodesCache().getHitsCount() > hitsCount);
+                Assert.assertNotSame(node1, node2);
+                Assert.assertEquals(node1.getId(), node2.getId());
+                Assert.assertEquals(node1.getFileMD5Checksum(), node2.getFileMD5Checksum());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testDirectoryEntriesSharedBetweenRoots() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testDirectoryEntriesSharedBetweenRoots", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("directory/file1");
+            commitBuilder1.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final Map entries1 = fsfs.createRevisionRoot(1).getRevisionNode("/directory").getDirEntries(fsfs);
+                final long hitsCount = FSFS.getDirectoryEntriesCache().getHitsCount();
+                final Map entries2 = fsfs.createRevisionRoot(1).getRevisionNode("/directory").getDirEntries(fsfs);
+
+                Assert.assertTrue(FSFS.getDirectoryEntriesCache().getHitsCount() > hitsCount);
+                Assert.assertEquals(entries1.keySet(), entries2.keySet());
+            } finally {
+                fsfs.close();
+            }
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.addFile("directory/file2");
+            commitBuilder2.commit();
+
+            final FSFS fsfs2 = new FSFS(new File(url.getPath()));
+            fsfs2.open();
+            try {
+                Assert.assertEquals(1, fsfs2.createRevisionRoot(1).getRevisionNode("/directory").getDirEntries(fsfs2).size());
+                Assert.assertEquals(2, fsfs2.createRevisionRoot(2).getRevisionNode("/directory").getDirEntries(fsfs2).size());
+            } finally {
+                fsfs2.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testPackManifestCachedAndInvalidated() throws Exception {
+        checkPackedRepository(getTestName() + ".testPackManifestCachedAndInvalidated");
+    }
+
+    @Test
+    public void testMemoryMappedRevisionFiles() throws Exception {
+        final boolean enabled = FSMappedFiles.isEnabled();
+        FSMappedFiles.setEnabled(true);
+        try {
+            final long weight = FSMappedFiles.getMappings().getWeight();
+            checkPackedRepository(getTestName() + ".testMemoryMappedRevisionFiles");
+            Assert.assertTrue(FSMappedFiles.getMappings().getWeight() > weight);
+        } finally {
+            FSMappedFiles.setEnabled(enabled);
+        }
+    }
+
+    @Test
+    public void testReleasedMappedFilesCanBeDeleted() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final boolean enabled = FSMappedFiles.isEnabled();
+        FSMappedFiles.setEnabled(true);
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testReleasedMappedFilesCanBeDeleted", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+            fsfs.close();
+
+            for (int i = 0; i < 15; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+                commitBuilder.commit();
+            }
+
+            final FSFS packedFsfs = new FSFS(repositoryRoot);
+            packedFsfs.open();
+            try {
+                new FSPacker(null).pack(packedFsfs);
+                final FSCache<String, ByteBuffer> mappings = FSMappedFiles.getMappings();
+                final int size = mappings.size();
+
+                final File revisionFile = new File(repositoryRoot, "db/revs/1/12");
+                FSMappedFiles.open(packedFsfs, revisionFile).close();
+                Assert.assertEquals(size, mappings.size());
+                Assert.assertTrue(revisionFile.delete());
+
+                final File packFile = new File(repositoryRoot, "db/revs/0.pack/pack");
+                FSMappedFiles.open(packedFsfs, packFile).close();
+                Assert.assertEquals(size + 1, mappings.size());
+                FSMappedFiles.release(packedFsfs, packFile);
+                Assert.assertEquals(size, mappings.size());
+
+                final File movedPackFile = new File(packFile.getParentFile(), "pack.moved");
+                Assert.assertTrue(packFile.renameTo(movedPackFile));
+                Assert.assertTrue(movedPackFile.delete());
+            } finally {
+                packedFsfs.close();
+            }
+        } finally {
+            FSMappedFiles.setEnabled(enabled);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testFulltextsSharedBetweenStreams() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testFulltextsSharedBetweenStreams", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file", "contents".getBytes());
+            commitBuilder.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                Assert.assertEquals("contents", readContents(fsfs.createRevisionRoot(1), "/file"));
+
+                final long hitsCount = FSInputStream.getFulltextsCache().getHitsCount();
+                final long hitsWeight = FSInputStream.getFulltextsCache().getHitsWeight();
+                Assert.assertEquals("contents", readContents(fsfs.createRevisionRoot(1), "/file"));
+
+                Assert.assertEquals(hitsCount + 1, FSInputStream.getFulltextsCache().getHitsCount());
+                Assert.assertEquals(hitsWeight + "contents".length(), FSInputStream.getFulltextsCache().getHitsWeight());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testCombinedWindowsOfLongDeltaChains() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final long maxFulltextSize = FSInputStream.getMaxCachedFulltextSize();
+        final long maxWindowsWeight = FSInputStream.getWindowsCache().getMaxWeight();
+        FSInputStream.setMaxCachedFulltextSize(0);
+        FSInputStream.getWindowsCache().setMaxWeight(0x100000);
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCombinedWindowsOfLongDeltaChains", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final StringBuffer contents = new StringBuffer();
+            for (int i = 0; i < 16; i++) {
+                contents.append("line").append(i).append('\n');
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                if (i == 0) {
+                    commitBuilder.addFile("file", contents.toString().getBytes());
+                } else {
+                    commitBuilder.changeFile("file", contents.toString().getBytes());
+                }
+                commitBuilder.commit();
+            }
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final String expected = readContents(fsfs.createRevisionRoot(16), "/file");
+                Assert.assertEquals(contents.toString(), expected);
+
+                final long hitsCount = FSInputStream.getWindowsCache().getHitsCount();
+                Assert.assertEquals(expected, readContents(fsfs.createRevisionRoot(16), "/file"));
+                Assert.assertTrue(FSInputStream.getWindowsCache().getHitsCount() > hitsCount);
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSInputStream.setMaxCachedFulltextSize(maxFulltextSize);
+            FSInputStream.getWindowsCache().setMaxWeight(maxWindowsWeight);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRevisionPropertiesCachedAndInvalidated() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRevisionPropertiesCachedAndInvalidated", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+            fsfs.close();
+
+            for (int i = 0; i < 25; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.setCommitMessage("message" + i);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+
+            final FSFS packedFsfs = new FSFS(repositoryRoot);
+            packedFsfs.open();
+            try {
+                new FSPacker(null).pack(packedFsfs);
+                Assert.assertEquals(20, packedFsfs.getMinUnpackedRevProp());
+
+                final SVNProperties[] properties = packedFsfs.getRevisionProperties(1, 25);
+                for (int i = 0; i < 25; i++) {
+                    Assert.assertEquals("message" + i, properties[i].getStringValue(SVNRevisionProperty.LOG));
+                }
+
+                final long hitsCount = FSFS.getRevisionPropertiesCache().getHitsCount();
+                Assert.assertEquals("message4", packedFsfs.getRevisionProperties(5).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals("message22", packedFsfs.getRevisionProperties(23).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals(hitsCount + 2, FSFS.getRevisionPropertiesCache().getHitsCount());
+
+                final long generation = packedFsfs.getRevPropGeneration();
+                final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+                try {
+                    svnRepository.setRevisionPropertyValue(5, SVNRevisionProperty.LOG, SVNPropertyValue.create("changed"));
+                } finally {
+                    svnRepository.closeSession();
+                }
+                Assert.assertEquals(generation + 2, packedFsfs.getRevPropGeneration());
+                Assert.assertEquals("changed", packedFsfs.getRevisionProperties(5).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals("changed", packedFsfs.getRevisionProperties(1, 5)[4].getStringValue(SVNRevisionProperty.LOG));
+            } finally {
+                packedFsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRevisionPropertiesChangedWithoutGeneration() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRevisionPropertiesChangedWithoutGeneration", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            for (int i = 0; i < 3; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.setCommitMessage("message" + i);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                // a writer that does not know about the revprop cache leaves the generation alone
+                SVNFileUtil.deleteFile(fsfs.getRevPropGenerationFile());
+                Assert.assertEquals(0, fsfs.getRevPropGeneration());
+
+                Assert.assertEquals("message1", fsfs.getRevisionProperties(2).getStringValue(SVNRevisionProperty.LOG));
+                final long hitsCount = FSFS.getRevisionPropertiesCache().getHitsCount();
+                Assert.assertEquals("message1", fsfs.getRevisionProperties(2).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals(hitsCount + 1, FSFS.getRevisionPropertiesCache().getHitsCount());
+
+                final File revisionPropertiesFile = fsfs.getRevisionPropertiesFile(2, false);
+                final long lastModified = revisionPropertiesFile.lastModified();
+                SVNFileUtil.copyFile(fsfs.getRevisionPropertiesFile(3, false), revisionPropertiesFile, false);
+                revisionPropertiesFile.setLastModified(lastModified + 2000);
+
+                Assert.assertEquals(0, fsfs.getRevPropGeneration());
+                Assert.assertEquals("message2", fsfs.getRevisionProperties(2).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals("message2", fsfs.getRevisionProperties(1, 3)[1].getStringValue(SVNRevisionProperty.LOG));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testPackedRevisionPropertiesChangedWithoutGeneration() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testPackedRevisionPropertiesChangedWithoutGeneration", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+            fsfs.close();
+
+            for (int i = 0; i < 15; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.setCommitMessage("message" + i);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+
+            final FSFS packedFsfs = new FSFS(repositoryRoot);
+            packedFsfs.open();
+            try {
+                new FSPacker(null).pack(packedFsfs);
+                Assert.assertEquals(10, packedFsfs.getMinUnpackedRevProp());
+
+                // a writer that does not know about the revprop cache leaves the generation alone
+                SVNFileUtil.deleteFile(packedFsfs.getRevPropGenerationFile());
+                Assert.assertEquals(0, packedFsfs.getRevPropGeneration());
+
+                Assert.assertEquals("message4", packedFsfs.getRevisionProperties(5).getStringValue(SVNRevisionProperty.LOG));
+                final long hitsCount = FSFS.getRevisionPropertiesCache().getHitsCount();
+                Assert.assertEquals("message4", packedFsfs.getRevisionProperties(5).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals(hitsCount + 1, FSFS.getRevisionPropertiesCache().getHitsCount());
+
+                // the pack file is rewritten in place, the manifest stays as it is
+                final File manifestFile = new File(repositoryRoot, "db/revprops/0.pack/manifest");
+                final String manifest = SVNFileUtil.readFile(manifestFile);
+                final long manifestLastModified = manifestFile.lastModified();
+                final FSFS writerFsfs = new FSFS(repositoryRoot);
+                writerFsfs.open();
+                try {
+                    writerFsfs.setRevisionProperty(5, SVNRevisionProperty.LOG, SVNPropertyValue.create("changed"));
+                } finally {
+                    writerFsfs.close();
+                }
+                SVNFileUtil.deleteFile(packedFsfs.getRevPropGenerationFile());
+                Assert.assertEquals(manifest, SVNFileUtil.readFile(manifestFile));
+                Assert.assertEquals(manifestLastModified, manifestFile.lastModified());
+
+                Assert.assertEquals(0, packedFsfs.getRevPropGeneration());
+                Assert.assertEquals("changed", packedFsfs.getRevisionProperties(5).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals("changed", packedFsfs.getRevisionProperties(1, 5)[4].getStringValue(SVNRevisionProperty.LOG));
+            } finally {
+                packedFsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void checkPackedRepository(String testName) throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(testName, options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+            fsfs.close();
+
+            for (int i = 0; i < 25; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+                commitBuilder.commit();
+            }
+
+            final FSFS packedFsfs = new FSFS(repositoryRoot);
+            packedFsfs.open();
+            try {
+                new FSPacker(null).pack(packedFsfs);
+                Assert.assertEquals(20, packedFsfs.getMinUnpackedRev());
+
+                final FSCache<FSCacheKey, long[]> manifests = FSFS.getPackManifestsCache();
+                final long missesCount = manifests.getMissesCount();
+                final long hitsCount = manifests.getHitsCount();
+                checkContents(packedFsfs, 0, 25);
+                Assert.assertEquals(missesCount + 2, manifests.getMissesCount());
+                Assert.assertTrue(manifests.getHitsCount() > hitsCount);
+
+                for (int i = 25; i < 30; i++) {
+                    final CommitBuilder commitBuilder = new CommitBuilder(url);
+                    commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+                    commitBuilder.commit();
+                }
+                final FSCacheKey staleKey = new FSCacheKey(packedFsfs.getCacheRepositoryId(), 2, 0);
+                manifests.put(staleKey, new long[10], 96);
+
+                new FSPacker(null).pack(packedFsfs);
+                Assert.assertEquals(30, packedFsfs.getMinUnpackedRev());
+                Assert.assertNull(manifests.get(staleKey));
+                checkContents(packedFsfs, 20, 30);
+            } finally {
+                packedFsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private static void checkContents(FSFS fsfs, int from, int to) throws Exception {
+        FSFS.getRevisionNodesCache().clear();
+        FSFS.getDirectoryEntriesCache().clear();
+        FSInputStream.getFulltextsCache().clear();
+        FSInputStream.getWindowsCache().clear();
+        for (int i = from; i < to; i++) {
+            final FSRevisionRoot root = fsfs.createRevisionRoot(i + 1);
+            final FSRevisionNode node = root.getRevisionNode("/file" + i);
+            Assert.assertEquals(("contents" + i).length(), node.getFileLength());
+            Assert.assertEquals(("contents" + i), readContents(root, "/file" + i));
+        }
+    }
+
+    private static String readContents(FSRevisionRoot root, String path) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final InputStream inputStream = root.getFileStreamForPath(new SVNDeltaCombiner(), path);
+        try {
+            FSRepositoryUtil.copy(inputStream, outputStream, null);
+        } finally {
+            SVNFileUtil.closeFile(inputStream);
+        }
+        return new String(outputStream.toByteArray());
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,193 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSGroupCommit;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+public class FSCommitterTest {
+
+    @Test
+    public void testConcurrentCommitsToDisjointPaths() throws Exception {
+        checkConcurrentCommits(getTestName() + ".testConcurrentCommitsToDisjointPaths");
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        final boolean enabled = FSGroupCommit.isEnabled();
+        final long window = FSGroupCommit.getWindow();
+        FSGroupCommit.setEnabled(true);
+        FSGroupCommit.setWindow(5);
+        try {
+            checkConcurrentCommits(getTestName() + ".testGroupCommit");
+        } finally {
+            FSGroupCommit.setEnabled(enabled);
+            FSGroupCommit.setWindow(window);
+        }
+    }
+
+    @Test
+    public void testGroupCommitBatchesConcurrentCommits() throws Exception {
+        final boolean enabled = FSGroupCommit.isEnabled();
+        final long window = FSGroupCommit.getWindow();
+        FSGroupCommit.setEnabled(true);
+        FSGroupCommit.setWindow(100);
+        try {
+            final int commitsCount = checkConcurrentCommits(getTestName() + ".testGroupCommitBatchesConcurrentCommits", 8, 3);
+            Assert.assertTrue(commitsCount < 8 * 3);
+        } finally {
+            FSGroupCommit.setEnabled(enabled);
+            FSGroupCommit.setWindow(window);
+        }
+    }
+
+    @Test
+    public void testGroupCommitSyncsReadOnlyRevisionProperties() throws Exception {
+        final boolean enabled = FSGroupCommit.isEnabled();
+        final long window = FSGroupCommit.getWindow();
+        FSGroupCommit.setEnabled(true);
+        FSGroupCommit.setWindow(5);
+        final TestOptions options = TestOptions.getInstance();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testGroupCommitSyncsReadOnlyRevisionProperties", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.setCommitMessage("file1");
+            commitBuilder1.addFile("file1", "contents1".getBytes());
+            commitBuilder1.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final File revisionPropertiesFile = fsfs.getRevisionPropertiesFile(1, false);
+                Assert.assertTrue(isReadOnly(revisionPropertiesFile));
+                SVNFileUtil.syncFile(revisionPropertiesFile);
+
+                final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+                commitBuilder2.setCommitMessage("file2");
+                commitBuilder2.addFile("file2", "contents2".getBytes());
+                commitBuilder2.commit();
+
+                Assert.assertEquals(2, fsfs.getYoungestRevision());
+                Assert.assertEquals("file2", fsfs.getRevisionProperties(2).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertTrue(isReadOnly(fsfs.getRevisionPropertiesFile(2, false)));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+            FSGroupCommit.setEnabled(enabled);
+            FSGroupCommit.setWindow(window);
+        }
+    }
+
+    private void checkConcurrentCommits(String testName) throws Exception {
+        checkConcurrentCommits(testName, 4, 10);
+    }
+
+    /**
+     * Returns how many times <code>current</code> was written by group commit.
+     */
+    private int checkConcurrentCommits(String testName, final int writersCount, final int commitsCount) throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(testName, options);
+        final ExecutorService executor = Executors.newFixedThreadPool(writersCount);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder directoriesBuilder = new CommitBuilder(url);
+            directoriesBuilder.setCommitMessage("directories");
+            for (int i = 0; i < writersCount; i++) {
+                directoriesBuilder.addDirectory("directory" + i);
+            }
+            directoriesBuilder.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            final long groupsCount = FSGroupCommit.getInstance(fsfs).getGroupsCount();
+
+            final List<Future<Void>> writers = new ArrayList<Future<Void>>();
+            for (int i = 0; i < writersCount; i++) {
+                final String directory = "directory" + i;
+                writers.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int j = 0; j < commitsCount; j++) {
+                            final CommitBuilder commitBuilder = new CommitBuilder(url);
+                            commitBuilder.setCommitMessage(directory + "/file" + j);
+                            commitBuilder.addFile(directory + "/file" + j, ("contents" + j).getBytes());
+                            commitBuilder.commit();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> writer : writers) {
+                writer.get();
+            }
+
+            try {
+                Assert.assertEquals(1 + writersCount * commitsCount, fsfs.getYoungestRevision());
+                for (long revision = 2; revision <= fsfs.getYoungestRevision(); revision++) {
+                    final SVNProperties revisionProperties = fsfs.getRevisionProperties(revision);
+                    Assert.assertNotNull(revisionProperties.getStringValue(SVNRevisionProperty.DATE));
+                    Assert.assertNull(revisionProperties.getStringValue(SVNProperty.TXN_CHECK_LOCKS));
+                    Assert.assertNull(revisionProperties.getStringValue(SVNProperty.TXN_CHECK_OUT_OF_DATENESS));
+
+                    final String path = revisionProperties.getStringValue(SVNRevisionProperty.LOG);
+                    final FSRevisionRoot root = fsfs.createRevisionRoot(revision);
+                    Assert.assertNotNull(root.getRevisionNode("/" + path));
+                    Assert.assertEquals(1, root.getChangedPaths().size());
+                }
+                final String[] transactions = fsfs.getTransactionsParentDir().list();
+                Assert.assertTrue(transactions == null || transactions.length == 0);
+                return (int) (FSGroupCommit.getInstance(fsfs).getGroupsCount() - groupsCount);
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            executor.shutdown();
+            sandbox.dispose();
+        }
+    }
+
+    /**
+     * Checks the file's permission bits rather than {@link File#canWrite()},
+     * which is always <code>true</code> for root.
+     */
+    private boolean isReadOnly(File file) throws IOException {
+        final Path path = file.toPath();
+        if (Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+            return !permissions.contains(PosixFilePermission.OWNER_WRITE)
+                    && !permissions.contains(PosixFilePermission.GROUP_WRITE)
+                    && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+        }
+        return !file.canWrite();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
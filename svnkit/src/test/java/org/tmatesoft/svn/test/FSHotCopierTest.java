@@ -0,0 +1,126 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+public class FSHotCopierTest {
+
+    @Test
+    public void testIncrementalHotCopy() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIncrementalHotCopy", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            updateMaxFilesPerDirectory(repositoryRoot);
+
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            for (int i = 0; i < 15; i++) {
+                createCommitThatAddsFile(url, "file" + i);
+            }
+            adminClient.doPack(repositoryRoot);
+
+            final File copyRoot = sandbox.createDirectory("svn.copy");
+            adminClient.doHotCopy(repositoryRoot, copyRoot, true);
+            Assert.assertArrayEquals(dump(repositoryRoot), dump(copyRoot));
+
+            final File packFile = new File(copyRoot, "db/revs/0.pack/pack");
+            final Object packFileKey = getFileKey(packFile);
+            final File revisionFile = new File(copyRoot, "db/revs/1/11");
+            final Object revisionFileKey = getFileKey(revisionFile);
+
+            for (int i = 15; i < 25; i++) {
+                createCommitThatAddsFile(url, "file" + i);
+            }
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                svnRepository.setRevisionPropertyValue(21, "property", SVNPropertyValue.create("value"));
+            } finally {
+                svnRepository.closeSession();
+            }
+            adminClient.doHotCopy(repositoryRoot, copyRoot, true);
+
+            Assert.assertEquals(packFileKey, getFileKey(packFile));
+            Assert.assertEquals(revisionFileKey, getFileKey(revisionFile));
+            Assert.assertEquals(25, adminClient.getYoungestRevision(copyRoot));
+            Assert.assertArrayEquals(dump(repositoryRoot), dump(copyRoot));
+
+            adminClient.doPack(repositoryRoot);
+            adminClient.doHotCopy(repositoryRoot, copyRoot, true);
+
+            Assert.assertEquals(packFileKey, getFileKey(packFile));
+            Assert.assertTrue(new File(copyRoot, "db/revs/1.pack/pack").isFile());
+            Assert.assertFalse(new File(copyRoot, "db/revs/1").exists());
+            Assert.assertArrayEquals(dump(repositoryRoot), dump(copyRoot));
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIncrementalHotCopyOfAnotherRepository() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIncrementalHotCopyOfAnotherRepository", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            createCommitThatAddsFile(url, "file");
+            final SVNURL anotherUrl = sandbox.createSvnRepository();
+
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            try {
+                adminClient.doHotCopy(new File(url.getPath()), new File(anotherUrl.getPath()), true);
+                Assert.fail("Hot copy into another repository is not detected");
+            } catch (SVNException e) {
+                Assert.assertEquals(SVNErrorCode.RA_UUID_MISMATCH, e.getErrorMessage().getErrorCode());
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void updateMaxFilesPerDirectory(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+        fsfs.close();
+    }
+
+    private void createCommitThatAddsFile(SVNURL url, String filename) throws SVNException {
+        final CommitBuilder commitBuilder = new CommitBuilder(url);
+        commitBuilder.addFile(filename, filename.getBytes());
+        commitBuilder.commit();
+    }
+
+    private byte[] dump(File repositoryRoot) throws SVNException {
+        final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+        adminClient.doDump(repositoryRoot, dump, SVNRevision.create(0), SVNRevision.HEAD, false, false);
+        return dump.toByteArray();
+    }
+
+    private static Object getFileKey(File file) throws Exception {
+        Assert.assertTrue(file.isFile());
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,201 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+public class FSLogIndexTest {
+
+    private static final String[][] LOG_TARGETS = {
+            {"trunk"}, {"trunk/a"}, {"trunk/a/f"}, {"trunk/a/g"}, {"trunk/b"}, {"branches"}, {"branches/br"},
+            {"branches/br/a"}, {"branches/br/a/f"}, {"branches/br/b"}, {"trunk-copy/a/f"}, {"trunk/a/f", "branches/br/b"},
+    };
+
+    @Test
+    public void testIndexedLogMatchesNodeHistory() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexedLogMatchesNodeHistory", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            fillRepository(url);
+
+            final List<String> expected = logAll(url);
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            adminClient.doBuildLogIndex(repositoryRoot);
+            Assert.assertTrue(new File(repositoryRoot, "db/log-index.db").isFile());
+            Assert.assertEquals(12, getIndexedRevision(repositoryRoot));
+
+            Assert.assertEquals(expected, logAll(url));
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIndexIsUpdatedOnCommit() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexIsUpdatedOnCommit", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            adminClient.doBuildLogIndex(repositoryRoot);
+            Assert.assertEquals(0, getIndexedRevision(repositoryRoot));
+
+            fillRepository(url);
+            Assert.assertEquals(12, getIndexedRevision(repositoryRoot));
+
+            final List<String> actual = logAll(url);
+            SVNFileUtil.deleteFile(new File(repositoryRoot, "db/log-index.db"));
+            Assert.assertEquals(logAll(url), actual);
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIndexedLogOfMissingPath() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexedLogOfMissingPath", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            fillRepository(url);
+
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            adminClient.doBuildLogIndex(repositoryRoot);
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                log(svnRepository, new String[] {"trunk/b"}, 6, 0, false, new ArrayList<String>());
+                Assert.fail("Log of a path missing in the start revision should fail");
+            } catch (SVNException e) {
+                Assert.assertEquals(SVNErrorCode.FS_NOT_FOUND, e.getErrorMessage().getErrorCode());
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void fillRepository(SVNURL url) throws SVNException {
+        final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+        commitBuilder1.addDirectory("branches");
+        commitBuilder1.addFile("trunk/a/f", "f1".getBytes());
+        commitBuilder1.addFile("trunk/b", "b1".getBytes());
+        commitBuilder1.commit();
+
+        final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+        commitBuilder2.changeFile("trunk/a/f", "f2".getBytes());
+        commitBuilder2.commit();
+
+        final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+        commitBuilder3.changeFile("trunk/b", "b3".getBytes());
+        commitBuilder3.addFile("trunk/a/g", "g3".getBytes());
+        commitBuilder3.commit();
+
+        final CommitBuilder commitBuilder4 = new CommitBuilder(url);
+        commitBuilder4.addDirectoryByCopying("branches/br", "trunk", 3);
+        commitBuilder4.commit();
+
+        final CommitBuilder commitBuilder5 = new CommitBuilder(url);
+        commitBuilder5.changeFile("branches/br/a/f", "f5".getBytes());
+        commitBuilder5.changeFile("trunk/a/f", "f5".getBytes());
+        commitBuilder5.commit();
+
+        final CommitBuilder commitBuilder6 = new CommitBuilder(url);
+        commitBuilder6.delete("trunk/b");
+        commitBuilder6.commit();
+
+        final CommitBuilder commitBuilder7 = new CommitBuilder(url);
+        commitBuilder7.replaceFileByCopying("branches/br/b", "trunk/b", 5);
+        commitBuilder7.commit();
+
+        final CommitBuilder commitBuilder8 = new CommitBuilder(url);
+        commitBuilder8.changeFile("branches/br/b", "b8".getBytes());
+        commitBuilder8.addFile("trunk/b", "b8".getBytes());
+        commitBuilder8.commit();
+
+        final CommitBuilder commitBuilder9 = new CommitBuilder(url);
+        commitBuilder9.replaceDirectoryByCopying("branches/br/a", "trunk/a", 8);
+        commitBuilder9.commit();
+
+        final CommitBuilder commitBuilder10 = new CommitBuilder(url);
+        commitBuilder10.changeFile("branches/br/a/f", "f10".getBytes());
+        commitBuilder10.commit();
+
+        final CommitBuilder commitBuilder11 = new CommitBuilder(url);
+        commitBuilder11.setDirectoryProperty("trunk/a", "property", SVNPropertyValue.create("value"));
+        commitBuilder11.commit();
+
+        final CommitBuilder commitBuilder12 = new CommitBuilder(url);
+        commitBuilder12.addDirectoryByCopying("trunk-copy", "trunk");
+        commitBuilder12.commit();
+    }
+
+    private List<String> logAll(SVNURL url) throws SVNException {
+        final List<String> log = new ArrayList<String>();
+        final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+        try {
+            final long latestRevision = svnRepository.getLatestRevision();
+            for (String[] targets : LOG_TARGETS) {
+                for (int i = 0; i < 4; i++) {
+                    final boolean strictNode = (i & 1) != 0;
+                    final long startRevision = (i & 2) != 0 ? 3 : 0;
+                    log.add(targets[0] + " strict=" + strictNode + " start=" + startRevision);
+                    log(svnRepository, targets, latestRevision, startRevision, strictNode, log);
+                }
+            }
+            log.add("branches/br/b@7");
+            log(svnRepository, new String[] {"branches/br/b"}, 7, 0, false, log);
+        } finally {
+            svnRepository.closeSession();
+        }
+        return log;
+    }
+
+    private void log(SVNRepository svnRepository, String[] targets, long startRevision, long endRevision, boolean strictNode,
+            final List<String> log) throws SVNException {
+        svnRepository.log(targets, startRevision, endRevision, true, strictNode, new ISVNLogEntryHandler() {
+            public void handleLogEntry(SVNLogEntry logEntry) throws SVNException {
+                log.add(logEntry.getRevision() + " " + new TreeSet<String>(logEntry.getChangedPaths().keySet()));
+            }
+        });
+    }
+
+    private long getIndexedRevision(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            return fsfs.getLogIndex().getIndexedRevision();
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,169 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+public class FSPackerTest {
+
+    @Test
+    public void testConcurrentPackMatchesSequentialPack() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testConcurrentPackMatchesSequentialPack", options);
+        final int threadsCount = FSPacker.getThreadsCount();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            updateMaxFilesPerDirectory(repositoryRoot);
+            for (int i = 0; i < 45; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+                commitBuilder.commit();
+            }
+
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            final byte[] expectedDump = dump(repositoryRoot);
+            final File sequentialRoot = sandbox.createDirectory("svn.sequential");
+            final File concurrentRoot = sandbox.createDirectory("svn.concurrent");
+            adminClient.doHotCopy(repositoryRoot, sequentialRoot);
+            adminClient.doHotCopy(repositoryRoot, concurrentRoot);
+
+            FSPacker.setThreadsCount(1);
+            adminClient.doPack(sequentialRoot);
+            FSPacker.setThreadsCount(4);
+            adminClient.doPack(concurrentRoot);
+
+            for (int shard = 0; shard < 4; shard++) {
+                final String packDir = "db/revs/" + shard + ".pack/";
+                Assert.assertArrayEquals(SVNFileUtil.readFully(new File(sequentialRoot, packDir + "pack")),
+                        SVNFileUtil.readFully(new File(concurrentRoot, packDir + "pack")));
+                Assert.assertArrayEquals(SVNFileUtil.readFully(new File(sequentialRoot, packDir + "manifest")),
+                        SVNFileUtil.readFully(new File(concurrentRoot, packDir + "manifest")));
+                Assert.assertFalse(new File(concurrentRoot, "db/revs/" + shard).exists());
+                Assert.assertFalse(new File(concurrentRoot, "db/revs/" + shard + ".pack.tmp").exists());
+            }
+            Assert.assertTrue(new File(concurrentRoot, "db/revs/4").isDirectory());
+            Assert.assertEquals("40", SVNFileUtil.readFile(new File(concurrentRoot, "db/min-unpacked-rev")).trim());
+            Assert.assertArrayEquals(expectedDump, dump(concurrentRoot));
+        } finally {
+            FSPacker.setThreadsCount(threadsCount);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testPackWhileCommittingAndReading() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testPackWhileCommittingAndReading", options);
+        final int threadsCount = FSPacker.getThreadsCount();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            updateMaxFilesPerDirectory(repositoryRoot);
+            for (int i = 0; i < 45; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+                commitBuilder.commit();
+            }
+
+            final AtomicBoolean packed = new AtomicBoolean();
+            final CountDownLatch started = new CountDownLatch(2);
+            final Future<Integer> writer = executor.submit(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    started.countDown();
+                    int i = 45;
+                    for (; !packed.get() || i < 60; i++) {
+                        final CommitBuilder commitBuilder = new CommitBuilder(url);
+                        commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+                        commitBuilder.commit();
+                    }
+                    return i;
+                }
+            });
+            final Future<Integer> reader = executor.submit(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    started.countDown();
+                    final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+                    try {
+                        int reads = 0;
+                        for (; !packed.get() || reads < 45; reads++) {
+                            final int i = reads % 45;
+                            final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+                            svnRepository.getFile("file" + i, i + 1, null, contents);
+                            Assert.assertEquals("contents" + i, contents.toString());
+                        }
+                        return reads;
+                    } finally {
+                        svnRepository.closeSession();
+                    }
+                }
+            });
+
+            started.await();
+            FSPacker.setThreadsCount(4);
+            try {
+                SVNClientManager.newInstance().getAdminClient().doPack(repositoryRoot);
+            } finally {
+                packed.set(true);
+            }
+            final int commitsCount = writer.get();
+            reader.get();
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                Assert.assertEquals(commitsCount, fsfs.getYoungestRevision());
+                Assert.assertTrue(fsfs.getMinUnpackedRev() >= 40);
+                for (int i = 0; i < commitsCount; i++) {
+                    Assert.assertNotNull(fsfs.createRevisionRoot(i + 1).getRevisionNode("/file" + i));
+                }
+            } finally {
+                fsfs.close();
+            }
+            SVNClientManager.newInstance().getAdminClient().doVerify(repositoryRoot);
+        } finally {
+            executor.shutdownNow();
+            FSPacker.setThreadsCount(threadsCount);
+            sandbox.dispose();
+        }
+    }
+
+    private void updateMaxFilesPerDirectory(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+        fsfs.close();
+    }
+
+    private byte[] dump(File repositoryRoot) throws SVNException {
+        final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+        adminClient.doDump(repositoryRoot, dump, SVNRevision.create(0), SVNRevision.HEAD, false, false);
+        return dump.toByteArray();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,146 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSHotCopier;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentationCacheIndex;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSRepresentationCacheManager;
+
+public class FSRepresentationCacheTest {
+
+    @Test
+    public void testRepresentationsShared() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRepresentationsShared", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file1", "contents".getBytes());
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.addFile("file2", "contents".getBytes());
+            commitBuilder2.commit();
+
+            final long hitsCount = FSRepresentationCacheIndex.getRepresentationsCache().getHitsCount();
+
+            final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+            commitBuilder3.addFile("file3", "contents".getBytes());
+            commitBuilder3.commit();
+
+            Assert.assertTrue(FSRepresentationCacheIndex.getRepresentationsCache().getHitsCount() > hitsCount);
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final FSRepresentation representation1 = getTextRepresentation(fsfs, 1, "/file1");
+                Assert.assertEquals(1, getTextRepresentation(fsfs, 2, "/file2").getRevision());
+                Assert.assertEquals(representation1.getItemIndex(), getTextRepresentation(fsfs, 2, "/file2").getItemIndex());
+                Assert.assertEquals(1, getTextRepresentation(fsfs, 3, "/file3").getRevision());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRowsInsertedByOtherConnectionsAreFound() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRowsInsertedByOtherConnectionsAreFound", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file", "contents".getBytes());
+            commitBuilder.commit();
+
+            final String hash = "0123456789abcdef0123456789abcdef01234567";
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final IFSRepresentationCacheManager manager = fsfs.getRepositoryCacheManager();
+                Assert.assertNull(manager.getRepresentationByHash(hash));
+
+                final SqlJetDb db = SqlJetDb.open(fsfs.getRepositoryCacheFile(), true);
+                try {
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getTable(FSRepresentationCacheManager.REP_CACHE_TABLE).insert(new Object[] {hash, 1L, 2L, 3L, 4L});
+                            return null;
+                        }
+                    });
+                } finally {
+                    db.close();
+                }
+
+                final FSRepresentation representation = manager.getRepresentationByHash(hash);
+                Assert.assertNotNull(representation);
+                Assert.assertEquals(1, representation.getRevision());
+                Assert.assertEquals(3, representation.getSize());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testHotCopyKeepsRepresentationsShared() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testHotCopyKeepsRepresentationsShared", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file1", "contents".getBytes());
+            commitBuilder1.commit();
+
+            final File copyRoot = sandbox.createDirectory("svn.copy");
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                new FSHotCopier().runHotCopy(fsfs, copyRoot);
+            } finally {
+                fsfs.close();
+            }
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(SVNURL.fromFile(copyRoot));
+            commitBuilder2.addFile("file2", "contents".getBytes());
+            commitBuilder2.commit();
+
+            final FSFS copy = new FSFS(copyRoot);
+            copy.open();
+            try {
+                Assert.assertEquals(1, getTextRepresentation(copy, 2, "/file2").getRevision());
+            } finally {
+                copy.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private static FSRepresentation getTextRepresentation(FSFS fsfs, long revision, String path) throws Exception {
+        return fsfs.createRevisionRoot(revision).getRevisionNode(path).getTextRepresentation();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,354 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.auth.SVNAuthentication;
+import org.tmatesoft.svn.core.internal.io.dav.DAVRepository;
+import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.dav.http.HTTPConnectionPool;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class HTTPConnectionPoolTest {
+
+    private static final String KEY_STORE_RESOURCE = "/org/tmatesoft/svn/test/localhost.p12";
+
+    @Test
+    public void testLeaseAndRelease() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+        final List<Socket> sockets = new ArrayList<Socket>();
+        try {
+            final HTTPConnectionPool pool = new HTTPConnectionPool(true, 2, 60000);
+            final SVNURL url = SVNURL.parseURIEncoded("http://127.0.0.1:" + serverSocket.getLocalPort() + "/repos");
+            final ISVNAuthenticationManager authManager = BasicAuthenticationManager.newInstance("user", "password".toCharArray());
+            final HTTPConnectionPool.Key key = new HTTPConnectionPool.Key(url, null, authManager);
+            final HTTPConnectionPool.Key otherKey = new HTTPConnectionPool.Key(url, null,
+                    BasicAuthenticationManager.newInstance("user", "password".toCharArray()));
+
+            Assert.assertEquals(key, new HTTPConnectionPool.Key(url.appendPath("path", false), null, authManager));
+            Assert.assertFalse(key.equals(otherKey));
+            Assert.assertNull(pool.lease(key));
+
+            for (int i = 0; i < 3; i++) {
+                sockets.add(connect(serverSocket));
+            }
+            Assert.assertTrue(pool.release(key, sockets.get(0), Long.MAX_VALUE));
+            Assert.assertTrue(pool.release(key, sockets.get(1), Long.MAX_VALUE));
+            Assert.assertFalse(pool.release(key, sockets.get(2), Long.MAX_VALUE));
+            Assert.assertEquals(2, pool.getIdleCount(key));
+
+            Assert.assertNull(pool.lease(otherKey));
+            Assert.assertSame(sockets.get(1), pool.lease(key));
+            Assert.assertEquals(1, pool.getIdleCount(key));
+
+            sockets.get(0).close();
+            Assert.assertNull(pool.lease(key));
+            Assert.assertEquals(0, pool.getIdleCount(key));
+
+            Assert.assertFalse(pool.release(key, sockets.get(1), System.currentTimeMillis() - 1));
+            Assert.assertTrue(pool.release(key, sockets.get(1), System.currentTimeMillis() + 100));
+            Thread.sleep(200);
+            Assert.assertNull(pool.lease(key));
+            Assert.assertTrue(sockets.get(1).isClosed());
+
+            Assert.assertTrue(pool.release(key, sockets.get(2), Long.MAX_VALUE));
+            pool.setEnabled(false);
+            Assert.assertTrue(sockets.get(2).isClosed());
+            Assert.assertEquals(0, pool.getIdleCount(key));
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testRepositoriesShareSocket() throws Exception {
+        final FakeServer server = new FakeServer(new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1")), true);
+        try {
+            final SVNURL url = SVNURL.parseURIEncoded("http://127.0.0.1:" + server.getPort() + "/repos");
+            final ISVNAuthenticationManager authManager = BasicAuthenticationManager.newInstance("user", "password".toCharArray());
+            checkLatestRevision(url, authManager);
+            checkLatestRevision(url, authManager);
+
+            Assert.assertEquals(1, server.getConnectionsCount());
+            Assert.assertEquals(4, server.getRequestsCount());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testSecureRepositoriesShareSocketAndSSLContext() throws Exception {
+        final FakeServer server = new FakeServer(createSSLServerSocket(false), true);
+        try {
+            final SVNURL url = SVNURL.parseURIEncoded("https://localhost:" + server.getPort() + "/repos");
+            final CountingAuthenticationManager authManager = new CountingAuthenticationManager();
+            final HTTPConnectionPool.Key key = new HTTPConnectionPool.Key(url, null, authManager);
+            Assert.assertNull(HTTPConnectionPool.getInstance().getSSLContext(key, null));
+
+            checkLatestRevision(url, authManager);
+            final SSLContext sslContext = HTTPConnectionPool.getInstance().getSSLContext(key, null);
+            Assert.assertNotNull(sslContext);
+            checkLatestRevision(url, authManager);
+
+            Assert.assertEquals(1, server.getConnectionsCount());
+            Assert.assertEquals(0, authManager.getSSLAuthenticationsCount());
+            Assert.assertSame(sslContext, HTTPConnectionPool.getInstance().getSSLContext(key, null));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testClientCertificateRequestDisablesSharedSSLContext() throws Exception {
+        final FakeServer server = new FakeServer(createSSLServerSocket(true), false);
+        try {
+            final SVNURL url = SVNURL.parseURIEncoded("https://localhost:" + server.getPort() + "/repos");
+            final CountingAuthenticationManager authManager = new CountingAuthenticationManager();
+            final HTTPConnectionPool.Key key = new HTTPConnectionPool.Key(url, null, authManager);
+
+            checkLatestRevision(url, authManager);
+            Assert.assertNull(HTTPConnectionPool.getInstance().getSSLContext(key, null));
+            checkLatestRevision(url, authManager);
+
+            // every request is sent over a new socket, and each connection asks its own key manager for a certificate
+            Assert.assertEquals(4, server.getConnectionsCount());
+            Assert.assertEquals(2, authManager.getSSLAuthenticationsCount());
+            Assert.assertNull(HTTPConnectionPool.getInstance().getSSLContext(key, null));
+        } finally {
+            server.close();
+        }
+    }
+
+    private static void checkLatestRevision(SVNURL url, ISVNAuthenticationManager authManager) throws SVNException {
+        DAVRepositoryFactory.setup();
+        final DAVRepository repository = (DAVRepository) SVNRepositoryFactory.create(url);
+        try {
+            repository.setHttpV2Enabled(true);
+            repository.setAuthenticationManager(authManager);
+            Assert.assertEquals(FakeServer.YOUNGEST_REVISION, repository.getLatestRevision());
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    private static ServerSocket createSSLServerSocket(boolean wantClientAuth) throws Exception {
+        final char[] password = "password".toCharArray();
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        final InputStream inputStream = HTTPConnectionPoolTest.class.getResourceAsStream(KEY_STORE_RESOURCE);
+        try {
+            keyStore.load(inputStream, password);
+        } finally {
+            inputStream.close();
+        }
+        final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        final SSLServerSocket serverSocket = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+        serverSocket.setWantClientAuth(wantClientAuth);
+        return serverSocket;
+    }
+
+    private static class CountingAuthenticationManager extends BasicAuthenticationManager {
+
+        private final AtomicInteger mySSLAuthenticationsCount = new AtomicInteger();
+
+        public CountingAuthenticationManager() {
+            super(new SVNAuthentication[0]);
+        }
+
+        public int getSSLAuthenticationsCount() {
+            return mySSLAuthenticationsCount.get();
+        }
+
+        public SVNAuthentication getFirstAuthentication(String kind, String realm, SVNURL url) throws SVNException {
+            if (ISVNAuthenticationManager.SSL.equals(kind)) {
+                mySSLAuthenticationsCount.incrementAndGet();
+            }
+            return super.getFirstAuthentication(kind, realm, url);
+        }
+    }
+
+    /**
+     * Answers every request the way an HTTP v2 server answers OPTIONS.
+     */
+    private static class FakeServer implements Runnable {
+
+        public static final long YOUNGEST_REVISION = 7;
+
+        private final ServerSocket myServerSocket;
+        private final boolean myIsKeepAlive;
+        private final AtomicInteger myConnectionsCount = new AtomicInteger();
+        private final AtomicInteger myRequestsCount = new AtomicInteger();
+        private final List<Socket> mySockets = new ArrayList<Socket>();
+
+        public FakeServer(ServerSocket serverSocket, boolean keepAlive) {
+            myServerSocket = serverSocket;
+            myIsKeepAlive = keepAlive;
+            final Thread thread = new Thread(this, "fake-http-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public int getPort() {
+            return myServerSocket.getLocalPort();
+        }
+
+        public int getConnectionsCount() {
+            return myConnectionsCount.get();
+        }
+
+        public int getRequestsCount() {
+            return myRequestsCount.get();
+        }
+
+        public void close() throws IOException {
+            myServerSocket.close();
+            synchronized (mySockets) {
+                for (Socket socket : mySockets) {
+                    socket.close();
+                }
+            }
+        }
+
+        public void run() {
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = myServerSocket.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                myConnectionsCount.incrementAndGet();
+                synchronized (mySockets) {
+                    mySockets.add(socket);
+                }
+                final Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "fake-http-connection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                final InputStream inputStream = socket.getInputStream();
+                final OutputStream outputStream = socket.getOutputStream();
+                while (readRequest(inputStream)) {
+                    myRequestsCount.incrementAndGet();
+                    final String response = "HTTP/1.1 200 OK\r\n" +
+                            "Content-Length: 0\r\n" +
+                            (myIsKeepAlive ? "Keep-Alive: timeout=30, max=100\r\nConnection: Keep-Alive\r\n" : "Connection: close\r\n") +
+                            "DAV: 1,2\r\n" +
+                            "SVN-Youngest-Rev: " + YOUNGEST_REVISION + "\r\n" +
+                            "SVN-Repository-UUID: 00000000-0000-0000-0000-000000000000\r\n" +
+                            "SVN-Repository-Root: /repos\r\n" +
+                            "SVN-Me-Resource: /repos/!svn/me\r\n" +
+                            "SVN-Rev-Root-Stub: /repos/!svn/rvr\r\n" +
+                            "SVN-Rev-Stub: /repos/!svn/rev\r\n" +
+                            "SVN-Txn-Root-Stub: /repos/!svn/txr\r\n" +
+                            "SVN-Txn-Stub: /repos/!svn/txn\r\n" +
+                            "\r\n";
+                    outputStream.write(response.getBytes("US-ASCII"));
+                    outputStream.flush();
+                    if (!myIsKeepAlive) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                //
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    //
+                }
+            }
+        }
+
+        private static boolean readRequest(InputStream inputStream) throws IOException {
+            int contentLength = 0;
+            boolean chunked = false;
+            String line = readLine(inputStream);
+            if (line == null) {
+                return false;
+            }
+            while ((line = readLine(inputStream)) != null && line.length() > 0) {
+                final String lowerCaseLine = line.toLowerCase();
+                if (lowerCaseLine.startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                } else if (lowerCaseLine.startsWith("transfer-encoding:") && lowerCaseLine.contains("chunked")) {
+                    chunked = true;
+                }
+            }
+            if (chunked) {
+                while (true) {
+                    final int chunkLength = Integer.parseInt(readLine(inputStream).trim(), 16);
+                    skip(inputStream, chunkLength);
+                    readLine(inputStream);
+                    if (chunkLength == 0) {
+                        break;
+                    }
+                }
+            } else {
+                skip(inputStream, contentLength);
+            }
+            return true;
+        }
+
+        private static String readLine(InputStream inputStream) throws IOException {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            while (true) {
+                final int b = inputStream.read();
+                if (b < 0) {
+                    return line.size() > 0 ? line.toString("US-ASCII") : null;
+                } else if (b == '\n') {
+                    break;
+                } else if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return line.toString("US-ASCII");
+        }
+
+        private static void skip(InputStream inputStream, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                if (inputStream.read() < 0) {
+                    throw new IOException("Unexpected end of request");
+                }
+            }
+        }
+    }
+
+    private static Socket connect(ServerSocket serverSocket) throws Exception {
+        final Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        serverSocket.accept();
+        return socket;
+    }
+}
@@ -4,8 +4,13 @@ import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.tmatesoft.svn.core.ISVNDirEntryHandler;
+import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.wc2.SvnWcGeneration;
@@ -15,12 +20,15 @@ import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
 import org.tmatesoft.svn.core.wc2.ISvnObjectReceiver;
+import org.tmatesoft.svn.core.wc2.SvnGetInfo;
+import org.tmatesoft.svn.core.wc2.SvnInfo;
 import org.tmatesoft.svn.core.wc2.SvnList;
 import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
 import org.tmatesoft.svn.core.wc2.SvnTarget;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -283,6 +291,116 @@ public class ListTest {
         }
     }
 
+    @Test
+    public void testRecursiveListWithBatchRequests() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRecursiveListWithBatchRequests", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            checkBatchRequests(url);
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRecursiveListWithBatchRequestsSvnAccess() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        Assume.assumeTrue(TestUtil.areAllSvnserveOptionsSpecified(options));
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRecursiveListWithBatchRequestsSvnAccess", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepositoryWithSvnAccess();
+            checkBatchRequests(url);
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void checkBatchRequests(SVNURL url) throws SVNException {
+        final CommitBuilder commitBuilder = new CommitBuilder(url);
+        commitBuilder.addFile("a/file1");
+        commitBuilder.addFile("a/b/file2");
+        commitBuilder.addDirectory("a/c");
+        commitBuilder.addFile("d/file3");
+        commitBuilder.addFile("file4");
+        commitBuilder.setDirectoryProperty("d", "custom", SVNPropertyValue.create("value"));
+        commitBuilder.commit();
+
+        final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+        try {
+            final String[] paths = {"a", "a/b/file2", "missing", "d", "file4"};
+            final SVNNodeKind[] kinds = svnRepository.checkPath(paths, 1);
+            final SVNDirEntry[] infos = svnRepository.info(paths, 1);
+            Assert.assertEquals(paths.length, kinds.length);
+            Assert.assertEquals(paths.length, infos.length);
+            for (int i = 0; i < paths.length; i++) {
+                Assert.assertEquals(svnRepository.checkPath(paths[i], 1), kinds[i]);
+                final SVNDirEntry info = svnRepository.info(paths[i], 1);
+                if (info == null) {
+                    Assert.assertNull(infos[i]);
+                } else {
+                    Assert.assertEquals(info.getURL(), infos[i].getURL());
+                    Assert.assertEquals(info.getKind(), infos[i].getKind());
+                }
+            }
+            Assert.assertEquals(SVNNodeKind.NONE, kinds[2]);
+
+            final List<String> relativePaths = new ArrayList<String>();
+            final SVNProperties[] properties = {new SVNProperties(), null, new SVNProperties()};
+            svnRepository.getDir(new String[] {"a", "a/b", "d"}, 1, properties, SVNDirEntry.DIRENT_ALL, new ISVNDirEntryHandler() {
+                public void handleDirEntry(SVNDirEntry dirEntry) throws SVNException {
+                    relativePaths.add(dirEntry.getRelativePath());
+                }
+            });
+            Collections.sort(relativePaths);
+            Assert.assertEquals(Arrays.asList("a/b", "a/b/file2", "a/c", "a/file1", "d/file3"), relativePaths);
+            Assert.assertNull(properties[0].getStringValue("custom"));
+            Assert.assertEquals("value", properties[2].getStringValue("custom"));
+        } finally {
+            svnRepository.closeSession();
+        }
+
+        final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
+        try {
+            final List<String> listed = new ArrayList<String>();
+            final SvnList list = svnOperationFactory.createList();
+            list.setSingleTarget(SvnTarget.fromURL(url, SVNRevision.HEAD));
+            list.setDepth(SVNDepth.INFINITY);
+            list.setReceiver(new ISvnObjectReceiver<SVNDirEntry>() {
+                public void receive(SvnTarget target, SVNDirEntry dirEntry) throws SVNException {
+                    listed.add(dirEntry.getRelativePath());
+                }
+            });
+            list.run();
+
+            Assert.assertEquals(Arrays.asList("", "a", "a/b", "a/b/file2", "a/c", "a/file1", "d", "d/file3", "file4"), listed);
+
+            final List<String> infos = new ArrayList<String>();
+            final SvnGetInfo getInfo = svnOperationFactory.createGetInfo();
+            getInfo.setSingleTarget(SvnTarget.fromURL(url, SVNRevision.HEAD));
+            getInfo.setDepth(SVNDepth.INFINITY);
+            getInfo.setReceiver(new ISvnObjectReceiver<SvnInfo>() {
+                public void receive(SvnTarget target, SvnInfo info) throws SVNException {
+                    infos.add(info.getUrl().toString());
+                }
+            });
+            getInfo.run();
+
+            final List<String> expectedInfos = new ArrayList<String>();
+            for (String path : listed) {
+                expectedInfos.add(url.appendPath(path, false).toString());
+            }
+            Collections.sort(infos);
+            Collections.sort(expectedInfos);
+            Assert.assertEquals(expectedInfos, infos);
+        } finally {
+            svnOperationFactory.dispose();
+        }
+    }
+
     private String createStringForLength(int length) {
         final StringBuilder stringBuilder = new StringBuilder();
         for (int i = 0; i < length; i++) {
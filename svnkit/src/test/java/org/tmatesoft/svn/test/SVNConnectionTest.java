@@ -0,0 +1,259 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.compression.Compression;
+import org.apache.sshd.common.kex.KexProposalOption;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.svn.ISVNConnector;
+import org.tmatesoft.svn.core.internal.io.svn.SVNConnection;
+import org.tmatesoft.svn.core.internal.io.svn.SVNPlainConnector;
+import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
+import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryImpl;
+import org.tmatesoft.svn.core.internal.io.svn.ssh.apache.SshConnection;
+import org.tmatesoft.svn.core.internal.io.svn.ssh.apache.SshHost;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class SVNConnectionTest {
+
+    @Test
+    public void testCommandLeavesInSingleFlush() throws Exception {
+        final RecordingConnector connector = new RecordingConnector("( success ( 7 ) ) ");
+        final SVNConnection connection = new SVNConnection(connector, createRepository(3690));
+
+        connection.write("(w(s(n)))", new Object[]{"stat", "trunk/file", 5L});
+        connection.write("(w())", new Object[]{"get-latest-rev"});
+        Assert.assertTrue(connector.getFlushes().isEmpty());
+
+        final List values = connection.read("r", null, false);
+        Assert.assertEquals(7L, ((Long) values.get(0)).longValue());
+
+        Assert.assertEquals(1, connector.getFlushes().size());
+        Assert.assertEquals("( stat ( 10:trunk/file ( 5 ) ) ) ( get-latest-rev ( ) ) ", connector.getFlushes().get(0));
+        Assert.assertNull(connector.getReadWithPendingOutput());
+    }
+
+    @Test
+    public void testPendingOutputFlushedBeforeEveryRead() throws Exception {
+        final RecordingConnector connector = new RecordingConnector("( success ( 1 ) ) ( success ( 2 ) ) ");
+        final SVNConnection connection = new SVNConnection(connector, createRepository(3690));
+
+        connection.write("(w(n))", new Object[]{"rev-proplist", 1L});
+        connection.readTuple("w(n)", false);
+        connection.write("(w(n))", new Object[]{"rev-proplist", 2L});
+        connection.readItem(false);
+
+        Assert.assertNull(connector.getReadWithPendingOutput());
+        Assert.assertEquals(Arrays.asList("( rev-proplist ( 1 ) ) ", "( rev-proplist ( 2 ) ) "), connector.getFlushes());
+    }
+
+    @Test
+    public void testPendingOutputFlushedOnClose() throws Exception {
+        final RecordingConnector connector = new RecordingConnector("");
+        final SVNConnection connection = new SVNConnection(connector, createRepository(3690));
+
+        connection.write("(w())", new Object[]{"abort-edit"});
+        connection.close();
+
+        Assert.assertEquals(Arrays.asList("( abort-edit ( ) ) "), connector.getFlushes());
+        Assert.assertTrue(connector.isClosed());
+        Assert.assertFalse(connector.isClosedWithPendingOutput());
+    }
+
+    @Test
+    public void testPlainConnectorBuffersUpToBufferSize() throws Exception {
+        final int bufferSize = Integer.getInteger("svnkit.svn.bufferSize", 64 * 1024);
+        final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        final SVNPlainConnector connector = new SVNPlainConnector();
+        try {
+            connector.open(createRepository(serverSocket.getLocalPort()));
+            final Socket socket = serverSocket.accept();
+            try {
+                socket.setSoTimeout(500);
+                final byte[] data = new byte[bufferSize - 1];
+                Arrays.fill(data, (byte) 'x');
+
+                final OutputStream os = connector.getOutputStream();
+                os.write(data);
+                try {
+                    final int read = socket.getInputStream().read();
+                    Assert.fail("Data reached the server before flush: " + read);
+                } catch (SocketTimeoutException e) {
+                    //expected
+                }
+
+                os.flush();
+                final InputStream is = socket.getInputStream();
+                final byte[] received = new byte[data.length];
+                int offset = 0;
+                while (offset < received.length) {
+                    final int read = is.read(received, offset, received.length - offset);
+                    Assert.assertTrue(read > 0);
+                    offset += read;
+                }
+                Assert.assertArrayEquals(data, received);
+            } finally {
+                socket.close();
+            }
+        } finally {
+            connector.close(null);
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testSshCompressionOption() throws Exception {
+        final SshServer server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((userName, password, session) -> "user".equals(userName) && "password".equals(password));
+        server.setCompressionFactories(Arrays.<NamedFactory<Compression>>asList(
+                BuiltinCompressions.none, BuiltinCompressions.zlib, BuiltinCompressions.delayedZlib));
+        server.start();
+        try {
+            Assert.assertEquals(BuiltinCompressions.none.getName(), getNegotiatedCompression(server.getPort()));
+
+            System.setProperty("svnkit.ssh.compression", "true");
+            try {
+                Assert.assertEquals(BuiltinCompressions.delayedZlib.getName(), getNegotiatedCompression(server.getPort()));
+            } finally {
+                System.clearProperty("svnkit.ssh.compression");
+            }
+        } finally {
+            server.stop(true);
+        }
+    }
+
+    private String getNegotiatedCompression(int port) throws Exception {
+        final SshHost host = new SshHost("127.0.0.1", port);
+        host.setCredentials("user", null, null, "password".toCharArray());
+        final SshConnection connection = new SshConnection(host);
+        try {
+            final ClientSession session = connection.getSession();
+            Assert.assertEquals(session.getNegotiatedKexParameter(KexProposalOption.C2SCOMP),
+                    session.getNegotiatedKexParameter(KexProposalOption.S2CCOMP));
+            return session.getNegotiatedKexParameter(KexProposalOption.C2SCOMP);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private SVNRepositoryImpl createRepository(int port) throws SVNException {
+        SVNRepositoryFactoryImpl.setup();
+        return (SVNRepositoryImpl) SVNRepositoryFactory.create(SVNURL.create("svn", null, "127.0.0.1", port, "/repos", false));
+    }
+
+    private static class RecordingConnector implements ISVNConnector {
+
+        private final ByteArrayOutputStream myPendingOutput = new ByteArrayOutputStream();
+        private final List<String> myFlushes = new ArrayList<String>();
+        private final InputStream myResponses;
+        private String myReadWithPendingOutput;
+        private boolean myIsClosed;
+        private boolean myIsClosedWithPendingOutput;
+
+        public RecordingConnector(String responses) throws IOException {
+            myResponses = new ByteArrayInputStream(responses.getBytes("UTF-8"));
+        }
+
+        public List<String> getFlushes() {
+            return myFlushes;
+        }
+
+        public String getReadWithPendingOutput() {
+            return myReadWithPendingOutput;
+        }
+
+        public boolean isClosed() {
+            return myIsClosed;
+        }
+
+        public boolean isClosedWithPendingOutput() {
+            return myIsClosedWithPendingOutput;
+        }
+
+        public void open(SVNRepositoryImpl repository) {
+        }
+
+        public void handleExceptionOnOpen(SVNRepositoryImpl repository, SVNException exception) throws SVNException {
+            throw exception;
+        }
+
+        public boolean isConnected(SVNRepositoryImpl repository) {
+            return true;
+        }
+
+        public void close(SVNRepositoryImpl repository) {
+            myIsClosed = true;
+            myIsClosedWithPendingOutput = myPendingOutput.size() > 0;
+        }
+
+        public boolean isStale() {
+            return false;
+        }
+
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    myPendingOutput.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    myPendingOutput.write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (myPendingOutput.size() > 0) {
+                        myFlushes.add(myPendingOutput.toString("UTF-8"));
+                        myPendingOutput.reset();
+                    }
+                }
+            };
+        }
+
+        public InputStream getInputStream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    checkNoPendingOutput();
+                    return myResponses.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    checkNoPendingOutput();
+                    return myResponses.read(b, off, len);
+                }
+            };
+        }
+
+        private void checkNoPendingOutput() throws IOException {
+            if (myPendingOutput.size() > 0 && myReadWithPendingOutput == null) {
+                myReadWithPendingOutput = myPendingOutput.toString("UTF-8");
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCodec;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCompression;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNConfigFile;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+public class SVNDeltaCodecTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Random random = new Random(1);
+        final byte[] data = createData(random, 100 * 1024);
+        for (SVNDeltaCompression compression : SVNDeltaCompression.values()) {
+            for (int level = 0; level <= 9; level += 3) {
+                final byte[] compressed = new byte[SVNDeltaCodec.getMaxCompressedLength(compression, data.length) + 10];
+                final int compressedLength = SVNDeltaCodec.compress(compression, level, data, 0, data.length, compressed, 10);
+                if (compression != SVNDeltaCompression.None && level > 0) {
+                    Assert.assertTrue(compressedLength < data.length);
+                }
+
+                final byte[] decompressed = new byte[data.length + 5];
+                SVNDeltaCodec.decompress(compression, compressed, 10, compressedLength, decompressed, 5, data.length);
+                for (int i = 0; i < data.length; i++) {
+                    Assert.assertEquals(data[i], decompressed[i + 5]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCorruptedZlibSection() throws Exception {
+        final byte[] data = createData(new Random(2), 4096);
+        final byte[] compressed = new byte[SVNDeltaCodec.getMaxCompressedLength(SVNDeltaCompression.Zlib, data.length)];
+        final int compressedLength = SVNDeltaCodec.compress(SVNDeltaCompression.Zlib, 5, data, 0, data.length, compressed, 0);
+        try {
+            SVNDeltaCodec.decompress(SVNDeltaCompression.Zlib, compressed, 0, compressedLength / 2, new byte[data.length], 0, data.length);
+            Assert.fail();
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testCompressedWindowsAreRead() throws Exception {
+        final Random random = new Random(3);
+        final byte[] source = createData(random, 300 * 1024);
+        final byte[] target = createData(random, 300 * 1024);
+        for (SVNDeltaCompression compression : SVNDeltaCompression.values()) {
+            final ByteArrayOutputStream svndiff = new ByteArrayOutputStream();
+            new SVNDeltaGenerator().sendDelta("file", new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), new WindowsWriter(svndiff, compression), false);
+
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new SVNDeltaGenerator().sendDelta("file", new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), new WindowsWriter(expected, SVNDeltaCompression.None), false);
+
+            final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            final SVNDeltaReader reader = new SVNDeltaReader();
+            final byte[] bytes = svndiff.toByteArray();
+            final WindowsWriter uncompressedWriter = new WindowsWriter(actual, SVNDeltaCompression.None);
+            for (int offset = 0; offset < bytes.length; offset += 1000) {
+                reader.nextWindow(bytes, offset, Math.min(1000, bytes.length - offset), "file", uncompressedWriter);
+            }
+            reader.reset("file", uncompressedWriter);
+            Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    @Test
+    public void testRepositoryCompressionLevel() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRepositoryCompressionLevel", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            final SVNConfigFile config = new SVNConfigFile(new File(repositoryRoot, "db/fsfs.conf"));
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            final boolean hasCompressionOption = fsfs.getDBFormat() >= FSFS.MIN_COMPRESSION_FORMAT;
+            fsfs.close();
+            if (hasCompressionOption) {
+                config.setPropertyValue(FSFS.DELTIFICATION_SECTION, FSFS.COMPRESSION_OPTION, "zlib-1", true);
+            } else {
+                config.setPropertyValue(FSFS.DELTIFICATION_SECTION, FSFS.COMPRESSION_LEVEL_OPTION, "1", true);
+            }
+
+            final byte[] contents = createData(new Random(4), 200 * 1024);
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file", contents);
+            commitBuilder.commit();
+
+            final FSFS configuredFsfs = new FSFS(repositoryRoot);
+            configuredFsfs.open();
+            try {
+                Assert.assertEquals(1, configuredFsfs.getDeltaCompressionLevel());
+                final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                final InputStream inputStream = configuredFsfs.createRevisionRoot(1).getFileStreamForPath(new SVNDeltaCombiner(), "/file");
+                try {
+                    FSRepositoryUtil.copy(inputStream, outputStream, null);
+                } finally {
+                    SVNFileUtil.closeFile(inputStream);
+                }
+                Assert.assertArrayEquals(contents, outputStream.toByteArray());
+            } finally {
+                configuredFsfs.close();
+            }
+
+            if (hasCompressionOption) {
+                config.setPropertyValue(FSFS.DELTIFICATION_SECTION, FSFS.COMPRESSION_OPTION, "zlib-10", true);
+            } else {
+                config.setPropertyValue(FSFS.DELTIFICATION_SECTION, FSFS.COMPRESSION_LEVEL_OPTION, "10", true);
+            }
+            final FSFS misconfiguredFsfs = new FSFS(repositoryRoot);
+            try {
+                misconfiguredFsfs.open();
+                Assert.fail();
+            } catch (SVNException e) {
+                Assert.assertEquals(SVNErrorCode.BAD_CONFIG_VALUE, e.getErrorMessage().getErrorCode());
+            } finally {
+                misconfiguredFsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private static byte[] createData(Random random, int length) {
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append("line ").append(random.nextInt(100)).append('\n');
+        }
+        return text.substring(0, length).getBytes();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+
+    private static class WindowsWriter implements ISVNDeltaConsumer {
+
+        private final OutputStream myOutputStream;
+        private final SVNDeltaCompression myCompression;
+        private boolean myIsHeaderWritten;
+
+        public WindowsWriter(OutputStream outputStream, SVNDeltaCompression compression) {
+            myOutputStream = outputStream;
+            myCompression = compression;
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            try {
+                diffWindow.writeTo(myOutputStream, !myIsHeaderWritten, myCompression);
+            } catch (IOException e) {
+                throw new SVNException(SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e));
+            }
+            myIsHeaderWritten = true;
+            return null;
+        }
+
+        public void textDeltaEnd(String path) {
+        }
+    }
+}
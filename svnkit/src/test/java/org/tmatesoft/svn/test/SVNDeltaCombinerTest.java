@@ -0,0 +1,94 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSInputStream;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+public class SVNDeltaCombinerTest {
+
+    @Test
+    public void testStreamsSharingCombiner() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final long maxFulltextSize = FSInputStream.getMaxCachedFulltextSize();
+        FSInputStream.setMaxCachedFulltextSize(0);
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testStreamsSharingCombiner", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final Random random = new Random(1);
+            final byte[][] contents = new byte[4][];
+            final StringBuilder text = new StringBuilder();
+            while (text.length() < 350 * 1024) {
+                text.append("line ").append(random.nextInt(1000)).append('\n');
+            }
+            for (int i = 0; i < contents.length; i++) {
+                for (int j = 0; j < 20; j++) {
+                    final int position = random.nextInt(text.length());
+                    text.insert(position, "changed " + i + "\n");
+                }
+                contents[i] = text.toString().getBytes();
+
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                if (i == 0) {
+                    commitBuilder.addFile("file", contents[i]);
+                } else {
+                    commitBuilder.changeFile("file", contents[i]);
+                }
+                commitBuilder.commit();
+            }
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final SVNDeltaCombiner combiner = new SVNDeltaCombiner();
+                final InputStream source = fsfs.createRevisionRoot(contents.length - 1).getFileStreamForPath(combiner, "/file");
+                final InputStream target = fsfs.createRevisionRoot(contents.length).getFileStreamForPath(combiner, "/file");
+                final ByteArrayOutputStream sourceContents = new ByteArrayOutputStream();
+                final ByteArrayOutputStream targetContents = new ByteArrayOutputStream();
+                try {
+                    final byte[] buffer = new byte[7000];
+                    boolean sourceEnded = false;
+                    boolean targetEnded = false;
+                    while (!sourceEnded || !targetEnded) {
+                        sourceEnded = sourceEnded || !copyChunk(source, buffer, sourceContents);
+                        targetEnded = targetEnded || !copyChunk(target, buffer, targetContents);
+                    }
+                } finally {
+                    SVNFileUtil.closeFile(source);
+                    SVNFileUtil.closeFile(target);
+                }
+                Assert.assertArrayEquals(contents[contents.length - 2], sourceContents.toByteArray());
+                Assert.assertArrayEquals(contents[contents.length - 1], targetContents.toByteArray());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSInputStream.setMaxCachedFulltextSize(maxFulltextSize);
+            sandbox.dispose();
+        }
+    }
+
+    private static boolean copyChunk(InputStream inputStream, byte[] buffer, ByteArrayOutputStream outputStream) throws Exception {
+        final int read = inputStream.read(buffer);
+        if (read < 0) {
+            return false;
+        }
+        outputStream.write(buffer, 0, read);
+        return true;
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,89 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+public class SVNDeltaGeneratorTest {
+
+    @Test
+    public void testParallelWindowsAreSentInOrder() throws Exception {
+        final Random random = new Random(1);
+        final byte[] source = new byte[1024 * 1024 + 123];
+        random.nextBytes(source);
+        final byte[] target = source.clone();
+        for (int i = 0; i < 1000; i++) {
+            target[random.nextInt(target.length)] = (byte) random.nextInt();
+        }
+
+        final WindowsCollector sequential = new WindowsCollector();
+        final String sequentialChecksum = new SVNDeltaGenerator(64 * 1024, 0).sendDelta("file",
+                new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), sequential, true);
+
+        final WindowsCollector parallel = new WindowsCollector();
+        final String parallelChecksum = new SVNDeltaGenerator(64 * 1024, 4).sendDelta("file",
+                new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), parallel, true);
+
+        Assert.assertEquals(sequentialChecksum, parallelChecksum);
+        Assert.assertEquals(17, sequential.getWindowsCount());
+        Assert.assertEquals(sequential.getWindowsCount(), parallel.getWindowsCount());
+        Assert.assertArrayEquals(sequential.getWindows(), parallel.getWindows());
+        Assert.assertTrue(parallel.isEnded());
+    }
+
+    @Test
+    public void testParallelEmptyTarget() throws Exception {
+        final WindowsCollector parallel = new WindowsCollector();
+        new SVNDeltaGenerator(64 * 1024, 4).sendDelta("file", new ByteArrayInputStream(new byte[0]), parallel, false);
+
+        Assert.assertEquals(1, parallel.getWindowsCount());
+        Assert.assertTrue(parallel.isEnded());
+    }
+
+    private static class WindowsCollector implements ISVNDeltaConsumer {
+
+        private final ByteArrayOutputStream myWindows = new ByteArrayOutputStream();
+        private int myWindowsCount;
+        private boolean myIsEnded;
+
+        public void applyTextDelta(String path, String baseChecksum) {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            try {
+                diffWindow.writeTo(myWindows, myWindowsCount == 0);
+            } catch (IOException e) {
+                throw new SVNException(SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e));
+            }
+            myWindowsCount++;
+            return null;
+        }
+
+        public void textDeltaEnd(String path) {
+            myIsEnded = true;
+        }
+
+        public byte[] getWindows() {
+            return myWindows.toByteArray();
+        }
+
+        public int getWindowsCount() {
+            return myWindowsCount;
+        }
+
+        public boolean isEnded() {
+            return myIsEnded;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNDumpStreamPipeline;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+public class SVNDumpStreamPipelineTest {
+
+    @Test
+    public void testPipelinedLoadOfFullTexts() throws Exception {
+        checkPipelinedLoad(getTestName() + ".testPipelinedLoadOfFullTexts", false, SVNDumpStreamPipeline.getQueueSize());
+    }
+
+    @Test
+    public void testPipelinedLoadOfDeltas() throws Exception {
+        checkPipelinedLoad(getTestName() + ".testPipelinedLoadOfDeltas", true, SVNDumpStreamPipeline.getQueueSize());
+    }
+
+    @Test
+    public void testPipelinedLoadWithSmallQueue() throws Exception {
+        checkPipelinedLoad(getTestName() + ".testPipelinedLoadWithSmallQueue", true, 16 * 1024);
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testChecksumMismatch", options);
+        final boolean enabled = SVNDumpStreamPipeline.isEnabled();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            fillRepository(url);
+
+            final String dump = new String(dump(url, false), "ISO-8859-1");
+            final String checksumHeader = "Text-content-md5: ";
+            final int checksumIndex = dump.lastIndexOf(checksumHeader) + checksumHeader.length();
+            final String corruptedDump = dump.substring(0, checksumIndex) +
+                    (dump.charAt(checksumIndex) == '0' ? '1' : '0') + dump.substring(checksumIndex + 1);
+
+            SVNDumpStreamPipeline.setEnabled(true);
+            final SVNURL loadedUrl = sandbox.createSvnRepository();
+            try {
+                load(loadedUrl, corruptedDump.getBytes("ISO-8859-1"));
+                Assert.fail("Checksum mismatch is not detected");
+            } catch (SVNException e) {
+                Assert.assertEquals(SVNErrorCode.CHECKSUM_MISMATCH, e.getErrorMessage().getErrorCode());
+            }
+
+            final SVNRepository repository = SVNRepositoryFactory.create(loadedUrl);
+            try {
+                Assert.assertEquals(getLatestRevision(url) - 1, repository.getLatestRevision());
+            } finally {
+                repository.closeSession();
+            }
+        } finally {
+            SVNDumpStreamPipeline.setEnabled(enabled);
+            sandbox.dispose();
+        }
+    }
+
+    private void checkPipelinedLoad(String testName, boolean useDeltas, long queueSize) throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(testName, options);
+        final boolean enabled = SVNDumpStreamPipeline.isEnabled();
+        final long oldQueueSize = SVNDumpStreamPipeline.getQueueSize();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            fillRepository(url);
+            final byte[] dump = dump(url, useDeltas);
+
+            SVNDumpStreamPipeline.setEnabled(false);
+            final SVNURL sequentialUrl = sandbox.createSvnRepository();
+            load(sequentialUrl, dump);
+
+            SVNDumpStreamPipeline.setEnabled(true);
+            SVNDumpStreamPipeline.setQueueSize(queueSize);
+            final SVNURL pipelinedUrl = sandbox.createSvnRepository();
+            load(pipelinedUrl, dump);
+
+            Assert.assertEquals(getLatestRevision(url), getLatestRevision(pipelinedUrl));
+            Assert.assertArrayEquals(dump(sequentialUrl, false), dump(pipelinedUrl, false));
+            Assert.assertArrayEquals(dump(url, false), dump(pipelinedUrl, false));
+        } finally {
+            SVNDumpStreamPipeline.setEnabled(enabled);
+            SVNDumpStreamPipeline.setQueueSize(oldQueueSize);
+            sandbox.dispose();
+        }
+    }
+
+    private void fillRepository(SVNURL url) throws SVNException {
+        final StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            contents.append("line ").append(i).append('\n');
+        }
+
+        final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+        commitBuilder1.addDirectory("directory");
+        commitBuilder1.addFile("directory/file", contents.toString().getBytes());
+        commitBuilder1.addFile("empty");
+        commitBuilder1.setFileProperty("empty", "property", SVNPropertyValue.create("value"));
+        commitBuilder1.commit();
+
+        for (int i = 0; i < 5; i++) {
+            contents.insert(contents.length() / (i + 2), "change " + i + "\n");
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.changeFile("directory/file", contents.toString().getBytes());
+            commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+            commitBuilder.commit();
+        }
+
+        final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+        commitBuilder2.addDirectoryByCopying("copy", "directory");
+        commitBuilder2.delete("file0");
+        commitBuilder2.commit();
+
+        contents.append("last line\n");
+        final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+        commitBuilder3.changeFile("copy/file", contents.toString().getBytes());
+        commitBuilder3.commit();
+    }
+
+    private byte[] dump(SVNURL url, boolean useDeltas) throws SVNException {
+        final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+        adminClient.doDump(new File(url.getPath()), dump, SVNRevision.create(0), SVNRevision.HEAD, false, useDeltas);
+        return dump.toByteArray();
+    }
+
+    private void load(SVNURL url, byte[] dump) throws SVNException {
+        final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+        adminClient.doLoad(new File(url.getPath()), new ByteArrayInputStream(dump));
+    }
+
+    private long getLatestRevision(SVNURL url) throws SVNException {
+        final SVNRepository repository = SVNRepositoryFactory.create(url);
+        try {
+            return repository.getLatestRevision();
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
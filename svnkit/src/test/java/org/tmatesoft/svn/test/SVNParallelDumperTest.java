@@ -0,0 +1,129 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+public class SVNParallelDumperTest {
+
+    @Test
+    public void testParallelDumpMatchesSequentialDump() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testParallelDumpMatchesSequentialDump", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            fillRepository(url);
+            final File repositoryRoot = new File(url.getPath());
+
+            for (int i = 0; i < 4; i++) {
+                final boolean useDeltas = (i & 1) != 0;
+                final boolean isIncremental = (i & 2) != 0;
+                final SVNRevision startRevision = isIncremental ? SVNRevision.create(5) : SVNRevision.create(0);
+
+                final byte[] expected = dump(repositoryRoot, startRevision, isIncremental, useDeltas, 1, null);
+                final byte[] actual = dump(repositoryRoot, startRevision, isIncremental, useDeltas, 4, null);
+                Assert.assertArrayEquals(expected, actual);
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testInterruptedDumpIsResumed() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testInterruptedDumpIsResumed", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            fillRepository(url);
+            final File repositoryRoot = new File(url.getPath());
+            final File spoolDirectory = sandbox.createDirectory("spool");
+
+            final byte[] expected = dump(repositoryRoot, SVNRevision.create(0), false, true, 1, null);
+
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            try {
+                adminClient.doDump(repositoryRoot, new FailingOutputStream(expected.length / 2), SVNRevision.create(0), SVNRevision.HEAD,
+                        false, true, 4, spoolDirectory);
+                Assert.fail("Dump is not interrupted");
+            } catch (SVNException e) {
+                //
+            }
+            final File checkpointFile = new File(spoolDirectory, "dump-checkpoint");
+            Assert.assertTrue(checkpointFile.isFile());
+            // the first line identifies the dump, the others are completed ranges
+            Assert.assertTrue(SVNFileUtil.readFile(checkpointFile).split("\n").length > 1);
+
+            final byte[] actual = dump(repositoryRoot, SVNRevision.create(0), false, true, 4, spoolDirectory);
+            Assert.assertArrayEquals(expected, actual);
+            Assert.assertEquals(0, spoolDirectory.list().length);
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void fillRepository(SVNURL url) throws SVNException {
+        final StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            contents.append("line ").append(i).append('\n');
+        }
+
+        final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+        commitBuilder1.addDirectory("directory");
+        commitBuilder1.addFile("directory/file", contents.toString().getBytes());
+        commitBuilder1.commit();
+
+        for (int i = 0; i < 10; i++) {
+            contents.insert(contents.length() / (i + 2), "change " + i + "\n");
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.changeFile("directory/file", contents.toString().getBytes());
+            commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+            commitBuilder.commit();
+        }
+
+        final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+        commitBuilder2.addDirectoryByCopying("copy", "directory", 3);
+        commitBuilder2.delete("file0");
+        commitBuilder2.commit();
+    }
+
+    private byte[] dump(File repositoryRoot, SVNRevision startRevision, boolean isIncremental, boolean useDeltas,
+            int threadsCount, File spoolDirectory) throws SVNException {
+        final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+        adminClient.doDump(repositoryRoot, dump, startRevision, SVNRevision.HEAD, isIncremental, useDeltas, threadsCount, spoolDirectory);
+        return dump.toByteArray();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+
+    private static class FailingOutputStream extends OutputStream {
+
+        private long myRemaining;
+
+        public FailingOutputStream(long limit) {
+            myRemaining = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (--myRemaining < 0) {
+                throw new IOException("No space left");
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNEvent;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
+import org.tmatesoft.svn.core.wc2.ISvnObjectReceiver;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.SvnTarget;
+import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryVerify;
+
+public class SVNParallelVerifierTest {
+
+    @Test
+    public void testParallelVerifyReportsRevisionsInOrder() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testParallelVerifyReportsRevisionsInOrder", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            fillRepository(url);
+
+            final EventHandler eventHandler = new EventHandler();
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            adminClient.setEventHandler(eventHandler);
+            adminClient.doVerify(new File(url.getPath()), SVNRevision.create(0), SVNRevision.HEAD, 4);
+
+            Assert.assertEquals(21, eventHandler.myVerifiedRevisions.size());
+            for (int i = 0; i < eventHandler.myVerifiedRevisions.size(); i++) {
+                Assert.assertEquals(Long.valueOf(i), eventHandler.myVerifiedRevisions.get(i));
+            }
+            Assert.assertTrue(eventHandler.myProgressEventsCount > 0);
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testVerifyOperationReceivesVerifiedRevisionsOnly() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testVerifyOperationReceivesVerifiedRevisionsOnly", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            fillRepository(url);
+
+            final List<SVNAdminEvent> events = new ArrayList<SVNAdminEvent>();
+            final SvnRepositoryVerify verify = svnOperationFactory.createRepositoryVerify();
+            verify.setRepositoryRoot(new File(url.getPath()));
+            verify.setStartRevision(SVNRevision.create(0));
+            verify.setEndRevision(SVNRevision.HEAD);
+            verify.setThreadsCount(4);
+            verify.setReceiver(new ISvnObjectReceiver<SVNAdminEvent>() {
+                public void receive(SvnTarget target, SVNAdminEvent event) throws SVNException {
+                    events.add(event);
+                }
+            });
+            verify.run();
+
+            Assert.assertEquals(21, events.size());
+            for (int i = 0; i < events.size(); i++) {
+                Assert.assertEquals(SVNAdminEventAction.REVISION_DUMPED, events.get(i).getAction());
+                Assert.assertEquals(i, events.get(i).getRevision());
+            }
+        } finally {
+            svnOperationFactory.dispose();
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testParallelVerifyDetectsCorruption() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testParallelVerifyDetectsCorruption", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            fillRepository(url);
+            final File repositoryRoot = new File(url.getPath());
+            corruptTextChecksum(new File(repositoryRoot, "db/revs/0/5"));
+
+            final EventHandler eventHandler = new EventHandler();
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            adminClient.setEventHandler(eventHandler);
+            try {
+                adminClient.doVerify(repositoryRoot, SVNRevision.create(0), SVNRevision.HEAD, 4);
+                Assert.fail("Corruption is not detected");
+            } catch (SVNException e) {
+                final SVNErrorMessage errorMessage = e.getErrorMessage();
+                Assert.assertTrue(errorMessage.getMessage(), errorMessage.getMessage().contains("revision 5"));
+            }
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(Long.valueOf(i), eventHandler.myVerifiedRevisions.get(i));
+            }
+            Assert.assertFalse(eventHandler.myVerifiedRevisions.contains(Long.valueOf(5)));
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void fillRepository(SVNURL url) throws SVNException {
+        for (int i = 0; i < 20; i++) {
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+            commitBuilder.commit();
+        }
+    }
+
+    private void corruptTextChecksum(File revisionFile) throws Exception {
+        final String contents = new String(SVNFileUtil.readFully(revisionFile), "ISO-8859-1");
+        final int textIndex = contents.indexOf("\ntext: ");
+        Assert.assertTrue(textIndex >= 0);
+        final int lineEnd = contents.indexOf('\n', textIndex + 1);
+        final String[] fields = contents.substring(textIndex + 1, lineEnd).split(" ");
+        // text: <revision> <offset> <size> <expanded size> <md5> ...
+        final StringBuilder md5 = new StringBuilder(fields[5]);
+        md5.setCharAt(0, md5.charAt(0) == '0' ? '1' : '0');
+        fields[5] = md5.toString();
+
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            line.append(i > 0 ? " " : "").append(fields[i]);
+        }
+        SVNFileUtil.writeToFile(revisionFile, (contents.substring(0, textIndex + 1) + line + contents.substring(lineEnd)).getBytes("ISO-8859-1"));
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+
+    private static class EventHandler implements ISVNAdminEventHandler {
+
+        private final List<Long> myVerifiedRevisions = new ArrayList<Long>();
+        private int myProgressEventsCount;
+
+        public void handleAdminEvent(SVNAdminEvent event, double progress) throws SVNException {
+            if (event.getAction() == SVNAdminEventAction.REVISION_DUMPED) {
+                myVerifiedRevisions.add(event.getRevision());
+            } else if (event.getAction() == SVNAdminEventAction.VERIFY_PROGRESS) {
+                myProgressEventsCount++;
+            }
+        }
+
+        public void handleEvent(SVNEvent event, double progress) throws SVNException {
+        }
+
+        public void checkCancelled() {
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.svn.SVNItem;
+import org.tmatesoft.svn.core.internal.io.svn.SVNReader;
+
+public class SVNReaderTest {
+
+    private static final String[] TEMPLATES = {
+            "r", "(?r)s", "s(?r)s", "sss(?sr)", "sss(?r)", "ss(?b)", "s", "s(?s)", "sb", "s(?b)", "()", "l",
+            "nnll", "ls", "wl", "w", "rll", "(?l)", "wnsr(?s)(?s)", "sss(?s)s(?s)", "nssn", "(?s)", "r(?s)(?s)(?s)",
+    };
+
+    private static final String[] WORDS = {"success", "failure", "true", "false", "dir", "file", "add-dir", "some-word", "x1"};
+
+    @Test
+    public void testStreamParsingMatchesItemParsing() throws Exception {
+        final Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            final String template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+            final ByteArrayOutputStream tuple = new ByteArrayOutputStream();
+            writeItem(tuple, createTuple(random, template, 0, template.length()), random);
+            tuple.write("( end ) ".getBytes("UTF-8"));
+            final byte[] data = tuple.toByteArray();
+
+            List expected = null;
+            SVNErrorCode expectedError = null;
+            try {
+                expected = SVNReader.parseTuple(template, SVNReader.readItem(new ByteArrayInputStream(data)).getItems(), null);
+            } catch (SVNException e) {
+                expectedError = e.getErrorMessage().getErrorCode();
+            }
+
+            final InputStream is = new ByteArrayInputStream(data);
+            List actual = null;
+            SVNErrorCode actualError = null;
+            try {
+                actual = SVNReader.readTuple(is, template);
+            } catch (SVNException e) {
+                actualError = e.getErrorMessage().getErrorCode();
+            }
+
+            final String message = template + " " + new String(data, "UTF-8");
+            Assert.assertEquals(message, expectedError, actualError);
+            assertValuesEqual(message, expected, actual);
+            Assert.assertEquals(message, "end", SVNReader.readTuple(is, "w").get(0));
+        }
+    }
+
+    @Test
+    public void testParseResponses() throws Exception {
+        final List values = SVNReader.parse(stream("( success ( 2 ( 3:abc x ) ( ) ) ) "), "rll", null);
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals(Long.valueOf(2), values.get(0));
+        Assert.assertEquals(2, ((Collection) values.get(1)).size());
+        Assert.assertTrue(((Collection) values.get(2)).isEmpty());
+
+        final List defaults = SVNReader.parse(stream("( success ( ( ) ) ) "), "(?l)", null);
+        Assert.assertEquals(1, defaults.size());
+
+        try {
+            SVNReader.parse(stream("( failure ( ( 160013 14:File not found 0: 0 ) ) ) "), "rll", null);
+            Assert.fail();
+        } catch (SVNException e) {
+            Assert.assertEquals(SVNErrorCode.FS_NOT_FOUND, e.getErrorMessage().getErrorCode());
+            Assert.assertEquals("File not found", e.getErrorMessage().getMessageTemplate());
+        }
+
+        final InputStream is = stream("( bogus ( 1 2 ) ) ( success ( abc ) ) ");
+        try {
+            SVNReader.parse(is, "w", null);
+            Assert.fail();
+        } catch (SVNException e) {
+            Assert.assertEquals(SVNErrorCode.RA_SVN_MALFORMED_DATA, e.getErrorMessage().getErrorCode());
+        }
+        Assert.assertEquals(Arrays.asList("abc"), SVNReader.parse(is, "w", null));
+    }
+
+    @Test
+    public void testReadCommand() throws Exception {
+        final Map<String, String> templates = new HashMap<String, String>();
+        templates.put("open-dir", "sss(?r)");
+        final InputStream is = stream("( open-dir ( 1:a 2:d0 2:d1 ( 5 ) ) ) ( unknown-command ( 1:a ( 1 2 ) ) ) ( close-edit ( ) ) ");
+
+        final List values = new ArrayList();
+        Assert.assertEquals("open-dir", SVNReader.readCommand(is, templates, values));
+        Assert.assertEquals(Arrays.asList("a", "d0", "d1", Long.valueOf(5)), values);
+
+        values.clear();
+        Assert.assertEquals("unknown-command", SVNReader.readCommand(is, templates, values));
+        Assert.assertTrue(values.isEmpty());
+        Assert.assertEquals("close-edit", SVNReader.readCommand(is, null, null));
+    }
+
+    private static Object createTuple(Random random, String template, int start, int end) {
+        final List<Object> items = new ArrayList<Object>();
+        for (int index = start; index < end; index++) {
+            char ch = template.charAt(index);
+            if (ch == '?') {
+                if (random.nextInt(3) == 0) {
+                    break;
+                }
+                continue;
+            }
+            if (random.nextInt(12) == 0) {
+                items.add(createItem(random, 0));
+                continue;
+            }
+            if (ch == '(') {
+                int nestingLevel = 1;
+                int closing = index + 1;
+                for (; nestingLevel > 0; closing++) {
+                    nestingLevel += template.charAt(closing) == '(' ? 1 : template.charAt(closing) == ')' ? -1 : 0;
+                }
+                items.add(createTuple(random, template, index + 1, closing - 1));
+                index = closing - 1;
+            } else if (ch == 'n' || ch == 'r') {
+                items.add(Long.valueOf(random.nextInt(100000)));
+            } else if (ch == 's' || ch == 'b') {
+                items.add(random.nextBoolean() ? createBytes(random) : WORDS[random.nextInt(WORDS.length)]);
+            } else if (ch == 'w') {
+                items.add(WORDS[random.nextInt(WORDS.length)]);
+            } else if (ch == 'l') {
+                items.add(createItem(random, 1));
+            }
+        }
+        if (random.nextInt(8) == 0) {
+            items.add(createItem(random, 0));
+        }
+        return items;
+    }
+
+    private static Object createItem(Random random, int kind) {
+        kind = kind != 0 ? kind : random.nextInt(5);
+        if (kind == 1) {
+            final List<Object> items = new ArrayList<Object>();
+            final int count = random.nextInt(4);
+            for (int i = 0; i < count; i++) {
+                items.add(random.nextInt(3) == 0 ? createItem(random, 1) : createItem(random, 2 + random.nextInt(3)));
+            }
+            return items;
+        } else if (kind == 2) {
+            return Long.valueOf(random.nextInt(1000));
+        } else if (kind == 3) {
+            return createBytes(random);
+        }
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static byte[] createBytes(Random random) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = random.nextInt(20);
+        for (int i = 0; i < length; i++) {
+            builder.append(random.nextInt(10) == 0 ? 'я' : (char) ('a' + random.nextInt(26)));
+        }
+        try {
+            return builder.toString().getBytes("UTF-8");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeItem(ByteArrayOutputStream os, Object item, Random random) throws Exception {
+        final String separator = random.nextInt(5) == 0 ? "\n" : " ";
+        if (item instanceof List) {
+            os.write(("(" + separator).getBytes("UTF-8"));
+            for (Object child : (List) item) {
+                writeItem(os, child, random);
+            }
+            os.write((")" + separator).getBytes("UTF-8"));
+        } else if (item instanceof Long) {
+            os.write((item + separator).getBytes("UTF-8"));
+        } else if (item instanceof byte[]) {
+            final byte[] bytes = (byte[]) item;
+            os.write((bytes.length + ":").getBytes("UTF-8"));
+            os.write(bytes);
+            os.write(separator.getBytes("UTF-8"));
+        } else {
+            os.write((item + separator).getBytes("UTF-8"));
+        }
+    }
+
+    private static void assertValuesEqual(String message, Object expected, Object actual) {
+        if (expected instanceof byte[] && actual instanceof byte[]) {
+            Assert.assertTrue(message, Arrays.equals((byte[]) expected, (byte[]) actual));
+        } else if (expected instanceof List && actual instanceof List && !(((List) expected).isEmpty() || ((List) expected).get(0) instanceof SVNItem)) {
+            final List expectedList = (List) expected;
+            final List actualList = (List) actual;
+            Assert.assertEquals(message, expectedList.size(), actualList.size());
+            for (int i = 0; i < expectedList.size(); i++) {
+                assertValuesEqual(message, expectedList.get(i), actualList.get(i));
+            }
+        } else if (expected instanceof Collection && actual instanceof Collection) {
+            Assert.assertEquals(message, expected.toString(), actual.toString());
+        } else {
+            Assert.assertEquals(message, expected, actual);
+        }
+    }
+
+    private static InputStream stream(String data) throws Exception {
+        return new ByteArrayInputStream(data.getBytes("UTF-8"));
+    }
+}
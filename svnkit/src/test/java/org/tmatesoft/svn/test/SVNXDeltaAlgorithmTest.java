@@ -0,0 +1,133 @@
+package org.tmatesoft.svn.test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaFastAlgorithm;
+
+public class SVNXDeltaAlgorithmTest {
+
+    @Test
+    public void testTextDeltas() throws Exception {
+        final Random random = new Random(1);
+        final SVNDeltaAlgorithm expected = new SVNXDeltaAlgorithm();
+        final SVNDeltaAlgorithm actual = new SVNXDeltaFastAlgorithm();
+
+        for (int i = 0; i < 50; i++) {
+            final byte[] source = createText(random, 1 + random.nextInt(100 * 1024));
+            final byte[] target = mutate(random, source);
+            assertSameDelta(expected, actual, source, source.length, target, target.length);
+        }
+    }
+
+    @Test
+    public void testBinaryDeltas() throws Exception {
+        final Random random = new Random(2);
+        final SVNDeltaAlgorithm expected = new SVNXDeltaAlgorithm();
+        final SVNDeltaAlgorithm actual = new SVNXDeltaFastAlgorithm();
+
+        for (int i = 0; i < 50; i++) {
+            final byte[] source = new byte[random.nextInt(100 * 1024)];
+            random.nextBytes(source);
+            final byte[] target = mutate(random, source);
+            assertSameDelta(expected, actual, source, source.length, target, target.length);
+        }
+    }
+
+    @Test
+    public void testRepetitiveDeltas() throws Exception {
+        final Random random = new Random(3);
+        final SVNDeltaAlgorithm expected = new SVNXDeltaAlgorithm();
+        final SVNDeltaAlgorithm actual = new SVNXDeltaFastAlgorithm();
+
+        for (int i = 0; i < 50; i++) {
+            final byte[] source = new byte[random.nextInt(16 * 1024)];
+            for (int j = 0; j < source.length; j++) {
+                source[j] = (byte) "ab".charAt(random.nextInt(random.nextInt(4) == 0 ? 2 : 1));
+            }
+            final byte[] target = mutate(random, source);
+            assertSameDelta(expected, actual, source, source.length, target, target.length);
+        }
+    }
+
+    @Test
+    public void testReusedBuffers() throws Exception {
+        final Random random = new Random(4);
+        final SVNDeltaAlgorithm expected = new SVNXDeltaAlgorithm();
+        final SVNDeltaAlgorithm actual = new SVNXDeltaFastAlgorithm();
+
+        final byte[] source = new byte[8192];
+        final byte[] target = new byte[8192];
+        for (int i = 0; i < 100; i++) {
+            final byte[] data = createText(random, 1 + random.nextInt(source.length));
+            System.arraycopy(data, 0, source, 0, data.length);
+            final byte[] changed = mutate(random, data);
+            final int targetLength = Math.min(changed.length, target.length);
+            System.arraycopy(changed, 0, target, 0, targetLength);
+            assertSameDelta(expected, actual, source, data.length, target, targetLength);
+        }
+    }
+
+    private static void assertSameDelta(SVNDeltaAlgorithm expected, SVNDeltaAlgorithm actual, byte[] source, int sourceLength, byte[] target, int targetLength) {
+        expected.computeDelta(source, sourceLength, target, targetLength);
+        actual.computeDelta(source, sourceLength, target, targetLength);
+        try {
+            Assert.assertEquals(expected.getInstructionsLength(), actual.getInstructionsLength());
+            Assert.assertEquals(expected.getNewDataLength(), actual.getNewDataLength());
+            Assert.assertArrayEquals(toArray(expected.getData()), toArray(actual.getData()));
+        } finally {
+            expected.reset();
+            actual.reset();
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] array = new byte[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+
+    private static byte[] createText(Random random, int length) {
+        final String[] words = {"svn", "delta", "window", "revision", "repository", "\n", " ", "\t", "{", "}", ";"};
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append(words[random.nextInt(words.length)]);
+        }
+        return text.substring(0, length).getBytes();
+    }
+
+    private static byte[] mutate(Random random, byte[] source) {
+        final ByteBuffer target = ByteBuffer.allocate(source.length * 2 + 1024);
+        int position = 0;
+        while (position < source.length) {
+            final int chunk = Math.min(source.length - position, random.nextInt(4096) + 1);
+            switch (random.nextInt(4)) {
+                case 0:
+                    // delete
+                    break;
+                case 1:
+                    final byte[] inserted = new byte[random.nextInt(200)];
+                    random.nextBytes(inserted);
+                    target.put(inserted);
+                    target.put(source, position, chunk);
+                    break;
+                default:
+                    target.put(source, position, chunk);
+                    break;
+            }
+            position += chunk;
+        }
+        if (source.length > 0 && random.nextBoolean()) {
+            final int from = random.nextInt(source.length);
+            target.put(source, from, Math.min(source.length - from, 1024));
+        }
+        final byte[] result = new byte[target.position()];
+        target.flip();
+        target.get(result);
+        return result;
+    }
+}